@@ -0,0 +1,96 @@
+package kaaes.spotify.webapi.samplesearch;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.util.Log;
+import android.view.Choreographer;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Records frame times between {@link #start()} and {@link #stop()}, for example
+ * while the result list is scrolled, and logs percentiles and the number of janky frames.
+ * Does nothing before Jelly Bean where {@link Choreographer} is not available.
+ */
+public class FrameTimeMonitor {
+
+    private static final String TAG = FrameTimeMonitor.class.getSimpleName();
+
+    private static final long FRAME_NANOS = 16666667;
+    private static final int MAX_FRAMES = 4096;
+
+    private final long[] mFrameTimes = new long[MAX_FRAMES];
+    private int mFrameCount;
+    private long mLastFrameNanos;
+    private boolean mRunning;
+
+    private Object mFrameCallback;
+
+    public void start() {
+        if (mRunning || Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) return;
+        mRunning = true;
+        mFrameCount = 0;
+        mLastFrameNanos = 0;
+        postFrameCallback();
+    }
+
+    public void stop() {
+        if (!mRunning) return;
+        mRunning = false;
+        Log.d(TAG, toString());
+    }
+
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * @return Number of frames that took longer than one and a half vsync intervals
+     */
+    public int getJankyFrameCount() {
+        int janky = 0;
+        for (int i = 0; i < mFrameCount; i++) {
+            if (mFrameTimes[i] > FRAME_NANOS * 3 / 2) {
+                janky++;
+            }
+        }
+        return janky;
+    }
+
+    /**
+     * @param percentile Percentile between 0 and 100
+     * @return Frame time at the percentile in milliseconds
+     */
+    public float getFrameTimePercentile(int percentile) {
+        if (mFrameCount == 0) return 0;
+        long[] sorted = Arrays.copyOf(mFrameTimes, mFrameCount);
+        Arrays.sort(sorted);
+        int index = Math.min(mFrameCount - 1, mFrameCount * percentile / 100);
+        return sorted[index] / 1000000f;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "frames: %d, janky: %d, p50: %.1f ms, p90: %.1f ms, p99: %.1f ms",
+                mFrameCount, getJankyFrameCount(), getFrameTimePercentile(50), getFrameTimePercentile(90), getFrameTimePercentile(99));
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void postFrameCallback() {
+        if (mFrameCallback == null) {
+            mFrameCallback = new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    if (!mRunning) return;
+                    if (mLastFrameNanos > 0 && mFrameCount < MAX_FRAMES) {
+                        mFrameTimes[mFrameCount++] = frameTimeNanos - mLastFrameNanos;
+                    }
+                    mLastFrameNanos = frameTimeNanos;
+                    Choreographer.getInstance().postFrameCallback(this);
+                }
+            };
+        }
+        Choreographer.getInstance().postFrameCallback((Choreographer.FrameCallback) mFrameCallback);
+    }
+}
@@ -0,0 +1,53 @@
+package kaaes.spotify.webapi.samplesearch;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.squareup.picasso.Picasso;
+
+/**
+ * Reports, per screen of results, how many image bytes were downloaded and how much
+ * decode memory choosing a thumbnail sized image saved compared to the largest one.
+ */
+public class ImageLoadStats {
+
+    private static final String TAG = ImageLoadStats.class.getSimpleName();
+
+    private final Context mContext;
+
+    private long mImageBytes;
+    private long mLargestImageBytes;
+    private int mRows;
+    private long mDownloadedAtLastReport;
+
+    public ImageLoadStats(Context context) {
+        mContext = context;
+        mDownloadedAtLastReport = getTotalDownloadSize();
+    }
+
+    public void onRowBound(TrackRow row) {
+        mImageBytes += row.imageBytes;
+        mLargestImageBytes += row.largestImageBytes;
+        mRows++;
+    }
+
+    /**
+     * Logs the numbers since the last report, call when the list comes to rest on a new screen.
+     */
+    public void reportScreen() {
+        if (mRows == 0) return;
+        long downloaded = getTotalDownloadSize();
+        Log.d(TAG, "rows: " + mRows
+                + ", downloaded: " + (downloaded - mDownloadedAtLastReport) + " bytes"
+                + ", decode memory: " + mImageBytes + " bytes"
+                + ", saved: " + (mLargestImageBytes - mImageBytes) + " bytes");
+        mDownloadedAtLastReport = downloaded;
+        mImageBytes = 0;
+        mLargestImageBytes = 0;
+        mRows = 0;
+    }
+
+    private long getTotalDownloadSize() {
+        return Picasso.with(mContext).getSnapshot().totalDownloadSize;
+    }
+}
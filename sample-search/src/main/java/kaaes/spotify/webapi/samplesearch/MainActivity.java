@@ -17,18 +17,40 @@ public class MainActivity extends AppCompatActivity implements Search.View {
 
     static final String EXTRA_TOKEN = "EXTRA_TOKEN";
     private static final String KEY_CURRENT_QUERY = "CURRENT_QUERY";
+    private static final int QUEUE_LENGTH = 10;
 
     private Search.ActionListener mActionListener;
 
     private LinearLayoutManager mLayoutManager = new LinearLayoutManager(this);
-    private ScrollListener mScrollListener = new ScrollListener(mLayoutManager);
+    private PrefetchPolicy mPrefetchPolicy = new PrefetchPolicy();
+    private ScrollListener mScrollListener = new ScrollListener(mLayoutManager, mPrefetchPolicy);
     private SearchResultsAdapter mAdapter;
+    private final FrameTimeMonitor mFrameTimeMonitor = new FrameTimeMonitor();
 
 
     private class ScrollListener extends ResultListScrollListener {
 
-        public ScrollListener(LinearLayoutManager layoutManager) {
-            super(layoutManager);
+        public ScrollListener(LinearLayoutManager layoutManager, PrefetchPolicy prefetchPolicy) {
+            super(layoutManager, prefetchPolicy);
+        }
+
+        @Override
+        public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+            super.onScrollStateChanged(recyclerView, newState);
+            if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                mFrameTimeMonitor.stop();
+                mAdapter.getImageStats().reportScreen();
+                mActionListener.prefetchPreviews(mAdapter.getTracks(
+                        mLayoutManager.findFirstVisibleItemPosition(), mLayoutManager.findLastVisibleItemPosition()));
+            } else {
+                mFrameTimeMonitor.start();
+            }
+        }
+
+        @Override
+        public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+            super.onScrolled(recyclerView, dx, dy);
+            mAdapter.prefetchImages(mLayoutManager.findLastVisibleItemPosition());
         }
 
         @Override
@@ -49,7 +71,7 @@ public class MainActivity extends AppCompatActivity implements Search.View {
         Intent intent = getIntent();
         String token = intent.getStringExtra(EXTRA_TOKEN);
 
-        mActionListener = new SearchPresenter(this, this);
+        mActionListener = new SearchPresenter(this, this, mPrefetchPolicy);
         mActionListener.init(token);
 
         // Setup search field
@@ -64,7 +86,8 @@ public class MainActivity extends AppCompatActivity implements Search.View {
 
             @Override
             public boolean onQueryTextChange(String newText) {
-                return false;
+                mActionListener.searchAsYouType(newText);
+                return true;
             }
         });
 
@@ -72,9 +95,15 @@ public class MainActivity extends AppCompatActivity implements Search.View {
         // Setup search results list
         mAdapter = new SearchResultsAdapter(this, new SearchResultsAdapter.ItemSelectedListener() {
             @Override
-            public void onItemSelected(View itemView, Track item) {
+            public void onItemSelected(View itemView, int position, Track item) {
                 mActionListener.selectTrack(item);
             }
+
+            @Override
+            public void onItemLongSelected(View itemView, int position, Track item) {
+                // Plays the following results too
+                mActionListener.selectTrack(item, mAdapter.getTracks(position + 1, position + QUEUE_LENGTH));
+            }
         });
 
         RecyclerView resultsList = (RecyclerView) findViewById(R.id.search_results);
@@ -97,10 +126,16 @@ public class MainActivity extends AppCompatActivity implements Search.View {
     }
 
     @Override
-    public void addData(List<Track> items) {
+    public void addData(List<TrackRow> items) {
         mAdapter.addData(items);
     }
 
+    @Override
+    public void replaceData(List<TrackRow> items) {
+        mScrollListener.reset();
+        mAdapter.replaceData(items);
+    }
+
     @Override
     protected void onPause() {
         super.onPause();
@@ -124,6 +159,7 @@ public class MainActivity extends AppCompatActivity implements Search.View {
     @Override
     protected void onDestroy() {
         mActionListener.destroy();
+        mAdapter.release();
         super.onDestroy();
     }
 
@@ -0,0 +1,56 @@
+package kaaes.spotify.webapi.samplesearch;
+
+import android.media.MediaPlayer;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Keeps a few reset {@link MediaPlayer} instances around instead of creating
+ * and releasing one for every preview.
+ */
+public class MediaPlayerPool {
+
+    private static final int MAX_POOLED = 2;
+
+    private final Deque<MediaPlayer> mPlayers = new ArrayDeque<>();
+    private int mCreated;
+    private int mReused;
+
+    public MediaPlayer acquire() {
+        MediaPlayer player = mPlayers.poll();
+        if (player == null) {
+            mCreated++;
+            return new MediaPlayer();
+        }
+        mReused++;
+        return player;
+    }
+
+    /**
+     * Returns a player to the pool, it is reset and can't be used by the caller anymore.
+     */
+    public void recycle(MediaPlayer player) {
+        if (mPlayers.size() < MAX_POOLED) {
+            player.reset();
+            mPlayers.push(player);
+        } else {
+            player.release();
+        }
+    }
+
+    public void clear() {
+        for (MediaPlayer player : mPlayers) {
+            player.release();
+        }
+        mPlayers.clear();
+    }
+
+    public int getCreatedCount() {
+        return mCreated;
+    }
+
+    public int getReusedCount() {
+        return mReused;
+    }
+}
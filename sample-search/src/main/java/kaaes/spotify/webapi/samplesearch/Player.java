@@ -2,10 +2,22 @@ package kaaes.spotify.webapi.samplesearch;
 
 import android.support.annotation.Nullable;
 
+import java.util.List;
+
 public interface Player {
 
     void play(String url);
 
+    /**
+     * Plays the previews one after another, starting with the one at {@code startIndex}.
+     */
+    void playQueue(List<String> urls, int startIndex);
+
+    /**
+     * Loads the preview in the background so that playing it later starts faster.
+     */
+    void prefetch(String url);
+
     void pause();
 
     void resume();
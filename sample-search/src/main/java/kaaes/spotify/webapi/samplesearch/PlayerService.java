@@ -10,7 +10,8 @@ import android.support.annotation.Nullable;
 public class PlayerService extends Service {
 
     private final IBinder mBinder = new PlayerBinder();
-    private PreviewPlayer mPlayer = new PreviewPlayer();
+    private PreviewCache mPreviewCache;
+    private PreviewPlayer mPlayer;
 
     public static Intent getIntent(Context context) {
         return new Intent(context, PlayerService.class);
@@ -22,6 +23,13 @@ public class PlayerService extends Service {
         }
     }
 
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mPreviewCache = new PreviewCache(this);
+        mPlayer = new PreviewPlayer(mPreviewCache);
+    }
+
     @Nullable
     @Override
     public IBinder onBind(Intent intent) {
@@ -31,6 +39,7 @@ public class PlayerService extends Service {
     @Override
     public void onDestroy() {
         mPlayer.release();
+        mPreviewCache.release();
         super.onDestroy();
     }
 }
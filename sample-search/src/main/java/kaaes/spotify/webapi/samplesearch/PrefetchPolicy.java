@@ -0,0 +1,118 @@
+package kaaes.spotify.webapi.samplesearch;
+
+/**
+ * Decides when the next page of results should be requested and how big it should be.
+ * <p/>
+ * The further the user scrolls during the time one request takes, the earlier
+ * the next page is requested and the more items it asks for. Scroll velocity
+ * and request latency are both smoothed with an exponential moving average.
+ */
+public class PrefetchPolicy {
+
+    public static final int MIN_TRIGGER_DISTANCE = 3;
+    public static final int MAX_TRIGGER_DISTANCE = 50;
+    public static final int MIN_PAGE_SIZE = 20;
+    public static final int MAX_PAGE_SIZE = 50;
+
+    private static final long DEFAULT_LATENCY_MS = 500;
+    private static final float SMOOTHING = 0.3f;
+    private static final float SAFETY_FACTOR = 1.5f;
+
+    private float mVelocity;
+    private float mLatencyMs = DEFAULT_LATENCY_MS;
+
+    private int mLastPosition = -1;
+    private long mLastSampleTime;
+
+    private int mPrefetches;
+    private int mEndReached;
+
+    /**
+     * Records the last visible position while the list is scrolled.
+     *
+     * @param position Position of the last visible item
+     * @param timeMs   Time of the sample in milliseconds
+     */
+    public void onScrollSample(int position, long timeMs) {
+        if (mLastPosition >= 0 && timeMs > mLastSampleTime) {
+            float velocity = (float) Math.abs(position - mLastPosition) / (timeMs - mLastSampleTime);
+            mVelocity += SMOOTHING * (velocity - mVelocity);
+        }
+        mLastPosition = position;
+        mLastSampleTime = timeMs;
+    }
+
+    /**
+     * Called when the list stopped scrolling so that the pause is not taken as slow scrolling.
+     */
+    public void onScrollStopped() {
+        mLastPosition = -1;
+    }
+
+    /**
+     * @param latencyMs How long loading a page from the network took, negative if it didn't go to the network
+     */
+    public void onPageLoaded(long latencyMs) {
+        if (latencyMs >= 0) {
+            mLatencyMs += SMOOTHING * (latencyMs - mLatencyMs);
+        }
+    }
+
+    public void onPrefetch() {
+        mPrefetches++;
+    }
+
+    /**
+     * Called when the user reached the last loaded item while the next page was still loading.
+     */
+    public void onEndReached() {
+        mEndReached++;
+    }
+
+    /**
+     * @return How many items before the end of the loaded data the next page should be requested
+     */
+    public int getTriggerDistance() {
+        int distance = MIN_TRIGGER_DISTANCE + (int) Math.ceil(mVelocity * mLatencyMs * SAFETY_FACTOR);
+        return Math.min(distance, MAX_TRIGGER_DISTANCE);
+    }
+
+    /**
+     * @return Number of items the next page should have
+     */
+    public int getPageSize() {
+        return Math.max(MIN_PAGE_SIZE, Math.min(getTriggerDistance() * 2, MAX_PAGE_SIZE));
+    }
+
+    /**
+     * @return Scroll velocity in items per millisecond
+     */
+    public float getVelocity() {
+        return mVelocity;
+    }
+
+    public long getLatencyMs() {
+        return (long) mLatencyMs;
+    }
+
+    public int getPrefetchCount() {
+        return mPrefetches;
+    }
+
+    public int getEndReachedCount() {
+        return mEndReached;
+    }
+
+    /**
+     * @return Ratio of prefetches that didn't arrive before the user reached the end of the list
+     */
+    public float getEndReachedRatio() {
+        return mPrefetches == 0 ? 0 : (float) mEndReached / mPrefetches;
+    }
+
+    @Override
+    public String toString() {
+        return "velocity: " + mVelocity + " items/ms, latency: " + getLatencyMs() + " ms, trigger distance: " + getTriggerDistance()
+                + ", page size: " + getPageSize() + ", prefetches: " + mPrefetches + ", end reached: " + mEndReached;
+    }
+}
@@ -0,0 +1,204 @@
+package kaaes.spotify.webapi.samplesearch;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Bounded on-disk cache for 30 second preview clips.
+ * <p/>
+ * Clips are downloaded in the background and stored under the app's cache directory.
+ * When the cache grows beyond its maximum size the least recently used clips are deleted.
+ */
+public class PreviewCache {
+
+    private static final String TAG = PreviewCache.class.getSimpleName();
+
+    public static final long DEFAULT_MAX_SIZE_BYTES = 20 * 1024 * 1024;
+
+    private static final String DIRECTORY = "previews";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int DOWNLOAD_THREADS = 2;
+    private static final int MAX_PENDING_DOWNLOADS = 10;
+    private static final int BUFFER_SIZE = 8192;
+
+    private final File mDirectory;
+    private final long mMaxSizeBytes;
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(DOWNLOAD_THREADS);
+    private final Set<String> mPending = new HashSet<>();
+
+    public PreviewCache(Context context) {
+        this(new File(context.getCacheDir(), DIRECTORY), DEFAULT_MAX_SIZE_BYTES);
+    }
+
+    public PreviewCache(File directory, long maxSizeBytes) {
+        mDirectory = directory;
+        mMaxSizeBytes = maxSizeBytes;
+    }
+
+    /**
+     * Accesses the disk, don't call it on the main thread.
+     *
+     * @param url Preview url
+     * @return The cached clip or null if it's not downloaded yet
+     */
+    public File get(String url) {
+        File file = fileFor(url);
+        if (!file.exists()) return null;
+        file.setLastModified(System.currentTimeMillis());
+        return file;
+    }
+
+    /**
+     * Downloads the clip in the background unless it's already cached or being downloaded.
+     * Requests are dropped when too many downloads are pending.
+     *
+     * @param url Preview url
+     */
+    public void prefetch(final String url) {
+        if (url == null) return;
+
+        synchronized (mPending) {
+            if (mPending.contains(url) || mPending.size() >= MAX_PENDING_DOWNLOADS) return;
+            mPending.add(url);
+        }
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (fileFor(url).exists()) return;
+                    download(url);
+                    trim();
+                } catch (IOException e) {
+                    Log.w(TAG, "Could not cache " + url, e);
+                } finally {
+                    synchronized (mPending) {
+                        mPending.remove(url);
+                    }
+                }
+            }
+        });
+    }
+
+    public void release() {
+        mExecutor.shutdownNow();
+    }
+
+    private void download(String url) throws IOException {
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            throw new IOException("Could not create " + mDirectory);
+        }
+
+        File target = fileFor(url);
+        File temp = new File(mDirectory, target.getName() + TEMP_SUFFIX);
+
+        boolean moved = false;
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            InputStream in = null;
+            OutputStream out = null;
+            try {
+                in = connection.getInputStream();
+                out = new FileOutputStream(temp);
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new InterruptedIOException("Download of " + url + " cancelled");
+                    }
+                    out.write(buffer, 0, read);
+                }
+            } finally {
+                if (in != null) in.close();
+                if (out != null) out.close();
+                connection.disconnect();
+            }
+
+            moved = temp.renameTo(target);
+            if (!moved) {
+                throw new IOException("Could not move " + temp + " to " + target);
+            }
+        } finally {
+            if (!moved) {
+                // Failed or interrupted, don't leave the partial clip behind
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Deletes partial clips left behind by a previous process and, if the cache is too big,
+     * the least recently used clips.
+     */
+    private synchronized void trim() {
+        Set<String> downloading = new HashSet<>();
+        synchronized (mPending) {
+            for (String url : mPending) {
+                downloading.add(fileFor(url).getName() + TEMP_SUFFIX);
+            }
+        }
+
+        File[] files = mDirectory.listFiles();
+        if (files == null) return;
+
+        long size = 0;
+        for (File file : files) {
+            if (file.getName().endsWith(TEMP_SUFFIX) && !downloading.contains(file.getName())) {
+                file.delete();
+            } else {
+                size += file.length();
+            }
+        }
+        if (size <= mMaxSizeBytes) return;
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long diff = lhs.lastModified() - rhs.lastModified();
+                return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+            }
+        });
+        for (File file : files) {
+            if (size <= mMaxSizeBytes) break;
+            if (file.getName().endsWith(TEMP_SUFFIX)) continue;
+            long length = file.length();
+            if (file.delete()) {
+                size -= length;
+            }
+        }
+    }
+
+    private File fileFor(String url) {
+        return new File(mDirectory, hash(url));
+    }
+
+    private static String hash(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(url.getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            return Integer.toHexString(url.hashCode());
+        }
+    }
+}
@@ -1,50 +1,115 @@
 package kaaes.spotify.webapi.samplesearch;
 
+import android.annotation.TargetApi;
 import android.media.AudioManager;
 import android.media.MediaPlayer;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.support.annotation.Nullable;
 import android.util.Log;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-public class PreviewPlayer implements Player, MediaPlayer.OnCompletionListener {
+/**
+ * Plays previews one after another. While a preview plays the next one in the queue is
+ * prepared on a second player which takes over when the first completes, chained with
+ * {@link MediaPlayer#setNextMediaPlayer(MediaPlayer)} where available so there is no gap.
+ * Previews that fail to load or play are skipped. The cache is looked up on a background thread.
+ */
+public class PreviewPlayer implements Player, MediaPlayer.OnPreparedListener, MediaPlayer.OnCompletionListener,
+        MediaPlayer.OnInfoListener, MediaPlayer.OnErrorListener {
 
     private static final String TAG = PreviewPlayer.class.getSimpleName();
 
+    private final MediaPlayerPool mPool;
+
+    @Nullable
+    private final PreviewCache mCache;
+
+    private final ExecutorService mLookupExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Players waiting for the cache lookup, mapped to the lookup whose result they take
+     */
+    private final Map<MediaPlayer, Runnable> mLookups = new HashMap<>();
+
+    private List<String> mQueue = Collections.emptyList();
+    private int mIndex;
+
     private MediaPlayer mMediaPlayer;
     private String mCurrentTrack;
+    private long mRequestedAt;
+    private boolean mRequestedFromCache;
 
-    private class OnPreparedListener implements MediaPlayer.OnPreparedListener {
+    private MediaPlayer mNextPlayer;
+    private boolean mNextPrepared;
+    private boolean mNextChained;
+    private boolean mAwaitingNext;
 
-        private final String mUrl;
+    private long mCompletedAt;
+    private long mNextStartedAt;
 
-        public OnPreparedListener(String url) {
-            mUrl = url;
-        }
+    private long mCachedStarts;
+    private long mCachedLatencyMs;
+    private long mStreamedStarts;
+    private long mStreamedLatencyMs;
 
-        @Override
-        public void onPrepared(MediaPlayer mp) {
-            mp.start();
-            mCurrentTrack = mUrl;
-        }
+    private int mTransitions;
+    private long mTotalGapMs;
+    private long mMaxGapMs;
+
+    public PreviewPlayer() {
+        this(null);
     }
 
-    @Override
-    public void onCompletion(MediaPlayer mp) {
-        release();
+    /**
+     * @param cache Cache to play previews from when possible, may be null
+     */
+    public PreviewPlayer(@Nullable PreviewCache cache) {
+        this(cache, new MediaPlayerPool());
+    }
+
+    /**
+     * @param pool Pool the players are taken from and returned to
+     */
+    PreviewPlayer(@Nullable PreviewCache cache, MediaPlayerPool pool) {
+        mCache = cache;
+        mPool = pool;
     }
 
     @Override
     public void play(String url) {
-        if (mMediaPlayer != null) {
-            mMediaPlayer.release();
-        }
+        playQueue(Collections.singletonList(url), 0);
+    }
 
-        try {
-            createMediaPlayer(url);
-            mCurrentTrack = url;
-        } catch (IOException e) {
-            Log.e(TAG, "Could not play: " + url, e);
+    @Override
+    public void playQueue(List<String> urls, int startIndex) {
+        stop();
+        mQueue = new ArrayList<>(urls);
+        mIndex = startIndex;
+        mCurrentTrack = mQueue.get(mIndex);
+        mRequestedAt = SystemClock.elapsedRealtime();
+        mRequestedFromCache = false;
+
+        mMediaPlayer = acquirePlayer();
+        load(mMediaPlayer, mCurrentTrack);
+    }
+
+    @Override
+    public void prefetch(String url) {
+        if (mCache != null) {
+            mCache.prefetch(url);
         }
     }
 
@@ -58,11 +123,9 @@ public class PreviewPlayer implements Player, MediaPlayer.OnCompletionListener {
 
     @Override
     public void release() {
-        if (mMediaPlayer != null) {
-            mMediaPlayer.release();
-            mMediaPlayer = null;
-        }
-        mCurrentTrack = null;
+        stop();
+        mPool.clear();
+        mLookupExecutor.shutdownNow();
     }
 
     @Override
@@ -84,12 +147,245 @@ public class PreviewPlayer implements Player, MediaPlayer.OnCompletionListener {
         return mCurrentTrack;
     }
 
-    private void createMediaPlayer(String url) throws IOException {
-        mMediaPlayer = new MediaPlayer();
-        mMediaPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
-        mMediaPlayer.setDataSource(url);
-        mMediaPlayer.setOnPreparedListener(new OnPreparedListener(url));
-        mMediaPlayer.setOnCompletionListener(this);
-        mMediaPlayer.prepareAsync();
+    @Override
+    public void onPrepared(MediaPlayer mp) {
+        if (mp == mMediaPlayer) {
+            mp.start();
+            onStarted(mRequestedFromCache, SystemClock.elapsedRealtime() - mRequestedAt);
+            prepareNext();
+        } else if (mp == mNextPlayer) {
+            mNextPrepared = true;
+            if (mAwaitingNext) {
+                startNext();
+            } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                chainNext();
+            }
+        }
+    }
+
+    @Override
+    public void onCompletion(MediaPlayer mp) {
+        if (mp != mMediaPlayer) return;
+
+        mCompletedAt = SystemClock.elapsedRealtime();
+        if (mNextPlayer == null) {
+            stop();
+        } else if (mNextChained) {
+            // The next player was started by the framework already
+            advance();
+        } else if (mNextPrepared) {
+            startNext();
+        } else {
+            mAwaitingNext = true;
+        }
+        recordGap();
+    }
+
+    @Override
+    public boolean onError(MediaPlayer mp, int what, int extra) {
+        if (mp == mNextPlayer) {
+            Log.e(TAG, "Could not play: " + mQueue.get(mIndex + 1) + ", what: " + what + ", extra: " + extra);
+            if (mNextChained) {
+                unchainNext();
+            }
+            recycle(mNextPlayer);
+            mNextPlayer = null;
+            mNextPrepared = false;
+            mQueue.remove(mIndex + 1);
+            prepareNext();
+            if (mAwaitingNext && mNextPlayer == null) {
+                // The current preview completed and there is nothing left to play
+                stop();
+            }
+        } else if (mp == mMediaPlayer) {
+            Log.e(TAG, "Could not play: " + mCurrentTrack + ", what: " + what + ", extra: " + extra);
+            if (mNextChained) {
+                // The framework only starts a chained player when the current one completes
+                unchainNext();
+            }
+            if (mNextPlayer == null) {
+                // Failed before it was prepared, so the next preview isn't being prepared yet
+                prepareNext();
+            }
+            onCompletion(mp);
+        }
+        // Handled, otherwise the framework calls onCompletion which ignores players that are not current
+        return true;
+    }
+
+    @Override
+    public boolean onInfo(MediaPlayer mp, int what, int extra) {
+        if (what == MediaPlayer.MEDIA_INFO_STARTED_AS_NEXT) {
+            mNextStartedAt = SystemClock.elapsedRealtime();
+            recordGap();
+        }
+        return false;
+    }
+
+    /**
+     * @return Average time from {@link #play(String)} to audio start for previews played from the cache,
+     * -1 if there were none
+     */
+    public long getAverageCachedLatency() {
+        return mCachedStarts == 0 ? -1 : mCachedLatencyMs / mCachedStarts;
+    }
+
+    /**
+     * @return Average time from {@link #play(String)} to audio start for streamed previews,
+     * -1 if there were none
+     */
+    public long getAverageStreamedLatency() {
+        return mStreamedStarts == 0 ? -1 : mStreamedLatencyMs / mStreamedStarts;
+    }
+
+    /**
+     * @return Average time between the end of one preview in the queue and the start of the next,
+     * -1 if there were no transitions yet
+     */
+    public long getAverageGap() {
+        return mTransitions == 0 ? -1 : mTotalGapMs / mTransitions;
+    }
+
+    public long getMaxGap() {
+        return mMaxGapMs;
+    }
+
+    private void prepareNext() {
+        if (mIndex + 1 >= mQueue.size()) return;
+
+        mNextPlayer = acquirePlayer();
+        load(mNextPlayer, mQueue.get(mIndex + 1));
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void chainNext() {
+        mMediaPlayer.setNextMediaPlayer(mNextPlayer);
+        mNextChained = true;
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void unchainNext() {
+        mMediaPlayer.setNextMediaPlayer(null);
+        mNextChained = false;
+    }
+
+    private void startNext() {
+        mNextPlayer.start();
+        mNextStartedAt = SystemClock.elapsedRealtime();
+        advance();
+    }
+
+    private void advance() {
+        recycle(mMediaPlayer);
+        mMediaPlayer = mNextPlayer;
+        mNextPlayer = null;
+        mNextPrepared = false;
+        mNextChained = false;
+        mAwaitingNext = false;
+        mIndex++;
+        mCurrentTrack = mQueue.get(mIndex);
+        prepareNext();
+    }
+
+    private void stop() {
+        if (mMediaPlayer != null) {
+            recycle(mMediaPlayer);
+            mMediaPlayer = null;
+        }
+        if (mNextPlayer != null) {
+            recycle(mNextPlayer);
+            mNextPlayer = null;
+        }
+        mNextPrepared = false;
+        mNextChained = false;
+        mAwaitingNext = false;
+        mCompletedAt = 0;
+        mNextStartedAt = 0;
+        mCurrentTrack = null;
+    }
+
+    private void recordGap() {
+        if (mCompletedAt == 0 || mNextStartedAt == 0) return;
+
+        long gap = Math.max(0, mNextStartedAt - mCompletedAt);
+        mCompletedAt = 0;
+        mNextStartedAt = 0;
+        mTransitions++;
+        mTotalGapMs += gap;
+        mMaxGapMs = Math.max(mMaxGapMs, gap);
+        Log.d(TAG, "gap between tracks: " + gap + " ms, average: " + getAverageGap() + " ms, max: " + mMaxGapMs + " ms"
+                + ", players created: " + mPool.getCreatedCount() + ", reused: " + mPool.getReusedCount());
+    }
+
+    private void onStarted(boolean fromCache, long latencyMs) {
+        if (fromCache) {
+            mCachedStarts++;
+            mCachedLatencyMs += latencyMs;
+        } else {
+            mStreamedStarts++;
+            mStreamedLatencyMs += latencyMs;
+        }
+        Log.d(TAG, "tap to audio: " + latencyMs + " ms (" + (fromCache ? "cached" : "streamed") + ")"
+                + ", average cached: " + getAverageCachedLatency() + " ms, streamed: " + getAverageStreamedLatency() + " ms");
+    }
+
+    private MediaPlayer acquirePlayer() {
+        MediaPlayer player = mPool.acquire();
+        player.setAudioStreamType(AudioManager.STREAM_MUSIC);
+        player.setOnPreparedListener(this);
+        player.setOnCompletionListener(this);
+        player.setOnInfoListener(this);
+        player.setOnErrorListener(this);
+        return player;
+    }
+
+    /**
+     * Looks the preview up in the cache in the background and prepares the player with the cached
+     * clip or the url. A preview that isn't cached is streamed, {@link #prefetch(String)} keeps a copy.
+     */
+    private void load(final MediaPlayer player, final String url) {
+        if (mCache == null) {
+            setDataSource(player, url, null);
+            return;
+        }
+
+        final PreviewCache cache = mCache;
+        Runnable lookup = new Runnable() {
+            @Override
+            public void run() {
+                final File cached = cache.get(url);
+                final Runnable lookup = this;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // The player may have been stopped and reused for another preview meanwhile
+                        if (mLookups.get(player) != lookup) return;
+                        mLookups.remove(player);
+                        setDataSource(player, url, cached);
+                    }
+                });
+            }
+        };
+        mLookups.put(player, lookup);
+        mLookupExecutor.execute(lookup);
+    }
+
+    private void setDataSource(MediaPlayer player, String url, @Nullable File cached) {
+        if (player == mMediaPlayer) {
+            mRequestedFromCache = cached != null;
+        }
+        try {
+            player.setDataSource(cached != null ? cached.getAbsolutePath() : url);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not prepare: " + url, e);
+            onError(player, MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
+            return;
+        }
+        player.prepareAsync();
+    }
+
+    private void recycle(MediaPlayer player) {
+        mLookups.remove(player);
+        mPool.recycle(player);
     }
 }
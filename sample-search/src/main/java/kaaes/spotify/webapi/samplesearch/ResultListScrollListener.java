@@ -1,5 +1,6 @@
 package kaaes.spotify.webapi.samplesearch;
 
+import android.os.SystemClock;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.util.Log;
@@ -9,37 +10,58 @@ public abstract class ResultListScrollListener extends RecyclerView.OnScrollList
     private static final String TAG = ResultListScrollListener.class.getSimpleName();
 
     private final LinearLayoutManager mLayoutManager;
+    private final PrefetchPolicy mPrefetchPolicy;
 
-    private static final int SCROLL_BUFFER = 3;
     private int mCurrentItemCount = 0;
 
     private boolean mAwaitingItems = true;
+    private boolean mEndReached;
 
     public ResultListScrollListener(LinearLayoutManager layoutManager) {
+        this(layoutManager, new PrefetchPolicy());
+    }
+
+    public ResultListScrollListener(LinearLayoutManager layoutManager, PrefetchPolicy prefetchPolicy) {
         mLayoutManager = layoutManager;
+        mPrefetchPolicy = prefetchPolicy;
     }
 
     public void reset() {
         mCurrentItemCount = 0;
     }
 
+    @Override
+    public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+        super.onScrollStateChanged(recyclerView, newState);
+        if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+            mPrefetchPolicy.onScrollStopped();
+        }
+    }
+
     @Override
     public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
         super.onScrolled(recyclerView, dx, dy);
 
         int itemCount = mLayoutManager.getItemCount();
         int itemPosition = mLayoutManager.findLastVisibleItemPosition();
+        mPrefetchPolicy.onScrollSample(itemPosition, SystemClock.uptimeMillis());
 
         if (mAwaitingItems && itemCount > mCurrentItemCount) {
             mCurrentItemCount = itemCount;
             mAwaitingItems = false;
+            mEndReached = false;
         }
 
-        Log.d(TAG, String.format("loading %s, item count: %s/%s, itemPosition %s", mAwaitingItems, mCurrentItemCount, itemCount, itemPosition));
+        int triggerDistance = mPrefetchPolicy.getTriggerDistance();
+        Log.d(TAG, String.format("loading %s, item count: %s/%s, itemPosition %s, trigger distance %s", mAwaitingItems, mCurrentItemCount, itemCount, itemPosition, triggerDistance));
 
-        if (!mAwaitingItems && itemPosition + 1 >= itemCount - SCROLL_BUFFER) {
+        if (!mAwaitingItems && itemPosition + 1 >= itemCount - triggerDistance) {
             mAwaitingItems = true;
+            mPrefetchPolicy.onPrefetch();
             onLoadMore();
+        } else if (mAwaitingItems && !mEndReached && itemCount > 0 && itemPosition + 1 >= itemCount) {
+            mEndReached = true;
+            mPrefetchPolicy.onEndReached();
         }
     }
 
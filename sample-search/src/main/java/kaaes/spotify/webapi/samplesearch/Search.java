@@ -9,7 +9,9 @@ public class Search {
     public interface View {
         void reset();
 
-        void addData(List<Track> items);
+        void addData(List<TrackRow> items);
+
+        void replaceData(List<TrackRow> items);
     }
 
     public interface ActionListener {
@@ -20,10 +22,16 @@ public class Search {
 
         void search(String searchQuery);
 
+        void searchAsYouType(String searchQuery);
+
         void loadMoreResults();
 
         void selectTrack(Track item);
 
+        void selectTrack(Track item, List<Track> upcomingItems);
+
+        void prefetchPreviews(List<Track> visibleItems);
+
         void resume();
 
         void pause();
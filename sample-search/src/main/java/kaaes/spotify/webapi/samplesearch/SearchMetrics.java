@@ -0,0 +1,95 @@
+package kaaes.spotify.webapi.samplesearch;
+
+import android.os.SystemClock;
+
+import java.util.Locale;
+
+/**
+ * Counters for the search screen: how many requests typing a query costs
+ * and how long it takes until the first page of results is shown.
+ */
+public class SearchMetrics {
+
+    private int mTypedQueries;
+    private int mSearches;
+    private int mRequests;
+    private int mCancelledRequests;
+    private int mDroppedResponses;
+
+    private long mSearchStartedAt;
+    private long mLastTimeToFirstResult = -1;
+    private long mTotalTimeToFirstResult;
+    private int mFirstResults;
+
+    public void onQueryTyped() {
+        mTypedQueries++;
+    }
+
+    public void onSearchStarted() {
+        mSearches++;
+        mSearchStartedAt = SystemClock.elapsedRealtime();
+    }
+
+    public void onRequestStarted() {
+        mRequests++;
+    }
+
+    public void onRequestCancelled() {
+        mCancelledRequests++;
+    }
+
+    public void onStaleResponseDropped() {
+        mDroppedResponses++;
+    }
+
+    public void onResults() {
+        if (mSearchStartedAt > 0) {
+            mLastTimeToFirstResult = SystemClock.elapsedRealtime() - mSearchStartedAt;
+            mTotalTimeToFirstResult += mLastTimeToFirstResult;
+            mFirstResults++;
+            mSearchStartedAt = 0;
+        }
+    }
+
+    public int getRequests() {
+        return mRequests;
+    }
+
+    public int getCancelledRequests() {
+        return mCancelledRequests;
+    }
+
+    public int getDroppedResponses() {
+        return mDroppedResponses;
+    }
+
+    /**
+     * @return Number of requests sent per query change the user typed
+     */
+    public float getRequestsPerTypedQuery() {
+        int typed = Math.max(mTypedQueries, mSearches);
+        return typed == 0 ? 0 : (float) mRequests / typed;
+    }
+
+    /**
+     * @return Time to first result of the last search in milliseconds or -1 if there wasn't one yet
+     */
+    public long getLastTimeToFirstResult() {
+        return mLastTimeToFirstResult;
+    }
+
+    /**
+     * @return Average time to first result in milliseconds or -1 if there wasn't one yet
+     */
+    public long getAverageTimeToFirstResult() {
+        return mFirstResults == 0 ? -1 : mTotalTimeToFirstResult / mFirstResults;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "typed: %d, searches: %d, requests: %d (%.2f per typed query), cancelled: %d, dropped: %d, time to first result: %d ms (avg %d ms)",
+                mTypedQueries, mSearches, mRequests, getRequestsPerTypedQuery(), mCancelledRequests, mDroppedResponses,
+                mLastTimeToFirstResult, getAverageTimeToFirstResult());
+    }
+}
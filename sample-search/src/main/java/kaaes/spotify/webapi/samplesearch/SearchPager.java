@@ -1,15 +1,15 @@
 package kaaes.spotify.webapi.samplesearch;
 
+import android.os.SystemClock;
 import android.util.Log;
 
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
+import kaaes.spotify.webapi.android.QueryOptions;
+import kaaes.spotify.webapi.android.SearchCache;
 import kaaes.spotify.webapi.android.SpotifyService;
-import kaaes.spotify.webapi.android.models.Artist;
-import kaaes.spotify.webapi.android.models.ArtistsPager;
-import kaaes.spotify.webapi.android.models.Pager;
+import kaaes.spotify.webapi.android.models.ArtistSimple;
 import kaaes.spotify.webapi.android.models.Track;
 import kaaes.spotify.webapi.android.models.TracksPager;
 import retrofit2.Call;
@@ -20,11 +20,34 @@ public class SearchPager {
     public static final String TAG = SearchPager.class.getSimpleName();
 
     private final SpotifyService mSpotifyApi;
-    private int mCurrentOffset;
-    private int mPageSize;
+    private QueryOptions mPageOptions;
+    private long mLastLatencyMs = -1;
     private String mCurrentQuery;
 
+    /**
+     * The only call whose response is still delivered to the listener.
+     * Starting a new query cancels it and any response for an older call is dropped.
+     */
+    private Call<TracksPager> mCurrentCall;
+
+    /**
+     * Next page requested while {@link #mCurrentCall} was in flight, 0 if none
+     */
+    private int mPendingPageSize;
+    private CompleteListener mPendingListener;
+
+    private SearchMetrics mMetrics = new SearchMetrics();
+    private final SearchCache<List<Track>> mCache = new SearchCache<>();
+    private boolean mPrefixPreviewEnabled = true;
+
     public interface CompleteListener {
+        /**
+         * Called with results of a shorter, cached query filtered to match
+         * the current one while the real request is still in flight.
+         * Will be followed by {@link #onComplete(List)} with the real first page.
+         */
+        void onPreview(List<Track> items);
+
         void onComplete(List<Track> items);
 
         void onError(Throwable error);
@@ -34,38 +57,174 @@ public class SearchPager {
         mSpotifyApi = spotifyApi;
     }
 
+    public void setMetrics(SearchMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    /**
+     * @param enabled Whether to show filtered results of a cached shorter query while searching
+     */
+    public void setPrefixPreviewEnabled(boolean enabled) {
+        mPrefixPreviewEnabled = enabled;
+    }
+
+    public SearchCache<List<Track>> getCache() {
+        return mCache;
+    }
+
     public void getFirstPage(String query, int pageSize, CompleteListener listener) {
-        mCurrentOffset = 0;
-        mPageSize = pageSize;
+        cancel();
+        mPageOptions = QueryOptions.page(0, pageSize);
         mCurrentQuery = query;
-        getData(query, 0, pageSize, listener);
+        getData(query, mPageOptions, listener);
     }
 
     public void getNextPage(CompleteListener listener) {
-        mCurrentOffset += mPageSize;
-        getData(mCurrentQuery, mCurrentOffset, mPageSize, listener);
+        getNextPage(mPageOptions.getLimit(), listener);
+    }
+
+    /**
+     * Requests the page following the last one, at most one page is loaded at a time.
+     * If the previous page is still loading the request waits for it and is sent when it completes.
+     *
+     * @param pageSize Number of items to request, may differ from the previous pages
+     */
+    public void getNextPage(int pageSize, CompleteListener listener) {
+        if (mCurrentCall != null) {
+            // Previous page still loading, don't supersede it
+            mPendingPageSize = pageSize;
+            mPendingListener = listener;
+            return;
+        }
+        mPageOptions = mPageOptions.nextPage().withLimit(pageSize);
+        getData(mCurrentQuery, mPageOptions, listener);
+    }
+
+    /**
+     * @return How long the last page took to load from the network in milliseconds,
+     * -1 if it was served from the cache
+     */
+    public long getLastLatency() {
+        return mLastLatencyMs;
     }
 
-    private void getData(String query, int offset, final int limit, final CompleteListener listener) {
+    /**
+     * Cancels the request in flight, if any. Its response will not reach the listener.
+     */
+    public void cancel() {
+        clearPendingPage();
+        if (mCurrentCall != null) {
+            mCurrentCall.cancel();
+            mCurrentCall = null;
+            mMetrics.onRequestCancelled();
+        }
+    }
+
+    private void getData(String query, QueryOptions options, final CompleteListener listener) {
+        final SearchCache.Key key = SearchCache.key(SearchCache.TYPE_TRACK, query, options);
+        List<Track> cached = mCache.get(key);
+        if (cached != null) {
+            mLastLatencyMs = -1;
+            mMetrics.onResults();
+            listener.onComplete(cached);
+            return;
+        }
+
+        if (options.getOffset() == 0 && mPrefixPreviewEnabled) {
+            List<Track> prefixResults = mCache.getPrefix(key);
+            if (prefixResults != null) {
+                List<Track> preview = filter(prefixResults, key.query);
+                if (!preview.isEmpty()) {
+                    mMetrics.onResults();
+                    listener.onPreview(preview);
+                }
+            }
+        }
 
-        Map<String, Object> options = new HashMap<>();
-        options.put(SpotifyService.OFFSET, offset);
-        options.put(SpotifyService.LIMIT, limit);
+        final Call<TracksPager> call = mSpotifyApi.searchTracks(query, options);
+        mCurrentCall = call;
+        mMetrics.onRequestStarted();
+        final long startedAt = SystemClock.elapsedRealtime();
 
-        mSpotifyApi.searchTracks(query, options).enqueue(new Callback<TracksPager>() {
+        call.enqueue(new Callback<TracksPager>() {
             @Override
             public void onResponse(Call<TracksPager> call, Response<TracksPager> response) {
+                if (isSuperseded(call)) {
+                    mMetrics.onStaleResponseDropped();
+                    return;
+                }
+                mCurrentCall = null;
+                mLastLatencyMs = SystemClock.elapsedRealtime() - startedAt;
                 if (response.isSuccessful()) {
-                    listener.onComplete(response.body().tracks.items);
+                    List<Track> items = response.body().tracks.items;
+                    mCache.put(key, items);
+                    mMetrics.onResults();
+                    listener.onComplete(items);
+                    getPendingPage();
                 } else {
                     Log.d(TAG, "onResponse: code: " + response.code());
+                    clearPendingPage();
                 }
             }
 
             @Override
             public void onFailure(Call<TracksPager> call, Throwable t) {
+                if (isSuperseded(call)) {
+                    mMetrics.onStaleResponseDropped();
+                    return;
+                }
+                mCurrentCall = null;
+                clearPendingPage();
                 listener.onError(t);
             }
         });
     }
+
+    private void getPendingPage() {
+        if (mPendingPageSize == 0) return;
+
+        int pageSize = mPendingPageSize;
+        CompleteListener listener = mPendingListener;
+        clearPendingPage();
+        getNextPage(pageSize, listener);
+    }
+
+    private void clearPendingPage() {
+        mPendingPageSize = 0;
+        mPendingListener = null;
+    }
+
+    private boolean isSuperseded(Call<TracksPager> call) {
+        return call.isCanceled() || call != mCurrentCall;
+    }
+
+    /**
+     * Keeps tracks whose name, album or artists contain every word of the query.
+     */
+    private static List<Track> filter(List<Track> items, String normalizedQuery) {
+        String[] words = normalizedQuery.split(" ");
+        List<Track> filtered = new ArrayList<>();
+        for (Track item : items) {
+            StringBuilder text = new StringBuilder(SearchCache.normalize(item.name));
+            if (item.album != null) {
+                text.append(' ').append(SearchCache.normalize(item.album.name));
+            }
+            if (item.artists != null) {
+                for (ArtistSimple artist : item.artists) {
+                    text.append(' ').append(SearchCache.normalize(artist.name));
+                }
+            }
+            boolean matches = true;
+            for (String word : words) {
+                if (text.indexOf(word) < 0) {
+                    matches = false;
+                    break;
+                }
+            }
+            if (matches) {
+                filtered.add(item);
+            }
+        }
+        return filtered;
+    }
 }
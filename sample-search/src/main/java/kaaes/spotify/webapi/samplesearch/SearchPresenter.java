@@ -4,11 +4,14 @@ import android.app.Activity;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.ServiceConnection;
+import android.os.Handler;
 import android.os.IBinder;
 import android.support.annotation.Nullable;
 import android.util.Log;
 import android.widget.Toast;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import kaaes.spotify.webapi.android.SpotifyApi;
@@ -18,16 +21,83 @@ public class SearchPresenter implements Search.ActionListener {
 
     private static final String TAG = SearchPresenter.class.getSimpleName();
     public static final int PAGE_SIZE = 20;
+    public static final long DEFAULT_DEBOUNCE_MS = 300;
 
     private final Context mContext;
     private final Search.View mView;
+    private final PrefetchPolicy mPrefetchPolicy;
     private String mCurrentQuery;
 
     private SearchPager mSearchPager;
     private SearchPager.CompleteListener mSearchListener;
 
+    private final Handler mHandler = new Handler();
+    private final TrackRowMapper mRowMapper;
+    private final SearchMetrics mMetrics = new SearchMetrics();
+    private long mDebounceMs = DEFAULT_DEBOUNCE_MS;
+    private String mPendingQuery;
+
+    private final Runnable mPendingSearch = new Runnable() {
+        @Override
+        public void run() {
+            String query = mPendingQuery;
+            mPendingQuery = null;
+            startSearch(query);
+        }
+    };
+
     private Player mPlayer;
 
+    /**
+     * Maps incoming pages to rows in the background, drops them if
+     * another search started before they are ready.
+     */
+    private class SearchListener implements SearchPager.CompleteListener {
+        private boolean mShowingPreview;
+
+        @Override
+        public void onPreview(List<Track> items) {
+            mShowingPreview = true;
+            mRowMapper.map(items, new TrackRowMapper.Listener() {
+                @Override
+                public void onMapped(List<TrackRow> rows) {
+                    if (isCurrent()) {
+                        mView.addData(rows);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void onComplete(List<Track> items) {
+            mPrefetchPolicy.onPageLoaded(mSearchPager.getLastLatency());
+            final boolean replacePreview = mShowingPreview;
+            mShowingPreview = false;
+            mRowMapper.map(items, new TrackRowMapper.Listener() {
+                @Override
+                public void onMapped(List<TrackRow> rows) {
+                    if (!isCurrent()) return;
+                    if (replacePreview) {
+                        mView.replaceData(rows);
+                    } else {
+                        mView.addData(rows);
+                    }
+                }
+            });
+            Log.d(TAG, "metrics: " + mMetrics + ", cache hit ratio: " + mSearchPager.getCache().getHitRatio());
+            Log.d(TAG, "prefetch: " + mPrefetchPolicy);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            logError(error.getMessage());
+        }
+
+        private boolean isCurrent() {
+            return mSearchListener == this;
+        }
+    }
+
     private ServiceConnection mServiceConnection = new ServiceConnection() {
         @Override
         public void onServiceConnected(ComponentName name, IBinder service) {
@@ -41,8 +111,14 @@ public class SearchPresenter implements Search.ActionListener {
     };
 
     public SearchPresenter(Context context, Search.View view) {
+        this(context, view, new PrefetchPolicy());
+    }
+
+    public SearchPresenter(Context context, Search.View view, PrefetchPolicy prefetchPolicy) {
         mContext = context;
         mView = view;
+        mPrefetchPolicy = prefetchPolicy;
+        mRowMapper = new TrackRowMapper(context.getResources().getDimensionPixelSize(R.dimen.thumbnail_size));
     }
 
     @Override
@@ -57,6 +133,7 @@ public class SearchPresenter implements Search.ActionListener {
         }
 
         mSearchPager = new SearchPager(spotifyApi.getService());
+        mSearchPager.setMetrics(mMetrics);
 
         mContext.bindService(PlayerService.getIntent(mContext), mServiceConnection, Activity.BIND_AUTO_CREATE);
     }
@@ -64,21 +141,42 @@ public class SearchPresenter implements Search.ActionListener {
 
     @Override
     public void search(@Nullable String searchQuery) {
+        mHandler.removeCallbacks(mPendingSearch);
+        mPendingQuery = null;
+        startSearch(searchQuery);
+    }
+
+    /**
+     * Searches while the user is typing. The query is sent only after
+     * no other change arrived for the debounce delay, a request for
+     * a previous query still in flight is cancelled.
+     */
+    @Override
+    public void searchAsYouType(@Nullable String searchQuery) {
+        mMetrics.onQueryTyped();
+        mHandler.removeCallbacks(mPendingSearch);
+        mPendingQuery = searchQuery;
+        mHandler.postDelayed(mPendingSearch, mDebounceMs);
+    }
+
+    /**
+     * @param debounceMs How long to wait after the last typed change before searching
+     */
+    public void setDebounceDelay(long debounceMs) {
+        mDebounceMs = debounceMs;
+    }
+
+    public SearchMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    private void startSearch(@Nullable String searchQuery) {
         if (searchQuery != null && !searchQuery.isEmpty() && !searchQuery.equals(mCurrentQuery)) {
-            logMessage("query text submit " + searchQuery);
+            Log.d(TAG, "search " + searchQuery);
             mCurrentQuery = searchQuery;
             mView.reset();
-            mSearchListener = new SearchPager.CompleteListener() {
-                @Override
-                public void onComplete(List<Track> items) {
-                    mView.addData(items);
-                }
-
-                @Override
-                public void onError(Throwable error) {
-                    logError(error.getMessage());
-                }
-            };
+            mSearchListener = new SearchListener();
+            mMetrics.onSearchStarted();
             mSearchPager.getFirstPage(searchQuery, PAGE_SIZE, mSearchListener);
         }
     }
@@ -86,6 +184,9 @@ public class SearchPresenter implements Search.ActionListener {
 
     @Override
     public void destroy() {
+        mHandler.removeCallbacks(mPendingSearch);
+        mSearchPager.cancel();
+        mRowMapper.release();
         mContext.unbindService(mServiceConnection);
     }
 
@@ -108,11 +209,23 @@ public class SearchPresenter implements Search.ActionListener {
     @Override
     public void loadMoreResults() {
         Log.d(TAG, "Load more...");
-        mSearchPager.getNextPage(mSearchListener);
+        mSearchPager.getNextPage(mPrefetchPolicy.getPageSize(), mSearchListener);
     }
 
+    /**
+     * Plays the preview of the track or toggles it if it's already playing.
+     */
     @Override
     public void selectTrack(Track item) {
+        selectTrack(item, Collections.<Track>emptyList());
+    }
+
+    /**
+     * Same as {@link #selectTrack(Track)}, previews of the upcoming tracks are queued
+     * and follow without a gap.
+     */
+    @Override
+    public void selectTrack(Track item, List<Track> upcomingItems) {
         String previewUrl = item.preview_url;
 
         if (previewUrl == null) {
@@ -125,7 +238,14 @@ public class SearchPresenter implements Search.ActionListener {
         String currentTrackUrl = mPlayer.getCurrentTrack();
 
         if (currentTrackUrl == null || !currentTrackUrl.equals(previewUrl)) {
-            mPlayer.play(previewUrl);
+            List<String> queue = new ArrayList<>();
+            queue.add(previewUrl);
+            for (Track upcoming : upcomingItems) {
+                if (upcoming.preview_url != null) {
+                    queue.add(upcoming.preview_url);
+                }
+            }
+            mPlayer.playQueue(queue, 0);
         } else if (mPlayer.isPlaying()) {
             mPlayer.pause();
         } else {
@@ -133,6 +253,17 @@ public class SearchPresenter implements Search.ActionListener {
         }
     }
 
+    @Override
+    public void prefetchPreviews(List<Track> visibleItems) {
+        if (mPlayer == null) return;
+
+        for (Track item : visibleItems) {
+            if (item.preview_url != null) {
+                mPlayer.prefetch(item.preview_url);
+            }
+        }
+    }
+
     private void logError(String msg) {
         Toast.makeText(mContext, "Error: " + msg, Toast.LENGTH_SHORT).show();
         Log.e(TAG, msg);
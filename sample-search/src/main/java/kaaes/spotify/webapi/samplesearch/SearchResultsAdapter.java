@@ -1,6 +1,10 @@
 package kaaes.spotify.webapi.samplesearch;
 
 import android.content.Context;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -8,23 +12,39 @@ import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import com.google.common.base.Joiner;
 import com.squareup.picasso.Picasso;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-import kaaes.spotify.webapi.android.models.ArtistSimple;
-import kaaes.spotify.webapi.android.models.Image;
 import kaaes.spotify.webapi.android.models.Track;
 
 public class SearchResultsAdapter extends RecyclerView.Adapter<SearchResultsAdapter.ViewHolder> {
 
-    private final List<Track> mItems = new ArrayList<>();
+    private static final String TAG = SearchResultsAdapter.class.getSimpleName();
+    private static final int ALLOCATION_REPORT_INTERVAL = 100;
+    private static final int PREFETCH_ROWS = 6;
+
+    private List<TrackRow> mItems = new ArrayList<>();
     private final Context mContext;
     private final ItemSelectedListener mListener;
+    private final int mThumbnailSize;
+    private final ImageLoadStats mImageStats;
+    private int mPrefetchedUpTo = -1;
+
+    private final ExecutorService mDiffExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private int mDataVersion;
+    private List<TrackRow> mPendingItems;
+    private boolean mPendingAppended;
+
+    private boolean mCountAllocations;
+    private long mBindAllocations;
+    private int mBinds;
 
-    public class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+    public class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener, View.OnLongClickListener {
 
         public final TextView title;
         public final TextView subtitle;
@@ -36,31 +56,97 @@ public class SearchResultsAdapter extends RecyclerView.Adapter<SearchResultsAdap
             subtitle = (TextView) itemView.findViewById(R.id.entity_subtitle);
             image = (ImageView) itemView.findViewById(R.id.entity_image);
             itemView.setOnClickListener(this);
+            itemView.setOnLongClickListener(this);
         }
 
         @Override
         public void onClick(View v) {
-            notifyItemChanged(getLayoutPosition());
-            mListener.onItemSelected(v, mItems.get(getAdapterPosition()));
+            int position = getAdapterPosition();
+            if (position == RecyclerView.NO_POSITION) return;
+            notifyItemChanged(position);
+            mListener.onItemSelected(v, position, mItems.get(position).track);
+        }
+
+        @Override
+        public boolean onLongClick(View v) {
+            int position = getAdapterPosition();
+            if (position == RecyclerView.NO_POSITION) return false;
+            notifyItemChanged(position);
+            mListener.onItemLongSelected(v, position, mItems.get(position).track);
+            return true;
         }
     }
 
     public interface ItemSelectedListener {
-        void onItemSelected(View itemView, Track item);
+        void onItemSelected(View itemView, int position, Track item);
+
+        void onItemLongSelected(View itemView, int position, Track item);
     }
 
     public SearchResultsAdapter(Context context, ItemSelectedListener listener) {
         mContext = context;
         mListener = listener;
+        mThumbnailSize = context.getResources().getDimensionPixelSize(R.dimen.thumbnail_size);
+        mImageStats = new ImageLoadStats(context);
     }
 
     public void clearData() {
+        mDataVersion++;
+        mPendingItems = null;
+        mPrefetchedUpTo = -1;
+        int size = mItems.size();
         mItems.clear();
+        notifyItemRangeRemoved(0, size);
     }
 
-    public void addData(List<Track> items) {
+    public void addData(List<TrackRow> items) {
+        if (mPendingItems != null) {
+            // Replacement still being diffed, append to the data that will replace the current items
+            mPendingItems.addAll(items);
+            mPendingAppended = true;
+            return;
+        }
+        int start = mItems.size();
         mItems.addAll(items);
-        notifyDataSetChanged();
+        notifyItemRangeInserted(start, items.size());
+    }
+
+    /**
+     * Replaces the data set. The difference to the current items is calculated
+     * on a background thread, only changed rows are then rebound on the main thread.
+     */
+    public void replaceData(List<TrackRow> items) {
+        final int version = ++mDataVersion;
+        final List<TrackRow> oldItems = new ArrayList<>(mItems);
+        final List<TrackRow> newItems = new ArrayList<>(items);
+        mPendingItems = new ArrayList<>(items);
+        mPendingAppended = false;
+        mPrefetchedUpTo = -1;
+        mDiffExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final TrackListDiff diff = TrackListDiff.calculate(oldItems, newItems);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (version != mDataVersion) return;
+                        mItems = mPendingItems;
+                        mPendingItems = null;
+                        if (mPendingAppended) {
+                            notifyDataSetChanged();
+                        } else {
+                            diff.dispatchUpdatesTo(SearchResultsAdapter.this);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    public void release() {
+        setCountAllocations(false);
+        mDataVersion++;
+        mDiffExecutor.shutdownNow();
     }
 
     @Override
@@ -71,23 +157,79 @@ public class SearchResultsAdapter extends RecyclerView.Adapter<SearchResultsAdap
 
     @Override
     public void onBindViewHolder(ViewHolder holder, int position) {
-        Track item = mItems.get(position);
+        long allocations = mCountAllocations ? Debug.getThreadAllocCount() : 0;
 
-        holder.title.setText(item.name);
+        TrackRow item = mItems.get(position);
+        holder.title.setText(item.title);
+        holder.subtitle.setText(item.subtitle);
+        if (item.imageUrl != null) {
+            Picasso.with(mContext).load(item.imageUrl).resize(mThumbnailSize, mThumbnailSize).centerCrop().into(holder.image);
+        }
+        mImageStats.onRowBound(item);
+
+        if (mCountAllocations) {
+            mBindAllocations += Debug.getThreadAllocCount() - allocations;
+            if (++mBinds % ALLOCATION_REPORT_INTERVAL == 0) {
+                Log.d(TAG, "allocations per bind: " + getAllocationsPerBind());
+            }
+        }
+    }
+
+    /**
+     * Warms the image cache with thumbnails of the rows about to scroll into view.
+     *
+     * @param lastVisiblePosition Position of the last visible row
+     */
+    public void prefetchImages(int lastVisiblePosition) {
+        int end = Math.min(lastVisiblePosition + PREFETCH_ROWS, mItems.size() - 1);
+        for (int position = Math.max(lastVisiblePosition + 1, mPrefetchedUpTo + 1); position <= end; position++) {
+            String imageUrl = mItems.get(position).imageUrl;
+            if (imageUrl != null) {
+                Picasso.with(mContext).load(imageUrl).resize(mThumbnailSize, mThumbnailSize).centerCrop().fetch();
+            }
+            mPrefetchedUpTo = position;
+        }
+    }
 
-        List<String> names = new ArrayList<>();
-        for (ArtistSimple i : item.artists) {
-            names.add(i.name);
+    /**
+     * @return Tracks of the rows between the positions, both inclusive
+     */
+    public List<Track> getTracks(int fromPosition, int toPosition) {
+        List<Track> tracks = new ArrayList<>();
+        for (int position = Math.max(0, fromPosition); position <= toPosition && position < mItems.size(); position++) {
+            tracks.add(mItems.get(position).track);
         }
-        Joiner joiner = Joiner.on(", ");
-        holder.subtitle.setText(joiner.join(names));
+        return tracks;
+    }
+
+    public ImageLoadStats getImageStats() {
+        return mImageStats;
+    }
 
-        Image image = item.album.images.get(0);
-        if (image != null) {
-            Picasso.with(mContext).load(image.url).into(holder.image);
+    /**
+     * Counts objects allocated on the main thread while binding rows.
+     * Counting slows the app down so it should only be enabled for measurements.
+     */
+    public void setCountAllocations(boolean countAllocations) {
+        if (countAllocations == mCountAllocations) return;
+        mCountAllocations = countAllocations;
+        mBindAllocations = 0;
+        mBinds = 0;
+        if (countAllocations) {
+            Debug.resetThreadAllocCount();
+            Debug.startAllocCounting();
+        } else {
+            Debug.stopAllocCounting();
         }
     }
 
+    /**
+     * @return Average number of objects allocated per bind since counting was enabled
+     */
+    public float getAllocationsPerBind() {
+        return mBinds == 0 ? 0 : (float) mBindAllocations / mBinds;
+    }
+
     @Override
     public int getItemCount() {
         return mItems.size();
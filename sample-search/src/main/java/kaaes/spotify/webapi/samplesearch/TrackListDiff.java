@@ -0,0 +1,96 @@
+package kaaes.spotify.webapi.samplesearch;
+
+import android.support.v7.widget.RecyclerView;
+
+import java.util.List;
+
+/**
+ * Difference between two lists of track rows expressed as the range notifications
+ * that turn the old list into the new one.
+ * <p/>
+ * Rows at the start and at the end of both lists that have the same id are kept,
+ * the ones in between are removed and inserted. This covers refreshes and
+ * re-searches where most results stay in place without the cost of a full
+ * edit script and is cheap enough to compute off the main thread.
+ */
+public class TrackListDiff {
+
+    private final int mPrefix;
+    private final int mOldMiddle;
+    private final int mNewMiddle;
+    private final boolean[] mChangedPrefix;
+    private final boolean[] mChangedSuffix;
+
+    private TrackListDiff(int prefix, int oldMiddle, int newMiddle, boolean[] changedPrefix, boolean[] changedSuffix) {
+        mPrefix = prefix;
+        mOldMiddle = oldMiddle;
+        mNewMiddle = newMiddle;
+        mChangedPrefix = changedPrefix;
+        mChangedSuffix = changedSuffix;
+    }
+
+    public static TrackListDiff calculate(List<TrackRow> oldItems, List<TrackRow> newItems) {
+        int oldSize = oldItems.size();
+        int newSize = newItems.size();
+
+        int prefix = 0;
+        while (prefix < oldSize && prefix < newSize && sameItem(oldItems.get(prefix), newItems.get(prefix))) {
+            prefix++;
+        }
+
+        int suffix = 0;
+        while (suffix < oldSize - prefix && suffix < newSize - prefix
+                && sameItem(oldItems.get(oldSize - 1 - suffix), newItems.get(newSize - 1 - suffix))) {
+            suffix++;
+        }
+
+        boolean[] changedPrefix = new boolean[prefix];
+        for (int i = 0; i < prefix; i++) {
+            changedPrefix[i] = !sameContent(oldItems.get(i), newItems.get(i));
+        }
+        boolean[] changedSuffix = new boolean[suffix];
+        for (int i = 0; i < suffix; i++) {
+            changedSuffix[i] = !sameContent(oldItems.get(oldSize - 1 - i), newItems.get(newSize - 1 - i));
+        }
+
+        return new TrackListDiff(prefix, oldSize - prefix - suffix, newSize - prefix - suffix, changedPrefix, changedSuffix);
+    }
+
+    /**
+     * Notifies the adapter about the changes. Must be called on the main thread
+     * right after the adapter switched to the new list.
+     */
+    public void dispatchUpdatesTo(RecyclerView.Adapter<?> adapter) {
+        for (int i = 0; i < mChangedPrefix.length; i++) {
+            if (mChangedPrefix[i]) {
+                adapter.notifyItemChanged(i);
+            }
+        }
+        if (mOldMiddle > 0) {
+            adapter.notifyItemRangeRemoved(mPrefix, mOldMiddle);
+        }
+        if (mNewMiddle > 0) {
+            adapter.notifyItemRangeInserted(mPrefix, mNewMiddle);
+        }
+        int suffixStart = mPrefix + mNewMiddle;
+        for (int i = 0; i < mChangedSuffix.length; i++) {
+            if (mChangedSuffix[i]) {
+                adapter.notifyItemChanged(suffixStart + mChangedSuffix.length - 1 - i);
+            }
+        }
+    }
+
+    private static boolean sameItem(TrackRow oldItem, TrackRow newItem) {
+        return oldItem.id != null ? oldItem.id.equals(newItem.id) : oldItem == newItem;
+    }
+
+    private static boolean sameContent(TrackRow oldItem, TrackRow newItem) {
+        return equal(oldItem.title, newItem.title)
+                && equal(oldItem.subtitle, newItem.subtitle)
+                && equal(oldItem.imageUrl, newItem.imageUrl);
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -0,0 +1,62 @@
+package kaaes.spotify.webapi.samplesearch;
+
+import java.util.List;
+
+import kaaes.spotify.webapi.android.Images;
+import kaaes.spotify.webapi.android.models.ArtistSimple;
+import kaaes.spotify.webapi.android.models.Image;
+import kaaes.spotify.webapi.android.models.Track;
+
+/**
+ * Everything a row of the result list displays, prepared up front
+ * so that binding a row doesn't allocate.
+ */
+public final class TrackRow {
+
+    public final Track track;
+    public final String id;
+    public final String title;
+    public final String subtitle;
+    public final String imageUrl;
+
+    /**
+     * Memory needed to decode the chosen image and the largest available one, in bytes
+     */
+    public final long imageBytes;
+    public final long largestImageBytes;
+
+    public TrackRow(Track track, String title, String subtitle, String imageUrl, long imageBytes, long largestImageBytes) {
+        this.track = track;
+        this.id = track.id;
+        this.title = title;
+        this.subtitle = subtitle;
+        this.imageUrl = imageUrl;
+        this.imageBytes = imageBytes;
+        this.largestImageBytes = largestImageBytes;
+    }
+
+    /**
+     * @param track         The track
+     * @param thumbnailSize Size of the thumbnail in pixels, the smallest album image covering it is used
+     */
+    public static TrackRow from(Track track, int thumbnailSize) {
+        List<Image> images = track.album != null ? track.album.images : null;
+        Image image = Images.getSmallestCovering(images, thumbnailSize, thumbnailSize);
+        return new TrackRow(track, track.name, joinArtists(track.artists),
+                image != null ? image.url : null,
+                Images.getDecodedByteCount(image),
+                Images.getDecodedByteCount(Images.getLargest(images)));
+    }
+
+    private static String joinArtists(List<ArtistSimple> artists) {
+        if (artists == null || artists.isEmpty()) return "";
+        StringBuilder names = new StringBuilder();
+        for (int i = 0; i < artists.size(); i++) {
+            if (i > 0) {
+                names.append(", ");
+            }
+            names.append(artists.get(i).name);
+        }
+        return names.toString();
+    }
+}
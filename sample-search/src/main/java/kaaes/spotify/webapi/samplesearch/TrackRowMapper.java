@@ -0,0 +1,56 @@
+package kaaes.spotify.webapi.samplesearch;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import kaaes.spotify.webapi.android.models.Track;
+
+/**
+ * Turns tracks into {@link TrackRow}s on a background thread.
+ * Results are delivered on the main thread in the order the tracks were submitted.
+ */
+public class TrackRowMapper {
+
+    public interface Listener {
+        void onMapped(List<TrackRow> rows);
+    }
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final int mThumbnailSize;
+
+    /**
+     * @param thumbnailSize Size of the row thumbnails in pixels
+     */
+    public TrackRowMapper(int thumbnailSize) {
+        mThumbnailSize = thumbnailSize;
+    }
+
+    public void map(final List<Track> tracks, final Listener listener) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<TrackRow> rows = new ArrayList<>(tracks.size());
+                for (Track track : tracks) {
+                    rows.add(TrackRow.from(track, mThumbnailSize));
+                }
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onMapped(rows);
+                    }
+                });
+            }
+        });
+    }
+
+    public void release() {
+        mExecutor.shutdownNow();
+        mMainHandler.removeCallbacksAndMessages(null);
+    }
+}
@@ -0,0 +1,78 @@
+package kaaes.spotify.webapi.samplesearch;
+
+import android.media.MediaPlayer;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Arrays;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class PreviewPlayerTest {
+
+    private MediaPlayerPool mPool;
+    private MediaPlayer mFirst;
+    private MediaPlayer mSecond;
+    private MediaPlayer mThird;
+    private PreviewPlayer mPlayer;
+
+    @Before
+    public void setUp() {
+        mPool = mock(MediaPlayerPool.class);
+        mFirst = mock(MediaPlayer.class);
+        mSecond = mock(MediaPlayer.class);
+        mThird = mock(MediaPlayer.class);
+        when(mPool.acquire()).thenReturn(mFirst, mSecond, mThird);
+        mPlayer = new PreviewPlayer(null, mPool);
+    }
+
+    @Test
+    public void shouldSkipNextPreviewThatFails() throws Exception {
+        mPlayer.playQueue(Arrays.asList("a", "b", "c"), 0);
+        mPlayer.onPrepared(mFirst);
+        verify(mSecond).setDataSource("b");
+
+        assertThat(mPlayer.onError(mSecond, MediaPlayer.MEDIA_ERROR_UNKNOWN, 0)).isTrue();
+        verify(mPool).recycle(mSecond);
+        verify(mThird).setDataSource("c");
+
+        mPlayer.onPrepared(mThird);
+        mPlayer.onCompletion(mFirst);
+        assertThat(mPlayer.getCurrentTrack()).isEqualTo("c");
+    }
+
+    @Test
+    public void shouldStartPreviewAfterFailedOneWhenWaitingForIt() throws Exception {
+        mPlayer.playQueue(Arrays.asList("a", "b", "c"), 0);
+        mPlayer.onPrepared(mFirst);
+        mPlayer.onCompletion(mFirst);
+
+        mPlayer.onError(mSecond, MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
+        mPlayer.onPrepared(mThird);
+
+        verify(mThird).start();
+        verify(mSecond, never()).start();
+        assertThat(mPlayer.getCurrentTrack()).isEqualTo("c");
+    }
+
+    @Test
+    public void shouldStopWhenLastPreviewFails() {
+        mPlayer.playQueue(Arrays.asList("a", "b"), 0);
+        mPlayer.onPrepared(mFirst);
+        mPlayer.onCompletion(mFirst);
+
+        mPlayer.onError(mSecond, MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
+
+        assertThat(mPlayer.getCurrentTrack()).isNull();
+        verify(mPool).recycle(mFirst);
+        verify(mPool).recycle(mSecond);
+    }
+}
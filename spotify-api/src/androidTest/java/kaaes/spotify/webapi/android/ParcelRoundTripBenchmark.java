@@ -0,0 +1,137 @@
+package kaaes.spotify.webapi.android;
+
+import android.content.Context;
+import android.os.Debug;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.support.test.InstrumentationRegistry;
+import android.util.Log;
+
+import com.google.gson.Gson;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import kaaes.spotify.webapi.android.models.Album;
+import kaaes.spotify.webapi.android.models.AlbumsPager;
+import kaaes.spotify.webapi.android.models.Artist;
+import kaaes.spotify.webapi.android.models.Artists;
+import kaaes.spotify.webapi.android.models.FeaturedPlaylists;
+import kaaes.spotify.webapi.android.models.NewReleases;
+import kaaes.spotify.webapi.android.models.Playlist;
+import kaaes.spotify.webapi.android.models.Track;
+import kaaes.spotify.webapi.android.models.Tracks;
+import kaaes.spotify.webapi.android.models.TracksPager;
+import kaaes.spotify.webapi.android.models.UserPrivate;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Parcel round trips of the models parsed from the fixtures. {@link Parcel} is implemented
+ * natively, so unlike the JMH benchmarks in src/test this runs on a device or emulator:
+ * ./gradlew :spotify-api:connectedAndroidTest -Pandroid.testInstrumentationRunnerArguments.class=kaaes.spotify.webapi.android.ParcelRoundTripBenchmark
+ *
+ * For every fixture it reports the time and the bytes allocated per round trip and the size
+ * of the parcel. The results are logged and written as JSON to parcel-benchmark.json in the
+ * files directory of the test app.
+ */
+public class ParcelRoundTripBenchmark {
+
+    private static final String TAG = ParcelRoundTripBenchmark.class.getSimpleName();
+
+    private static final long WARMUP_NANOS = 1000000000L;
+    private static final long MEASUREMENT_NANOS = 2000000000L;
+
+    private static final Map<String, Class<? extends Parcelable>> FIXTURES = new LinkedHashMap<>();
+
+    static {
+        FIXTURES.put("track.json", Track.class);
+        FIXTURES.put("tracks.json", Tracks.class);
+        FIXTURES.put("album.json", Album.class);
+        FIXTURES.put("artist.json", Artist.class);
+        FIXTURES.put("artists.json", Artists.class);
+        FIXTURES.put("playlist-response.json", Playlist.class);
+        FIXTURES.put("search-track.json", TracksPager.class);
+        FIXTURES.put("search-album.json", AlbumsPager.class);
+        FIXTURES.put("featured-playlists.json", FeaturedPlaylists.class);
+        FIXTURES.put("new-releases.json", NewReleases.class);
+        FIXTURES.put("current-user.json", UserPrivate.class);
+    }
+
+    @Test
+    public void roundTrips() throws Exception {
+        Context context = InstrumentationRegistry.getContext();
+        Gson gson = new Gson();
+        JSONArray results = new JSONArray();
+
+        for (Map.Entry<String, Class<? extends Parcelable>> fixture : FIXTURES.entrySet()) {
+            Reader reader = new InputStreamReader(context.getAssets().open("fixtures/" + fixture.getKey()), "UTF-8");
+            Parcelable model = gson.fromJson(reader, fixture.getValue());
+            reader.close();
+            Parcelable.Creator<?> creator = (Parcelable.Creator<?>) fixture.getValue().getField("CREATOR").get(null);
+
+            // Checks the round trip once and measures the parcel
+            Parcel parcel = Parcel.obtain();
+            model.writeToParcel(parcel, 0);
+            int parcelBytes = parcel.dataSize();
+            parcel.recycle();
+            assertEquals(fixture.getValue(), roundTrip(model, creator).getClass());
+
+            run(model, creator, WARMUP_NANOS);
+
+            Debug.resetThreadAllocCount();
+            Debug.startAllocCounting();
+            long start = System.nanoTime();
+            long operations = run(model, creator, MEASUREMENT_NANOS);
+            long elapsed = System.nanoTime() - start;
+            Debug.stopAllocCounting();
+
+            JSONObject result = new JSONObject()
+                    .put("fixture", fixture.getKey())
+                    .put("model", fixture.getValue().getSimpleName())
+                    .put("operations", operations)
+                    .put("nsPerOp", elapsed / operations)
+                    .put("allocatedBytesPerOp", Debug.getThreadAllocSize() / operations)
+                    .put("parcelBytes", parcelBytes);
+            Log.i(TAG, result.toString());
+            results.put(result);
+        }
+
+        File file = new File(context.getFilesDir(), "parcel-benchmark.json");
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(results.toString(2).getBytes("UTF-8"));
+        out.close();
+        Log.i(TAG, "Results written to " + file);
+    }
+
+    private static long run(Parcelable model, Parcelable.Creator<?> creator, long durationNanos) {
+        long operations = 0;
+        long end = System.nanoTime() + durationNanos;
+        while (System.nanoTime() < end) {
+            for (int i = 0; i < 100; i++) {
+                roundTrip(model, creator);
+            }
+            operations += 100;
+        }
+        return operations;
+    }
+
+    private static Object roundTrip(Parcelable model, Parcelable.Creator<?> creator) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            model.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            return creator.createFromParcel(parcel);
+        } finally {
+            parcel.recycle();
+        }
+    }
+}
@@ -0,0 +1,420 @@
+package kaaes.spotify.webapi.android;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import kaaes.spotify.webapi.android.models.AudioFeaturesTrack;
+import kaaes.spotify.webapi.android.models.AudioFeaturesTracks;
+
+/**
+ * In-memory nearest neighbour index over audio features for "more like this" queries
+ * that don't need a call to {@link SpotifyService#getRecommendations(java.util.Map)}.
+ * <p/>
+ * Every feature is kept in its own primitive column, normalized to roughly [0, 1],
+ * so a query is a linear scan over a few float arrays with no object per track.
+ * The index is safe to query from several threads while it's being filled.
+ * <p/>
+ * Basic usage:
+ * AudioFeaturesIndex index = new AudioFeaturesIndex();
+ * index.addAll(spotify.getTracksAudioFeatures(ids).execute().body());
+ * List&lt;AudioFeaturesIndex.Neighbour&gt; similar = index.query(trackId, new AudioFeaturesIndex.Query(10).mode(1));
+ */
+public class AudioFeaturesIndex {
+
+    public static final int DANCEABILITY = 0;
+    public static final int ENERGY = 1;
+    public static final int SPEECHINESS = 2;
+    public static final int ACOUSTICNESS = 3;
+    public static final int INSTRUMENTALNESS = 4;
+    public static final int LIVENESS = 5;
+    public static final int VALENCE = 6;
+    public static final int LOUDNESS = 7;
+    public static final int TEMPO = 8;
+
+    public static final int DIMENSIONS = 9;
+
+    /**
+     * Loudness in dB mapped to 0 and 1
+     */
+    static final float MIN_LOUDNESS = -60f;
+    static final float MAX_LOUDNESS = 0f;
+
+    /**
+     * Tempo in BPM mapped to 1
+     */
+    static final float MAX_TEMPO = 250f;
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * Rows scored at once, small enough for the distances to stay in cache
+     */
+    private static final int BLOCK_SIZE = 1024;
+
+    /**
+     * Describes a nearest neighbour query
+     */
+    public static class Query {
+        final int k;
+        final float[] weights = new float[DIMENSIONS];
+        int key = -1;
+        int mode = -1;
+        float minTempo = 0;
+        float maxTempo = Float.MAX_VALUE;
+
+        /**
+         * @param k Maximum number of neighbours to return
+         */
+        public Query(int k) {
+            if (k < 1) {
+                throw new IllegalArgumentException("k must be positive");
+            }
+            this.k = k;
+            Arrays.fill(weights, 1f);
+        }
+
+        /**
+         * @param key Pitch class the neighbours must be in, see {@link AudioFeaturesTrack#key}
+         */
+        public Query key(int key) {
+            this.key = key;
+            return this;
+        }
+
+        /**
+         * @param mode 1 to return only major, 0 to return only minor tracks
+         */
+        public Query mode(int mode) {
+            this.mode = mode;
+            return this;
+        }
+
+        /**
+         * @param minTempo Minimum tempo of the neighbours in BPM, inclusive
+         * @param maxTempo Maximum tempo of the neighbours in BPM, inclusive
+         */
+        public Query tempo(float minTempo, float maxTempo) {
+            this.minTempo = minTempo;
+            this.maxTempo = maxTempo;
+            return this;
+        }
+
+        /**
+         * @param dimension One of the feature constants, for example {@link #ENERGY}
+         * @param weight    Weight of the feature in the distance, 0 to ignore it
+         */
+        public Query weight(int dimension, float weight) {
+            weights[dimension] = weight;
+            return this;
+        }
+    }
+
+    /**
+     * A track found by a query
+     */
+    public static class Neighbour {
+        public final String id;
+        public final float distance;
+
+        Neighbour(String id, float distance) {
+            this.id = id;
+            this.distance = distance;
+        }
+
+        @Override
+        public String toString() {
+            return id + " (" + distance + ")";
+        }
+    }
+
+    private final ReadWriteLock mLock = new ReentrantReadWriteLock();
+    private final SpotifyIdTable mIds;
+    private final float[][] mColumns = new float[DIMENSIONS][];
+    private byte[] mKeys;
+    private byte[] mModes;
+
+    public AudioFeaturesIndex() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param initialCapacity Number of tracks to allocate room for
+     */
+    public AudioFeaturesIndex(int initialCapacity) {
+        mIds = new SpotifyIdTable(initialCapacity);
+        for (int d = 0; d < DIMENSIONS; d++) {
+            mColumns[d] = new float[initialCapacity];
+        }
+        mKeys = new byte[initialCapacity];
+        mModes = new byte[initialCapacity];
+    }
+
+    /**
+     * Adds the features of a track, replacing earlier features of the same track.
+     *
+     * @param features Audio features as returned by {@link SpotifyService#getTrackAudioFeatures(String)}
+     */
+    public void add(AudioFeaturesTrack features) {
+        mLock.writeLock().lock();
+        try {
+            put(features);
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param features Audio features, null entries for unknown tracks are skipped
+     */
+    public void addAll(List<AudioFeaturesTrack> features) {
+        mLock.writeLock().lock();
+        try {
+            for (AudioFeaturesTrack track : features) {
+                if (track != null) {
+                    put(track);
+                }
+            }
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param response Response of {@link SpotifyService#getTracksAudioFeatures(String)}
+     */
+    public void addAll(AudioFeaturesTracks response) {
+        addAll(response.audio_features);
+    }
+
+    public int size() {
+        mLock.readLock().lock();
+        try {
+            return mIds.size();
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(String id) {
+        mLock.readLock().lock();
+        try {
+            return mIds.indexOf(id) >= 0;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the tracks closest to a track in the index, the track itself is not returned.
+     *
+     * @param id    Spotify ID of the track
+     * @param query The query
+     * @return Neighbours ordered by distance or an empty list if the track is not in the index
+     */
+    public List<Neighbour> query(String id, Query query) {
+        mLock.readLock().lock();
+        try {
+            int row = mIds.indexOf(id);
+            if (row < 0) {
+                return Collections.emptyList();
+            }
+            float[] target = new float[DIMENSIONS];
+            for (int d = 0; d < DIMENSIONS; d++) {
+                target[d] = mColumns[d][row];
+            }
+            return search(target, query, row);
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the tracks closest to the given features.
+     *
+     * @param features The features to compare with, the track doesn't have to be in the index
+     * @param query    The query
+     * @return Neighbours ordered by distance
+     */
+    public List<Neighbour> query(AudioFeaturesTrack features, Query query) {
+        float[] target = normalize(features);
+        mLock.readLock().lock();
+        try {
+            return search(target, query, mIds.indexOf(features.id));
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Bytes used by the arrays backing the index
+     */
+    public long getMemoryUsage() {
+        mLock.readLock().lock();
+        try {
+            long bytes = mIds.getMemoryUsage() + mKeys.length + mModes.length;
+            for (float[] column : mColumns) {
+                bytes += 4L * column.length;
+            }
+            return bytes;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    static float[] normalize(AudioFeaturesTrack features) {
+        float[] vector = new float[DIMENSIONS];
+        vector[DANCEABILITY] = features.danceability;
+        vector[ENERGY] = features.energy;
+        vector[SPEECHINESS] = features.speechiness;
+        vector[ACOUSTICNESS] = features.acousticness;
+        vector[INSTRUMENTALNESS] = features.instrumentalness;
+        vector[LIVENESS] = features.liveness;
+        vector[VALENCE] = features.valence;
+        vector[LOUDNESS] = (features.loudness - MIN_LOUDNESS) / (MAX_LOUDNESS - MIN_LOUDNESS);
+        vector[TEMPO] = features.tempo / MAX_TEMPO;
+        return vector;
+    }
+
+    private void put(AudioFeaturesTrack features) {
+        int row = mIds.add(features.id);
+        if (row >= mKeys.length) {
+            grow(Math.max(mKeys.length * 2, row + 1));
+        }
+
+        float[] vector = normalize(features);
+        for (int d = 0; d < DIMENSIONS; d++) {
+            mColumns[d][row] = vector[d];
+        }
+        mKeys[row] = (byte) features.key;
+        mModes[row] = (byte) features.mode;
+    }
+
+    private void grow(int capacity) {
+        for (int d = 0; d < DIMENSIONS; d++) {
+            mColumns[d] = Arrays.copyOf(mColumns[d], capacity);
+        }
+        mKeys = Arrays.copyOf(mKeys, capacity);
+        mModes = Arrays.copyOf(mModes, capacity);
+    }
+
+    private List<Neighbour> search(float[] target, Query query, int excludedRow) {
+        int size = mIds.size();
+        float minTempo = query.minTempo / MAX_TEMPO;
+        float maxTempo = query.maxTempo / MAX_TEMPO;
+        float[] tempos = mColumns[TEMPO];
+        float[] distances = new float[BLOCK_SIZE];
+        TopK top = new TopK(query.k);
+
+        for (int start = 0; start < size; start += BLOCK_SIZE) {
+            int length = Math.min(BLOCK_SIZE, size - start);
+            Arrays.fill(distances, 0, length, 0f);
+
+            // Column at a time so the inner loop is a plain loop over two float arrays
+            for (int d = 0; d < DIMENSIONS; d++) {
+                float weight = query.weights[d];
+                if (weight == 0) continue;
+
+                float value = target[d];
+                float[] column = mColumns[d];
+                for (int i = 0; i < length; i++) {
+                    float diff = column[start + i] - value;
+                    distances[i] += weight * diff * diff;
+                }
+            }
+
+            for (int i = 0; i < length; i++) {
+                int row = start + i;
+                if (row == excludedRow
+                        || (query.key >= 0 && mKeys[row] != query.key)
+                        || (query.mode >= 0 && mModes[row] != query.mode)
+                        || tempos[row] < minTempo || tempos[row] > maxTempo) {
+                    continue;
+                }
+                top.offer(row, distances[i]);
+            }
+        }
+
+        int count = top.size;
+        int[] rows = new int[count];
+        float[] sorted = new float[count];
+        for (int i = count - 1; i >= 0; i--) {
+            rows[i] = top.rows[0];
+            sorted[i] = top.distances[0];
+            top.poll();
+        }
+
+        List<Neighbour> neighbours = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            neighbours.add(new Neighbour(mIds.get(rows[i]), (float) Math.sqrt(sorted[i])));
+        }
+        return neighbours;
+    }
+
+    /**
+     * Bounded max-heap keeping the k smallest distances
+     */
+    private static class TopK {
+        final int[] rows;
+        final float[] distances;
+        int size;
+
+        TopK(int k) {
+            rows = new int[k];
+            distances = new float[k];
+        }
+
+        void offer(int row, float distance) {
+            if (size < rows.length) {
+                rows[size] = row;
+                distances[size] = distance;
+                siftUp(size++);
+            } else if (distance < distances[0]) {
+                rows[0] = row;
+                distances[0] = distance;
+                siftDown(0);
+            }
+        }
+
+        void poll() {
+            size--;
+            rows[0] = rows[size];
+            distances[0] = distances[size];
+            siftDown(0);
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (distances[parent] >= distances[i]) break;
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int largest = i;
+                int left = 2 * i + 1;
+                int right = left + 1;
+                if (left < size && distances[left] > distances[largest]) largest = left;
+                if (right < size && distances[right] > distances[largest]) largest = right;
+                if (largest == i) return;
+                swap(i, largest);
+                i = largest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int row = rows[a];
+            rows[a] = rows[b];
+            rows[b] = row;
+            float distance = distances[a];
+            distances[a] = distances[b];
+            distances[b] = distance;
+        }
+    }
+}
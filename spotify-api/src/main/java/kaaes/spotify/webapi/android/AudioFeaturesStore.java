@@ -0,0 +1,456 @@
+package kaaes.spotify.webapi.android;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import kaaes.spotify.webapi.android.models.AudioFeaturesTrack;
+import kaaes.spotify.webapi.android.models.AudioFeaturesTracks;
+
+/**
+ * Column store for audio features backed by memory-mapped files.
+ * <p/>
+ * Every feature lives in its own file as a primitive column so millions of tracks
+ * take a few dozen bytes each and stay off the Java heap. Only the ID dictionary is kept
+ * in memory. The {@code analysis_url}, {@code track_href}, {@code uri} and {@code type}
+ * fields are not stored, {@link #get(int)} derives them from the ID. Features are addressed by
+ * the constants of {@link AudioFeaturesIndex}, for example {@link AudioFeaturesIndex#TEMPO}.
+ * <p/>
+ * Basic usage:
+ * AudioFeaturesStore store = AudioFeaturesStore.open(new File(context.getFilesDir(), "features"));
+ * store.appendAll(spotify.getTracksAudioFeatures(ids).execute().body());
+ * BitSet fast = store.filter(AudioFeaturesIndex.TEMPO, 160, 200);
+ * AudioFeaturesStore.Stats energy = store.aggregate(AudioFeaturesIndex.ENERGY, fast);
+ * store.close();
+ */
+public class AudioFeaturesStore implements Closeable {
+
+    private static final String[] FEATURE_NAMES = {
+            "danceability", "energy", "speechiness", "acousticness",
+            "instrumentalness", "liveness", "valence", "loudness", "tempo"
+    };
+
+    private static final String TRACK_URI = "spotify:track:";
+    private static final String TRACK_HREF = "https://api.spotify.com/v1/tracks/";
+    private static final String ANALYSIS_URL = "https://api.spotify.com/v1/audio-analysis/";
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * Rows copied out of a column at once when scanning
+     */
+    private static final int BLOCK_SIZE = 4096;
+
+    /**
+     * Bytes before the first ID, holding the number of rows
+     */
+    private static final int HEADER_SIZE = 8;
+
+    /**
+     * Summary of one feature over a set of rows
+     */
+    public static class Stats {
+        public final int count;
+        public final float min;
+        public final float max;
+        public final double mean;
+
+        Stats(int count, float min, float max, double mean) {
+            this.count = count;
+            this.min = min;
+            this.max = max;
+            this.mean = mean;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + ", min=" + min + ", max=" + max + ", mean=" + mean;
+        }
+    }
+
+    /**
+     * A file mapped as one fixed width column
+     */
+    private static class MappedColumn {
+        final RandomAccessFile file;
+        final int width;
+        final int header;
+        MappedByteBuffer buffer;
+        FloatBuffer floats;
+
+        MappedColumn(File file, int width, int header, int capacity) throws IOException {
+            this.file = new RandomAccessFile(file, "rw");
+            this.width = width;
+            this.header = header;
+            map(Math.max(capacity, (int) ((this.file.length() - header) / width)));
+        }
+
+        void map(int capacity) throws IOException {
+            long size = header + (long) width * capacity;
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.nativeOrder());
+            if (width == 4 && header == 0) {
+                floats = buffer.asFloatBuffer();
+            }
+        }
+
+        int capacity() {
+            return (buffer.capacity() - header) / width;
+        }
+
+        void close() throws IOException {
+            buffer.force();
+            file.close();
+        }
+    }
+
+    private final ReadWriteLock mLock = new ReentrantReadWriteLock();
+    private final SpotifyIdTable mIds;
+    private final MappedColumn mIdColumn;
+    private final MappedColumn[] mFeatures = new MappedColumn[FEATURE_NAMES.length];
+    private final MappedColumn mDurations;
+    private final MappedColumn mKeys;
+    private final MappedColumn mModes;
+    private final MappedColumn mTimeSignatures;
+    private int mSize;
+
+    private AudioFeaturesStore(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+
+        mIdColumn = new MappedColumn(new File(directory, "id"), SpotifyIdTable.ID_LENGTH, HEADER_SIZE, INITIAL_CAPACITY);
+        int size = mIdColumn.buffer.getInt(0);
+        int capacity = Math.max(INITIAL_CAPACITY, mIdColumn.capacity());
+
+        for (int f = 0; f < FEATURE_NAMES.length; f++) {
+            mFeatures[f] = new MappedColumn(new File(directory, FEATURE_NAMES[f]), 4, 0, capacity);
+        }
+        mDurations = new MappedColumn(new File(directory, "duration_ms"), 4, 0, capacity);
+        mKeys = new MappedColumn(new File(directory, "key"), 1, 0, capacity);
+        mModes = new MappedColumn(new File(directory, "mode"), 1, 0, capacity);
+        mTimeSignatures = new MappedColumn(new File(directory, "time_signature"), 1, 0, capacity);
+
+        mIds = new SpotifyIdTable(Math.max(size, INITIAL_CAPACITY));
+        byte[] id = new byte[SpotifyIdTable.ID_LENGTH];
+        for (int row = 0; row < size; row++) {
+            mIdColumn.buffer.position(HEADER_SIZE + row * SpotifyIdTable.ID_LENGTH);
+            mIdColumn.buffer.get(id);
+            mIds.add(new String(id, "US-ASCII"));
+        }
+        mSize = size;
+    }
+
+    /**
+     * Opens the store in a directory, creating it if needed.
+     *
+     * @param directory Directory holding one file per column
+     * @return The store
+     * @throws IOException If the files can't be created or mapped
+     */
+    public static AudioFeaturesStore open(File directory) throws IOException {
+        return new AudioFeaturesStore(directory);
+    }
+
+    /**
+     * Appends features, replacing the stored features of tracks already in the store.
+     *
+     * @param features Audio features, null entries for unknown tracks are skipped
+     * @throws IOException              If the columns can't be grown
+     * @throws IllegalArgumentException If a track doesn't have a valid ID, nothing is appended then
+     */
+    public void appendAll(List<AudioFeaturesTrack> features) throws IOException {
+        for (AudioFeaturesTrack track : features) {
+            if (track != null) {
+                SpotifyIdTable.checkId(track.id);
+            }
+        }
+
+        mLock.writeLock().lock();
+        try {
+            ensureCapacity(mSize + features.size());
+            for (AudioFeaturesTrack track : features) {
+                if (track != null) {
+                    put(track);
+                }
+            }
+            mIdColumn.buffer.putInt(0, mSize);
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param response Response of {@link SpotifyService#getTracksAudioFeatures(String)}
+     * @throws IOException If the columns can't be grown
+     */
+    public void appendAll(AudioFeaturesTracks response) throws IOException {
+        appendAll(response.audio_features);
+    }
+
+    public int size() {
+        mLock.readLock().lock();
+        try {
+            return mSize;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param id Spotify ID of the track
+     * @return Row of the track or -1 if it's not in the store
+     */
+    public int indexOf(String id) {
+        mLock.readLock().lock();
+        try {
+            return mIds.indexOf(id);
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param row Row of the track
+     * @return New model object with the stored features
+     */
+    public AudioFeaturesTrack get(int row) {
+        mLock.readLock().lock();
+        try {
+            if (row < 0 || row >= mSize) {
+                throw new IndexOutOfBoundsException("Row " + row + " of " + mSize);
+            }
+            AudioFeaturesTrack track = new AudioFeaturesTrack();
+            track.id = mIds.get(row);
+            track.type = "audio_features";
+            track.uri = TRACK_URI + track.id;
+            track.track_href = TRACK_HREF + track.id;
+            track.analysis_url = ANALYSIS_URL + track.id;
+            track.danceability = feature(AudioFeaturesIndex.DANCEABILITY, row);
+            track.energy = feature(AudioFeaturesIndex.ENERGY, row);
+            track.speechiness = feature(AudioFeaturesIndex.SPEECHINESS, row);
+            track.acousticness = feature(AudioFeaturesIndex.ACOUSTICNESS, row);
+            track.instrumentalness = feature(AudioFeaturesIndex.INSTRUMENTALNESS, row);
+            track.liveness = feature(AudioFeaturesIndex.LIVENESS, row);
+            track.valence = feature(AudioFeaturesIndex.VALENCE, row);
+            track.loudness = feature(AudioFeaturesIndex.LOUDNESS, row);
+            track.tempo = feature(AudioFeaturesIndex.TEMPO, row);
+            track.duration_ms = mDurations.buffer.getInt(row * 4);
+            track.key = mKeys.buffer.get(row);
+            track.mode = mModes.buffer.get(row);
+            track.time_signature = mTimeSignatures.buffer.get(row);
+            return track;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param feature One of the feature constants, for example {@link AudioFeaturesIndex#TEMPO}
+     * @param row     Row of the track
+     * @return Value of the feature
+     */
+    public float getFeature(int feature, int row) {
+        mLock.readLock().lock();
+        try {
+            return feature(feature, row);
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param feature One of the feature constants, for example {@link AudioFeaturesIndex#TEMPO}
+     * @param min     Minimum value, inclusive
+     * @param max     Maximum value, inclusive
+     * @return Rows where the feature is within the range
+     */
+    public BitSet filter(int feature, float min, float max) {
+        return filter(feature, min, max, null);
+    }
+
+    /**
+     * Narrows down a previous selection, for example fast tracks with high energy.
+     *
+     * @param feature One of the feature constants, for example {@link AudioFeaturesIndex#TEMPO}
+     * @param min     Minimum value, inclusive
+     * @param max     Maximum value, inclusive
+     * @param rows    Rows to consider or null for all rows
+     * @return Rows of {@code rows} where the feature is within the range
+     */
+    public BitSet filter(int feature, float min, float max, BitSet rows) {
+        mLock.readLock().lock();
+        try {
+            BitSet result = new BitSet(mSize);
+            FloatBuffer column = mFeatures[feature].floats.duplicate();
+            float[] block = new float[BLOCK_SIZE];
+            for (int start = 0; start < mSize; start += BLOCK_SIZE) {
+                int length = Math.min(BLOCK_SIZE, mSize - start);
+                column.position(start);
+                column.get(block, 0, length);
+                for (int i = 0; i < length; i++) {
+                    float value = block[i];
+                    if (value >= min && value <= max) {
+                        result.set(start + i);
+                    }
+                }
+            }
+            if (rows != null) {
+                result.and(rows);
+            }
+            return result;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param feature One of the feature constants, for example {@link AudioFeaturesIndex#ENERGY}
+     * @param rows    Rows to aggregate or null for all rows
+     * @return Count, min, max and mean of the feature
+     */
+    public Stats aggregate(int feature, BitSet rows) {
+        mLock.readLock().lock();
+        try {
+            FloatBuffer column = mFeatures[feature].floats.duplicate();
+            float[] block = new float[BLOCK_SIZE];
+            int count = 0;
+            float min = Float.POSITIVE_INFINITY;
+            float max = Float.NEGATIVE_INFINITY;
+            double sum = 0;
+
+            for (int start = 0; start < mSize; start += BLOCK_SIZE) {
+                int length = Math.min(BLOCK_SIZE, mSize - start);
+                column.position(start);
+                column.get(block, 0, length);
+                if (rows == null) {
+                    for (int i = 0; i < length; i++) {
+                        float value = block[i];
+                        sum += value;
+                        min = Math.min(min, value);
+                        max = Math.max(max, value);
+                    }
+                    count += length;
+                } else {
+                    for (int i = rows.nextSetBit(start); i >= 0 && i < start + length; i = rows.nextSetBit(i + 1)) {
+                        float value = block[i - start];
+                        sum += value;
+                        min = Math.min(min, value);
+                        max = Math.max(max, value);
+                        count++;
+                    }
+                }
+            }
+            return count == 0 ? new Stats(0, Float.NaN, Float.NaN, Double.NaN) : new Stats(count, min, max, sum / count);
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Bytes used by the mapped files, the ID dictionary on the heap not included
+     */
+    public long getMappedSize() {
+        mLock.readLock().lock();
+        try {
+            long bytes = mIdColumn.buffer.capacity() + mDurations.buffer.capacity()
+                    + mKeys.buffer.capacity() + mModes.buffer.capacity() + mTimeSignatures.buffer.capacity();
+            for (MappedColumn column : mFeatures) {
+                bytes += column.buffer.capacity();
+            }
+            return bytes;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Bytes used by the ID dictionary on the heap
+     */
+    public long getHeapSize() {
+        mLock.readLock().lock();
+        try {
+            return mIds.getMemoryUsage();
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes pending changes to disk and closes the files
+     */
+    @Override
+    public void close() throws IOException {
+        mLock.writeLock().lock();
+        try {
+            mIdColumn.close();
+            for (MappedColumn column : mFeatures) {
+                column.close();
+            }
+            mDurations.close();
+            mKeys.close();
+            mModes.close();
+            mTimeSignatures.close();
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    private float feature(int feature, int row) {
+        if (row < 0 || row >= mSize) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + mSize);
+        }
+        return mFeatures[feature].floats.get(row);
+    }
+
+    private void put(AudioFeaturesTrack track) {
+        int row = mIds.add(track.id);
+        if (row == mSize) {
+            mIdColumn.buffer.position(HEADER_SIZE + row * SpotifyIdTable.ID_LENGTH);
+            for (int i = 0; i < SpotifyIdTable.ID_LENGTH; i++) {
+                mIdColumn.buffer.put((byte) track.id.charAt(i));
+            }
+            mSize++;
+        }
+
+        mFeatures[AudioFeaturesIndex.DANCEABILITY].floats.put(row, track.danceability);
+        mFeatures[AudioFeaturesIndex.ENERGY].floats.put(row, track.energy);
+        mFeatures[AudioFeaturesIndex.SPEECHINESS].floats.put(row, track.speechiness);
+        mFeatures[AudioFeaturesIndex.ACOUSTICNESS].floats.put(row, track.acousticness);
+        mFeatures[AudioFeaturesIndex.INSTRUMENTALNESS].floats.put(row, track.instrumentalness);
+        mFeatures[AudioFeaturesIndex.LIVENESS].floats.put(row, track.liveness);
+        mFeatures[AudioFeaturesIndex.VALENCE].floats.put(row, track.valence);
+        mFeatures[AudioFeaturesIndex.LOUDNESS].floats.put(row, track.loudness);
+        mFeatures[AudioFeaturesIndex.TEMPO].floats.put(row, track.tempo);
+        mDurations.buffer.putInt(row * 4, track.duration_ms);
+        mKeys.buffer.put(row, (byte) track.key);
+        mModes.buffer.put(row, (byte) track.mode);
+        mTimeSignatures.buffer.put(row, (byte) track.time_signature);
+    }
+
+    private void ensureCapacity(int rows) throws IOException {
+        int capacity = mIdColumn.capacity();
+        if (rows <= capacity) return;
+
+        while (capacity < rows) {
+            capacity *= 2;
+        }
+        mIdColumn.map(capacity);
+        for (MappedColumn column : mFeatures) {
+            column.map(capacity);
+        }
+        mDurations.map(capacity);
+        mKeys.map(capacity);
+        mModes.map(capacity);
+        mTimeSignatures.map(capacity);
+    }
+}
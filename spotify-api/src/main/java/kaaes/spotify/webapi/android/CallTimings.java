@@ -0,0 +1,441 @@
+package kaaes.spotify.webapi.android;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+import okhttp3.Connection;
+import okhttp3.Dns;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+/**
+ * Measures where the time of calls goes, aggregated per endpoint of {@link SpotifyService}:
+ * DNS lookups, connecting including the TLS handshake, waiting for the server, downloading the
+ * body and parsing it, and how often pooled connections were reused.
+ * <p/>
+ * OkHttp 3.2 has no event listener so the phases are taken from an application interceptor,
+ * a network interceptor, a {@link Dns} wrapper and a converter wrapper, all installed by
+ * {@link SpotifyApi#createBaseOkHttpClientBuilder()} and {@link SpotifyApi#createBaseRetrofitBuilder()}.
+ * DNS and connect times only count calls that opened a new connection.
+ * <p/>
+ * Basic usage:
+ * CallTimings.EndpointTimings search = api.getCallTimings().getTimings("GET /v1/search");
+ * float serverMs = search.getAverageMs(CallTimings.PHASE_SERVER);
+ */
+public class CallTimings {
+
+    public static final int PHASE_DNS = 0;
+    public static final int PHASE_CONNECT = 1;
+    public static final int PHASE_SERVER = 2;
+    public static final int PHASE_DOWNLOAD = 3;
+    public static final int PHASE_PARSE = 4;
+
+    private static final int PHASE_COUNT = 5;
+    private static final String[] PHASE_NAMES = {"dns", "connect", "server", "download", "parse"};
+
+    /**
+     * Timings of one endpoint, a snapshot when returned by {@link CallTimings}
+     */
+    public static class EndpointTimings {
+        private int mCalls;
+        private int mFailures;
+        private int mReusedConnections;
+        private int mHttp2;
+        private final int[] mSamples = new int[PHASE_COUNT];
+        private final long[] mSumNanos = new long[PHASE_COUNT];
+        private final long[] mMaxNanos = new long[PHASE_COUNT];
+
+        EndpointTimings() {
+        }
+
+        EndpointTimings(EndpointTimings timings) {
+            mCalls = timings.mCalls;
+            mFailures = timings.mFailures;
+            mReusedConnections = timings.mReusedConnections;
+            mHttp2 = timings.mHttp2;
+            System.arraycopy(timings.mSamples, 0, mSamples, 0, PHASE_COUNT);
+            System.arraycopy(timings.mSumNanos, 0, mSumNanos, 0, PHASE_COUNT);
+            System.arraycopy(timings.mMaxNanos, 0, mMaxNanos, 0, PHASE_COUNT);
+        }
+
+        public int getCallCount() {
+            return mCalls;
+        }
+
+        /**
+         * @return Number of calls that failed with an I/O error
+         */
+        public int getFailureCount() {
+            return mFailures;
+        }
+
+        public int getReusedConnectionCount() {
+            return mReusedConnections;
+        }
+
+        public int getNewConnectionCount() {
+            return mSamples[PHASE_CONNECT];
+        }
+
+        /**
+         * @return Number of calls made over HTTP/2
+         */
+        public int getHttp2Count() {
+            return mHttp2;
+        }
+
+        /**
+         * @param phase One of {@link #PHASE_DNS}, {@link #PHASE_CONNECT}, {@link #PHASE_SERVER},
+         *              {@link #PHASE_DOWNLOAD} or {@link #PHASE_PARSE}
+         * @return Number of calls the phase was measured for
+         */
+        public int getSampleCount(int phase) {
+            return mSamples[phase];
+        }
+
+        /**
+         * @param phase One of {@link #PHASE_DNS}, {@link #PHASE_CONNECT}, {@link #PHASE_SERVER},
+         *              {@link #PHASE_DOWNLOAD} or {@link #PHASE_PARSE}
+         * @return Average duration of the phase in milliseconds
+         */
+        public float getAverageMs(int phase) {
+            return mSamples[phase] == 0 ? 0 : mSumNanos[phase] / 1e6f / mSamples[phase];
+        }
+
+        /**
+         * @param phase One of {@link #PHASE_DNS}, {@link #PHASE_CONNECT}, {@link #PHASE_SERVER},
+         *              {@link #PHASE_DOWNLOAD} or {@link #PHASE_PARSE}
+         * @return Longest duration of the phase in milliseconds
+         */
+        public float getMaxMs(int phase) {
+            return mMaxNanos[phase] / 1e6f;
+        }
+
+        void add(int phase, long nanos) {
+            mSamples[phase]++;
+            mSumNanos[phase] += nanos;
+            mMaxNanos[phase] = Math.max(mMaxNanos[phase], nanos);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder()
+                    .append("calls=").append(mCalls)
+                    .append(" failures=").append(mFailures)
+                    .append(" reused=").append(mReusedConnections)
+                    .append(" http2=").append(mHttp2);
+            for (int phase = 0; phase < PHASE_COUNT; phase++) {
+                builder.append(String.format(Locale.US, " %s=%.1f/%.1fms", PHASE_NAMES[phase], getAverageMs(phase), getMaxMs(phase)));
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * Phases of one call as they are measured
+     */
+    private static class CallTiming {
+        final String endpoint;
+        final long startNanos = System.nanoTime();
+        long dnsNanos;
+        long networkStartNanos;
+        long serverNanos;
+        boolean reusedConnection;
+        Protocol protocol;
+        long downloadNanos;
+        boolean downloaded;
+
+        CallTiming(String endpoint) {
+            this.endpoint = endpoint;
+        }
+    }
+
+    /**
+     * Body reads of the current thread, used to tell download from parse time in the converter
+     */
+    private static class Reads {
+        CallTiming call;
+        long nanos;
+    }
+
+    private final Map<String, EndpointTimings> mEndpoints = new TreeMap<>();
+    private final Map<Connection, Boolean> mConnections = new WeakHashMap<>();
+    private final ThreadLocal<CallTiming> mCurrentCall = new ThreadLocal<>();
+    private final ThreadLocal<Reads> mReads = new ThreadLocal<Reads>() {
+        @Override
+        protected Reads initialValue() {
+            return new Reads();
+        }
+    };
+
+    /**
+     * @return Interceptor starting the measurement of each call, add it with
+     * {@link okhttp3.OkHttpClient.Builder#addInterceptor(Interceptor)}
+     */
+    public Interceptor applicationInterceptor() {
+        return new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) throws IOException {
+                Request request = chain.request();
+                CallTiming timing = new CallTiming(EndpointTemplate.nameOf(request));
+                CallTiming outer = mCurrentCall.get();
+                mCurrentCall.set(timing);
+                try {
+                    Response response = chain.proceed(request);
+                    onHeaders(timing);
+                    return response;
+                } catch (IOException e) {
+                    onFailure(timing);
+                    throw e;
+                } finally {
+                    mCurrentCall.set(outer);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return Interceptor measuring connection reuse, the server's response time and the body download, add it with
+     * {@link okhttp3.OkHttpClient.Builder#addNetworkInterceptor(Interceptor)}
+     */
+    public Interceptor networkInterceptor() {
+        return new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) throws IOException {
+                CallTiming timing = mCurrentCall.get();
+                if (timing == null) {
+                    return chain.proceed(chain.request());
+                }
+
+                long start = System.nanoTime();
+                if (timing.networkStartNanos == 0) {
+                    timing.networkStartNanos = start;
+                    Connection connection = chain.connection();
+                    if (connection != null) {
+                        synchronized (mConnections) {
+                            timing.reusedConnection = mConnections.put(connection, Boolean.TRUE) != null;
+                        }
+                        timing.protocol = connection.protocol();
+                    }
+                }
+                Response response = chain.proceed(chain.request());
+                timing.serverNanos += System.nanoTime() - start;
+
+                if (response.body() == null) {
+                    return response;
+                }
+                return response.newBuilder().body(new TimedResponseBody(response.body(), timing)).build();
+            }
+        };
+    }
+
+    /**
+     * @param delegate The resolver, usually {@link Dns#SYSTEM}
+     * @return Resolver measuring the lookups, set it with {@link okhttp3.OkHttpClient.Builder#dns(Dns)}
+     */
+    public Dns dns(final Dns delegate) {
+        return new Dns() {
+            @Override
+            public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+                long start = System.nanoTime();
+                try {
+                    return delegate.lookup(hostname);
+                } finally {
+                    CallTiming timing = mCurrentCall.get();
+                    if (timing != null) {
+                        timing.dnsNanos += System.nanoTime() - start;
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * @param delegate The converter factory, usually a {@link retrofit2.converter.gson.GsonConverterFactory}
+     * @return Converter factory measuring the time spent parsing response bodies, add it with
+     * {@link Retrofit.Builder#addConverterFactory(Converter.Factory)}
+     */
+    public Converter.Factory converterFactory(final Converter.Factory delegate) {
+        return new Converter.Factory() {
+            @Override
+            public Converter<ResponseBody, ?> responseBodyConverter(Type type, Annotation[] annotations, Retrofit retrofit) {
+                final Converter<ResponseBody, ?> converter = delegate.responseBodyConverter(type, annotations, retrofit);
+                if (converter == null) return null;
+
+                return new Converter<ResponseBody, Object>() {
+                    @Override
+                    public Object convert(ResponseBody value) throws IOException {
+                        Reads reads = mReads.get();
+                        reads.call = null;
+                        long readNanos = reads.nanos;
+                        long start = System.nanoTime();
+                        try {
+                            return converter.convert(value);
+                        } finally {
+                            // Time spent in reads is download, the rest is parsing
+                            long parseNanos = System.nanoTime() - start - (reads.nanos - readNanos);
+                            if (reads.call != null) {
+                                onParsed(reads.call, parseNanos);
+                                reads.call = null;
+                            }
+                        }
+                    }
+                };
+            }
+
+            @Override
+            public Converter<?, RequestBody> requestBodyConverter(Type type, Annotation[] parameterAnnotations,
+                                                                  Annotation[] methodAnnotations, Retrofit retrofit) {
+                return delegate.requestBodyConverter(type, parameterAnnotations, methodAnnotations, retrofit);
+            }
+
+            @Override
+            public Converter<?, String> stringConverter(Type type, Annotation[] annotations, Retrofit retrofit) {
+                return delegate.stringConverter(type, annotations, retrofit);
+            }
+        };
+    }
+
+    /**
+     * @return Snapshot of the timings of all endpoints called so far, by endpoint name
+     * such as "GET /v1/albums/{id}"
+     */
+    public synchronized Map<String, EndpointTimings> getTimings() {
+        Map<String, EndpointTimings> timings = new TreeMap<>();
+        for (Map.Entry<String, EndpointTimings> entry : mEndpoints.entrySet()) {
+            timings.put(entry.getKey(), new EndpointTimings(entry.getValue()));
+        }
+        return timings;
+    }
+
+    /**
+     * @param endpoint Method and path of the endpoint, for example "GET /v1/search"
+     * @return Snapshot of the timings of the endpoint, null if it wasn't called yet
+     */
+    public synchronized EndpointTimings getTimings(String endpoint) {
+        EndpointTimings timings = mEndpoints.get(endpoint);
+        return timings != null ? new EndpointTimings(timings) : null;
+    }
+
+    public synchronized void reset() {
+        mEndpoints.clear();
+    }
+
+    private synchronized void onHeaders(CallTiming timing) {
+        EndpointTimings endpoint = endpoint(timing.endpoint);
+        endpoint.mCalls++;
+        if (timing.networkStartNanos == 0) {
+            // Answered by an interceptor without going to the network
+            return;
+        }
+
+        if (timing.reusedConnection) {
+            endpoint.mReusedConnections++;
+        } else {
+            endpoint.add(PHASE_DNS, timing.dnsNanos);
+            endpoint.add(PHASE_CONNECT, timing.networkStartNanos - timing.startNanos - timing.dnsNanos);
+        }
+        if (timing.protocol == Protocol.HTTP_2) {
+            endpoint.mHttp2++;
+        }
+        endpoint.add(PHASE_SERVER, timing.serverNanos);
+    }
+
+    private synchronized void onFailure(CallTiming timing) {
+        EndpointTimings endpoint = endpoint(timing.endpoint);
+        endpoint.mCalls++;
+        endpoint.mFailures++;
+    }
+
+    private synchronized void onDownloaded(CallTiming timing) {
+        if (timing.downloaded) return;
+        timing.downloaded = true;
+        endpoint(timing.endpoint).add(PHASE_DOWNLOAD, timing.downloadNanos);
+    }
+
+    private synchronized void onParsed(CallTiming timing, long nanos) {
+        endpoint(timing.endpoint).add(PHASE_PARSE, nanos);
+    }
+
+    private EndpointTimings endpoint(String name) {
+        EndpointTimings endpoint = mEndpoints.get(name);
+        if (endpoint == null) {
+            endpoint = new EndpointTimings();
+            mEndpoints.put(name, endpoint);
+        }
+        return endpoint;
+    }
+
+    /**
+     * Body that adds the time spent reading from the network to the call's download time
+     */
+    private class TimedResponseBody extends ResponseBody {
+        private final ResponseBody mBody;
+        private final CallTiming mTiming;
+        private BufferedSource mSource;
+
+        TimedResponseBody(ResponseBody body, CallTiming timing) {
+            mBody = body;
+            mTiming = timing;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return mBody.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return mBody.contentLength();
+        }
+
+        @Override
+        public BufferedSource source() {
+            if (mSource == null) {
+                mSource = Okio.buffer(new ForwardingSource(mBody.source()) {
+                    @Override
+                    public long read(Buffer sink, long byteCount) throws IOException {
+                        long start = System.nanoTime();
+                        long read = super.read(sink, byteCount);
+                        long nanos = System.nanoTime() - start;
+                        mTiming.downloadNanos += nanos;
+
+                        Reads reads = mReads.get();
+                        reads.call = mTiming;
+                        reads.nanos += nanos;
+                        if (read == -1) {
+                            onDownloaded(mTiming);
+                        }
+                        return read;
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        onDownloaded(mTiming);
+                        super.close();
+                    }
+                });
+            }
+            return mSource;
+        }
+    }
+}
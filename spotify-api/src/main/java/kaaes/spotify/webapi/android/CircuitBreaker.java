@@ -0,0 +1,151 @@
+package kaaes.spotify.webapi.android;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops sending requests to an endpoint that keeps failing so that callers fail fast instead of
+ * waiting for timeouts, and lets a single trial request through once the endpoint had time to recover.
+ * <p/>
+ * The breaker is {@link #CLOSED} while less than {@code failureRatio} of the last {@code windowSize}
+ * requests failed. It then turns {@link #OPEN} and rejects requests for {@code openDuration}, after which
+ * it's {@link #HALF_OPEN}: the next request is a trial which closes the breaker when it succeeds and opens
+ * it again when it fails.
+ *
+ * @see ResilientCallFactory
+ */
+public class CircuitBreaker {
+
+    public static final int CLOSED = 0;
+    public static final int OPEN = 1;
+    public static final int HALF_OPEN = 2;
+
+    private final float mFailureRatio;
+    private final int mMinRequests;
+    private final long mOpenDurationMs;
+
+    /**
+     * Outcomes of the last requests, true for failures
+     */
+    private final boolean[] mWindow;
+    private int mWindowPosition;
+    private int mWindowCount;
+    private int mFailures;
+
+    private int mState = CLOSED;
+    private long mOpenedAt;
+    private boolean mTrialRunning;
+    private int mRejected;
+
+    /**
+     * @param failureRatio Part of the recent requests that must have failed for the breaker to open
+     * @param windowSize   Number of recent requests considered, the breaker doesn't open before it saw
+     *                     half of them
+     * @param openDuration How long requests are rejected once the breaker opened
+     * @param unit         Unit of the open duration
+     */
+    public CircuitBreaker(float failureRatio, int windowSize, long openDuration, TimeUnit unit) {
+        if (failureRatio <= 0 || failureRatio > 1) {
+            throw new IllegalArgumentException("failureRatio must be in (0, 1]");
+        }
+        mFailureRatio = failureRatio;
+        mWindow = new boolean[windowSize];
+        mMinRequests = Math.max(1, windowSize / 2);
+        mOpenDurationMs = unit.toMillis(openDuration);
+    }
+
+    /**
+     * Checks whether a request may be made, every permitted request must be followed by
+     * {@link #onSuccess()}, {@link #onFailure()} or {@link #onCanceled()}.
+     *
+     * @return False if the request must be rejected
+     */
+    public synchronized boolean allowRequest() {
+        if (mState == OPEN && now() - mOpenedAt >= mOpenDurationMs) {
+            mState = HALF_OPEN;
+        }
+        if (mState == CLOSED) {
+            return true;
+        }
+        if (mState == HALF_OPEN && !mTrialRunning) {
+            mTrialRunning = true;
+            return true;
+        }
+        mRejected++;
+        return false;
+    }
+
+    public synchronized void onSuccess() {
+        if (mState == HALF_OPEN) {
+            mTrialRunning = false;
+            mState = CLOSED;
+            resetWindow();
+            return;
+        }
+        record(false);
+    }
+
+    public synchronized void onFailure() {
+        if (mState == HALF_OPEN) {
+            mTrialRunning = false;
+            open();
+            return;
+        }
+        record(true);
+        if (mState == CLOSED && mWindowCount >= mMinRequests && mFailures >= mFailureRatio * mWindowCount) {
+            open();
+        }
+    }
+
+    /**
+     * For permitted requests that were canceled, they count neither as success nor as failure
+     */
+    public synchronized void onCanceled() {
+        if (mState == HALF_OPEN) {
+            mTrialRunning = false;
+        }
+    }
+
+    /**
+     * @return {@link #CLOSED}, {@link #OPEN} or {@link #HALF_OPEN}
+     */
+    public synchronized int getState() {
+        if (mState == OPEN && now() - mOpenedAt >= mOpenDurationMs) {
+            return HALF_OPEN;
+        }
+        return mState;
+    }
+
+    /**
+     * @return Number of requests rejected since the breaker was created
+     */
+    public synchronized int getRejectedCount() {
+        return mRejected;
+    }
+
+    long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    private void record(boolean failure) {
+        if (mWindowCount == mWindow.length) {
+            if (mWindow[mWindowPosition]) mFailures--;
+        } else {
+            mWindowCount++;
+        }
+        mWindow[mWindowPosition] = failure;
+        if (failure) mFailures++;
+        mWindowPosition = (mWindowPosition + 1) % mWindow.length;
+    }
+
+    private void open() {
+        mState = OPEN;
+        mOpenedAt = now();
+        resetWindow();
+    }
+
+    private void resetWindow() {
+        mWindowPosition = 0;
+        mWindowCount = 0;
+        mFailures = 0;
+    }
+}
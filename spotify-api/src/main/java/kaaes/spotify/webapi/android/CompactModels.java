@@ -0,0 +1,177 @@
+package kaaes.spotify.webapi.android;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import kaaes.spotify.webapi.android.models.AlbumSimple;
+import kaaes.spotify.webapi.android.models.ArtistSimple;
+import kaaes.spotify.webapi.android.models.Links;
+import kaaes.spotify.webapi.android.models.MarketSet;
+import kaaes.spotify.webapi.android.models.TrackSimple;
+import kaaes.spotify.webapi.android.models.UserPublic;
+
+/**
+ * Opt-in Gson mode that keeps tracks, albums, artists and users smaller on the heap.
+ * <ul>
+ * <li>{@code href}, {@code uri} and {@code external_urls} are left out when they are the ones
+ * derived from the type and ID, read them with {@code getHref()}, {@code getUri()} and
+ * {@code getExternalUrls()} which derive them when needed</li>
+ * <li>{@code type} and {@code album_type} are shared constants instead of a string per object</li>
+ * <li>{@code available_markets} are {@link MarketSet}s, and equal ones, typically those of all
+ * tracks of an album and the album itself, are one shared instance</li>
+ * </ul>
+ * No information is lost, but code reading the link fields directly sees null in this mode.
+ * <p/>
+ * Basic usage:
+ * SpotifyApi api = new SpotifyApi();
+ * Retrofit retrofit = api.createBaseRetrofitBuilder(CompactModels.createGson())
+ * .client(api.createBaseOkHttpClientBuilder().build())
+ * .build();
+ * SpotifyService spotify = new SpotifyApi(retrofit).getService();
+ */
+public final class CompactModels implements TypeAdapterFactory {
+
+    /**
+     * Distinct market lists kept for sharing, responses rarely have more than a few hundred
+     */
+    private static final int MAX_MARKET_LISTS = 1024;
+
+    private final Map<String, String> mStrings = new HashMap<>();
+
+    private final Map<List<String>, List<String>> mMarketLists = new LinkedHashMap<List<String>, List<String>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<String>, List<String>> eldest) {
+            return size() > MAX_MARKET_LISTS;
+        }
+    };
+
+    /**
+     * @return Gson configured with a new instance of this factory
+     */
+    public static Gson createGson() {
+        return new GsonBuilder().registerTypeAdapterFactory(new CompactModels()).create();
+    }
+
+    @Override
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Class<? super T> rawType = type.getRawType();
+        if (!TrackSimple.class.isAssignableFrom(rawType)
+                && !AlbumSimple.class.isAssignableFrom(rawType)
+                && !ArtistSimple.class.isAssignableFrom(rawType)
+                && !UserPublic.class.isAssignableFrom(rawType)) {
+            return null;
+        }
+
+        final TypeAdapter<T> delegate = gson.getDelegateAdapter(this, type);
+        return new TypeAdapter<T>() {
+            @Override
+            public void write(JsonWriter out, T value) throws IOException {
+                delegate.write(out, value);
+            }
+
+            @Override
+            public T read(JsonReader in) throws IOException {
+                T value = delegate.read(in);
+                compact(value);
+                return value;
+            }
+        };
+    }
+
+    /**
+     * Compacts an object read without this factory in place
+     *
+     * @param model A track, album, artist or user
+     */
+    public void compact(Object model) {
+        if (model instanceof TrackSimple) {
+            TrackSimple track = (TrackSimple) model;
+            track.type = share(track.type);
+            if (isDerived(track.href, track.uri, track.external_urls, track.type, track.id)) {
+                track.href = null;
+                track.uri = null;
+                track.external_urls = null;
+            }
+            track.available_markets = shareMarkets(track.available_markets);
+        } else if (model instanceof AlbumSimple) {
+            AlbumSimple album = (AlbumSimple) model;
+            album.type = share(album.type);
+            album.album_type = share(album.album_type);
+            if (isDerived(album.href, album.uri, album.external_urls, album.type, album.id)) {
+                album.href = null;
+                album.uri = null;
+                album.external_urls = null;
+            }
+            album.available_markets = shareMarkets(album.available_markets);
+        } else if (model instanceof ArtistSimple) {
+            ArtistSimple artist = (ArtistSimple) model;
+            artist.type = share(artist.type);
+            if (isDerived(artist.href, artist.uri, artist.external_urls, artist.type, artist.id)) {
+                artist.href = null;
+                artist.uri = null;
+                artist.external_urls = null;
+            }
+        } else if (model instanceof UserPublic) {
+            UserPublic user = (UserPublic) model;
+            user.type = share(user.type);
+            if (isDerived(user.href, user.uri, user.external_urls, user.type, user.id)) {
+                user.href = null;
+                user.uri = null;
+                user.external_urls = null;
+            }
+        }
+    }
+
+    /**
+     * The links are only left out together and only if all of them are the derived ones,
+     * so the getters always return what the response had
+     */
+    private static boolean isDerived(String href, String uri, Map<String, String> externalUrls, String type, String id) {
+        return type != null && id != null
+                && Links.href(type, id).equals(href)
+                && Links.uri(type, id).equals(uri)
+                && externalUrls != null && externalUrls.size() == 1
+                && Links.spotifyUrl(type, id).equals(externalUrls.get(Links.SPOTIFY));
+    }
+
+    private synchronized String share(String value) {
+        if (value == null) return null;
+        String shared = mStrings.get(value);
+        if (shared == null) {
+            mStrings.put(value, value);
+            shared = value;
+        }
+        return shared;
+    }
+
+    private synchronized List<String> shareMarkets(List<String> markets) {
+        if (markets == null) return null;
+        List<String> shared = mMarketLists.get(markets);
+        if (shared == null) {
+            shared = MarketSet.fromSortedList(markets);
+            if (shared == null) {
+                // Not in the order a set would list them, keep the order and share the codes
+                List<String> codes = new ArrayList<>(markets.size());
+                for (String market : markets) {
+                    codes.add(share(market));
+                }
+                shared = Collections.unmodifiableList(codes);
+            }
+            mMarketLists.put(shared, shared);
+        }
+        return shared;
+    }
+}
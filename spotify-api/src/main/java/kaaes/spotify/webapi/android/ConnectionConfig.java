@@ -0,0 +1,95 @@
+package kaaes.spotify.webapi.android;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+/**
+ * Connection pool and concurrency settings of the clients created by {@link SpotifyApi}.
+ * <p/>
+ * Basic usage:
+ * SpotifyApi api = new SpotifyApi(ConnectionConfig.DEFAULT.withMaxRequestsPerHost(16));
+ */
+public final class ConnectionConfig {
+
+    /**
+     * OkHttp's defaults: 5 idle connections kept for 5 minutes and 5 concurrent requests per host
+     */
+    public static final ConnectionConfig DEFAULT = new ConnectionConfig(5, TimeUnit.MINUTES.toMillis(5), 5, true);
+
+    /**
+     * Maximum number of idle connections kept in the pool
+     */
+    public final int maxIdleConnections;
+
+    /**
+     * How long idle connections are kept in the pool
+     */
+    public final long keepAliveMs;
+
+    /**
+     * Maximum number of requests running at the same time against the Web API
+     */
+    public final int maxRequestsPerHost;
+
+    /**
+     * Whether HTTP/2 is offered during the TLS handshake, one HTTP/2 connection carries all concurrent requests
+     */
+    public final boolean http2;
+
+    private ConnectionConfig(int maxIdleConnections, long keepAliveMs, int maxRequestsPerHost, boolean http2) {
+        if (maxRequestsPerHost < 1) {
+            throw new IllegalArgumentException("maxRequestsPerHost must be positive");
+        }
+        this.maxIdleConnections = maxIdleConnections;
+        this.keepAliveMs = keepAliveMs;
+        this.maxRequestsPerHost = maxRequestsPerHost;
+        this.http2 = http2;
+    }
+
+    public ConnectionConfig withMaxIdleConnections(int maxIdleConnections) {
+        return new ConnectionConfig(maxIdleConnections, keepAliveMs, maxRequestsPerHost, http2);
+    }
+
+    public ConnectionConfig withKeepAlive(long keepAlive, TimeUnit unit) {
+        return new ConnectionConfig(maxIdleConnections, unit.toMillis(keepAlive), maxRequestsPerHost, http2);
+    }
+
+    public ConnectionConfig withMaxRequestsPerHost(int maxRequestsPerHost) {
+        return new ConnectionConfig(maxIdleConnections, keepAliveMs, maxRequestsPerHost, http2);
+    }
+
+    public ConnectionConfig withHttp2(boolean http2) {
+        return new ConnectionConfig(maxIdleConnections, keepAliveMs, maxRequestsPerHost, http2);
+    }
+
+    /**
+     * @return A new pool holding up to {@link #maxIdleConnections} idle connections for {@link #keepAliveMs}
+     */
+    public ConnectionPool createConnectionPool() {
+        return new ConnectionPool(maxIdleConnections, keepAliveMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Applies the request limits and protocols to the builder, the pool is set separately
+     * so that it can be shared between clients.
+     *
+     * @param builder The builder to configure
+     * @return The builder
+     */
+    public OkHttpClient.Builder configure(OkHttpClient.Builder builder) {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(Math.max(dispatcher.getMaxRequests(), maxRequestsPerHost));
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+        return builder
+                .dispatcher(dispatcher)
+                .protocols(http2
+                        ? Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1)
+                        : Collections.singletonList(Protocol.HTTP_1_1));
+    }
+}
@@ -0,0 +1,105 @@
+package kaaes.spotify.webapi.android;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Opens connections to a host before they are needed so that the first requests don't pay
+ * for the DNS lookup and the TCP and TLS handshakes. The connections stay in the client's pool
+ * for its keep-alive duration.
+ * <p/>
+ * A single HTTP/2 connection carries any number of concurrent requests, so more connections
+ * are only opened when the server answered the first one with HTTP/1.1.
+ *
+ * @see SpotifyApi#prewarmConnections()
+ */
+public class ConnectionWarmer {
+
+    private static final String TAG = ConnectionWarmer.class.getSimpleName();
+
+    private final Call.Factory mClient;
+    private final String mUrl;
+    private volatile Protocol mProtocol;
+
+    /**
+     * @param client Client whose pool the connections are added to
+     * @param url    Any URL of the host, it's requested with HEAD
+     */
+    public ConnectionWarmer(Call.Factory client, String url) {
+        mClient = client;
+        mUrl = url;
+    }
+
+    /**
+     * Opens the connections, blocking until they are established.
+     *
+     * @param connections Number of connections needed if the server doesn't support HTTP/2,
+     *                    usually the maximum number of concurrent requests
+     * @return Protocol of the connections
+     * @throws IOException If the host can't be reached
+     */
+    public Protocol warm(int connections) throws IOException {
+        Protocol protocol = head();
+        if (protocol == Protocol.HTTP_2 || protocol == Protocol.SPDY_3 || connections <= 1) {
+            return protocol;
+        }
+
+        // The first connection is idle again so all requests but one open a new connection
+        final CountDownLatch done = new CountDownLatch(connections);
+        for (int i = 0; i < connections; i++) {
+            mClient.newCall(request()).enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    Log.d(TAG, "Opening connection failed: " + e.getMessage());
+                    done.countDown();
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) throws IOException {
+                    response.body().close();
+                    done.countDown();
+                }
+            });
+        }
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while opening connections");
+        }
+        return protocol;
+    }
+
+    /**
+     * @return Protocol negotiated by the last warm up, null before the first one
+     */
+    public Protocol getProtocol() {
+        return mProtocol;
+    }
+
+    /**
+     * @return True if the last warm up negotiated a protocol that multiplexes requests over one connection
+     */
+    public boolean isMultiplexed() {
+        return mProtocol == Protocol.HTTP_2 || mProtocol == Protocol.SPDY_3;
+    }
+
+    private Protocol head() throws IOException {
+        Response response = mClient.newCall(request()).execute();
+        response.body().close();
+        mProtocol = response.protocol();
+        return mProtocol;
+    }
+
+    private Request request() {
+        return new Request.Builder().url(mUrl).head().build();
+    }
+}
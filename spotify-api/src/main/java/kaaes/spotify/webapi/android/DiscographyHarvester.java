@@ -0,0 +1,404 @@
+package kaaes.spotify.webapi.android;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import kaaes.spotify.webapi.android.models.Album;
+import kaaes.spotify.webapi.android.models.Albums;
+import kaaes.spotify.webapi.android.models.AudioFeaturesTrack;
+import kaaes.spotify.webapi.android.models.AudioFeaturesTracks;
+import kaaes.spotify.webapi.android.models.Pager;
+import kaaes.spotify.webapi.android.models.Track;
+import kaaes.spotify.webapi.android.models.TrackSimple;
+import retrofit2.Call;
+import retrofit2.Response;
+
+/**
+ * Collects the full discography of artists: all albums, all their tracks and the audio features of the tracks.
+ * <p/>
+ * The stages run as a pipeline on a shared pool of workers. Album IDs are batched into
+ * {@link SpotifyService#getAlbums(String)} requests as soon as the pages of
+ * {@link SpotifyService#getArtistAlbums(String, Map)} arrive, albums with more tracks than
+ * embedded are completed with {@link SpotifyService#getAlbumTracks(String, Map)} and track IDs
+ * are batched into {@link SpotifyService#getTracksAudioFeatures(String)} requests.
+ * All requests go through one {@link RequestRateLimiter} and requests answered with 429 are retried
+ * after the Retry-After delay.
+ * <p/>
+ * Basic usage:
+ * DiscographyHarvester harvester = new DiscographyHarvester(spotify, 4, new RequestRateLimiter(10, 5));
+ * DiscographyHarvester.Discography discography = harvester.harvest("0OdUWJ0sBjDrqHygGUXeCF");
+ * <p/>
+ * The harvest methods block so they must not be called on the main thread.
+ */
+public class DiscographyHarvester {
+
+    /**
+     * Maximum number of IDs accepted by {@link SpotifyService#getAlbums(String)}
+     */
+    static final int ALBUMS_BATCH_SIZE = 20;
+
+    /**
+     * Maximum number of IDs accepted by {@link SpotifyService#getTracksAudioFeatures(String)}
+     */
+    static final int FEATURES_BATCH_SIZE = 100;
+
+    static final int PAGE_SIZE = 50;
+
+    private static final QueryOptions ALBUM_TRACKS_PAGE = QueryOptions.page(0, PAGE_SIZE);
+
+    private static final int MAX_RETRIES = 5;
+
+    /**
+     * Albums, tracks and audio features of one artist
+     */
+    public static class Discography {
+        public final String artistId;
+        public final List<Album> albums = new ArrayList<>();
+        public final List<TrackSimple> tracks = new ArrayList<>();
+        public final List<AudioFeaturesTrack> audioFeatures = new ArrayList<>();
+
+        Discography(String artistId) {
+            this.artistId = artistId;
+        }
+    }
+
+    private final SpotifyService mSpotifyService;
+    private final int mMaxConcurrentRequests;
+    private final RequestRateLimiter mRateLimiter;
+    private QueryOptions mAlbumOptions = QueryOptions.page(0, PAGE_SIZE);
+
+    private int mRequests;
+    private long mElapsedMs;
+
+    /**
+     * @param spotifyService        Service used for the requests
+     * @param maxConcurrentRequests Maximum number of requests in flight at the same time
+     * @param rateLimiter           Limiter shared with other bulk jobs or null for no limit
+     */
+    public DiscographyHarvester(SpotifyService spotifyService, int maxConcurrentRequests, RequestRateLimiter rateLimiter) {
+        mSpotifyService = spotifyService;
+        mMaxConcurrentRequests = maxConcurrentRequests;
+        mRateLimiter = rateLimiter;
+    }
+
+    /**
+     * @param options Options for {@link SpotifyService#getArtistAlbums(String, Map)}, for example
+     *                album types and market. Paging options are set by the harvester.
+     */
+    public void setAlbumOptions(Map<String, Object> options) {
+        mAlbumOptions = QueryOptions.of(options).withLimit(PAGE_SIZE);
+    }
+
+    /**
+     * @param artistId Spotify ID of the artist
+     * @return The discography of the artist
+     * @throws IOException          If a request fails
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public Discography harvest(String artistId) throws IOException, InterruptedException {
+        return harvest(Collections.singletonList(artistId)).get(artistId);
+    }
+
+    /**
+     * Collects the discographies of several artists in one pipeline so
+     * the request batches are filled with albums and tracks of all of them.
+     * Albums appearing in more than one discography are assigned to the first artist.
+     *
+     * @param artistIds Spotify IDs of the artists
+     * @return The discographies by artist ID in the order of the IDs
+     * @throws IOException          If a request fails
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public Map<String, Discography> harvest(List<String> artistIds) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Harvest harvest = new Harvest(artistIds);
+        try {
+            return harvest.await();
+        } finally {
+            synchronized (this) {
+                mRequests += harvest.mRequests;
+                mElapsedMs += TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * @return Number of requests made by all harvests
+     */
+    public synchronized int getRequestCount() {
+        return mRequests;
+    }
+
+    /**
+     * @return Requests per second over all harvests
+     */
+    public synchronized float getRequestsPerSecond() {
+        return mElapsedMs == 0 ? 0 : mRequests * 1000f / mElapsedMs;
+    }
+
+    /**
+     * State of one call to {@link #harvest(List)}, guarded by its own monitor
+     */
+    private class Harvest {
+        private final ExecutorService mWorkers = Executors.newFixedThreadPool(mMaxConcurrentRequests);
+        private final Map<String, Discography> mDiscographies = new LinkedHashMap<>();
+        private final Map<String, Discography> mAlbumOwners = new HashMap<>();
+        private final Map<String, Integer> mAlbumPositions = new HashMap<>();
+        private final Map<String, Discography> mTrackOwners = new HashMap<>();
+        private final Map<String, Album> mAlbums = new HashMap<>();
+        private final List<String> mAlbumBatch = new ArrayList<>();
+        private final List<String> mTrackBatch = new ArrayList<>();
+        private int mPending;
+        private int mRequests;
+        private IOException mError;
+
+        Harvest(List<String> artistIds) {
+            synchronized (this) {
+                for (String artistId : artistIds) {
+                    final Discography discography = new Discography(artistId);
+                    mDiscographies.put(artistId, discography);
+                    submit(new Task() {
+                        @Override
+                        public void run() throws IOException, InterruptedException {
+                            fetchArtistAlbums(discography, 0);
+                        }
+                    });
+                }
+            }
+        }
+
+        synchronized Map<String, Discography> await() throws IOException, InterruptedException {
+            try {
+                while (mPending > 0 && mError == null) {
+                    wait();
+                }
+            } finally {
+                mWorkers.shutdownNow();
+            }
+            if (mError != null) {
+                throw mError;
+            }
+
+            // Pages arrive in any order, restore the order of the albums and their tracks
+            for (Discography discography : mDiscographies.values()) {
+                Collections.sort(discography.albums, new Comparator<Album>() {
+                    @Override
+                    public int compare(Album lhs, Album rhs) {
+                        return mAlbumPositions.get(lhs.id) - mAlbumPositions.get(rhs.id);
+                    }
+                });
+                for (Album album : discography.albums) {
+                    Collections.sort(album.tracks.items, TRACK_ORDER);
+                    discography.tracks.addAll(album.tracks.items);
+                }
+            }
+            return mDiscographies;
+        }
+
+        private void fetchArtistAlbums(final Discography discography, int offset) throws IOException, InterruptedException {
+            Pager<Album> page = execute(mSpotifyService.getArtistAlbums(discography.artistId, mAlbumOptions.withOffset(offset)));
+
+            synchronized (this) {
+                // The first page tells how many there are, the remaining pages are fetched in parallel
+                if (offset == 0) {
+                    for (int next = PAGE_SIZE; next < page.total; next += PAGE_SIZE) {
+                        final int nextOffset = next;
+                        submit(new Task() {
+                            @Override
+                            public void run() throws IOException, InterruptedException {
+                                fetchArtistAlbums(discography, nextOffset);
+                            }
+                        });
+                    }
+                }
+                for (int i = 0; i < page.items.size(); i++) {
+                    Album album = page.items.get(i);
+                    if (!mAlbumOwners.containsKey(album.id)) {
+                        mAlbumOwners.put(album.id, discography);
+                        mAlbumPositions.put(album.id, offset + i);
+                        mAlbumBatch.add(album.id);
+                    }
+                }
+                submitAlbumBatches(ALBUMS_BATCH_SIZE);
+            }
+        }
+
+        private void fetchAlbums(List<String> albumIds) throws IOException, InterruptedException {
+            Albums albums = execute(mSpotifyService.getAlbums(join(albumIds)));
+
+            synchronized (this) {
+                for (final Album album : albums.albums) {
+                    if (album == null || album.tracks == null) continue;
+
+                    mAlbums.put(album.id, album);
+                    Discography discography = mAlbumOwners.get(album.id);
+                    discography.albums.add(album);
+                    addTracks(discography, album.tracks.items);
+
+                    for (int next = album.tracks.items.size(); next < album.tracks.total; next += PAGE_SIZE) {
+                        final int offset = next;
+                        submit(new Task() {
+                            @Override
+                            public void run() throws IOException, InterruptedException {
+                                fetchAlbumTracks(album.id, offset);
+                            }
+                        });
+                    }
+                }
+                submitTrackBatches(FEATURES_BATCH_SIZE);
+            }
+        }
+
+        private void fetchAlbumTracks(String albumId, int offset) throws IOException, InterruptedException {
+            Pager<Track> page = execute(mSpotifyService.getAlbumTracks(albumId, ALBUM_TRACKS_PAGE.withOffset(offset)));
+
+            synchronized (this) {
+                Album album = mAlbums.get(albumId);
+                album.tracks.items.addAll(page.items);
+                addTracks(mAlbumOwners.get(albumId), page.items);
+                submitTrackBatches(FEATURES_BATCH_SIZE);
+            }
+        }
+
+        private void fetchAudioFeatures(List<String> trackIds) throws IOException, InterruptedException {
+            AudioFeaturesTracks features = execute(mSpotifyService.getTracksAudioFeatures(join(trackIds)));
+
+            synchronized (this) {
+                for (AudioFeaturesTrack track : features.audio_features) {
+                    if (track != null) {
+                        mTrackOwners.get(track.id).audioFeatures.add(track);
+                    }
+                }
+            }
+        }
+
+        private void addTracks(Discography discography, List<? extends TrackSimple> tracks) {
+            for (TrackSimple track : tracks) {
+                if (track.id != null && !mTrackOwners.containsKey(track.id)) {
+                    mTrackOwners.put(track.id, discography);
+                    mTrackBatch.add(track.id);
+                }
+            }
+        }
+
+        private void submitAlbumBatches(int minSize) {
+            while (mAlbumBatch.size() >= minSize && !mAlbumBatch.isEmpty()) {
+                final List<String> batch = take(mAlbumBatch, ALBUMS_BATCH_SIZE);
+                submit(new Task() {
+                    @Override
+                    public void run() throws IOException, InterruptedException {
+                        fetchAlbums(batch);
+                    }
+                });
+            }
+        }
+
+        private void submitTrackBatches(int minSize) {
+            while (mTrackBatch.size() >= minSize && !mTrackBatch.isEmpty()) {
+                final List<String> batch = take(mTrackBatch, FEATURES_BATCH_SIZE);
+                submit(new Task() {
+                    @Override
+                    public void run() throws IOException, InterruptedException {
+                        fetchAudioFeatures(batch);
+                    }
+                });
+            }
+        }
+
+        private synchronized void submit(final Task task) {
+            mPending++;
+            mWorkers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    IOException error = null;
+                    try {
+                        task.run();
+                    } catch (IOException e) {
+                        error = e;
+                    } catch (InterruptedException e) {
+                        error = new IOException("Interrupted");
+                    }
+                    finish(error);
+                }
+            });
+        }
+
+        private synchronized void finish(IOException error) {
+            mPending--;
+            if (error != null && mError == null) {
+                mError = error;
+            }
+            // Partial batches are sent once nothing else can fill them up
+            if (mPending == 0 && mError == null) {
+                submitAlbumBatches(1);
+            }
+            if (mPending == 0 && mError == null) {
+                submitTrackBatches(1);
+            }
+            notifyAll();
+        }
+
+        private <T> T execute(Call<T> call) throws IOException, InterruptedException {
+            for (int attempt = 0; ; attempt++) {
+                if (mRateLimiter != null) {
+                    mRateLimiter.acquire();
+                }
+                synchronized (this) {
+                    mRequests++;
+                }
+
+                Response<T> response = call.execute();
+                if (response.isSuccessful()) {
+                    return response.body();
+                }
+                if (response.code() != 429 || attempt == MAX_RETRIES) {
+                    throw new IOException("Request failed with " + response.code() + ": " + call.request().url());
+                }
+                if (mRateLimiter != null) {
+                    mRateLimiter.pause(RequestRateLimiter.retryAfterSeconds(response), TimeUnit.SECONDS);
+                } else {
+                    TimeUnit.SECONDS.sleep(RequestRateLimiter.retryAfterSeconds(response));
+                }
+                call = call.clone();
+            }
+        }
+    }
+
+    private static final Comparator<TrackSimple> TRACK_ORDER = new Comparator<TrackSimple>() {
+        @Override
+        public int compare(TrackSimple lhs, TrackSimple rhs) {
+            if (lhs.disc_number != rhs.disc_number) {
+                return lhs.disc_number - rhs.disc_number;
+            }
+            return lhs.track_number - rhs.track_number;
+        }
+    };
+
+    private interface Task {
+        void run() throws IOException, InterruptedException;
+    }
+
+    private static List<String> take(List<String> batch, int size) {
+        List<String> taken = new ArrayList<>(batch.subList(0, Math.min(size, batch.size())));
+        batch.subList(0, taken.size()).clear();
+        return taken;
+    }
+
+    private static String join(List<String> ids) {
+        StringBuilder builder = new StringBuilder();
+        for (String id : ids) {
+            if (builder.length() > 0) builder.append(',');
+            builder.append(id);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,188 @@
+package kaaes.spotify.webapi.android;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.Request;
+import retrofit2.http.DELETE;
+import retrofit2.http.GET;
+import retrofit2.http.POST;
+import retrofit2.http.PUT;
+
+/**
+ * Path of an endpoint as written in {@link SpotifyService}, for example
+ * "/v1/users/{user_id}/playlists/{playlist_id}". Each {@code {name}}
+ * segment matches any single path segment.
+ */
+class EndpointTemplate {
+
+    private static final String OTHER_ENDPOINT = "other";
+
+    /**
+     * Distinct request paths whose endpoint is remembered, ids make most paths unique
+     */
+    private static final int MAX_RESOLVED_PATHS = 512;
+
+    private static List<EndpointTemplate> sServiceEndpoints;
+
+    private static final Map<String, EndpointTemplate> sResolvedPaths = new LinkedHashMap<String, EndpointTemplate>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, EndpointTemplate> eldest) {
+            return size() > MAX_RESOLVED_PATHS;
+        }
+    };
+
+    private final String mTemplate;
+    private final String[] mSegments;
+
+    EndpointTemplate(String template) {
+        mTemplate = template;
+        mSegments = split(template);
+    }
+
+    boolean matches(String path) {
+        return matches(split(path));
+    }
+
+    private boolean matches(String[] segments) {
+        if (segments.length != mSegments.length) return false;
+
+        for (int i = 0; i < segments.length; i++) {
+            if (!isPlaceholder(mSegments[i]) && !mSegments[i].equals(segments[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Number of segments that aren't placeholders, templates with more of them are more specific
+     */
+    int getLiteralCount() {
+        int count = 0;
+        for (String segment : mSegments) {
+            if (!isPlaceholder(segment)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Finds the endpoint of {@link SpotifyService} a request path belongs to. Endpoints that only
+     * differ in the names of their placeholders or in the query are treated as one. Recently
+     * resolved paths are remembered so repeated requests don't scan every endpoint again.
+     *
+     * @param path Path of the request, for example "/v1/albums/0sNOF9WDwhWunNAHPD3Baj"
+     * @return The most specific matching endpoint, null if there is none
+     */
+    static EndpointTemplate ofService(String path) {
+        synchronized (sResolvedPaths) {
+            if (sResolvedPaths.containsKey(path)) return sResolvedPaths.get(path);
+        }
+
+        EndpointTemplate best = findServiceEndpoint(path);
+        synchronized (sResolvedPaths) {
+            sResolvedPaths.put(path, best);
+        }
+        return best;
+    }
+
+    private static EndpointTemplate findServiceEndpoint(String path) {
+        String[] segments = split(path);
+        EndpointTemplate best = null;
+        for (EndpointTemplate template : serviceEndpoints()) {
+            if (template.matches(segments) && (best == null || template.getLiteralCount() > best.getLiteralCount())) {
+                best = template;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return Method and path of the endpoint of {@link SpotifyService} the request belongs to,
+     * for example "GET /v1/albums/{id}", or "other" if it doesn't belong to any
+     */
+    static String nameOf(Request request) {
+        EndpointTemplate template = ofService(request.url().encodedPath());
+        return request.method() + " " + (template != null ? template : OTHER_ENDPOINT);
+    }
+
+    private static synchronized List<EndpointTemplate> serviceEndpoints() {
+        if (sServiceEndpoints != null) return sServiceEndpoints;
+
+        List<EndpointTemplate> endpoints = new ArrayList<>();
+        for (Method method : SpotifyService.class.getMethods()) {
+            String path = pathOf(method);
+            if (path == null) continue;
+
+            EndpointTemplate template = new EndpointTemplate(path.split("\\?")[0]);
+            boolean known = false;
+            for (EndpointTemplate endpoint : endpoints) {
+                known |= endpoint.hasShapeOf(template);
+            }
+            if (!known) {
+                endpoints.add(template);
+            }
+        }
+        sServiceEndpoints = endpoints;
+        return endpoints;
+    }
+
+    private static String pathOf(Method method) {
+        if (method.isAnnotationPresent(GET.class)) return method.getAnnotation(GET.class).value();
+        if (method.isAnnotationPresent(POST.class)) return method.getAnnotation(POST.class).value();
+        if (method.isAnnotationPresent(PUT.class)) return method.getAnnotation(PUT.class).value();
+        if (method.isAnnotationPresent(DELETE.class)) return method.getAnnotation(DELETE.class).value();
+        return null;
+    }
+
+    private boolean hasShapeOf(EndpointTemplate other) {
+        if (mSegments.length != other.mSegments.length) return false;
+
+        for (int i = 0; i < mSegments.length; i++) {
+            boolean placeholder = isPlaceholder(mSegments[i]);
+            if (placeholder != isPlaceholder(other.mSegments[i])
+                    || !placeholder && !mSegments[i].equals(other.mSegments[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof EndpointTemplate && mTemplate.equals(((EndpointTemplate) o).mTemplate);
+    }
+
+    @Override
+    public int hashCode() {
+        return mTemplate.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return mTemplate;
+    }
+
+    private static boolean isPlaceholder(String segment) {
+        return segment.startsWith("{") && segment.endsWith("}");
+    }
+
+    private static String[] split(String path) {
+        int queryStart = path.indexOf('?');
+        if (queryStart >= 0) {
+            path = path.substring(0, queryStart);
+        }
+        while (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        while (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        return path.isEmpty() ? new String[0] : path.split("/");
+    }
+}
@@ -0,0 +1,82 @@
+package kaaes.spotify.webapi.android;
+
+import java.util.List;
+
+import kaaes.spotify.webapi.android.models.Image;
+
+/**
+ * Helpers for picking the right {@link Image} out of the lists returned with
+ * albums, artists, playlists and categories.
+ * <p/>
+ * The Web API usually returns several sizes of the same image, the largest one first.
+ * Loading that one into a thumbnail wastes bandwidth and memory, for example:
+ * Image image = Images.getSmallestCovering(album.images, 180, 180);
+ */
+public final class Images {
+
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private Images() {
+    }
+
+    /**
+     * Picks the smallest image that is at least as big as the requested size.
+     * If none of the images is big enough the largest one is returned. Images
+     * of unknown size are only returned when there is no image with a known size.
+     *
+     * @param images   List of images, may be null
+     * @param widthPx  Target width in pixels
+     * @param heightPx Target height in pixels
+     * @return The best matching image or null if the list is null or empty
+     */
+    public static Image getSmallestCovering(List<Image> images, int widthPx, int heightPx) {
+        if (images == null || images.isEmpty()) return null;
+
+        Image covering = null;
+        Image largest = null;
+        Image unknown = null;
+        for (int i = 0; i < images.size(); i++) {
+            Image image = images.get(i);
+            if (image == null) continue;
+            if (!hasSize(image)) {
+                if (unknown == null) unknown = image;
+                continue;
+            }
+            if (image.width >= widthPx && image.height >= heightPx
+                    && (covering == null || area(image) < area(covering))) {
+                covering = image;
+            }
+            if (largest == null || area(image) > area(largest)) {
+                largest = image;
+            }
+        }
+
+        if (covering != null) return covering;
+        return largest != null ? largest : unknown;
+    }
+
+    /**
+     * @param images List of images, may be null
+     * @return The image with the most pixels, the first image if no sizes are known
+     * or null if the list is null or empty
+     */
+    public static Image getLargest(List<Image> images) {
+        return getSmallestCovering(images, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param image The image
+     * @return Memory needed to hold the image decoded as ARGB_8888 in bytes or 0 if the size is unknown
+     */
+    public static long getDecodedByteCount(Image image) {
+        return image != null && hasSize(image) ? area(image) * BYTES_PER_PIXEL : 0;
+    }
+
+    private static boolean hasSize(Image image) {
+        return image.width != null && image.height != null;
+    }
+
+    private static long area(Image image) {
+        return (long) image.width * image.height;
+    }
+}
@@ -0,0 +1,112 @@
+package kaaes.spotify.webapi.android;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * List with the size of a whole pager that holds only the first page at first and
+ * loads the other pages on first access. Loading blocks, so items past the loaded range
+ * must not be accessed on the main thread. Iterating, parceling or serializing
+ * the list loads all pages.
+ * <p/>
+ * Each page is loaded at most once. If items were removed since the first page was loaded,
+ * a page may come back shorter than requested. Accessing the items missing from it throws
+ * a {@link PageLoadException}; the page isn't loaded again.
+ *
+ * @param <T> Type of the items
+ */
+public class LazyPagedList<T> extends AbstractList<T> {
+
+    /**
+     * Loads one page of items
+     */
+    public interface PageLoader<T> {
+        List<? extends T> load(int offset, int limit) throws IOException;
+    }
+
+    /**
+     * Thrown from {@link #get(int)} when a page can't be loaded
+     */
+    public static class PageLoadException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        PageLoadException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    private final Object[] mItems;
+    /**
+     * Items of the pages loaded so far, set even if the page had fewer items than requested
+     */
+    private final BitSet mLoaded;
+    private final BitSet mMissing;
+    private final int mFirstPageSize;
+    private final int mPageSize;
+    private final PageLoader<T> mLoader;
+
+    /**
+     * @param firstPage Items of the first page
+     * @param total     Number of items of all pages
+     * @param pageSize  Number of items loaded at once
+     * @param loader    Loads the other pages
+     */
+    public LazyPagedList(List<? extends T> firstPage, int total, int pageSize, PageLoader<T> loader) {
+        mItems = new Object[Math.max(total, firstPage.size())];
+        mLoaded = new BitSet(mItems.length);
+        mMissing = new BitSet(mItems.length);
+        mFirstPageSize = firstPage.size();
+        mPageSize = pageSize;
+        mLoader = loader;
+        for (int i = 0; i < firstPage.size(); i++) {
+            mItems[i] = firstPage.get(i);
+        }
+        mLoaded.set(0, firstPage.size());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized T get(int index) {
+        if (index < 0 || index >= mItems.length) {
+            throw new IndexOutOfBoundsException("Index " + index + " of " + mItems.length);
+        }
+        if (!mLoaded.get(index)) {
+            loadPage(mFirstPageSize + (index - mFirstPageSize) / mPageSize * mPageSize);
+        }
+        if (mMissing.get(index)) {
+            throw new PageLoadException("Item " + index + " is missing, the page was shorter than requested", null);
+        }
+        return (T) mItems[index];
+    }
+
+    @Override
+    public int size() {
+        return mItems.length;
+    }
+
+    /**
+     * @return Number of items loaded so far
+     */
+    public synchronized int getLoadedCount() {
+        return mLoaded.cardinality() - mMissing.cardinality();
+    }
+
+    private void loadPage(int offset) {
+        List<? extends T> page;
+        try {
+            page = mLoader.load(offset, mPageSize);
+        } catch (IOException e) {
+            throw new PageLoadException("Loading items from " + offset + " failed", e);
+        }
+
+        int end = Math.min(offset + mPageSize, mItems.length);
+        int count = Math.min(page.size(), end - offset);
+        for (int i = 0; i < count; i++) {
+            mItems[offset + i] = page.get(i);
+        }
+        mLoaded.set(offset, end);
+        mMissing.set(offset + count, end);
+    }
+}
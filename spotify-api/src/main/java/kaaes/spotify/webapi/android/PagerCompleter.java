@@ -0,0 +1,298 @@
+package kaaes.spotify.webapi.android;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import kaaes.spotify.webapi.android.models.Album;
+import kaaes.spotify.webapi.android.models.Albums;
+import kaaes.spotify.webapi.android.models.Pager;
+import kaaes.spotify.webapi.android.models.Playlist;
+import kaaes.spotify.webapi.android.models.PlaylistTrack;
+import kaaes.spotify.webapi.android.models.Track;
+import kaaes.spotify.webapi.android.models.TrackSimple;
+import retrofit2.Call;
+import retrofit2.Response;
+
+/**
+ * Completes the pagers embedded in {@link Album#tracks} and {@link Playlist#tracks},
+ * which only hold the first page, so that they contain all items.
+ * <p/>
+ * The remaining pages are computed from {@link Pager#total} and fetched in parallel with
+ * {@link SpotifyService#getAlbumTracks(String, Map)} and {@link SpotifyService#getPlaylistTracks(String, String, Map)}.
+ * The lazy variants instead replace the items with a {@link LazyPagedList} which fetches a page
+ * the first time an item in it is accessed.
+ * <p/>
+ * A completed pager describes all of its items as one page: {@link Pager#next} is null,
+ * {@link Pager#offset} is 0 and {@link Pager#limit} is the number of items.
+ * <p/>
+ * Basic usage:
+ * PagerCompleter completer = new PagerCompleter(spotify, 4);
+ * Playlist playlist = completer.getPlaylist(userId, playlistId, options);
+ * <p/>
+ * All methods block so they must not be called on the main thread.
+ */
+public class PagerCompleter {
+
+    public static final int ALBUM_TRACKS_PAGE_SIZE = 50;
+    public static final int PLAYLIST_TRACKS_PAGE_SIZE = 100;
+
+    private final SpotifyService mSpotifyService;
+    private final ThreadPoolExecutor mExecutor;
+
+    /**
+     * @param spotifyService        Service used for the requests
+     * @param maxConcurrentRequests Maximum number of pages fetched at the same time
+     */
+    public PagerCompleter(SpotifyService spotifyService, int maxConcurrentRequests) {
+        mSpotifyService = spotifyService;
+        mExecutor = new ThreadPoolExecutor(maxConcurrentRequests, maxConcurrentRequests,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Like {@link SpotifyService#getAlbum(String, Map)} with all tracks.
+     *
+     * @param albumId The Spotify ID for the album.
+     * @param options Optional parameters, also used for the track pages. For list of supported parameters see
+     *                <a href="https://developer.spotify.com/web-api/get-album/">endpoint documentation</a>
+     * @return The album with all tracks
+     * @throws IOException If a request fails
+     */
+    public Album getAlbum(String albumId, Map<String, Object> options) throws IOException {
+        Album album = execute(mSpotifyService.getAlbum(albumId, options));
+        complete(album, options);
+        return album;
+    }
+
+    /**
+     * Like {@link SpotifyService#getAlbums(String, Map)} with all tracks of every album.
+     *
+     * @param albumIds A comma-separated list of the Spotify IDs for the albums
+     * @param options  Optional parameters, also used for the track pages. For list of supported parameters see
+     *                 <a href="https://developer.spotify.com/web-api/get-several-albums/">endpoint documentation</a>
+     * @return The albums with all tracks
+     * @throws IOException If a request fails
+     */
+    public Albums getAlbums(String albumIds, Map<String, Object> options) throws IOException {
+        Albums albums = execute(mSpotifyService.getAlbums(albumIds, options));
+        List<PageRequest<?>> requests = new ArrayList<>();
+        for (Album album : albums.albums) {
+            if (album != null) {
+                requests.addAll(albumPages(album, options));
+            }
+        }
+        fetch(requests);
+        for (Album album : albums.albums) {
+            if (album != null) {
+                markComplete(album.tracks);
+            }
+        }
+        return albums;
+    }
+
+    /**
+     * Like {@link SpotifyService#getPlaylist(String, String, Map)} with all tracks.
+     *
+     * @param userId     The playlist's owner's user ID
+     * @param playlistId The playlist's ID
+     * @param options    Optional parameters, the market is also used for the track pages. For list of supported parameters see
+     *                   <a href="https://developer.spotify.com/web-api/get-playlist/">endpoint documentation</a>
+     * @return The playlist with all tracks
+     * @throws IOException If a request fails
+     */
+    public Playlist getPlaylist(String userId, String playlistId, Map<String, Object> options) throws IOException {
+        Playlist playlist = execute(mSpotifyService.getPlaylist(userId, playlistId, options));
+        complete(playlist, options);
+        return playlist;
+    }
+
+    /**
+     * Fetches the missing tracks of an album.
+     *
+     * @param album   Album returned by {@link SpotifyService}
+     * @param options Optional parameters for {@link SpotifyService#getAlbumTracks(String, Map)}, may be null
+     * @throws IOException If a request fails
+     */
+    public void complete(Album album, Map<String, Object> options) throws IOException {
+        fetch(albumPages(album, options));
+        markComplete(album.tracks);
+    }
+
+    /**
+     * Fetches the missing tracks of a playlist.
+     *
+     * @param playlist Playlist returned by {@link SpotifyService}
+     * @param options  Optional parameters for {@link SpotifyService#getPlaylistTracks(String, String, Map)}, may be null
+     * @throws IOException If a request fails
+     */
+    public void complete(Playlist playlist, Map<String, Object> options) throws IOException {
+        fetch(playlistPages(playlist, options));
+        markComplete(playlist.tracks);
+    }
+
+    /**
+     * Makes the tracks of an album fetch missing pages on first access.
+     *
+     * @param album   Album returned by {@link SpotifyService}
+     * @param options Optional parameters for {@link SpotifyService#getAlbumTracks(String, Map)}, may be null
+     */
+    public void completeLazily(final Album album, final Map<String, Object> options) {
+        if (album.tracks == null || album.tracks.items.size() >= album.tracks.total) return;
+
+        final QueryOptions pageOptions = pageOptions(options);
+        album.tracks.items = new LazyPagedList<>(album.tracks.items, album.tracks.total, ALBUM_TRACKS_PAGE_SIZE,
+                new LazyPagedList.PageLoader<TrackSimple>() {
+                    @Override
+                    public List<? extends TrackSimple> load(int offset, int limit) throws IOException {
+                        return execute(mSpotifyService.getAlbumTracks(album.id, pageOptions.withLimit(limit).withOffset(offset))).items;
+                    }
+                });
+        markComplete(album.tracks);
+    }
+
+    /**
+     * Makes the tracks of a playlist fetch missing pages on first access.
+     *
+     * @param playlist Playlist returned by {@link SpotifyService}
+     * @param options  Optional parameters for {@link SpotifyService#getPlaylistTracks(String, String, Map)}, may be null
+     */
+    public void completeLazily(final Playlist playlist, final Map<String, Object> options) {
+        if (playlist.tracks == null || playlist.tracks.items.size() >= playlist.tracks.total) return;
+
+        final QueryOptions pageOptions = pageOptions(options);
+        playlist.tracks.items = new LazyPagedList<>(playlist.tracks.items, playlist.tracks.total, PLAYLIST_TRACKS_PAGE_SIZE,
+                new LazyPagedList.PageLoader<PlaylistTrack>() {
+                    @Override
+                    public List<? extends PlaylistTrack> load(int offset, int limit) throws IOException {
+                        return execute(mSpotifyService.getPlaylistTracks(playlist.owner.id, playlist.id,
+                                pageOptions.withLimit(limit).withOffset(offset))).items;
+                    }
+                });
+        markComplete(playlist.tracks);
+    }
+
+    /**
+     * One missing page and the list its items go to
+     */
+    private static class PageRequest<T> implements Callable<Void> {
+        final List<? super T> target;
+        final Call<? extends Pager<? extends T>> call;
+        Future<Void> result;
+        List<? extends T> items;
+
+        PageRequest(List<? super T> target, Call<? extends Pager<? extends T>> call) {
+            this.target = target;
+            this.call = call;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            items = execute(call).items;
+            return null;
+        }
+
+        void append() {
+            target.addAll(items);
+        }
+
+        void cancel() {
+            result.cancel(true);
+            call.cancel();
+        }
+    }
+
+    private List<PageRequest<?>> albumPages(Album album, Map<String, Object> options) {
+        if (album.tracks == null) return Collections.emptyList();
+
+        QueryOptions firstPage = pageOptions(options).withLimit(ALBUM_TRACKS_PAGE_SIZE);
+        List<PageRequest<?>> requests = new ArrayList<>();
+        for (int offset = album.tracks.items.size(); offset < album.tracks.total; offset += ALBUM_TRACKS_PAGE_SIZE) {
+            requests.add(new PageRequest<Track>(album.tracks.items,
+                    mSpotifyService.getAlbumTracks(album.id, firstPage.withOffset(offset))));
+        }
+        return requests;
+    }
+
+    private List<PageRequest<?>> playlistPages(Playlist playlist, Map<String, Object> options) {
+        if (playlist.tracks == null) return Collections.emptyList();
+
+        QueryOptions firstPage = pageOptions(options).withLimit(PLAYLIST_TRACKS_PAGE_SIZE);
+        List<PageRequest<?>> requests = new ArrayList<>();
+        for (int offset = playlist.tracks.items.size(); offset < playlist.tracks.total; offset += PLAYLIST_TRACKS_PAGE_SIZE) {
+            requests.add(new PageRequest<PlaylistTrack>(playlist.tracks.items,
+                    mSpotifyService.getPlaylistTracks(playlist.owner.id, playlist.id, firstPage.withOffset(offset))));
+        }
+        return requests;
+    }
+
+    /**
+     * Fetches the pages in parallel and appends them in order once all arrived.
+     * The first failing page cancels the others.
+     */
+    private void fetch(List<PageRequest<?>> requests) throws IOException {
+        CompletionService<Void> completion = new ExecutorCompletionService<>(mExecutor);
+        for (PageRequest<?> request : requests) {
+            request.result = completion.submit(request);
+        }
+        boolean done = false;
+        try {
+            for (int i = 0; i < requests.size(); i++) {
+                completion.take().get();
+            }
+            done = true;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted", e);
+        } finally {
+            if (!done) {
+                for (PageRequest<?> request : requests) {
+                    request.cancel();
+                }
+            }
+        }
+        for (PageRequest<?> request : requests) {
+            request.append();
+        }
+    }
+
+    private static void markComplete(Pager<?> pager) {
+        if (pager == null) return;
+        pager.next = null;
+        pager.offset = 0;
+        pager.limit = pager.items.size();
+    }
+
+    /**
+     * Only the market applies to the pages, the other options are for the album or playlist itself
+     */
+    private static QueryOptions pageOptions(Map<String, Object> options) {
+        if (options != null && options.containsKey(SpotifyService.MARKET)) {
+            return QueryOptions.NONE.withMarket(String.valueOf(options.get(SpotifyService.MARKET)));
+        }
+        return QueryOptions.NONE;
+    }
+
+    private static <T> T execute(Call<T> call) throws IOException {
+        Response<T> response = call.execute();
+        if (!response.isSuccessful()) {
+            throw new IOException("Request failed with " + response.code() + ": " + call.request().url());
+        }
+        return response.body();
+    }
+}
@@ -0,0 +1,446 @@
+package kaaes.spotify.webapi.android;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+/**
+ * Call factory running calls by priority instead of in the order they were made, so that
+ * interactive calls don't wait behind the pages of a background sync.
+ * <p/>
+ * At most {@code maxRequests} calls, synchronous or not, run at the same time and part of them is
+ * reserved for {@link #PRIORITY_INTERACTIVE} calls. A call keeps its slot while its body downloads:
+ * an enqueued call until its callback returns, an executed call until its response body is closed. Waiting calls start highest priority first and
+ * in order within a priority. OkHttp's dispatcher can't be configured this way so calls are queued
+ * here and run on the factory's own threads.
+ * <p/>
+ * The priority of a call is the one of the factory that created it, see {@link #withPriority(int)}
+ * and {@link SpotifyApi#getService(int)}, or the one passed to {@link #enqueue(retrofit2.Call, int, retrofit2.Callback)}.
+ */
+public class PriorityCallFactory implements Call.Factory {
+
+    public static final int PRIORITY_INTERACTIVE = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    public static final int PRIORITY_BULK = 2;
+
+    /**
+     * Same as OkHttp's default limit of requests per host
+     */
+    public static final int DEFAULT_MAX_REQUESTS = 5;
+    public static final int DEFAULT_RESERVED_INTERACTIVE = 1;
+
+    private static final String TAG = PriorityCallFactory.class.getSimpleName();
+
+    private static final int PRIORITY_COUNT = 3;
+
+    private static final ThreadLocal<Integer> sCallPriority = new ThreadLocal<>();
+
+    private final Call.Factory mDelegate;
+    private final Scheduler mScheduler;
+    private final int mPriority;
+
+    /**
+     * @param client Client executing the calls
+     */
+    public PriorityCallFactory(OkHttpClient client) {
+        this(client, DEFAULT_MAX_REQUESTS, DEFAULT_RESERVED_INTERACTIVE);
+    }
+
+    /**
+     * @param delegate            Factory creating the actual calls, usually an {@link OkHttpClient}
+     * @param maxRequests         Maximum number of calls running at the same time
+     * @param reservedInteractive Number of those that only {@link #PRIORITY_INTERACTIVE} calls may use
+     */
+    public PriorityCallFactory(Call.Factory delegate, int maxRequests, int reservedInteractive) {
+        if (reservedInteractive >= maxRequests) {
+            throw new IllegalArgumentException("At least one request must be available to all priorities");
+        }
+        mDelegate = delegate;
+        mScheduler = new Scheduler(maxRequests, reservedInteractive);
+        mPriority = PRIORITY_NORMAL;
+    }
+
+    private PriorityCallFactory(PriorityCallFactory factory, int priority) {
+        mDelegate = factory.mDelegate;
+        mScheduler = factory.mScheduler;
+        mPriority = priority;
+    }
+
+    /**
+     * @param priority One of {@link #PRIORITY_INTERACTIVE}, {@link #PRIORITY_NORMAL} or {@link #PRIORITY_BULK}
+     * @return Factory sharing the queue and the limits with this one that creates calls with the given priority
+     */
+    public PriorityCallFactory withPriority(int priority) {
+        checkPriority(priority);
+        return new PriorityCallFactory(this, priority);
+    }
+
+    /**
+     * Enqueues a call made through a service backed by a {@link PriorityCallFactory} with a specific priority.
+     *
+     * @param call     The call
+     * @param priority One of {@link #PRIORITY_INTERACTIVE}, {@link #PRIORITY_NORMAL} or {@link #PRIORITY_BULK}
+     * @param callback The callback
+     */
+    public static <T> void enqueue(retrofit2.Call<T> call, int priority, retrofit2.Callback<T> callback) {
+        checkPriority(priority);
+        // Retrofit creates the HTTP call inside enqueue on this thread
+        sCallPriority.set(priority);
+        try {
+            call.enqueue(callback);
+        } finally {
+            sCallPriority.remove();
+        }
+    }
+
+    /**
+     * Executes a call made through a service backed by a {@link PriorityCallFactory} with a specific priority.
+     *
+     * @param call     The call
+     * @param priority One of {@link #PRIORITY_INTERACTIVE}, {@link #PRIORITY_NORMAL} or {@link #PRIORITY_BULK}
+     * @return The response
+     * @throws IOException If the call fails
+     */
+    public static <T> retrofit2.Response<T> execute(retrofit2.Call<T> call, int priority) throws IOException {
+        checkPriority(priority);
+        sCallPriority.set(priority);
+        try {
+            return call.execute();
+        } finally {
+            sCallPriority.remove();
+        }
+    }
+
+    @Override
+    public Call newCall(Request request) {
+        Integer priority = sCallPriority.get();
+        return new PriorityCall(mDelegate.newCall(request), priority != null ? priority : mPriority);
+    }
+
+    /**
+     * @param priority One of {@link #PRIORITY_INTERACTIVE}, {@link #PRIORITY_NORMAL} or {@link #PRIORITY_BULK}
+     * @return Average time calls of the priority waited for a free slot in milliseconds
+     */
+    public float getAverageQueueWaitMs(int priority) {
+        return mScheduler.getAverageWaitMs(priority);
+    }
+
+    /**
+     * @param priority One of {@link #PRIORITY_INTERACTIVE}, {@link #PRIORITY_NORMAL} or {@link #PRIORITY_BULK}
+     * @return Longest time a call of the priority waited for a free slot in milliseconds
+     */
+    public long getMaxQueueWaitMs(int priority) {
+        return mScheduler.getMaxWaitMs(priority);
+    }
+
+    /**
+     * @return Number of calls waiting for a free slot
+     */
+    public int getQueuedCallCount() {
+        return mScheduler.getQueuedCount();
+    }
+
+    /**
+     * @return Number of calls running
+     */
+    public int getRunningCallCount() {
+        return mScheduler.getRunningCount();
+    }
+
+    private static void checkPriority(int priority) {
+        if (priority < 0 || priority >= PRIORITY_COUNT) {
+            throw new IllegalArgumentException("Unknown priority " + priority);
+        }
+    }
+
+    /**
+     * A call waiting for or holding a slot
+     */
+    private static class Ticket {
+        final int priority;
+        final long sequence;
+        final long queuedAt = System.nanoTime();
+        final Runnable task;
+        boolean granted;
+
+        Ticket(int priority, long sequence, Runnable task) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.task = task;
+        }
+    }
+
+    /**
+     * Hands out slots to waiting calls, shared by a factory and its priority views
+     */
+    private static class Scheduler {
+        private final int mMaxRequests;
+        private final int mReservedInteractive;
+        private final ThreadPoolExecutor mExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+                60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+        private final PriorityQueue<Ticket> mQueue = new PriorityQueue<>(16, new Comparator<Ticket>() {
+            @Override
+            public int compare(Ticket lhs, Ticket rhs) {
+                if (lhs.priority != rhs.priority) {
+                    return lhs.priority - rhs.priority;
+                }
+                return lhs.sequence < rhs.sequence ? -1 : (lhs.sequence == rhs.sequence ? 0 : 1);
+            }
+        });
+        private long mSequence;
+        private int mRunning;
+
+        private final long[] mWaitSumNanos = new long[PRIORITY_COUNT];
+        private final long[] mWaitMaxNanos = new long[PRIORITY_COUNT];
+        private final int[] mStarted = new int[PRIORITY_COUNT];
+
+        Scheduler(int maxRequests, int reservedInteractive) {
+            mMaxRequests = maxRequests;
+            mReservedInteractive = reservedInteractive;
+        }
+
+        /**
+         * Queues an asynchronous call, the task runs on the scheduler's threads once it gets a slot
+         */
+        synchronized Ticket schedule(int priority, Runnable task) {
+            Ticket ticket = new Ticket(priority, mSequence++, task);
+            mQueue.add(ticket);
+            promote();
+            return ticket;
+        }
+
+        /**
+         * Blocks until a synchronous call gets a slot
+         */
+        synchronized void acquire(int priority) throws InterruptedIOException {
+            Ticket ticket = new Ticket(priority, mSequence++, null);
+            mQueue.add(ticket);
+            promote();
+            try {
+                while (!ticket.granted) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                if (!mQueue.remove(ticket)) {
+                    release();
+                }
+                throw new InterruptedIOException("Interrupted while waiting for a slot");
+            }
+        }
+
+        /**
+         * @return False if the ticket already got a slot
+         */
+        synchronized boolean cancel(Ticket ticket) {
+            return mQueue.remove(ticket);
+        }
+
+        synchronized void release() {
+            mRunning--;
+            promote();
+        }
+
+        synchronized float getAverageWaitMs(int priority) {
+            return mStarted[priority] == 0 ? 0 : mWaitSumNanos[priority] / 1e6f / mStarted[priority];
+        }
+
+        synchronized long getMaxWaitMs(int priority) {
+            return TimeUnit.NANOSECONDS.toMillis(mWaitMaxNanos[priority]);
+        }
+
+        synchronized int getQueuedCount() {
+            return mQueue.size();
+        }
+
+        synchronized int getRunningCount() {
+            return mRunning;
+        }
+
+        private void promote() {
+            while (!mQueue.isEmpty()) {
+                Ticket ticket = mQueue.peek();
+                int limit = ticket.priority == PRIORITY_INTERACTIVE ? mMaxRequests : mMaxRequests - mReservedInteractive;
+                // The head has the highest priority, if it can't start nothing else can
+                if (mRunning >= limit) return;
+
+                mQueue.poll();
+                mRunning++;
+                long wait = System.nanoTime() - ticket.queuedAt;
+                mWaitSumNanos[ticket.priority] += wait;
+                mWaitMaxNanos[ticket.priority] = Math.max(mWaitMaxNanos[ticket.priority], wait);
+                mStarted[ticket.priority]++;
+
+                ticket.granted = true;
+                if (ticket.task != null) {
+                    mExecutor.execute(ticket.task);
+                } else {
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Call that waits for a slot of the scheduler before running the actual call
+     */
+    private class PriorityCall implements Call {
+        private final Call mCall;
+        private final int mCallPriority;
+        private Ticket mTicket;
+        private Callback mCallback;
+        private boolean mExecuted;
+
+        PriorityCall(Call call, int priority) {
+            mCall = call;
+            mCallPriority = priority;
+        }
+
+        @Override
+        public Request request() {
+            return mCall.request();
+        }
+
+        @Override
+        public Response execute() throws IOException {
+            markExecuted();
+            mScheduler.acquire(mCallPriority);
+            Response response;
+            try {
+                response = mCall.execute();
+            } catch (IOException | RuntimeException e) {
+                mScheduler.release();
+                throw e;
+            }
+            if (response == null || response.body() == null) {
+                mScheduler.release();
+                return response;
+            }
+            return response.newBuilder().body(new SlotResponseBody(response.body())).build();
+        }
+
+        @Override
+        public void enqueue(final Callback callback) {
+            markExecuted();
+            synchronized (this) {
+                mCallback = callback;
+                mTicket = mScheduler.schedule(mCallPriority, new Runnable() {
+                    @Override
+                    public void run() {
+                        // The slot is kept until the callback returns, it reads the body
+                        try {
+                            Response response;
+                            try {
+                                response = mCall.execute();
+                            } catch (IOException e) {
+                                callback.onFailure(PriorityCall.this, e);
+                                return;
+                            }
+                            // Outside the try so that an exception of onResponse isn't signalled again as a failure
+                            try {
+                                callback.onResponse(PriorityCall.this, response);
+                            } catch (IOException e) {
+                                Log.d(TAG, "Callback failed: " + e.getMessage());
+                            }
+                        } finally {
+                            mScheduler.release();
+                        }
+                    }
+                });
+            }
+        }
+
+        @Override
+        public void cancel() {
+            mCall.cancel();
+            Ticket ticket;
+            Callback callback;
+            synchronized (this) {
+                ticket = mTicket;
+                callback = mCallback;
+            }
+            if (ticket != null && mScheduler.cancel(ticket)) {
+                callback.onFailure(this, new IOException("Canceled"));
+            }
+        }
+
+        @Override
+        public synchronized boolean isExecuted() {
+            return mExecuted;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return mCall.isCanceled();
+        }
+
+        private synchronized void markExecuted() {
+            if (mExecuted) {
+                throw new IllegalStateException("Already Executed");
+            }
+            mExecuted = true;
+        }
+    }
+
+    /**
+     * Body of an executed call that gives the call's slot back when it's closed
+     */
+    private class SlotResponseBody extends ResponseBody {
+        private final ResponseBody mBody;
+        private BufferedSource mSource;
+        private boolean mReleased;
+
+        SlotResponseBody(ResponseBody body) {
+            mBody = body;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return mBody.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return mBody.contentLength();
+        }
+
+        @Override
+        public synchronized BufferedSource source() {
+            if (mSource == null) {
+                mSource = Okio.buffer(new ForwardingSource(mBody.source()) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            release();
+                        }
+                    }
+                });
+            }
+            return mSource;
+        }
+
+        private synchronized void release() {
+            if (mReleased) return;
+            mReleased = true;
+            mScheduler.release();
+        }
+    }
+}
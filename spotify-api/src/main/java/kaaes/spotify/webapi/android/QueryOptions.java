@@ -0,0 +1,257 @@
+package kaaes.spotify.webapi.android;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Immutable optional parameters for the {@link SpotifyService} methods taking a
+ * {@code Map<String, Object> options}. Values are converted to strings once when set, so the
+ * same instance can be passed to any number of requests without boxing or re-encoding, and the
+ * pages of a listing are derived from each other with {@link #withOffset(int)} or {@link #nextPage()}
+ * which only replace the offset.
+ * <p/>
+ * Basic usage:
+ * QueryOptions page = QueryOptions.page(0, 50).withMarket("SE");
+ * Pager<SavedTrack> tracks;
+ * do {
+ *     tracks = spotify.getMySavedTracks(page).execute().body();
+ *     page = page.nextPage();
+ * } while (tracks.next != null);
+ */
+public final class QueryOptions extends AbstractMap<String, Object> {
+
+    public static final String TIME_RANGE_SHORT_TERM = "short_term";
+    public static final String TIME_RANGE_MEDIUM_TERM = "medium_term";
+    public static final String TIME_RANGE_LONG_TERM = "long_term";
+
+    public static final QueryOptions NONE = new QueryOptions(newEntries(0), 0, 0);
+
+    /**
+     * Kept in insertion order, there are never more than a handful so lookups are linear
+     */
+    private final Entry<String, String>[] mEntries;
+    private final int mOffset;
+    private final int mLimit;
+    private Set<Entry<String, Object>> mEntrySet;
+
+    private QueryOptions(Entry<String, String>[] entries, int offset, int limit) {
+        mEntries = entries;
+        mOffset = offset;
+        mLimit = limit;
+    }
+
+    /**
+     * @param offset Index of the first item
+     * @param limit  Maximum number of items
+     * @return Options for one page of a listing
+     */
+    public static QueryOptions page(int offset, int limit) {
+        return NONE.withLimit(limit).withOffset(offset);
+    }
+
+    /**
+     * @param options Options to copy, may be null
+     * @return The options themselves if they already are {@link QueryOptions}, a copy otherwise
+     */
+    public static QueryOptions of(Map<String, ?> options) {
+        if (options instanceof QueryOptions) {
+            return (QueryOptions) options;
+        }
+        QueryOptions result = NONE;
+        if (options != null) {
+            for (Map.Entry<String, ?> option : options.entrySet()) {
+                result = result.with(option.getKey(), option.getValue());
+            }
+        }
+        return result;
+    }
+
+    public QueryOptions withOffset(int offset) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset must not be negative");
+        }
+        return with(SpotifyService.OFFSET, Integer.toString(offset), offset, mLimit);
+    }
+
+    public QueryOptions withLimit(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        return with(SpotifyService.LIMIT, Integer.toString(limit), mOffset, limit);
+    }
+
+    /**
+     * @param market An ISO 3166-1 alpha-2 country code or {@code from_token}
+     */
+    public QueryOptions withMarket(String market) {
+        return with(SpotifyService.MARKET, market);
+    }
+
+    /**
+     * @param locale Language and country joined by an underscore, for example {@code es_MX}
+     */
+    public QueryOptions withLocale(String locale) {
+        return with(SpotifyService.LOCALE, locale);
+    }
+
+    /**
+     * @param fields Comma separated fields to return, see {@link SpotifyService#FIELDS}
+     */
+    public QueryOptions withFields(String fields) {
+        return with(SpotifyService.FIELDS, fields);
+    }
+
+    /**
+     * @param timeRange One of {@link #TIME_RANGE_SHORT_TERM}, {@link #TIME_RANGE_MEDIUM_TERM}
+     *                  or {@link #TIME_RANGE_LONG_TERM}
+     */
+    public QueryOptions withTimeRange(String timeRange) {
+        return with(SpotifyService.TIME_RANGE, timeRange);
+    }
+
+    /**
+     * Sets any other parameter, such as {@link SpotifyService#ALBUM_TYPE} or a cursor.
+     *
+     * @param name  Parameter name
+     * @param value Parameter value, null removes the parameter
+     * @return Options with the parameter set
+     */
+    public QueryOptions with(String name, Object value) {
+        if (SpotifyService.OFFSET.equals(name) && value != null) {
+            return withOffset(intValue(value));
+        }
+        if (SpotifyService.LIMIT.equals(name) && value != null) {
+            return withLimit(intValue(value));
+        }
+        int offset = SpotifyService.OFFSET.equals(name) ? 0 : mOffset;
+        int limit = SpotifyService.LIMIT.equals(name) ? 0 : mLimit;
+        return with(name, value != null ? value.toString() : null, offset, limit);
+    }
+
+    /**
+     * @return Options for the page following this one
+     * @throws IllegalStateException If no limit is set
+     */
+    public QueryOptions nextPage() {
+        if (mLimit == 0) {
+            throw new IllegalStateException("No limit set");
+        }
+        return withOffset(mOffset + mLimit);
+    }
+
+    /**
+     * @return The offset or 0 if not set
+     */
+    public int getOffset() {
+        return mOffset;
+    }
+
+    /**
+     * @return The limit or 0 if not set
+     */
+    public int getLimit() {
+        return mLimit;
+    }
+
+    @Override
+    public Object get(Object key) {
+        int index = indexOf(key);
+        return index >= 0 ? mEntries[index].getValue() : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return mEntries.length;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        if (mEntrySet == null) {
+            mEntrySet = new EntrySet();
+        }
+        return mEntrySet;
+    }
+
+    private QueryOptions with(String name, String value, int offset, int limit) {
+        int index = indexOf(name);
+        Entry<String, String>[] entries;
+        if (value == null) {
+            if (index < 0) return this;
+            entries = newEntries(mEntries.length - 1);
+            System.arraycopy(mEntries, 0, entries, 0, index);
+            System.arraycopy(mEntries, index + 1, entries, index, entries.length - index);
+        } else if (index < 0) {
+            entries = newEntries(mEntries.length + 1);
+            System.arraycopy(mEntries, 0, entries, 0, mEntries.length);
+            entries[mEntries.length] = new SimpleImmutableEntry<>(name, value);
+        } else {
+            entries = mEntries.clone();
+            entries[index] = new SimpleImmutableEntry<>(name, value);
+        }
+        return new QueryOptions(entries, offset, limit);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Entry<String, String>[] newEntries(int length) {
+        return (Entry<String, String>[]) new Entry<?, ?>[length];
+    }
+
+    private int indexOf(Object key) {
+        for (int i = 0; i < mEntries.length; i++) {
+            if (mEntries[i].getKey().equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int intValue(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        return Integer.parseInt(value.toString());
+    }
+
+    private class EntrySet extends AbstractSet<Entry<String, Object>> {
+
+        @Override
+        public Iterator<Entry<String, Object>> iterator() {
+            return new Iterator<Entry<String, Object>>() {
+                private int mNext;
+
+                @Override
+                public boolean hasNext() {
+                    return mNext < mEntries.length;
+                }
+
+                @Override
+                @SuppressWarnings("unchecked")
+                public Entry<String, Object> next() {
+                    if (mNext == mEntries.length) {
+                        throw new NoSuchElementException();
+                    }
+                    return (Entry<String, Object>) (Entry<String, ?>) mEntries[mNext++];
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return mEntries.length;
+        }
+    }
+}
@@ -0,0 +1,540 @@
+package kaaes.spotify.webapi.android;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import kaaes.spotify.webapi.android.models.CategoriesPager;
+import kaaes.spotify.webapi.android.models.Category;
+import kaaes.spotify.webapi.android.models.FeaturedPlaylists;
+import kaaes.spotify.webapi.android.models.NewReleases;
+import kaaes.spotify.webapi.android.models.SeedsGenres;
+import retrofit2.Call;
+import retrofit2.Response;
+
+/**
+ * Cache for browse and reference data which changes a few times a day at most for a given
+ * {@link SpotifyService#COUNTRY} and {@link SpotifyService#LOCALE}.
+ * <p/>
+ * Responses are keyed by endpoint and options, with {@link SpotifyService#TIMESTAMP} rounded down
+ * to a bucket so that screens asking for "now" share entries. Entries are refreshed in the background
+ * once they are older than a fraction of their time to live and expired entries are served if refreshing
+ * them fails. Concurrent requests for the same entry share one call. The most used keys can be saved
+ * and passed to {@link #warmUp(Collection)} on the next start.
+ * <p/>
+ * Basic usage:
+ * ReferenceDataCache cache = new ReferenceDataCache(spotify);
+ * cache.warmUp(savedKeys);
+ * FeaturedPlaylists featured = cache.getFeaturedPlaylists(options);
+ * ...
+ * savedKeys = cache.getMostUsedKeys(10);
+ * <p/>
+ * The getters block when there is no usable entry so they must not be called on the main thread.
+ */
+public class ReferenceDataCache {
+
+    private static final String TAG = ReferenceDataCache.class.getSimpleName();
+
+    public static final String GENRES = "genres";
+    public static final String CATEGORIES = "categories";
+    public static final String CATEGORY = "category";
+    public static final String FEATURED_PLAYLISTS = "featured-playlists";
+    public static final String NEW_RELEASES = "new-releases";
+
+    public static final long DEFAULT_TIMESTAMP_BUCKET_MS = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * Part of the time to live after which entries are refreshed in the background
+     */
+    public static final float REFRESH_AFTER = 0.8f;
+
+    private static final String TIMESTAMP_FORMAT = "yyyy-MM-dd'T'HH:mm:ss";
+
+    /**
+     * Least recently used entries are dropped beyond this, a few countries and locales
+     * of every endpoint fit
+     */
+    private static final int MAX_ENTRIES = 256;
+    private static final int MAX_COUNTED_KEYS = 1024;
+
+    /**
+     * Endpoint, ID and options of a request, options are kept sorted and with their original values
+     */
+    static final class Key {
+        final String endpoint;
+        final String id;
+        final Map<String, Object> options;
+
+        Key(String endpoint, String id, Map<String, Object> options) {
+            this.endpoint = endpoint;
+            this.id = id;
+            this.options = Collections.unmodifiableMap(options);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return endpoint.equals(key.endpoint)
+                    && (id != null ? id.equals(key.id) : key.id == null)
+                    && options.equals(key.options);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = endpoint.hashCode();
+            result = 31 * result + (id != null ? id.hashCode() : 0);
+            result = 31 * result + options.hashCode();
+            return result;
+        }
+
+        /**
+         * @return Everything needed to repeat the request, for example "category/party?country=SE&locale=sv_SE",
+         * with the separators escaped where they appear in the ID, names or values
+         */
+        @Override
+        public String toString() {
+            StringBuilder key = new StringBuilder(endpoint).append('/');
+            if (id != null) {
+                key.append(escape(id));
+            }
+            key.append('?');
+            boolean first = true;
+            for (Map.Entry<String, Object> option : options.entrySet()) {
+                if (!first) key.append('&');
+                key.append(escape(option.getKey())).append('=').append(escape(String.valueOf(option.getValue())));
+                first = false;
+            }
+            return key.toString();
+        }
+
+        /**
+         * Reads a key written by {@link #toString()}, the option values are strings
+         */
+        static Key parse(String key) {
+            int idStart = key.indexOf('/');
+            int queryStart = key.indexOf('?');
+            if (idStart < 0 || queryStart < idStart) {
+                throw new IllegalArgumentException("Invalid key " + key);
+            }
+            String id = key.substring(idStart + 1, queryStart);
+            Map<String, Object> options = new TreeMap<>();
+            String query = key.substring(queryStart + 1);
+            if (!query.isEmpty()) {
+                for (String option : query.split("&")) {
+                    int separator = option.indexOf('=');
+                    if (separator < 0) {
+                        throw new IllegalArgumentException("Invalid key " + key);
+                    }
+                    options.put(unescape(option.substring(0, separator)), unescape(option.substring(separator + 1)));
+                }
+            }
+            return new Key(key.substring(0, idStart), id.isEmpty() ? null : unescape(id), options);
+        }
+    }
+
+    private static class CacheEntry {
+        final Object value;
+        final long storedAt;
+
+        CacheEntry(Object value, long storedAt) {
+            this.value = value;
+            this.storedAt = storedAt;
+        }
+    }
+
+    private final SpotifyService mSpotifyService;
+    private final Map<String, Long> mTtls = new HashMap<>();
+    private final Map<Key, CacheEntry> mEntries = new LinkedHashMap<Key, CacheEntry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, CacheEntry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private final Map<Key, Integer> mUses = new LinkedHashMap<Key, Integer>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Integer> eldest) {
+            return size() > MAX_COUNTED_KEYS;
+        }
+    };
+    private final Map<Key, FutureTask<Object>> mLoading = new HashMap<>();
+    private final Set<Key> mRefreshing = new HashSet<>();
+    private final ThreadPoolExecutor mExecutor;
+    private long mTimestampBucketMs = DEFAULT_TIMESTAMP_BUCKET_MS;
+
+    private int mHits;
+    private int mMisses;
+    private int mStaleServes;
+    private int mRefreshes;
+    private long mServedAgeSumMs;
+
+    public ReferenceDataCache(SpotifyService spotifyService) {
+        mSpotifyService = spotifyService;
+        mTtls.put(GENRES, TimeUnit.DAYS.toMillis(1));
+        mTtls.put(CATEGORIES, TimeUnit.HOURS.toMillis(6));
+        mTtls.put(CATEGORY, TimeUnit.HOURS.toMillis(6));
+        mTtls.put(FEATURED_PLAYLISTS, TimeUnit.HOURS.toMillis(1));
+        mTtls.put(NEW_RELEASES, TimeUnit.HOURS.toMillis(6));
+
+        mExecutor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @param endpoint One of {@link #GENRES}, {@link #CATEGORIES}, {@link #CATEGORY},
+     *                 {@link #FEATURED_PLAYLISTS} or {@link #NEW_RELEASES}
+     * @param ttl      How long responses of the endpoint are used
+     * @param unit     Unit of the ttl
+     */
+    public synchronized void setTtl(String endpoint, long ttl, TimeUnit unit) {
+        mTtls.put(endpoint, unit.toMillis(ttl));
+    }
+
+    /**
+     * @param bucket Granularity {@link SpotifyService#TIMESTAMP} options are rounded down to
+     * @param unit   Unit of the bucket
+     */
+    public synchronized void setTimestampBucket(long bucket, TimeUnit unit) {
+        mTimestampBucketMs = unit.toMillis(bucket);
+    }
+
+    /**
+     * @see SpotifyService#getSeedsGenres()
+     */
+    public SeedsGenres getSeedsGenres() throws IOException {
+        return (SeedsGenres) get(key(GENRES, null, null));
+    }
+
+    /**
+     * @see SpotifyService#getCategories(Map)
+     */
+    public CategoriesPager getCategories(Map<String, Object> options) throws IOException {
+        return (CategoriesPager) get(key(CATEGORIES, null, options));
+    }
+
+    /**
+     * @see SpotifyService#getCategory(String, Map)
+     */
+    public Category getCategory(String categoryId, Map<String, Object> options) throws IOException {
+        return (Category) get(key(CATEGORY, categoryId, options));
+    }
+
+    /**
+     * @see SpotifyService#getFeaturedPlaylists(Map)
+     */
+    public FeaturedPlaylists getFeaturedPlaylists(Map<String, Object> options) throws IOException {
+        return (FeaturedPlaylists) get(key(FEATURED_PLAYLISTS, null, options));
+    }
+
+    /**
+     * @see SpotifyService#getNewReleases(Map)
+     */
+    public NewReleases getNewReleases(Map<String, Object> options) throws IOException {
+        return (NewReleases) get(key(NEW_RELEASES, null, options));
+    }
+
+    /**
+     * Fetches entries in the background, typically the keys returned by
+     * {@link #getMostUsedKeys(int)} during the previous run.
+     *
+     * @param keys Keys as returned by {@link #getMostUsedKeys(int)}
+     */
+    public void warmUp(Collection<String> keys) {
+        for (String key : keys) {
+            try {
+                refreshInBackground(Key.parse(key));
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @param count Maximum number of keys
+     * @return Keys of the entries used most often, most used first
+     */
+    public synchronized List<String> getMostUsedKeys(int count) {
+        List<Map.Entry<Key, Integer>> uses = new ArrayList<>(mUses.entrySet());
+        Collections.sort(uses, new Comparator<Map.Entry<Key, Integer>>() {
+            @Override
+            public int compare(Map.Entry<Key, Integer> lhs, Map.Entry<Key, Integer> rhs) {
+                return rhs.getValue() - lhs.getValue();
+            }
+        });
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < Math.min(count, uses.size()); i++) {
+            keys.add(uses.get(i).getKey().toString());
+        }
+        return keys;
+    }
+
+    public synchronized void clear() {
+        mEntries.clear();
+    }
+
+    public synchronized int getHitCount() {
+        return mHits;
+    }
+
+    public synchronized int getMissCount() {
+        return mMisses;
+    }
+
+    /**
+     * @return Number of expired entries served because refreshing them failed
+     */
+    public synchronized int getStaleServeCount() {
+        return mStaleServes;
+    }
+
+    public synchronized int getRefreshCount() {
+        return mRefreshes;
+    }
+
+    public synchronized float getHitRatio() {
+        int lookups = mHits + mMisses;
+        return lookups == 0 ? 0 : (float) mHits / lookups;
+    }
+
+    /**
+     * @return Average age of the served entries in milliseconds
+     */
+    public synchronized long getAverageStalenessMs() {
+        return mHits == 0 ? 0 : mServedAgeSumMs / mHits;
+    }
+
+    /**
+     * @return Age of the oldest entry in milliseconds
+     */
+    public synchronized long getMaxStalenessMs() {
+        long now = now();
+        long max = 0;
+        for (CacheEntry entry : mEntries.values()) {
+            max = Math.max(max, now - entry.storedAt);
+        }
+        return max;
+    }
+
+    long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    private Object get(Key key) throws IOException {
+        CacheEntry entry;
+        long ttl;
+        synchronized (this) {
+            Integer uses = mUses.get(key);
+            mUses.put(key, uses == null ? 1 : uses + 1);
+
+            entry = mEntries.get(key);
+            ttl = mTtls.get(key.endpoint);
+            long age = entry != null ? now() - entry.storedAt : 0;
+            if (entry != null && age <= ttl) {
+                mHits++;
+                mServedAgeSumMs += age;
+                if (age > ttl * REFRESH_AFTER) {
+                    refreshInBackground(key);
+                }
+                return entry.value;
+            }
+            mMisses++;
+        }
+
+        try {
+            return load(key);
+        } catch (IOException e) {
+            if (entry == null) {
+                throw e;
+            }
+            synchronized (this) {
+                mStaleServes++;
+            }
+            Log.w(TAG, "Serving expired " + key + ": " + e.getMessage());
+            return entry.value;
+        }
+    }
+
+    private synchronized void refreshInBackground(final Key key) {
+        if (!mRefreshing.add(key)) return;
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    load(key);
+                    synchronized (ReferenceDataCache.this) {
+                        mRefreshes++;
+                    }
+                } catch (IOException e) {
+                    Log.w(TAG, "Refreshing " + key + " failed: " + e.getMessage());
+                } finally {
+                    synchronized (ReferenceDataCache.this) {
+                        mRefreshing.remove(key);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Loads the entry, or waits for the call loading it already
+     */
+    private Object load(final Key key) throws IOException {
+        FutureTask<Object> task;
+        boolean loading = false;
+        synchronized (this) {
+            task = mLoading.get(key);
+            if (task == null) {
+                task = new FutureTask<>(new Callable<Object>() {
+                    @Override
+                    public Object call() throws IOException {
+                        return fetch(key);
+                    }
+                });
+                mLoading.put(key, task);
+                loading = true;
+            }
+        }
+        if (loading) {
+            try {
+                task.run();
+            } finally {
+                synchronized (this) {
+                    mLoading.remove(key);
+                }
+            }
+        }
+
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading " + key);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    private Object fetch(Key key) throws IOException {
+        Map<String, Object> options = key.options;
+        Call<?> call;
+        switch (key.endpoint) {
+            case GENRES:
+                call = mSpotifyService.getSeedsGenres();
+                break;
+            case CATEGORIES:
+                call = mSpotifyService.getCategories(options);
+                break;
+            case CATEGORY:
+                call = mSpotifyService.getCategory(key.id, options);
+                break;
+            case FEATURED_PLAYLISTS:
+                call = mSpotifyService.getFeaturedPlaylists(options);
+                break;
+            case NEW_RELEASES:
+                call = mSpotifyService.getNewReleases(options);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown key " + key);
+        }
+
+        Response<?> response = call.execute();
+        if (!response.isSuccessful()) {
+            throw new IOException("Request failed with " + response.code() + ": " + key);
+        }
+        synchronized (this) {
+            mEntries.put(key, new CacheEntry(response.body(), now()));
+        }
+        return response.body();
+    }
+
+    /**
+     * Builds the key of a request, {@link SpotifyService#TIMESTAMP} rounded down to the bucket
+     */
+    synchronized Key key(String endpoint, String id, Map<String, Object> options) {
+        Map<String, Object> sorted = new TreeMap<>();
+        if (options != null) {
+            for (Map.Entry<String, Object> option : options.entrySet()) {
+                Object value = option.getValue();
+                if (SpotifyService.TIMESTAMP.equals(option.getKey()) && value != null) {
+                    value = bucket(String.valueOf(value));
+                }
+                sorted.put(option.getKey(), value);
+            }
+        }
+        return new Key(endpoint, id, sorted);
+    }
+
+    private String bucket(String timestamp) {
+        SimpleDateFormat format = new SimpleDateFormat(TIMESTAMP_FORMAT, Locale.US);
+        try {
+            long time = format.parse(timestamp).getTime();
+            return format.format(new Date(time - time % mTimestampBucketMs));
+        } catch (ParseException e) {
+            return timestamp;
+        }
+    }
+
+    /**
+     * Percent-encodes the characters that separate the parts of a serialized key
+     */
+    private static String escape(String value) {
+        StringBuilder escaped = null;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '%' || c == '/' || c == '?' || c == '&' || c == '=') {
+                if (escaped == null) {
+                    escaped = new StringBuilder(value.length() + 8).append(value, 0, i);
+                }
+                escaped.append('%').append(Character.toUpperCase(Character.forDigit(c >> 4, 16)))
+                        .append(Character.toUpperCase(Character.forDigit(c & 0xf, 16)));
+            } else if (escaped != null) {
+                escaped.append(c);
+            }
+        }
+        return escaped != null ? escaped.toString() : value;
+    }
+
+    private static String unescape(String value) {
+        if (value.indexOf('%') < 0) return value;
+
+        StringBuilder unescaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '%' && i + 2 < value.length()) {
+                unescaped.append((char) Integer.parseInt(value.substring(i + 1, i + 3), 16));
+                i += 2;
+            } else {
+                unescaped.append(c);
+            }
+        }
+        return unescaped.toString();
+    }
+}
@@ -0,0 +1,472 @@
+package kaaes.spotify.webapi.android;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import kaaes.spotify.webapi.android.models.Artist;
+import kaaes.spotify.webapi.android.models.Artists;
+import retrofit2.Response;
+
+/**
+ * Builds a graph of related artists breadth-first from seed artists using
+ * {@link SpotifyService#getRelatedArtists(String)}.
+ * <p/>
+ * At most {@code maxConcurrentRequests} requests are in flight at any time and every artist
+ * is requested once. Only the IDs of the artists are kept: visited artists are numbered
+ * through a compact ID table and edges are stored as arrays of node numbers.
+ * Failed artists stay unexpanded and are requested again when a checkpoint is resumed.
+ * <p/>
+ * Basic usage:
+ * RelatedArtistsCrawler crawler = new RelatedArtistsCrawler(spotify, 4);
+ * crawler.setCheckpoint(new File(context.getFilesDir(), "graph"), 500);
+ * crawler.crawl(Arrays.asList("0OdUWJ0sBjDrqHygGUXeCF"), 3);
+ * int[] related = crawler.getNeighbours(crawler.indexOf("0OdUWJ0sBjDrqHygGUXeCF"));
+ * <p/>
+ * {@link #crawl(List, int)} blocks until the crawl is done so it must not be called on the main thread.
+ */
+public class RelatedArtistsCrawler {
+
+    private static final String TAG = RelatedArtistsCrawler.class.getSimpleName();
+
+    private static final int CHECKPOINT_MAGIC = 0x52414731;
+
+    private static final byte STATE_NEW = 0;
+    private static final byte STATE_QUEUED = 1;
+    private static final byte STATE_EXPANDED = 2;
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final SpotifyService mSpotifyService;
+    private final int mMaxConcurrentRequests;
+
+    private final SpotifyIdTable mIds = new SpotifyIdTable(INITIAL_CAPACITY);
+    private byte[] mDepths = new byte[INITIAL_CAPACITY];
+    private byte[] mStates = new byte[INITIAL_CAPACITY];
+    private int[] mEdgeStarts = new int[INITIAL_CAPACITY];
+    private int[] mEdgeCounts = new int[INITIAL_CAPACITY];
+    private int[] mTargets = new int[INITIAL_CAPACITY * 4];
+    private int mEdgeCount;
+
+    private int[] mQueue = new int[INITIAL_CAPACITY];
+    private int mQueueHead;
+    private int mQueueTail;
+
+    private int mMaxDepth;
+    private int mInFlight;
+    private boolean mCancelled;
+
+    private RequestRateLimiter mRateLimiter;
+
+    private File mCheckpointFile;
+    private int mCheckpointInterval;
+    private int mExpandedSinceCheckpoint;
+
+    private int mExpandedNodes;
+    private int mExpandedEdges;
+    private int mFailures;
+    private long mStartedAt;
+    private long mElapsedMs;
+
+    /**
+     * @param spotifyService        Service used for the requests
+     * @param maxConcurrentRequests Maximum number of requests in flight at the same time
+     */
+    public RelatedArtistsCrawler(SpotifyService spotifyService, int maxConcurrentRequests) {
+        mSpotifyService = spotifyService;
+        mMaxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    /**
+     * @param rateLimiter Limiter shared with other bulk jobs, artists answered with 429 are requested again
+     */
+    public synchronized void setRateLimiter(RequestRateLimiter rateLimiter) {
+        mRateLimiter = rateLimiter;
+    }
+
+    /**
+     * Writes the graph to a file while crawling so a crawl can be continued with {@link #resume(File)}.
+     *
+     * @param file     The checkpoint file, overwritten on every checkpoint
+     * @param interval Number of expanded artists between checkpoints
+     */
+    public synchronized void setCheckpoint(File file, int interval) {
+        mCheckpointFile = file;
+        mCheckpointInterval = interval;
+    }
+
+    /**
+     * Crawls from the seeds until all artists up to {@code maxDepth} hops away are expanded.
+     * Artists already in the graph are not requested again.
+     *
+     * @param seedIds  Spotify IDs of the seed artists
+     * @param maxDepth Maximum number of hops from the seeds, 1 requests only the seeds
+     * @throws InterruptedException If the thread is interrupted while waiting for the crawl
+     */
+    public void crawl(List<String> seedIds, int maxDepth) throws InterruptedException {
+        synchronized (this) {
+            mMaxDepth = maxDepth;
+            mCancelled = false;
+            for (String id : seedIds) {
+                discover(id, 0);
+            }
+        }
+        run();
+    }
+
+    /**
+     * Loads a checkpoint and expands the artists that weren't expanded when it was written.
+     * Must be called on a new crawler.
+     *
+     * @param file Checkpoint file written during an earlier crawl
+     * @throws IOException          If the checkpoint can't be read
+     * @throws InterruptedException If the thread is interrupted while waiting for the crawl
+     */
+    public void resume(File file) throws IOException, InterruptedException {
+        load(file);
+        synchronized (this) {
+            mCancelled = false;
+            for (int node = 0; node < mIds.size(); node++) {
+                if (mStates[node] != STATE_EXPANDED && mDepths[node] < mMaxDepth) {
+                    mStates[node] = STATE_QUEUED;
+                    enqueue(node);
+                }
+            }
+        }
+        run();
+    }
+
+    /**
+     * Stops the crawl after the requests in flight, the artists not expanded yet stay in the checkpoint
+     */
+    public synchronized void cancel() {
+        mCancelled = true;
+        notifyAll();
+    }
+
+    public synchronized int getNodeCount() {
+        return mIds.size();
+    }
+
+    public synchronized int getEdgeCount() {
+        return mEdgeCount;
+    }
+
+    /**
+     * @param id Spotify ID of an artist
+     * @return Node number of the artist or -1 if it's not in the graph
+     */
+    public synchronized int indexOf(String id) {
+        return mIds.indexOf(id);
+    }
+
+    /**
+     * @param node Node number
+     * @return Spotify ID of the artist
+     */
+    public synchronized String getId(int node) {
+        return mIds.get(node);
+    }
+
+    /**
+     * @param node Node number
+     * @return Number of hops from the closest seed
+     */
+    public synchronized int getDepth(int node) {
+        return mDepths[node];
+    }
+
+    /**
+     * @param node Node number
+     * @return Node numbers of the related artists, empty if the artist wasn't expanded
+     */
+    public synchronized int[] getNeighbours(int node) {
+        if (mStates[node] != STATE_EXPANDED) {
+            return new int[0];
+        }
+        int start = mEdgeStarts[node];
+        return Arrays.copyOfRange(mTargets, start, start + mEdgeCounts[node]);
+    }
+
+    public synchronized int getFailureCount() {
+        return mFailures;
+    }
+
+    /**
+     * @return Artists expanded per second during the last crawl
+     */
+    public synchronized float getNodesPerSecond() {
+        return perSecond(mExpandedNodes);
+    }
+
+    /**
+     * @return Edges added per second during the last crawl
+     */
+    public synchronized float getEdgesPerSecond() {
+        return perSecond(mExpandedEdges);
+    }
+
+    /**
+     * Writes the graph and the crawl state to a file.
+     *
+     * @param file The file
+     * @throws IOException If the file can't be written
+     */
+    public synchronized void checkpoint(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            int nodes = mIds.size();
+            out.writeInt(CHECKPOINT_MAGIC);
+            out.writeInt(mMaxDepth);
+            out.writeInt(nodes);
+            for (int node = 0; node < nodes; node++) {
+                out.writeBytes(mIds.get(node));
+                out.writeByte(mDepths[node]);
+                out.writeBoolean(mStates[node] == STATE_EXPANDED);
+            }
+            for (int node = 0; node < nodes; node++) {
+                if (mStates[node] != STATE_EXPANDED) continue;
+                out.writeInt(mEdgeCounts[node]);
+                for (int i = 0; i < mEdgeCounts[node]; i++) {
+                    out.writeInt(mTargets[mEdgeStarts[node] + i]);
+                }
+            }
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+
+    private synchronized void load(File file) throws IOException {
+        if (mIds.size() > 0) {
+            throw new IllegalStateException("Checkpoints can only be resumed by a new crawler");
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != CHECKPOINT_MAGIC) {
+                throw new IOException("Not a crawler checkpoint: " + file);
+            }
+            mMaxDepth = in.readInt();
+            int nodes = in.readInt();
+            byte[] id = new byte[SpotifyIdTable.ID_LENGTH];
+            boolean[] expanded = new boolean[nodes];
+            for (int node = 0; node < nodes; node++) {
+                in.readFully(id);
+                addNode(new String(id, "US-ASCII"));
+                mDepths[node] = in.readByte();
+                expanded[node] = in.readBoolean();
+            }
+            for (int node = 0; node < nodes; node++) {
+                if (!expanded[node]) continue;
+                int count = in.readInt();
+                int[] targets = new int[count];
+                for (int i = 0; i < count; i++) {
+                    targets[i] = in.readInt();
+                }
+                addEdges(node, targets, count);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private void run() throws InterruptedException {
+        synchronized (this) {
+            mStartedAt = System.nanoTime();
+            mExpandedNodes = 0;
+            mExpandedEdges = 0;
+        }
+
+        ExecutorService workers = Executors.newFixedThreadPool(mMaxConcurrentRequests);
+        for (int i = 0; i < mMaxConcurrentRequests; i++) {
+            workers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        int node;
+                        while ((node = nextNode()) >= 0) {
+                            expand(node);
+                        }
+                    } catch (InterruptedException e) {
+                        cancel();
+                    }
+                }
+            });
+        }
+        workers.shutdown();
+        try {
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            cancel();
+            throw e;
+        } finally {
+            synchronized (this) {
+                mElapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - mStartedAt);
+            }
+            writeCheckpoint();
+        }
+    }
+
+    private synchronized int nextNode() throws InterruptedException {
+        while (mQueueHead == mQueueTail && mInFlight > 0 && !mCancelled) {
+            wait();
+        }
+        if (mCancelled || mQueueHead == mQueueTail) {
+            notifyAll();
+            return -1;
+        }
+        mInFlight++;
+        return mQueue[mQueueHead++];
+    }
+
+    private void expand(int node) throws InterruptedException {
+        String id;
+        synchronized (this) {
+            id = mIds.get(node);
+        }
+
+        List<Artist> related = null;
+        boolean throttled = false;
+        try {
+            if (mRateLimiter != null) {
+                mRateLimiter.acquire();
+            }
+            Response<Artists> response = mSpotifyService.getRelatedArtists(id).execute();
+            if (response.isSuccessful()) {
+                related = response.body().artists;
+            } else if (response.code() == 429 && mRateLimiter != null) {
+                throttled = true;
+                mRateLimiter.pause(RequestRateLimiter.retryAfterSeconds(response), TimeUnit.SECONDS);
+            } else {
+                Log.w(TAG, "Expanding " + id + " failed: " + response.code());
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Expanding " + id + " failed: " + e.getMessage());
+        }
+
+        boolean checkpoint = false;
+        synchronized (this) {
+            mInFlight--;
+            if (throttled) {
+                enqueue(node);
+            } else if (related == null) {
+                mFailures++;
+                mStates[node] = STATE_NEW;
+            } else {
+                int[] targets = new int[related.size()];
+                int count = 0;
+                for (Artist artist : related) {
+                    targets[count++] = discover(artist.id, mDepths[node] + 1);
+                }
+                addEdges(node, targets, count);
+                mExpandedNodes++;
+                mExpandedEdges += count;
+                checkpoint = mCheckpointFile != null && ++mExpandedSinceCheckpoint >= mCheckpointInterval;
+            }
+            notifyAll();
+        }
+        if (checkpoint) {
+            writeCheckpoint();
+        }
+    }
+
+    /**
+     * Adds an artist to the graph or lowers its depth if it was found through a shorter path.
+     *
+     * @return Node number of the artist
+     */
+    private int discover(String id, int depth) {
+        int nodes = mIds.size();
+        int node = addNode(id);
+        if (node == nodes) {
+            mDepths[node] = Byte.MAX_VALUE;
+        }
+        lowerDepth(node, depth);
+        return node;
+    }
+
+    private void lowerDepth(int node, int depth) {
+        if (depth >= mDepths[node]) return;
+
+        mDepths[node] = (byte) depth;
+        if (mStates[node] == STATE_EXPANDED) {
+            int start = mEdgeStarts[node];
+            for (int i = 0; i < mEdgeCounts[node]; i++) {
+                lowerDepth(mTargets[start + i], depth + 1);
+            }
+        } else if (mStates[node] == STATE_NEW && depth < mMaxDepth) {
+            mStates[node] = STATE_QUEUED;
+            enqueue(node);
+        }
+    }
+
+    private int addNode(String id) {
+        int node = mIds.add(id);
+        if (node >= mDepths.length) {
+            int capacity = mDepths.length * 2;
+            mDepths = Arrays.copyOf(mDepths, capacity);
+            mStates = Arrays.copyOf(mStates, capacity);
+            mEdgeStarts = Arrays.copyOf(mEdgeStarts, capacity);
+            mEdgeCounts = Arrays.copyOf(mEdgeCounts, capacity);
+        }
+        return node;
+    }
+
+    private void addEdges(int node, int[] targets, int count) {
+        if (mEdgeCount + count > mTargets.length) {
+            mTargets = Arrays.copyOf(mTargets, Math.max(mTargets.length * 2, mEdgeCount + count));
+        }
+        System.arraycopy(targets, 0, mTargets, mEdgeCount, count);
+        mEdgeStarts[node] = mEdgeCount;
+        mEdgeCounts[node] = count;
+        mStates[node] = STATE_EXPANDED;
+        mEdgeCount += count;
+    }
+
+    private void enqueue(int node) {
+        if (mQueueTail == mQueue.length) {
+            int pending = mQueueTail - mQueueHead;
+            int[] queue = pending * 2 > mQueue.length ? new int[mQueue.length * 2] : mQueue;
+            System.arraycopy(mQueue, mQueueHead, queue, 0, pending);
+            mQueue = queue;
+            mQueueHead = 0;
+            mQueueTail = pending;
+        }
+        mQueue[mQueueTail++] = node;
+    }
+
+    private void writeCheckpoint() {
+        File file;
+        synchronized (this) {
+            file = mCheckpointFile;
+            mExpandedSinceCheckpoint = 0;
+        }
+        if (file == null) return;
+
+        try {
+            checkpoint(file);
+        } catch (IOException e) {
+            Log.w(TAG, "Writing checkpoint failed: " + e.getMessage());
+        }
+    }
+
+    private float perSecond(int count) {
+        long elapsed = mElapsedMs > 0 ? mElapsedMs : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - mStartedAt);
+        return elapsed == 0 ? 0 : count * 1000f / elapsed;
+    }
+}
@@ -0,0 +1,75 @@
+package kaaes.spotify.webapi.android;
+
+import java.util.concurrent.TimeUnit;
+
+import retrofit2.Response;
+
+/**
+ * Spaces out requests to a steady rate, shared by everything that talks to the same account
+ * so that bulk jobs together stay under the Web API rate limit.
+ * <p/>
+ * Basic usage:
+ * RequestRateLimiter limiter = new RequestRateLimiter(10, 5);
+ * limiter.acquire();
+ * Response&lt;Artists&gt; response = call.execute();
+ * if (response.code() == 429) limiter.pause(retryAfterSeconds, TimeUnit.SECONDS);
+ */
+public class RequestRateLimiter {
+
+    private final long mIntervalNanos;
+    private final long mMaxBurstNanos;
+    private long mNextFree;
+
+    /**
+     * @param requestsPerSecond Sustained number of requests per second
+     * @param burst             Number of requests allowed back to back after being idle
+     */
+    public RequestRateLimiter(double requestsPerSecond, int burst) {
+        if (requestsPerSecond <= 0) {
+            throw new IllegalArgumentException("requestsPerSecond must be positive");
+        }
+        mIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond);
+        mMaxBurstNanos = mIntervalNanos * Math.max(0, burst - 1);
+        mNextFree = System.nanoTime();
+    }
+
+    /**
+     * Blocks until the next request may be made.
+     *
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            mNextFree = Math.max(mNextFree, now - mMaxBurstNanos);
+            wait = mNextFree - now;
+            mNextFree += mIntervalNanos;
+        }
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    /**
+     * Holds back all requests, for example after a 429 response with a Retry-After header.
+     *
+     * @param duration How long to wait before the next request
+     * @param unit     Unit of the duration
+     */
+    public synchronized void pause(long duration, TimeUnit unit) {
+        mNextFree = Math.max(mNextFree, System.nanoTime() + unit.toNanos(duration));
+    }
+
+    /**
+     * @return Seconds to wait according to the Retry-After header of a 429 response, 1 if it's missing
+     */
+    static long retryAfterSeconds(Response<?> response) {
+        String retryAfter = response.headers() != null ? response.headers().get("Retry-After") : null;
+        try {
+            return retryAfter != null ? Long.parseLong(retryAfter.trim()) : 1;
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+}
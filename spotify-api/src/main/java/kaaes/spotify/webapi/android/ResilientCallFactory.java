@@ -0,0 +1,489 @@
+package kaaes.spotify.webapi.android;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Call factory cutting the latency tail of GET requests with hedging and failing fast on
+ * degraded endpoints with one {@link CircuitBreaker} per endpoint of {@link SpotifyService}.
+ * <p/>
+ * A GET request that didn't complete after the {@link #DEFAULT_HEDGE_PERCENTILE} latency of its
+ * endpoint is sent a second time, the first response is used and the other request is canceled.
+ * Hedges are limited to a part of all requests so that a slow server doesn't get twice the load.
+ * Requests to an endpoint whose breaker is open fail immediately with a {@link CircuitOpenException}.
+ * Only I/O errors and 5xx responses count as failures, 429 responses are left to {@link RequestRateLimiter}.
+ * <p/>
+ * Basic usage:
+ * SpotifyApi api = new SpotifyApi();
+ * ResilientCallFactory resilient = new ResilientCallFactory(api.createBaseOkHttpClientBuilder().build());
+ * SpotifyService spotify = new SpotifyApi(api.createBaseRetrofitBuilder().callFactory(resilient).build()).getService();
+ * <p/>
+ * Endpoints are named by method and path as written in {@link SpotifyService}, for example
+ * "GET /v1/users/{user_id}/playlists/{playlist_id}/tracks".
+ */
+public class ResilientCallFactory implements Call.Factory {
+
+    private static final String TAG = ResilientCallFactory.class.getSimpleName();
+
+    public static final float DEFAULT_HEDGE_PERCENTILE = 0.95f;
+    public static final long DEFAULT_MIN_HEDGE_DELAY_MS = 10;
+    public static final float DEFAULT_MAX_HEDGE_RATIO = 0.1f;
+
+    /**
+     * Number of recent latencies per endpoint the hedge delay is computed from
+     */
+    private static final int LATENCY_WINDOW = 256;
+
+    /**
+     * Endpoints aren't hedged before this many requests to them succeeded
+     */
+    private static final int MIN_LATENCY_SAMPLES = 20;
+
+    /**
+     * Thrown instead of making a request to an endpoint whose {@link CircuitBreaker} is open
+     */
+    public static class CircuitOpenException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public CircuitOpenException(String endpoint) {
+            super("Circuit open for " + endpoint);
+        }
+    }
+
+    private final Call.Factory mDelegate;
+    private final ThreadPoolExecutor mExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+            60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+    private final Map<String, Endpoint> mEndpoints = new HashMap<>();
+
+    private boolean mHedging = true;
+    private float mHedgePercentile = DEFAULT_HEDGE_PERCENTILE;
+    private long mMinHedgeDelayMs = DEFAULT_MIN_HEDGE_DELAY_MS;
+    private float mMaxHedgeRatio = DEFAULT_MAX_HEDGE_RATIO;
+
+    private float mFailureRatio = 0.5f;
+    private int mBreakerWindow = 20;
+    private long mOpenDurationMs = TimeUnit.SECONDS.toMillis(30);
+
+    private int mHedgeableRequests;
+    private int mHedges;
+    private int mHedgeWins;
+
+    /**
+     * @param delegate Factory creating the actual calls, usually an {@link okhttp3.OkHttpClient}
+     */
+    public ResilientCallFactory(Call.Factory delegate) {
+        mDelegate = delegate;
+    }
+
+    /**
+     * @param percentile Latency percentile of the endpoint after which a GET request is hedged, between 0 and 1
+     * @param minDelay   Requests are never hedged earlier than this
+     * @param unit       Unit of the minimum delay
+     * @return This factory
+     */
+    public synchronized ResilientCallFactory setHedging(float percentile, long minDelay, TimeUnit unit) {
+        if (percentile <= 0 || percentile >= 1) {
+            throw new IllegalArgumentException("percentile must be in (0, 1)");
+        }
+        mHedging = true;
+        mHedgePercentile = percentile;
+        mMinHedgeDelayMs = unit.toMillis(minDelay);
+        return this;
+    }
+
+    /**
+     * @param maxHedgeRatio Maximum number of hedges per GET request, {@link #DEFAULT_MAX_HEDGE_RATIO} by default
+     * @return This factory
+     */
+    public synchronized ResilientCallFactory setMaxHedgeRatio(float maxHedgeRatio) {
+        mMaxHedgeRatio = maxHedgeRatio;
+        return this;
+    }
+
+    /**
+     * Turns hedging off, leaving only the circuit breakers.
+     *
+     * @return This factory
+     */
+    public synchronized ResilientCallFactory disableHedging() {
+        mHedging = false;
+        return this;
+    }
+
+    /**
+     * Configures the circuit breakers of endpoints that weren't requested yet.
+     *
+     * @see CircuitBreaker#CircuitBreaker(float, int, long, TimeUnit)
+     */
+    public synchronized ResilientCallFactory setCircuitBreaker(float failureRatio, int windowSize,
+                                                               long openDuration, TimeUnit unit) {
+        mFailureRatio = failureRatio;
+        mBreakerWindow = windowSize;
+        mOpenDurationMs = unit.toMillis(openDuration);
+        return this;
+    }
+
+    /**
+     * @param endpoint Method and path of the endpoint, for example "GET /v1/search"
+     * @return The breaker of the endpoint, null if it wasn't requested yet
+     */
+    public synchronized CircuitBreaker getCircuitBreaker(String endpoint) {
+        Endpoint stats = mEndpoints.get(endpoint);
+        return stats != null ? stats.breaker : null;
+    }
+
+    /**
+     * @param endpoint   Method and path of the endpoint, for example "GET /v1/search"
+     * @param percentile Between 0 and 1
+     * @return The latency of recent successful requests to the endpoint at the percentile
+     * in milliseconds, -1 if it wasn't requested yet
+     */
+    public long getLatencyPercentileMs(String endpoint, float percentile) {
+        Endpoint stats;
+        synchronized (this) {
+            stats = mEndpoints.get(endpoint);
+        }
+        return stats != null ? stats.percentile(percentile) : -1;
+    }
+
+    /**
+     * @return Number of duplicate requests sent
+     */
+    public synchronized int getHedgeCount() {
+        return mHedges;
+    }
+
+    /**
+     * @return Number of duplicate requests that answered before the original one
+     */
+    public synchronized int getHedgeWinCount() {
+        return mHedgeWins;
+    }
+
+    @Override
+    public Call newCall(Request request) {
+        return new ResilientCall(request);
+    }
+
+    private synchronized Endpoint endpointFor(Request request) {
+        String name = EndpointTemplate.nameOf(request);
+        Endpoint endpoint = mEndpoints.get(name);
+        if (endpoint == null) {
+            endpoint = new Endpoint(new CircuitBreaker(mFailureRatio, mBreakerWindow, mOpenDurationMs, TimeUnit.MILLISECONDS));
+            mEndpoints.put(name, endpoint);
+        }
+        return endpoint;
+    }
+
+    /**
+     * @return How long to wait before hedging a request to the endpoint, -1 if it must not be hedged
+     */
+    private long hedgeDelayMs(Endpoint endpoint) {
+        float percentile;
+        long minDelay;
+        synchronized (this) {
+            if (!mHedging) return -1;
+            mHedgeableRequests++;
+            percentile = mHedgePercentile;
+            minDelay = mMinHedgeDelayMs;
+        }
+        long delay = endpoint.hedgeDelay(percentile);
+        return delay < 0 ? -1 : Math.max(delay, minDelay);
+    }
+
+    private synchronized boolean acquireHedge() {
+        if (mHedges + 1 > mMaxHedgeRatio * mHedgeableRequests) {
+            return false;
+        }
+        mHedges++;
+        return true;
+    }
+
+    private synchronized void onHedgeWon() {
+        mHedgeWins++;
+    }
+
+    /**
+     * Circuit breaker and recent latencies of one endpoint
+     */
+    private static class Endpoint {
+        final CircuitBreaker breaker;
+        private final long[] mLatencies = new long[LATENCY_WINDOW];
+        private int mCount;
+        private int mPosition;
+
+        /**
+         * Hedge delay computed at most every 16 samples instead of sorting the window for every request
+         */
+        private long mCachedDelay = -1;
+        private float mCachedPercentile;
+        private int mSamplesSinceDelay;
+
+        Endpoint(CircuitBreaker breaker) {
+            this.breaker = breaker;
+        }
+
+        synchronized void record(long latencyMs) {
+            mLatencies[mPosition] = latencyMs;
+            mPosition = (mPosition + 1) % mLatencies.length;
+            mCount = Math.min(mCount + 1, mLatencies.length);
+            mSamplesSinceDelay++;
+        }
+
+        synchronized long hedgeDelay(float percentile) {
+            if (mCount < MIN_LATENCY_SAMPLES) return -1;
+
+            if (mCachedDelay < 0 || mSamplesSinceDelay >= 16 || mCachedPercentile != percentile) {
+                mCachedDelay = percentile(percentile);
+                mCachedPercentile = percentile;
+                mSamplesSinceDelay = 0;
+            }
+            return mCachedDelay;
+        }
+
+        synchronized long percentile(float percentile) {
+            if (mCount == 0) return -1;
+
+            long[] sorted = Arrays.copyOf(mLatencies, mCount);
+            Arrays.sort(sorted);
+            return sorted[Math.min(mCount - 1, (int) (percentile * mCount))];
+        }
+    }
+
+    /**
+     * Attempts of one request racing each other, the first response wins
+     */
+    private static class Race {
+        private int mRunning;
+        private boolean mDone;
+        private Call mWinner;
+        private Response mResponse;
+        private IOException mError;
+
+        synchronized void onStart() {
+            mRunning++;
+        }
+
+        synchronized void onResponse(Call call, Response response) {
+            mRunning--;
+            if (mDone) {
+                // Lost the race
+                response.body().close();
+                return;
+            }
+            mDone = true;
+            mWinner = call;
+            mResponse = response;
+            notifyAll();
+        }
+
+        /**
+         * A failed attempt only ends the race if no other attempt is running
+         */
+        synchronized void onFailure(IOException e) {
+            mRunning--;
+            if (mDone) return;
+
+            mError = e;
+            if (mRunning == 0) {
+                mDone = true;
+                notifyAll();
+            }
+        }
+
+        /**
+         * @return False if the race isn't over after the timeout
+         */
+        synchronized boolean await(long timeoutMs) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            long remaining = timeoutMs;
+            while (!mDone && remaining > 0) {
+                wait(remaining);
+                remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            }
+            return mDone;
+        }
+
+        synchronized void await() throws InterruptedException {
+            while (!mDone) {
+                wait();
+            }
+        }
+    }
+
+    private class ResilientCall implements Call {
+        private final Request mRequest;
+        private final List<Call> mAttempts = new ArrayList<>(2);
+        private boolean mExecuted;
+        private boolean mCanceled;
+
+        ResilientCall(Request request) {
+            mRequest = request;
+        }
+
+        @Override
+        public Request request() {
+            return mRequest;
+        }
+
+        @Override
+        public Response execute() throws IOException {
+            markExecuted();
+            return run();
+        }
+
+        @Override
+        public void enqueue(final Callback callback) {
+            markExecuted();
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    Response response;
+                    try {
+                        response = ResilientCall.this.run();
+                    } catch (IOException e) {
+                        callback.onFailure(ResilientCall.this, e);
+                        return;
+                    }
+                    try {
+                        callback.onResponse(ResilientCall.this, response);
+                    } catch (IOException e) {
+                        Log.w(TAG, "Callback failed", e);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void cancel() {
+            List<Call> attempts;
+            synchronized (this) {
+                mCanceled = true;
+                attempts = new ArrayList<>(mAttempts);
+            }
+            for (Call attempt : attempts) {
+                attempt.cancel();
+            }
+        }
+
+        @Override
+        public synchronized boolean isExecuted() {
+            return mExecuted;
+        }
+
+        @Override
+        public synchronized boolean isCanceled() {
+            return mCanceled;
+        }
+
+        private synchronized void markExecuted() {
+            if (mExecuted) {
+                throw new IllegalStateException("Already Executed");
+            }
+            mExecuted = true;
+        }
+
+        private Response run() throws IOException {
+            Endpoint endpoint = endpointFor(mRequest);
+            if (!endpoint.breaker.allowRequest()) {
+                throw new CircuitOpenException(EndpointTemplate.nameOf(mRequest));
+            }
+
+            long start = System.nanoTime();
+            Response response;
+            try {
+                response = "GET".equals(mRequest.method()) ? executeHedged(endpoint) : newAttempt().execute();
+            } catch (IOException e) {
+                if (isCanceled()) {
+                    endpoint.breaker.onCanceled();
+                } else {
+                    endpoint.breaker.onFailure();
+                }
+                throw e;
+            }
+
+            if (response.code() >= 500) {
+                endpoint.breaker.onFailure();
+            } else {
+                endpoint.breaker.onSuccess();
+                endpoint.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+            return response;
+        }
+
+        private Response executeHedged(Endpoint endpoint) throws IOException {
+            long delay = hedgeDelayMs(endpoint);
+            if (delay < 0) {
+                return newAttempt().execute();
+            }
+
+            Race race = new Race();
+            start(race, newAttempt());
+            try {
+                if (!race.await(delay) && acquireHedge()) {
+                    Log.d(TAG, "Hedging " + mRequest.url() + " after " + delay + "ms");
+                    start(race, newAttempt());
+                }
+                race.await();
+            } catch (InterruptedException e) {
+                cancel();
+                throw new InterruptedIOException("Interrupted while waiting for a response");
+            }
+
+            List<Call> attempts;
+            synchronized (this) {
+                attempts = new ArrayList<>(mAttempts);
+            }
+            for (Call attempt : attempts) {
+                if (attempt != race.mWinner) {
+                    attempt.cancel();
+                }
+            }
+            if (race.mResponse == null) {
+                throw race.mError;
+            }
+            if (attempts.size() > 1 && race.mWinner == attempts.get(1)) {
+                onHedgeWon();
+            }
+            return race.mResponse;
+        }
+
+        private synchronized Call newAttempt() throws IOException {
+            if (mCanceled) {
+                throw new IOException("Canceled");
+            }
+            Call attempt = mDelegate.newCall(mRequest);
+            mAttempts.add(attempt);
+            return attempt;
+        }
+
+        private void start(final Race race, final Call attempt) {
+            race.onStart();
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        race.onResponse(attempt, attempt.execute());
+                    } catch (IOException e) {
+                        race.onFailure(e);
+                    }
+                }
+            });
+        }
+    }
+}
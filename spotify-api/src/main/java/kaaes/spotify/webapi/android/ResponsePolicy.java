@@ -0,0 +1,91 @@
+package kaaes.spotify.webapi.android;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Describes when a previously fetched response may be used instead of, or in addition to,
+ * a network request. Modelled after the {@code max-age}, {@code stale-while-revalidate}
+ * and {@code stale-if-error} Cache-Control extensions.
+ *
+ * @see StaleResponseInterceptor
+ */
+public final class ResponsePolicy {
+
+    /**
+     * Always go to the network, never serve stored responses
+     */
+    public static final ResponsePolicy NETWORK_ONLY = new ResponsePolicy(0, 0, 0);
+
+    /**
+     * How long a stored response is served without contacting the network
+     */
+    public final long maxAgeMs;
+
+    /**
+     * How long after {@link #maxAgeMs} a stored response is served immediately while it's revalidated in the background
+     */
+    public final long staleWhileRevalidateMs;
+
+    /**
+     * How long after {@link #maxAgeMs} a stored response is served when the network request fails
+     */
+    public final long staleIfErrorMs;
+
+    private ResponsePolicy(long maxAgeMs, long staleWhileRevalidateMs, long staleIfErrorMs) {
+        this.maxAgeMs = maxAgeMs;
+        this.staleWhileRevalidateMs = staleWhileRevalidateMs;
+        this.staleIfErrorMs = staleIfErrorMs;
+    }
+
+    /**
+     * Serve stored responses up to {@code maxStale} old immediately and refresh them in the background.
+     */
+    public static ResponsePolicy staleWhileRevalidate(long maxStale, TimeUnit unit) {
+        return new ResponsePolicy(0, unit.toMillis(maxStale), 0);
+    }
+
+    /**
+     * Go to the network but serve stored responses up to {@code maxStale} old
+     * when the request fails, times out or the server returns an error.
+     */
+    public static ResponsePolicy staleIfError(long maxStale, TimeUnit unit) {
+        return new ResponsePolicy(0, 0, unit.toMillis(maxStale));
+    }
+
+    /**
+     * @param maxAge Stored responses younger than this are served without a request
+     */
+    public ResponsePolicy withMaxAge(long maxAge, TimeUnit unit) {
+        return new ResponsePolicy(unit.toMillis(maxAge), staleWhileRevalidateMs, staleIfErrorMs);
+    }
+
+    /**
+     * @param maxStale Stored responses up to this much older than max age are served while revalidating
+     */
+    public ResponsePolicy withStaleWhileRevalidate(long maxStale, TimeUnit unit) {
+        return new ResponsePolicy(maxAgeMs, unit.toMillis(maxStale), staleIfErrorMs);
+    }
+
+    /**
+     * @param maxStale Stored responses up to this much older than max age are served on errors
+     */
+    public ResponsePolicy withStaleIfError(long maxStale, TimeUnit unit) {
+        return new ResponsePolicy(maxAgeMs, staleWhileRevalidateMs, unit.toMillis(maxStale));
+    }
+
+    boolean storesResponses() {
+        return maxAgeMs > 0 || staleWhileRevalidateMs > 0 || staleIfErrorMs > 0;
+    }
+
+    boolean isFresh(long ageMs) {
+        return ageMs <= maxAgeMs;
+    }
+
+    boolean canRevalidateInBackground(long ageMs) {
+        return staleWhileRevalidateMs > 0 && ageMs <= maxAgeMs + staleWhileRevalidateMs;
+    }
+
+    boolean canServeOnError(long ageMs) {
+        return staleIfErrorMs > 0 && ageMs <= maxAgeMs + staleIfErrorMs;
+    }
+}
@@ -0,0 +1,267 @@
+package kaaes.spotify.webapi.android;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory cache for search results with LRU eviction and a time to live.
+ * <p/>
+ * Results are keyed by the normalized query, the search type, the market
+ * and the requested offset window. Apart from exact lookups the cache can
+ * return the results of the longest cached prefix of a query which lets
+ * callers show filtered results while the request for the longer query is
+ * still in flight.
+ * <p/>
+ * Basic usage:
+ * SearchCache&lt;TracksPager&gt; cache = new SearchCache&lt;&gt;();
+ * SearchCache.Key key = SearchCache.key(SearchCache.TYPE_TRACK, query, options);
+ * TracksPager cached = cache.get(key);
+ *
+ * @param <T> Type of the cached search results
+ */
+public class SearchCache<T> {
+
+    public static final String TYPE_TRACK = "track";
+    public static final String TYPE_ARTIST = "artist";
+    public static final String TYPE_ALBUM = "album";
+    public static final String TYPE_PLAYLIST = "playlist";
+
+    public static final int DEFAULT_MAX_ENTRIES = 50;
+    public static final long DEFAULT_TTL_MS = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * Identifies one page of search results
+     */
+    public static class Key {
+        public final String type;
+        public final String query;
+        public final String market;
+        public final int offset;
+        public final int limit;
+
+        public Key(String type, String query, String market, int offset, int limit) {
+            this.type = type;
+            this.query = normalize(query);
+            this.market = market;
+            this.offset = offset;
+            this.limit = limit;
+        }
+
+        /**
+         * @return Key for the same page of results for a different query
+         */
+        public Key withQuery(String query) {
+            return new Key(type, query, market, offset, limit);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+
+            Key key = (Key) o;
+            return offset == key.offset
+                    && limit == key.limit
+                    && type.equals(key.type)
+                    && query.equals(key.query)
+                    && (market == null ? key.market == null : market.equals(key.market));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = type.hashCode();
+            result = 31 * result + query.hashCode();
+            result = 31 * result + (market != null ? market.hashCode() : 0);
+            result = 31 * result + offset;
+            result = 31 * result + limit;
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return type + ":" + query + ":" + market + ":" + offset + "+" + limit;
+        }
+    }
+
+    private static class CacheEntry<T> {
+        final T value;
+        final long storedAt;
+
+        CacheEntry(T value, long storedAt) {
+            this.value = value;
+            this.storedAt = storedAt;
+        }
+    }
+
+    private final LinkedHashMap<Key, CacheEntry<T>> mEntries;
+    private final long mTtlMs;
+
+    private int mHits;
+    private int mPrefixHits;
+    private int mMisses;
+
+    public SearchCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MS);
+    }
+
+    /**
+     * @param maxEntries Maximum number of result pages kept, least recently used ones are evicted first
+     * @param ttlMs      How long results are considered valid in milliseconds
+     */
+    public SearchCache(final int maxEntries, long ttlMs) {
+        mTtlMs = ttlMs;
+        mEntries = new LinkedHashMap<Key, CacheEntry<T>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CacheEntry<T>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Creates a key from the parameters that would be passed to one of the search methods
+     * of {@link SpotifyService}.
+     *
+     * @param type    One of {@link #TYPE_TRACK}, {@link #TYPE_ARTIST}, {@link #TYPE_ALBUM} or {@link #TYPE_PLAYLIST}
+     * @param query   The search query
+     * @param options Optional parameters, may be null
+     * @return The cache key
+     */
+    public static Key key(String type, String query, Map<String, Object> options) {
+        String market = null;
+        int offset = 0;
+        int limit = 0;
+        if (options != null) {
+            Object value = options.get(SpotifyService.MARKET);
+            market = value != null ? value.toString() : null;
+            offset = intOption(options, SpotifyService.OFFSET);
+            limit = intOption(options, SpotifyService.LIMIT);
+        }
+        return new Key(type, query, market, offset, limit);
+    }
+
+    /**
+     * Normalizes the query so that queries differing only in case
+     * and whitespace share the cache entry.
+     *
+     * @param query The search query
+     * @return Normalized query
+     */
+    public static String normalize(String query) {
+        if (query == null) return "";
+        return query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @param key The key
+     * @return Cached results or null if there are none or they expired
+     */
+    public synchronized T get(Key key) {
+        CacheEntry<T> entry = getValid(key);
+        if (entry == null) {
+            mMisses++;
+            return null;
+        }
+        mHits++;
+        return entry.value;
+    }
+
+    /**
+     * Finds results of the longest cached query that the query of the key starts with,
+     * for example results for "beat" when looking for "beatles".
+     * The results are not filtered, callers have to drop items not matching the longer query.
+     *
+     * @param key The key
+     * @return Results for the longest cached shorter prefix or null if there are none
+     */
+    public synchronized T getPrefix(Key key) {
+        for (int length = key.query.length() - 1; length > 0; length--) {
+            CacheEntry<T> entry = getValid(key.withQuery(key.query.substring(0, length)));
+            if (entry != null) {
+                mPrefixHits++;
+                return entry.value;
+            }
+        }
+        return null;
+    }
+
+    public synchronized void put(Key key, T value) {
+        mEntries.put(key, new CacheEntry<>(value, now()));
+    }
+
+    public synchronized void remove(Key key) {
+        mEntries.remove(key);
+    }
+
+    /**
+     * Removes all results, including the expired ones
+     */
+    public synchronized void clear() {
+        mEntries.clear();
+    }
+
+    /**
+     * Removes expired results
+     */
+    public synchronized void evictExpired() {
+        long now = now();
+        Iterator<CacheEntry<T>> iterator = mEntries.values().iterator();
+        while (iterator.hasNext()) {
+            if (isExpired(iterator.next(), now)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    public synchronized int getHitCount() {
+        return mHits;
+    }
+
+    public synchronized int getPrefixHitCount() {
+        return mPrefixHits;
+    }
+
+    public synchronized int getMissCount() {
+        return mMisses;
+    }
+
+    /**
+     * @return Ratio of exact lookups that were served from the cache
+     */
+    public synchronized float getHitRatio() {
+        int lookups = mHits + mMisses;
+        return lookups == 0 ? 0 : (float) mHits / lookups;
+    }
+
+    long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    private CacheEntry<T> getValid(Key key) {
+        CacheEntry<T> entry = mEntries.get(key);
+        if (entry != null && isExpired(entry, now())) {
+            mEntries.remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    private boolean isExpired(CacheEntry<T> entry, long now) {
+        return now - entry.storedAt > mTtlMs;
+    }
+
+    private static int intOption(Map<String, Object> options, String name) {
+        Object value = options.get(name);
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        return value != null ? Integer.parseInt(value.toString()) : 0;
+    }
+}
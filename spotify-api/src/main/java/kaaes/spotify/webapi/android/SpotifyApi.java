@@ -2,10 +2,20 @@ package kaaes.spotify.webapi.android;
 
 import android.util.Log;
 
+import com.google.gson.Gson;
+
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+import okhttp3.ConnectionPool;
+import okhttp3.Dns;
 import okhttp3.Interceptor;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import okhttp3.Request;
 import okhttp3.Response;
 import retrofit2.Retrofit;
@@ -52,6 +62,29 @@ public class SpotifyApi {
 
     private final SpotifyService mSpotifyService;
 
+    private final OkHttpClient mClient;
+
+    private PriorityCallFactory mCallFactory;
+
+    private final ConnectionConfig mConnectionConfig;
+
+    private final ConnectionPool mConnectionPool;
+
+    private final ConnectionWarmer mConnectionWarmer;
+
+    /**
+     * Runs the warm-ups one at a time, {@link ConnectionWarmer} isn't meant to be used concurrently
+     */
+    private final ThreadPoolExecutor mWarmupExecutor;
+
+    private boolean mWarmupQueued;
+
+    private boolean mWarmupRunning;
+
+    private final CallTimings mCallTimings = new CallTimings();
+
+    private final Map<Integer, SpotifyService> mPriorityServices = new HashMap<>();
+
     private String mAccessToken;
 
     /**
@@ -60,7 +93,14 @@ public class SpotifyApi {
      * @param retrofit The {@link Retrofit} instance to use when creating the {@link SpotifyService}
      */
     public SpotifyApi(Retrofit retrofit) {
+        mConnectionConfig = ConnectionConfig.DEFAULT;
+        mConnectionPool = retrofit.callFactory() instanceof OkHttpClient
+                ? ((OkHttpClient) retrofit.callFactory()).connectionPool()
+                : null;
         mSpotifyService = createService(retrofit);
+        mClient = null;
+        mConnectionWarmer = null;
+        mWarmupExecutor = null;
     }
 
     private SpotifyService createService(Retrofit retrofit) {
@@ -70,29 +110,82 @@ public class SpotifyApi {
     /**
      * Creates a basic {@link retrofit2.Retrofit.Builder} which uses
      * {@link #SPOTIFY_WEB_API_ENDPOINT} as the base URL and a {@link GsonConverterFactory}
+     * whose parse times are added to {@link #getCallTimings()}
      *
      * @return The builder
      */
     public Retrofit.Builder createBaseRetrofitBuilder() {
-        return new Retrofit.Builder().addConverterFactory(GsonConverterFactory.create()).baseUrl(SPOTIFY_WEB_API_ENDPOINT);
+        return createBaseRetrofitBuilder(new Gson());
+    }
+
+    /**
+     * Same as {@link #createBaseRetrofitBuilder()} with a custom Gson instance,
+     * for example one from {@link CompactModels#createGson()}
+     *
+     * @param gson The Gson instance used to parse responses
+     * @return The builder
+     */
+    public Retrofit.Builder createBaseRetrofitBuilder(Gson gson) {
+        return new Retrofit.Builder()
+                .addConverterFactory(mCallTimings.converterFactory(GsonConverterFactory.create(gson)))
+                .baseUrl(SPOTIFY_WEB_API_ENDPOINT);
     }
 
     /**
      * Creates a basic {@link okhttp3.OkHttpClient.Builder} which automatically applies the access
-     * token to all calls
+     * token to all calls and measures them in {@link #getCallTimings()}. All clients created
+     * from it share one connection pool configured by the {@link ConnectionConfig} of the wrapper.
      *
      * @return The builder
      */
     public OkHttpClient.Builder createBaseOkHttpClientBuilder() {
-        return new OkHttpClient.Builder().addNetworkInterceptor(new WebApiAuthenticator());
+        return mConnectionConfig.configure(new OkHttpClient.Builder())
+                .connectionPool(mConnectionPool)
+                .addInterceptor(mCallTimings.applicationInterceptor())
+                .addNetworkInterceptor(new WebApiAuthenticator())
+                .addNetworkInterceptor(mCallTimings.networkInterceptor())
+                .dns(mCallTimings.dns(Dns.SYSTEM));
     }
 
     /**
      * New instance of SpotifyApi.
      */
     public SpotifyApi() {
+        this(ConnectionConfig.DEFAULT);
+    }
+
+    /**
+     * New instance of SpotifyApi.
+     *
+     * @param connectionConfig Connection pool and concurrency settings of the client
+     */
+    public SpotifyApi(ConnectionConfig connectionConfig) {
+        this(connectionConfig, false);
+    }
+
+    /**
+     * New instance of SpotifyApi.
+     *
+     * @param connectionConfig Connection pool and concurrency settings of the client
+     * @param prioritizeCalls  Whether the calls of {@link #getService()} run through the {@link PriorityCallFactory}
+     *                         of {@link #getService(int)}, which reserves one of the concurrent requests for
+     *                         {@link PriorityCallFactory#PRIORITY_INTERACTIVE} calls and runs enqueued calls on its
+     *                         own threads. Otherwise they run on OkHttp's dispatcher and nothing is reserved.
+     */
+    public SpotifyApi(ConnectionConfig connectionConfig, boolean prioritizeCalls) {
+        mConnectionConfig = connectionConfig;
+        mConnectionPool = connectionConfig.createConnectionPool();
+        mClient = createBaseOkHttpClientBuilder().build();
+        mConnectionWarmer = new ConnectionWarmer(mClient, SPOTIFY_WEB_API_ENDPOINT);
+        mWarmupExecutor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        mWarmupExecutor.allowCoreThreadTimeOut(true);
+        if (prioritizeCalls) {
+            int maxRequests = connectionConfig.maxRequestsPerHost;
+            mCallFactory = new PriorityCallFactory(mClient, maxRequests,
+                    Math.min(PriorityCallFactory.DEFAULT_RESERVED_INTERACTIVE, maxRequests - 1));
+        }
         final Retrofit retrofit = createBaseRetrofitBuilder()
-                .callFactory(createBaseOkHttpClientBuilder().build())
+                .callFactory(prioritizeCalls ? mCallFactory : mClient)
                 .build();
         mSpotifyService = createService(retrofit);
     }
@@ -110,10 +203,143 @@ public class SpotifyApi {
         return this;
     }
 
+    /**
+     * @return The token set on the wrapper, null if there is none
+     */
+    String getAccessToken() {
+        return mAccessToken;
+    }
+
     /**
      * @return The SpotifyService instance
      */
     public SpotifyService getService() {
         return mSpotifyService;
     }
+
+    /**
+     * Returns a view of the service whose calls run with the given priority.
+     * All views share the connections and the request limits of one {@link PriorityCallFactory},
+     * which {@link #getService()} only shares if the wrapper was created with {@code prioritizeCalls}.
+     * Without it no requests are reserved for {@link PriorityCallFactory#PRIORITY_INTERACTIVE} calls,
+     * they only start before the waiting ones of lower priorities.
+     *
+     * @param priority One of {@link PriorityCallFactory#PRIORITY_INTERACTIVE}, {@link PriorityCallFactory#PRIORITY_NORMAL}
+     *                 or {@link PriorityCallFactory#PRIORITY_BULK}
+     * @return The SpotifyService instance
+     * @throws IllegalStateException If the wrapper was created with a {@link Retrofit} instance
+     */
+    public SpotifyService getService(int priority) {
+        PriorityCallFactory callFactory = getCallFactory();
+        if (callFactory == null) {
+            throw new IllegalStateException("Priorities are only available with the default constructors");
+        }
+        synchronized (mPriorityServices) {
+            SpotifyService service = mPriorityServices.get(priority);
+            if (service == null) {
+                service = createService(createBaseRetrofitBuilder().callFactory(callFactory.withPriority(priority)).build());
+                mPriorityServices.put(priority, service);
+            }
+            return service;
+        }
+    }
+
+    /**
+     * @return The factory running the calls of {@link #getService(int)}, created on first use, null if the
+     * wrapper was created with a {@link Retrofit} instance. Reports queue wait per priority.
+     */
+    public synchronized PriorityCallFactory getCallFactory() {
+        if (mCallFactory == null && mClient != null) {
+            mCallFactory = new PriorityCallFactory(mClient, mConnectionConfig.maxRequestsPerHost, 0);
+        }
+        return mCallFactory;
+    }
+
+    /**
+     * Opens connections to the Web API on a background thread so that the first calls
+     * don't wait for the DNS lookup and the TCP and TLS handshakes. Call it early, for example
+     * when the app starts or right after authentication. One connection is opened if the server
+     * speaks HTTP/2, otherwise as many as {@link ConnectionConfig#maxRequestsPerHost} allows,
+     * up to {@link ConnectionConfig#maxIdleConnections}. Does nothing while a warm-up is running.
+     *
+     * @throws IllegalStateException If the wrapper was created with a {@link Retrofit} instance
+     */
+    public void prewarmConnections() {
+        checkCanPrewarm();
+        prewarm(false);
+    }
+
+    /**
+     * Drops the pooled connections, which belong to the previous network, and opens new ones.
+     * Call it when the device switches networks, for example from a connectivity broadcast receiver.
+     * A warm-up running for the previous network is followed by one for the new network.
+     *
+     * @throws IllegalStateException If the wrapper was created with a {@link Retrofit} instance
+     */
+    public void onNetworkChanged() {
+        checkCanPrewarm();
+        mConnectionPool.evictAll();
+        prewarm(true);
+    }
+
+    private void checkCanPrewarm() {
+        if (mConnectionWarmer == null) {
+            throw new IllegalStateException("Pre-warming is only available with the default constructors");
+        }
+    }
+
+    /**
+     * Queues a warm-up unless one is queued already.
+     *
+     * @param afterRunning Whether to queue it after a running warm-up instead of skipping it
+     */
+    private synchronized void prewarm(boolean afterRunning) {
+        if (mWarmupQueued || mWarmupRunning && !afterRunning) return;
+
+        mWarmupQueued = true;
+        final int connections = Math.min(mConnectionConfig.maxRequestsPerHost, mConnectionConfig.maxIdleConnections);
+        mWarmupExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (SpotifyApi.this) {
+                    mWarmupQueued = false;
+                    mWarmupRunning = true;
+                }
+                try {
+                    Protocol protocol = mConnectionWarmer.warm(connections);
+                    Log.d(TAG, "Pre-warmed connections, protocol: " + protocol);
+                } catch (IOException e) {
+                    Log.d(TAG, "Pre-warming connections failed: " + e.getMessage());
+                } finally {
+                    synchronized (SpotifyApi.this) {
+                        mWarmupRunning = false;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * @return Protocol negotiated with the Web API by the last pre-warming, null if the connections
+     * were never pre-warmed. {@link Protocol#HTTP_2} means all calls are multiplexed over one connection.
+     */
+    public Protocol getProtocol() {
+        return mConnectionWarmer != null ? mConnectionWarmer.getProtocol() : null;
+    }
+
+    /**
+     * @return The connection pool shared by the clients created by this wrapper. When created with a
+     * {@link Retrofit} instance it is the pool of its {@link OkHttpClient}, null if it uses another call factory.
+     */
+    public ConnectionPool getConnectionPool() {
+        return mConnectionPool;
+    }
+
+    /**
+     * @return Phase timings and connection reuse of the calls made with clients and converters
+     * created by this wrapper, per endpoint
+     */
+    public CallTimings getCallTimings() {
+        return mCallTimings;
+    }
 }
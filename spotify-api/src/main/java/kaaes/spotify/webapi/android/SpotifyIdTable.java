@@ -0,0 +1,155 @@
+package kaaes.spotify.webapi.android;
+
+import java.util.Arrays;
+
+/**
+ * Compact dictionary of Spotify IDs mapping each ID to a dense row number.
+ * <p/>
+ * IDs are stored as fixed width ASCII in one byte array and looked up through an
+ * open addressing hash table of row numbers so no object is kept per ID.
+ * Not thread safe.
+ */
+class SpotifyIdTable {
+
+    /**
+     * Length of the base62 Spotify IDs
+     */
+    static final int ID_LENGTH = 22;
+
+    private byte[] mIds;
+    private int[] mSlots;
+    private int mSize;
+
+    SpotifyIdTable(int initialCapacity) {
+        mIds = new byte[Math.max(initialCapacity, 16) * ID_LENGTH];
+        mSlots = new int[tableSize(initialCapacity)];
+    }
+
+    /**
+     * @param id The Spotify ID
+     * @return Row of the ID, the next free row if it wasn't in the table before
+     */
+    int add(String id) {
+        checkId(id);
+        int slot = find(id);
+        if (mSlots[slot] != 0) {
+            return mSlots[slot] - 1;
+        }
+
+        int row = mSize;
+        if ((row + 1) * ID_LENGTH > mIds.length) {
+            mIds = Arrays.copyOf(mIds, mIds.length * 2);
+        }
+        for (int i = 0; i < ID_LENGTH; i++) {
+            mIds[row * ID_LENGTH + i] = (byte) id.charAt(i);
+        }
+        mSlots[slot] = row + 1;
+        mSize++;
+
+        if (mSize * 2 > mSlots.length) {
+            rehash(mSlots.length * 2);
+        }
+        return row;
+    }
+
+    /**
+     * @param id The Spotify ID
+     * @return Row of the ID or -1 if it's not in the table
+     */
+    int indexOf(String id) {
+        if (id == null || id.length() != ID_LENGTH) return -1;
+        return mSlots[find(id)] - 1;
+    }
+
+    String get(int row) {
+        if (row < 0 || row >= mSize) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + mSize);
+        }
+        char[] chars = new char[ID_LENGTH];
+        for (int i = 0; i < ID_LENGTH; i++) {
+            chars[i] = (char) mIds[row * ID_LENGTH + i];
+        }
+        return new String(chars);
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * @return Bytes used by the arrays backing the table
+     */
+    long getMemoryUsage() {
+        return mIds.length + 4L * mSlots.length;
+    }
+
+    static void checkId(String id) {
+        if (id == null || id.length() != ID_LENGTH) {
+            throw new IllegalArgumentException("Not a Spotify ID: " + id);
+        }
+    }
+
+    private int find(String id) {
+        int mask = mSlots.length - 1;
+        int slot = hash(id) & mask;
+        while (mSlots[slot] != 0 && !matches(mSlots[slot] - 1, id)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private boolean matches(int row, String id) {
+        int offset = row * ID_LENGTH;
+        for (int i = 0; i < ID_LENGTH; i++) {
+            if (mIds[offset + i] != (byte) id.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int hashRow(int row) {
+        int hash = 0;
+        int offset = row * ID_LENGTH;
+        for (int i = 0; i < ID_LENGTH; i++) {
+            hash = 31 * hash + mIds[offset + i];
+        }
+        return mix(hash);
+    }
+
+    private void rehash(int size) {
+        int[] slots = new int[size];
+        int mask = size - 1;
+        for (int row = 0; row < mSize; row++) {
+            int slot = hashRow(row) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = row + 1;
+        }
+        mSlots = slots;
+    }
+
+    private static int hash(String id) {
+        int hash = 0;
+        for (int i = 0; i < ID_LENGTH; i++) {
+            hash = 31 * hash + (byte) id.charAt(i);
+        }
+        return mix(hash);
+    }
+
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        return hash;
+    }
+
+    private static int tableSize(int capacity) {
+        int size = 16;
+        while (size < capacity * 2) {
+            size <<= 1;
+        }
+        return size;
+    }
+}
@@ -25,6 +25,7 @@ import kaaes.spotify.webapi.android.models.Recommendations;
 import kaaes.spotify.webapi.android.models.Result;
 import kaaes.spotify.webapi.android.models.SavedAlbum;
 import kaaes.spotify.webapi.android.models.SavedTrack;
+import kaaes.spotify.webapi.android.models.SearchResult;
 import kaaes.spotify.webapi.android.models.SeedsGenres;
 import kaaes.spotify.webapi.android.models.SnapshotId;
 import kaaes.spotify.webapi.android.models.Track;
@@ -43,6 +44,7 @@ import retrofit2.http.PUT;
 import retrofit2.http.Path;
 import retrofit2.http.Query;
 import retrofit2.http.QueryMap;
+import retrofit2.http.Url;
 
 public interface SpotifyService {
 
@@ -1577,6 +1579,44 @@ public interface SpotifyService {
     @GET("/v1/search?type=playlist")
     Call<PlaylistsPager> searchPlaylists(@Query("q") String q, @QueryMap Map<String, Object> options);
 
+    /**
+     * Get Spotify catalog information about items of several types that match a keyword string
+     * with a single request.
+     *
+     * @param q    The search query's keywords (and optional field filters and operators), for example "roadhouse+blues"
+     * @param type A comma-separated list of item types to search across, for example "track,artist,album,playlist"
+     * @return Results wrapped in a {@code SearchResult} object with a {@code Pager} for each of the requested types
+     * @see <a href="https://developer.spotify.com/web-api/search-item/">Search for an Item</a>
+     */
+    @GET("/v1/search")
+    Call<SearchResult> search(@Query("q") String q, @Query("type") String type);
+
+    /**
+     * Get Spotify catalog information about items of several types that match a keyword string
+     * with a single request. The {@code limit} and {@code offset} options apply to each of the types.
+     *
+     * @param q       The search query's keywords (and optional field filters and operators), for example "roadhouse+blues"
+     * @param type    A comma-separated list of item types to search across, for example "track,artist,album,playlist"
+     * @param options Optional parameters. For list of supported parameters see
+     *                <a href="https://developer.spotify.com/web-api/search-item/">endpoint documentation</a>
+     * @return Results wrapped in a {@code SearchResult} object with a {@code Pager} for each of the requested types
+     * @see <a href="https://developer.spotify.com/web-api/search-item/">Search for an Item</a>
+     */
+    @GET("/v1/search")
+    Call<SearchResult> search(@Query("q") String q, @Query("type") String type, @QueryMap Map<String, Object> options);
+
+    /**
+     * Get another page of one section of a search result. The url is the {@code next} or {@code previous}
+     * field of a {@code Pager} returned by any of the search methods, the result only has that section set.
+     * This way each section of a multi-type search can be paged independently.
+     *
+     * @param pageUrl Full url of the page as returned by the Spotify Web API
+     * @return Results wrapped in a {@code SearchResult} object with a {@code Pager} for the paged type
+     * @see <a href="https://developer.spotify.com/web-api/search-item/">Search for an Item</a>
+     */
+    @GET
+    Call<SearchResult> getSearchPage(@Url String pageUrl);
+
     /******************
      * Audio features *
      ******************/
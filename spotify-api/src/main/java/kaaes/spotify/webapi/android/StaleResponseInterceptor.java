@@ -0,0 +1,329 @@
+package kaaes.spotify.webapi.android;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Keeps the last good response of GET requests in memory and serves it according to the
+ * {@link ResponsePolicy} configured for the endpoint: immediately while it's refreshed in the
+ * background (stale-while-revalidate) or when the network request fails (stale-if-error).
+ * <p/>
+ * Responses served from memory after their max age carry a {@code Warning} header,
+ * use {@link #isStale(retrofit2.Response)} to check for it.
+ * <p/>
+ * Basic usage:
+ * StaleResponseInterceptor interceptor = new StaleResponseInterceptor()
+ * .setPolicy("/v1/browse/new-releases", ResponsePolicy.staleWhileRevalidate(1, TimeUnit.DAYS))
+ * .setDefaultPolicy(ResponsePolicy.staleIfError(1, TimeUnit.HOURS));
+ * OkHttpClient client = api.createBaseOkHttpClientBuilder().addInterceptor(interceptor).build();
+ * interceptor.setCallFactory(client);
+ * interceptor.setSpotifyApi(api);
+ * <p/>
+ * Stored responses are kept per access token, the one in the Authorization header of the request
+ * or, since the wrapper adds that header after application interceptors run, the one set on the
+ * wrapper passed to {@link #setSpotifyApi(SpotifyApi)}. Without either they are shared by all users.
+ */
+public class StaleResponseInterceptor implements Interceptor {
+
+    private static final String TAG = StaleResponseInterceptor.class.getSimpleName();
+
+    public static final String HEADER_WARNING = "Warning";
+    public static final String WARNING_STALE = "110 - \"Response is Stale\"";
+    public static final String WARNING_REVALIDATION_FAILED = "111 - \"Revalidation Failed\"";
+
+    public static final int DEFAULT_MAX_ENTRIES = 100;
+
+    /**
+     * Marks the background requests so that they bypass stored responses
+     */
+    private static final String HEADER_REVALIDATE = "X-Stale-Revalidate";
+
+    private static class StoredResponse {
+        final int code;
+        final String message;
+        final MediaType contentType;
+        final byte[] body;
+        final long storedAt;
+
+        StoredResponse(int code, String message, MediaType contentType, byte[] body, long storedAt) {
+            this.code = code;
+            this.message = message;
+            this.contentType = contentType;
+            this.body = body;
+            this.storedAt = storedAt;
+        }
+    }
+
+    private final Map<String, StoredResponse> mResponses;
+    private final Map<EndpointTemplate, ResponsePolicy> mPolicies = new LinkedHashMap<>();
+    private final Set<String> mRevalidating = new HashSet<>();
+    private ResponsePolicy mDefaultPolicy = ResponsePolicy.NETWORK_ONLY;
+    private Call.Factory mCallFactory;
+    private SpotifyApi mSpotifyApi;
+
+    private int mFreshHits;
+    private int mStaleHits;
+    private int mErrorFallbacks;
+
+    public StaleResponseInterceptor() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxEntries Maximum number of responses kept, least recently used ones are dropped first
+     */
+    public StaleResponseInterceptor(final int maxEntries) {
+        mResponses = new LinkedHashMap<String, StoredResponse>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, StoredResponse> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Sets the policy for one endpoint. When several templates match a request the one with the
+     * most literal segments is used, "/v1/albums/{id}" over "/v1/{type}/{id}", and of equally
+     * specific ones the one set first.
+     *
+     * @param endpoint Path of the endpoint as used in {@link SpotifyService}, for example "/v1/albums/{id}"
+     * @param policy   The policy
+     * @return This interceptor
+     */
+    public synchronized StaleResponseInterceptor setPolicy(String endpoint, ResponsePolicy policy) {
+        mPolicies.put(new EndpointTemplate(endpoint), policy);
+        return this;
+    }
+
+    /**
+     * Sets the policy for endpoints without their own policy, {@link ResponsePolicy#NETWORK_ONLY} by default.
+     *
+     * @param policy The policy
+     * @return This interceptor
+     */
+    public synchronized StaleResponseInterceptor setDefaultPolicy(ResponsePolicy policy) {
+        mDefaultPolicy = policy;
+        return this;
+    }
+
+    /**
+     * Sets the client used for background revalidation, usually the one this interceptor was added to.
+     * Without it stale-while-revalidate falls back to a regular request.
+     *
+     * @param callFactory The client
+     */
+    public synchronized void setCallFactory(Call.Factory callFactory) {
+        mCallFactory = callFactory;
+    }
+
+    /**
+     * Sets the wrapper whose access token separates stored responses of requests that don't have
+     * an Authorization header yet, as with clients from {@link SpotifyApi#createBaseOkHttpClientBuilder()}.
+     *
+     * @param spotifyApi The wrapper
+     */
+    public synchronized void setSpotifyApi(SpotifyApi spotifyApi) {
+        mSpotifyApi = spotifyApi;
+    }
+
+    /**
+     * Drops all stored responses
+     */
+    public synchronized void clear() {
+        mResponses.clear();
+    }
+
+    /**
+     * @param response Response returned by a {@link SpotifyService} call
+     * @return True if the response was served from memory after its max age
+     */
+    public static boolean isStale(retrofit2.Response<?> response) {
+        return isStale(response.raw());
+    }
+
+    /**
+     * @param response The response
+     * @return True if the response was served from memory after its max age
+     */
+    public static boolean isStale(Response response) {
+        String warning = response.header(HEADER_WARNING);
+        return warning != null && (warning.startsWith("110") || warning.startsWith("111"));
+    }
+
+    public synchronized int getFreshHitCount() {
+        return mFreshHits;
+    }
+
+    public synchronized int getStaleHitCount() {
+        return mStaleHits;
+    }
+
+    public synchronized int getErrorFallbackCount() {
+        return mErrorFallbacks;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (!"GET".equals(request.method())) {
+            return chain.proceed(request);
+        }
+
+        String key = keyFor(request);
+        if (request.header(HEADER_REVALIDATE) != null) {
+            return fetch(chain, request.newBuilder().removeHeader(HEADER_REVALIDATE).build(), key);
+        }
+
+        ResponsePolicy policy = policyFor(request.url().encodedPath());
+        if (!policy.storesResponses()) {
+            return chain.proceed(request);
+        }
+
+        StoredResponse stored;
+        long age;
+        synchronized (this) {
+            stored = mResponses.get(key);
+            age = stored != null ? now() - stored.storedAt : 0;
+            if (stored != null && policy.isFresh(age)) {
+                mFreshHits++;
+                return build(request, stored, age, null);
+            }
+            if (stored != null && policy.canRevalidateInBackground(age) && revalidate(request, key)) {
+                mStaleHits++;
+                return build(request, stored, age, WARNING_STALE);
+            }
+        }
+
+        Response response;
+        try {
+            response = fetch(chain, request, key);
+        } catch (IOException e) {
+            if (stored != null && policy.canServeOnError(age)) {
+                Log.d(TAG, "Serving stale response after error: " + e.getMessage());
+                return fallback(request, stored, age);
+            }
+            throw e;
+        }
+
+        if (response.code() >= 500 && stored != null && policy.canServeOnError(age)) {
+            response.body().close();
+            return fallback(request, stored, age);
+        }
+        return response;
+    }
+
+    private Response fetch(Chain chain, Request request, String key) throws IOException {
+        Response response = chain.proceed(request);
+        if (!response.isSuccessful()) {
+            return response;
+        }
+
+        ResponseBody body = response.body();
+        MediaType contentType = body.contentType();
+        byte[] bytes = body.bytes();
+        synchronized (this) {
+            mResponses.put(key, new StoredResponse(response.code(), response.message(), contentType, bytes, now()));
+        }
+        return response.newBuilder().body(ResponseBody.create(contentType, bytes)).build();
+    }
+
+    private synchronized Response fallback(Request request, StoredResponse stored, long age) {
+        mErrorFallbacks++;
+        return build(request, stored, age, WARNING_REVALIDATION_FAILED);
+    }
+
+    /**
+     * @return URL of the request and the access token it's made with, if any
+     */
+    private String keyFor(Request request) {
+        String authorization = request.header("Authorization");
+        if (authorization == null) {
+            SpotifyApi spotifyApi;
+            synchronized (this) {
+                spotifyApi = mSpotifyApi;
+            }
+            String accessToken = spotifyApi != null ? spotifyApi.getAccessToken() : null;
+            if (accessToken != null) {
+                authorization = "Bearer " + accessToken;
+            }
+        }
+        String url = request.url().toString();
+        return authorization != null ? url + "\n" + authorization : url;
+    }
+
+    /**
+     * Starts a background request refreshing the stored response unless one is running already.
+     * The key is released by the callback, the token may change before the request stores its response.
+     *
+     * @return False if there's no client to revalidate with
+     */
+    private boolean revalidate(Request request, final String key) {
+        if (mCallFactory == null) return false;
+        if (!mRevalidating.add(key)) return true;
+
+        Request revalidation = request.newBuilder().header(HEADER_REVALIDATE, "1").build();
+        mCallFactory.newCall(revalidation).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                done();
+                Log.d(TAG, "Revalidation failed: " + e.getMessage());
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                done();
+                response.body().close();
+            }
+
+            private void done() {
+                synchronized (StaleResponseInterceptor.this) {
+                    mRevalidating.remove(key);
+                }
+            }
+        });
+        return true;
+    }
+
+    private Response build(Request request, StoredResponse stored, long ageMs, String warning) {
+        Response.Builder builder = new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(stored.code)
+                .message(stored.message)
+                .header("Age", String.valueOf(TimeUnit.MILLISECONDS.toSeconds(ageMs)))
+                .body(ResponseBody.create(stored.contentType, stored.body));
+        if (warning != null) {
+            builder.header(HEADER_WARNING, warning);
+        }
+        return builder.build();
+    }
+
+    private synchronized ResponsePolicy policyFor(String path) {
+        EndpointTemplate best = null;
+        for (EndpointTemplate template : mPolicies.keySet()) {
+            if (template.matches(path) && (best == null || template.getLiteralCount() > best.getLiteralCount())) {
+                best = template;
+            }
+        }
+        return best != null ? mPolicies.get(best) : mDefaultPolicy;
+    }
+
+    long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+}
@@ -0,0 +1,53 @@
+package kaaes.spotify.webapi.android.models;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Links of Spotify objects, all of them follow from the type and ID of the object.
+ * Used by the models to derive the fields that were left out by
+ * {@link kaaes.spotify.webapi.android.CompactModels}.
+ */
+public final class Links {
+
+    /**
+     * Key of the Spotify URL in {@code external_urls}
+     */
+    public static final String SPOTIFY = "spotify";
+
+    private Links() {
+    }
+
+    /**
+     * @return Web API endpoint of the object, for example https://api.spotify.com/v1/tracks/{id}
+     */
+    public static String href(String type, String id) {
+        if (type == null || id == null) return null;
+        return "https://api.spotify.com/v1/" + type + "s/" + id;
+    }
+
+    /**
+     * @return Spotify URI of the object, for example spotify:track:{id}
+     */
+    public static String uri(String type, String id) {
+        if (type == null || id == null) return null;
+        return "spotify:" + type + ":" + id;
+    }
+
+    /**
+     * @return Spotify URL of the object, for example https://open.spotify.com/track/{id}
+     */
+    public static String spotifyUrl(String type, String id) {
+        if (type == null || id == null) return null;
+        return "https://open.spotify.com/" + type + "/" + id;
+    }
+
+    /**
+     * @return External URLs holding only the Spotify URL of the object
+     */
+    public static Map<String, String> externalUrls(String type, String id) {
+        String url = spotifyUrl(type, id);
+        if (url == null) return null;
+        return Collections.singletonMap(SPOTIFY, url);
+    }
+}
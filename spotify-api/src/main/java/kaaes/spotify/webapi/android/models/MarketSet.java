@@ -0,0 +1,266 @@
+package kaaes.spotify.webapi.android.models;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Immutable set of markets as a bitset over all two letter ISO 3166-1 alpha-2 codes,
+ * 88 bytes of bits however many markets there are. It is a read-only {@code List<String>}
+ * of the codes in alphabetical order, the order the Web API lists them in, so it can stand in
+ * for {@code available_markets}. The code strings are shared constants.
+ * <p/>
+ * Basic usage:
+ * MarketSet markets = MarketSet.of(track.available_markets);
+ * if (markets.isAvailableIn("SE")) ...
+ */
+public final class MarketSet extends AbstractList<String> implements RandomAccess {
+
+    private static final int LETTERS = 26;
+    private static final int CODES = LETTERS * LETTERS;
+    private static final int WORDS = (CODES + 63) / 64;
+
+    private static final String[] NAMES = new String[CODES];
+
+    static {
+        for (int i = 0; i < CODES; i++) {
+            NAMES[i] = new String(new char[]{(char) ('A' + i / LETTERS), (char) ('A' + i % LETTERS)});
+        }
+    }
+
+    public static final MarketSet EMPTY = new MarketSet(new long[WORDS]);
+
+    private final long[] mBits;
+    private final int mSize;
+    private int mHashCode;
+
+    private MarketSet(long[] bits) {
+        mBits = bits;
+        int size = 0;
+        for (long word : bits) {
+            size += Long.bitCount(word);
+        }
+        mSize = size;
+    }
+
+    /**
+     * @param markets ISO 3166-1 alpha-2 codes
+     * @return Set of the markets
+     * @throws IllegalArgumentException If a code isn't two uppercase letters
+     */
+    public static MarketSet of(Collection<String> markets) {
+        if (markets instanceof MarketSet) {
+            return (MarketSet) markets;
+        }
+        long[] bits = new long[WORDS];
+        for (String market : markets) {
+            int index = index(market);
+            if (index < 0) {
+                throw new IllegalArgumentException("Not a market: " + market);
+            }
+            bits[index >>> 6] |= 1L << index;
+        }
+        return new MarketSet(bits);
+    }
+
+    public static MarketSet of(String... markets) {
+        return of(Arrays.asList(markets));
+    }
+
+    /**
+     * Reads a JSON array of market codes directly from the bytes of a response,
+     * no string is created for the codes. Neither Gson nor {@link kaaes.spotify.webapi.android.CompactModels}
+     * parse responses with it, see {@code MarketSetBenchmark} for its cost against Gson reading the
+     * lists and {@code ModelFootprint} for the retained sizes.
+     *
+     * @param json   UTF-8 JSON
+     * @param offset Index of the opening bracket of the array, leading whitespace is skipped
+     * @return Set of the markets
+     * @throws IllegalArgumentException If there is no array of market codes at the offset
+     */
+    public static MarketSet parse(byte[] json, int offset) {
+        long[] bits = new long[WORDS];
+        int i = skipWhitespace(json, offset);
+        if (i >= json.length || json[i] != '[') {
+            throw new IllegalArgumentException("Expected an array at " + i);
+        }
+        i = skipWhitespace(json, i + 1);
+        if (i < json.length && json[i] == ']') {
+            return EMPTY;
+        }
+        while (true) {
+            if (i + 3 >= json.length || json[i] != '"' || json[i + 3] != '"') {
+                throw new IllegalArgumentException("Expected a market at " + i);
+            }
+            int index = index(json[i + 1], json[i + 2]);
+            if (index < 0) {
+                throw new IllegalArgumentException("Expected a market at " + i);
+            }
+            bits[index >>> 6] |= 1L << index;
+            i = skipWhitespace(json, i + 4);
+            if (i < json.length && json[i] == ']') {
+                return new MarketSet(bits);
+            }
+            if (i >= json.length || json[i] != ',') {
+                throw new IllegalArgumentException("Expected , or ] at " + i);
+            }
+            i = skipWhitespace(json, i + 1);
+        }
+    }
+
+    /**
+     * @param markets Codes in strictly alphabetical order as the Web API lists them
+     * @return Set equal to the list or null if the list isn't one, for example because of
+     * duplicates or an unknown code
+     */
+    public static MarketSet fromSortedList(List<String> markets) {
+        if (markets instanceof MarketSet) {
+            return (MarketSet) markets;
+        }
+        long[] bits = new long[WORDS];
+        int previous = -1;
+        for (int i = 0, size = markets.size(); i < size; i++) {
+            int index = index(markets.get(i));
+            if (index <= previous) {
+                return null;
+            }
+            bits[index >>> 6] |= 1L << index;
+            previous = index;
+        }
+        return new MarketSet(bits);
+    }
+
+    /**
+     * @param market ISO 3166-1 alpha-2 code
+     * @return Whether the market is in the set, false for anything that isn't a code
+     */
+    public boolean isAvailableIn(String market) {
+        int index = index(market);
+        return index >= 0 && (mBits[index >>> 6] & 1L << index) != 0;
+    }
+
+    /**
+     * @return Markets in both sets
+     */
+    public MarketSet intersect(MarketSet other) {
+        long[] bits = new long[WORDS];
+        for (int i = 0; i < WORDS; i++) {
+            bits[i] = mBits[i] & other.mBits[i];
+        }
+        return new MarketSet(bits);
+    }
+
+    /**
+     * @return Whether any market is in both sets
+     */
+    public boolean intersects(MarketSet other) {
+        for (int i = 0; i < WORDS; i++) {
+            if ((mBits[i] & other.mBits[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Whether every market of the other set is in this one
+     */
+    public boolean containsAll(MarketSet other) {
+        for (int i = 0; i < WORDS; i++) {
+            if ((other.mBits[i] & ~mBits[i]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof String && isAvailableIn((String) o);
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        if (!contains(o)) return -1;
+        int index = index((String) o);
+        int word = index >>> 6;
+        int position = Long.bitCount(mBits[word] & ((1L << index) - 1));
+        for (int i = 0; i < word; i++) {
+            position += Long.bitCount(mBits[i]);
+        }
+        return position;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return indexOf(o);
+    }
+
+    /**
+     * Finds the code by counting bits word by word, at most 11 words
+     */
+    @Override
+    public String get(int location) {
+        if (location < 0 || location >= mSize) {
+            throw new IndexOutOfBoundsException("Index: " + location + ", size: " + mSize);
+        }
+        int remaining = location;
+        for (int i = 0; i < WORDS; i++) {
+            long word = mBits[i];
+            int count = Long.bitCount(word);
+            if (remaining < count) {
+                for (int j = 0; j < remaining; j++) {
+                    word &= word - 1;
+                }
+                return NAMES[i * 64 + Long.numberOfTrailingZeros(word)];
+            }
+            remaining -= count;
+        }
+        throw new AssertionError();
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof MarketSet) {
+            return Arrays.equals(mBits, ((MarketSet) o).mBits);
+        }
+        return super.equals(o);
+    }
+
+    /**
+     * Same as the hash code of a list of the codes, cached
+     */
+    @Override
+    public int hashCode() {
+        int hashCode = mHashCode;
+        if (hashCode == 0) {
+            hashCode = super.hashCode();
+            mHashCode = hashCode;
+        }
+        return hashCode;
+    }
+
+    private static int index(String market) {
+        if (market == null || market.length() != 2) return -1;
+        return index(market.charAt(0), market.charAt(1));
+    }
+
+    private static int index(int first, int second) {
+        if (first < 'A' || first > 'Z' || second < 'A' || second > 'Z') return -1;
+        return (first - 'A') * LETTERS + second - 'A';
+    }
+
+    private static int skipWhitespace(byte[] json, int i) {
+        while (i < json.length && (json[i] == ' ' || json[i] == '\n' || json[i] == '\r' || json[i] == '\t')) {
+            i++;
+        }
+        return i;
+    }
+}
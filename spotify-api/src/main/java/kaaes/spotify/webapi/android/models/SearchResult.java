@@ -0,0 +1,49 @@
+package kaaes.spotify.webapi.android.models;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * Result of a search for several types at once. Only the pagers for
+ * the requested types are set, the others are {@code null}.
+ */
+public class SearchResult implements Parcelable {
+    public Pager<Track> tracks;
+    public Pager<Artist> artists;
+    public Pager<AlbumSimple> albums;
+    public Pager<PlaylistSimple> playlists;
+
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeParcelable(this.tracks, 0);
+        dest.writeParcelable(this.artists, 0);
+        dest.writeParcelable(this.albums, 0);
+        dest.writeParcelable(this.playlists, 0);
+    }
+
+    public SearchResult() {
+    }
+
+    protected SearchResult(Parcel in) {
+        this.tracks = in.readParcelable(Pager.class.getClassLoader());
+        this.artists = in.readParcelable(Pager.class.getClassLoader());
+        this.albums = in.readParcelable(Pager.class.getClassLoader());
+        this.playlists = in.readParcelable(Pager.class.getClassLoader());
+    }
+
+    public static final Parcelable.Creator<SearchResult> CREATOR = new Parcelable.Creator<SearchResult>() {
+        public SearchResult createFromParcel(Parcel source) {
+            return new SearchResult(source);
+        }
+
+        public SearchResult[] newArray(int size) {
+            return new SearchResult[size];
+        }
+    };
+}
@@ -19,6 +19,27 @@ public class UserPublic implements Parcelable {
     public String type;
     public String uri;
 
+    /**
+     * @return {@link #href} or, if it was left out, the Web API endpoint derived from the ID
+     */
+    public String getHref() {
+        return href != null ? href : Links.href(type, id);
+    }
+
+    /**
+     * @return {@link #uri} or, if it was left out, the Spotify URI derived from the ID
+     */
+    public String getUri() {
+        return uri != null ? uri : Links.uri(type, id);
+    }
+
+    /**
+     * @return {@link #external_urls} or, if they were left out, the Spotify URL derived from the ID
+     */
+    public Map<String, String> getExternalUrls() {
+        return external_urls != null ? external_urls : Links.externalUrls(type, id);
+    }
+
     public UserPublic() {
     }
 
@@ -0,0 +1,81 @@
+package kaaes.spotify.webapi.android;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Arrays;
+import java.util.List;
+
+import kaaes.spotify.webapi.android.models.AudioFeaturesTrack;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class AudioFeaturesIndexTest {
+
+    private AudioFeaturesIndex mIndex;
+
+    @Before
+    public void setUp() {
+        mIndex = new AudioFeaturesIndex(2);
+        mIndex.addAll(Arrays.asList(
+                features("0000000000000000000001", 0.5f, 120, 5, 1),
+                features("0000000000000000000002", 0.55f, 122, 5, 1),
+                features("0000000000000000000003", 0.6f, 90, 5, 0),
+                null,
+                features("0000000000000000000004", 0.9f, 124, 7, 1)));
+    }
+
+    @Test
+    public void shouldReturnNeighboursByDistance() {
+        List<AudioFeaturesIndex.Neighbour> neighbours = mIndex.query("0000000000000000000001", new AudioFeaturesIndex.Query(2));
+
+        assertThat(mIndex.size()).isEqualTo(4);
+        assertThat(neighbours).hasSize(2);
+        assertThat(neighbours.get(0).id).isEqualTo("0000000000000000000002");
+        assertThat(neighbours.get(0).distance).isLessThan(neighbours.get(1).distance);
+    }
+
+    @Test
+    public void shouldApplyFilters() {
+        AudioFeaturesIndex.Query query = new AudioFeaturesIndex.Query(10).key(5);
+        assertThat(mIndex.query("0000000000000000000001", query)).hasSize(2);
+
+        query.mode(1);
+        assertThat(mIndex.query("0000000000000000000001", query)).hasSize(1);
+
+        query = new AudioFeaturesIndex.Query(10).tempo(121, 130);
+        assertThat(mIndex.query("0000000000000000000001", query)).hasSize(2);
+    }
+
+    @Test
+    public void shouldReplaceFeaturesOfKnownTracks() {
+        mIndex.add(features("0000000000000000000004", 0.5f, 120, 5, 1));
+
+        List<AudioFeaturesIndex.Neighbour> neighbours = mIndex.query("0000000000000000000001", new AudioFeaturesIndex.Query(1));
+        assertThat(mIndex.size()).isEqualTo(4);
+        assertThat(neighbours.get(0).id).isEqualTo("0000000000000000000004");
+        assertThat(neighbours.get(0).distance).isEqualTo(0f);
+    }
+
+    @Test
+    public void shouldQueryWithFeaturesNotInIndex() {
+        AudioFeaturesTrack features = features("0000000000000000000009", 0.85f, 124, 7, 1);
+
+        assertThat(mIndex.query(features, new AudioFeaturesIndex.Query(1)).get(0).id).isEqualTo("0000000000000000000004");
+        assertThat(mIndex.query("0000000000000000000009", new AudioFeaturesIndex.Query(1))).isEmpty();
+    }
+
+    private static AudioFeaturesTrack features(String id, float energy, float tempo, int key, int mode) {
+        AudioFeaturesTrack features = new AudioFeaturesTrack();
+        features.id = id;
+        features.energy = energy;
+        features.tempo = tempo;
+        features.key = key;
+        features.mode = mode;
+        features.loudness = -8;
+        return features;
+    }
+}
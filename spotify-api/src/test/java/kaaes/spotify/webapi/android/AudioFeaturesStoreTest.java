@@ -0,0 +1,115 @@
+package kaaes.spotify.webapi.android;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import kaaes.spotify.webapi.android.models.AudioFeaturesTrack;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class AudioFeaturesStoreTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mDirectory;
+    private AudioFeaturesStore mStore;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = mFolder.newFolder("features");
+        mStore = AudioFeaturesStore.open(mDirectory);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mStore.close();
+    }
+
+    @Test
+    public void shouldFilterAndAggregate() throws IOException {
+        mStore.appendAll(tracks(3000));
+
+        BitSet fast = mStore.filter(AudioFeaturesIndex.TEMPO, 140, 160);
+        BitSet fastAndLoud = mStore.filter(AudioFeaturesIndex.ENERGY, 0.5f, 1, fast);
+        AudioFeaturesStore.Stats stats = mStore.aggregate(AudioFeaturesIndex.ENERGY, fastAndLoud);
+
+        assertThat(fast.cardinality()).isEqualTo(1000);
+        assertThat(fastAndLoud.cardinality()).isEqualTo(500);
+        assertThat(stats.count).isEqualTo(500);
+        assertThat(stats.min).isGreaterThanOrEqualTo(0.5f);
+        assertThat(mStore.aggregate(AudioFeaturesIndex.TEMPO, null).count).isEqualTo(3000);
+    }
+
+    @Test
+    public void shouldDeriveUrlsFromId() throws IOException {
+        mStore.appendAll(tracks(1));
+
+        AudioFeaturesTrack track = mStore.get(0);
+        assertThat(track.uri).isEqualTo("spotify:track:" + track.id);
+        assertThat(track.track_href).isEqualTo("https://api.spotify.com/v1/tracks/" + track.id);
+        assertThat(track.analysis_url).isEqualTo("https://api.spotify.com/v1/audio-analysis/" + track.id);
+    }
+
+    @Test
+    public void shouldReplaceKnownTracksAndPersist() throws IOException {
+        List<AudioFeaturesTrack> tracks = tracks(2000);
+        mStore.appendAll(tracks);
+        tracks.get(7).tempo = 42;
+        mStore.appendAll(tracks.subList(0, 10));
+        mStore.close();
+
+        mStore = AudioFeaturesStore.open(mDirectory);
+        assertThat(mStore.size()).isEqualTo(2000);
+        int row = mStore.indexOf(tracks.get(7).id);
+        assertThat(mStore.getFeature(AudioFeaturesIndex.TEMPO, row)).isEqualTo(42f);
+        assertThat(mStore.get(1999).duration_ms).isEqualTo(1999);
+    }
+
+    @Test
+    public void shouldRejectBatchWithInvalidId() throws IOException {
+        mStore.appendAll(tracks(10));
+        List<AudioFeaturesTrack> tracks = tracks(20);
+        tracks.get(15).id = "invalid";
+
+        try {
+            mStore.appendAll(tracks);
+            fail("Expected the invalid ID to be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertThat(mStore.size()).isEqualTo(10);
+        assertThat(mStore.indexOf(tracks.get(12).id)).isEqualTo(-1);
+        mStore.close();
+
+        mStore = AudioFeaturesStore.open(mDirectory);
+        assertThat(mStore.size()).isEqualTo(10);
+    }
+
+    private static List<AudioFeaturesTrack> tracks(int count) {
+        List<AudioFeaturesTrack> tracks = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            AudioFeaturesTrack track = new AudioFeaturesTrack();
+            track.id = String.format("%022d", i);
+            track.tempo = 100 + 50 * (i % 3);
+            track.energy = (i % 2) * 0.5f + 0.25f;
+            track.duration_ms = i;
+            tracks.add(track);
+        }
+        tracks.add(null);
+        return tracks;
+    }
+}
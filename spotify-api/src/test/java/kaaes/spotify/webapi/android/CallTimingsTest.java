@@ -0,0 +1,196 @@
+package kaaes.spotify.webapi.android;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import kaaes.spotify.webapi.android.models.Album;
+import okhttp3.Connection;
+import okhttp3.Dns;
+import okhttp3.Handshake;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okhttp3.Route;
+import retrofit2.Converter;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class CallTimingsTest {
+
+    private static final String ALBUM = "https://api.spotify.com/v1/albums/0sNOF9WDwhWunNAHPD3Baj";
+
+    private static class FakeConnection implements Connection {
+        private final Protocol mProtocol;
+
+        FakeConnection(Protocol protocol) {
+            mProtocol = protocol;
+        }
+
+        @Override
+        public Route route() {
+            return null;
+        }
+
+        @Override
+        public Socket socket() {
+            return null;
+        }
+
+        @Override
+        public Handshake handshake() {
+            return null;
+        }
+
+        @Override
+        public Protocol protocol() {
+            return mProtocol;
+        }
+    }
+
+    /**
+     * Runs a request through the interceptors of the timings the way OkHttp does, resolving
+     * the host first when the connection is new and answering after {@code serverMs}
+     */
+    private class FakeChain implements Interceptor.Chain {
+        private final Request mRequest;
+        private final Connection mConnection;
+        private final boolean mNetwork;
+        private final long mServerMs;
+
+        FakeChain(Request request, Connection connection, boolean network, long serverMs) {
+            mRequest = request;
+            mConnection = connection;
+            mNetwork = network;
+            mServerMs = serverMs;
+        }
+
+        @Override
+        public Request request() {
+            return mRequest;
+        }
+
+        @Override
+        public Connection connection() {
+            return mNetwork ? mConnection : null;
+        }
+
+        @Override
+        public Response proceed(Request request) throws IOException {
+            if (!mNetwork) {
+                if (mConnection == null) {
+                    throw new IOException("Connection refused");
+                }
+                if (!mUsedConnections.contains(mConnection)) {
+                    mDns.lookup(request.url().host());
+                    mUsedConnections.add(mConnection);
+                }
+                return mTimings.networkInterceptor().intercept(new FakeChain(request, mConnection, true, mServerMs));
+            }
+            sleep(mServerMs);
+            return new Response.Builder()
+                    .request(request)
+                    .protocol(mConnection.protocol())
+                    .code(200)
+                    .message("OK")
+                    .body(ResponseBody.create(MediaType.parse("application/json"),
+                            "{\"id\":\"0sNOF9WDwhWunNAHPD3Baj\",\"name\":\"She's So Unusual\"}"))
+                    .build();
+        }
+    }
+
+    private CallTimings mTimings;
+    private Dns mDns;
+    private List<Connection> mUsedConnections;
+
+    @Before
+    public void setUp() {
+        mTimings = new CallTimings();
+        mUsedConnections = new ArrayList<>();
+        mDns = mTimings.dns(new Dns() {
+            @Override
+            public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+                sleep(20);
+                return Collections.singletonList(InetAddress.getLoopbackAddress());
+            }
+        });
+    }
+
+    @Test
+    public void shouldMeasurePhasesPerEndpoint() throws IOException {
+        Connection connection = new FakeConnection(Protocol.HTTP_2);
+        execute(ALBUM, connection, 30).body().close();
+        execute(ALBUM, connection, 30).body().close();
+        execute("https://api.spotify.com/v1/albums/6akEvsycLGftJxYudPjmqK", connection, 0).body().close();
+
+        CallTimings.EndpointTimings album = mTimings.getTimings("GET /v1/albums/{id}");
+        assertThat(album.getCallCount()).isEqualTo(3);
+        assertThat(album.getNewConnectionCount()).isEqualTo(1);
+        assertThat(album.getReusedConnectionCount()).isEqualTo(2);
+        assertThat(album.getHttp2Count()).isEqualTo(3);
+        assertThat(album.getSampleCount(CallTimings.PHASE_DNS)).isEqualTo(1);
+        assertThat(album.getAverageMs(CallTimings.PHASE_DNS)).isGreaterThanOrEqualTo(20);
+        assertThat(album.getSampleCount(CallTimings.PHASE_SERVER)).isEqualTo(3);
+        assertThat(album.getMaxMs(CallTimings.PHASE_SERVER)).isGreaterThanOrEqualTo(30);
+        assertThat(album.getSampleCount(CallTimings.PHASE_DOWNLOAD)).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldMeasureParsingSeparately() throws IOException {
+        Converter<ResponseBody, ?> converter = mTimings.converterFactory(GsonConverterFactory.create())
+                .responseBodyConverter(Album.class, new Annotation[0], null);
+
+        Album album = (Album) converter.convert(execute(ALBUM, new FakeConnection(Protocol.HTTP_1_1), 0).body());
+
+        assertThat(album.name).isEqualTo("She's So Unusual");
+        CallTimings.EndpointTimings timings = mTimings.getTimings("GET /v1/albums/{id}");
+        assertThat(timings.getSampleCount(CallTimings.PHASE_PARSE)).isEqualTo(1);
+        assertThat(timings.getSampleCount(CallTimings.PHASE_DOWNLOAD)).isEqualTo(1);
+        assertThat(timings.getHttp2Count()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldCountFailures() {
+        try {
+            execute("https://api.spotify.com/v1/search?q=abba&type=track", null, 0);
+            fail("Expected the call to fail");
+        } catch (IOException e) {
+            // expected
+        }
+
+        Map<String, CallTimings.EndpointTimings> timings = mTimings.getTimings();
+        assertThat(timings.keySet()).containsOnly("GET /v1/search");
+        assertThat(timings.get("GET /v1/search").getFailureCount()).isEqualTo(1);
+        assertThat(timings.get("GET /v1/search").getSampleCount(CallTimings.PHASE_SERVER)).isEqualTo(0);
+    }
+
+    private Response execute(String url, Connection connection, long serverMs) throws IOException {
+        Request request = new Request.Builder().url(url).build();
+        return mTimings.applicationInterceptor().intercept(new FakeChain(request, connection, false, serverMs));
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
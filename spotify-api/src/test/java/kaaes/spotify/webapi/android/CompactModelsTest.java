@@ -0,0 +1,87 @@
+package kaaes.spotify.webapi.android;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.List;
+
+import kaaes.spotify.webapi.android.models.MarketSet;
+import kaaes.spotify.webapi.android.models.Pager;
+import kaaes.spotify.webapi.android.models.PlaylistTrack;
+import kaaes.spotify.webapi.android.models.Track;
+import kaaes.spotify.webapi.android.models.TracksPager;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class CompactModelsTest {
+
+    private final Gson mGson = new Gson();
+    private final Gson mCompactGson = CompactModels.createGson();
+
+    @Test
+    public void shouldDeriveLeftOutLinks() {
+        String body = TestUtils.readTestData("track.json");
+        Track track = mGson.fromJson(body, Track.class);
+        Track compact = mCompactGson.fromJson(body, Track.class);
+
+        assertThat(compact.href).isNull();
+        assertThat(compact.uri).isNull();
+        assertThat(compact.external_urls).isNull();
+        assertThat(compact.getHref()).isEqualTo(track.href);
+        assertThat(compact.getUri()).isEqualTo(track.uri);
+        assertThat(compact.getExternalUrls()).isEqualTo(track.external_urls);
+
+        assertThat(compact.album.uri).isNull();
+        assertThat(compact.album.getUri()).isEqualTo(track.album.uri);
+        assertThat(compact.artists.get(0).href).isNull();
+        assertThat(compact.artists.get(0).getHref()).isEqualTo(track.artists.get(0).href);
+        assertThat(compact.available_markets).isEqualTo(track.available_markets);
+    }
+
+    @Test
+    public void shouldReturnFieldsFromGetters() {
+        Track track = mGson.fromJson(TestUtils.readTestData("track.json"), Track.class);
+
+        assertThat(track.getHref()).isSameAs(track.href);
+        assertThat(track.getUri()).isSameAs(track.uri);
+        assertThat(track.getExternalUrls()).isSameAs(track.external_urls);
+    }
+
+    @Test
+    public void shouldKeepLinksThatAreNotDerived() {
+        String body = TestUtils.readTestData("playlist-tracks.json");
+        Pager<PlaylistTrack> page = mGson.fromJson(body, new TypeToken<Pager<PlaylistTrack>>() {
+        }.getType());
+        Pager<PlaylistTrack> compact = mCompactGson.fromJson(body, new TypeToken<Pager<PlaylistTrack>>() {
+        }.getType());
+
+        // The fixture has http:// Spotify URLs for users
+        assertThat(compact.items.get(0).added_by.external_urls).isEqualTo(page.items.get(0).added_by.external_urls);
+        assertThat(compact.items.get(0).added_by.href).isEqualTo(page.items.get(0).added_by.href);
+    }
+
+    @Test
+    public void shouldShareEqualMarketLists() {
+        TracksPager pager = mCompactGson.fromJson(TestUtils.readTestData("search-track.json"), TracksPager.class);
+        List<Track> tracks = pager.tracks.items;
+
+        assertThat(tracks.get(0).available_markets).isInstanceOf(MarketSet.class);
+        for (Track track : tracks) {
+            assertThat(track.available_markets).isSameAs(tracks.get(0).available_markets);
+            assertThat(track.album.available_markets).isSameAs(track.available_markets);
+            assertThat(track.type).isSameAs(tracks.get(0).type);
+        }
+        try {
+            tracks.get(0).available_markets.add("XX");
+            fail("Expected shared markets to be unmodifiable");
+        } catch (UnsupportedOperationException e) {
+            assertThat(tracks.get(1).available_markets).doesNotContain("XX");
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package kaaes.spotify.webapi.android;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import retrofit2.Retrofit;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class ConnectionWarmerTest {
+
+    private FaultInjectingCallFactory mServer;
+    private ConnectionWarmer mWarmer;
+
+    @Before
+    public void setUp() {
+        mServer = new FaultInjectingCallFactory(42).setLatency(1, 0, 0);
+        mWarmer = new ConnectionWarmer(mServer, SpotifyApi.SPOTIFY_WEB_API_ENDPOINT);
+    }
+
+    @Test
+    public void shouldOpenOneConnectionForHttp2() throws IOException {
+        mServer.setProtocol(Protocol.HTTP_2);
+
+        assertThat(mWarmer.getProtocol()).isNull();
+        assertThat(mWarmer.warm(8)).isEqualTo(Protocol.HTTP_2);
+
+        assertThat(mServer.getCallCount()).isEqualTo(1);
+        assertThat(mWarmer.isMultiplexed()).isTrue();
+    }
+
+    @Test
+    public void shouldOpenConnectionPerRequestForHttp1() throws IOException {
+        assertThat(mWarmer.warm(8)).isEqualTo(Protocol.HTTP_1_1);
+
+        // The first connection is reused by one of the parallel requests
+        assertThat(mServer.getCallCount()).isEqualTo(9);
+        assertThat(mWarmer.isMultiplexed()).isFalse();
+    }
+
+    @Test
+    public void shouldFailWhenHostIsUnreachable() {
+        mServer.setFailureRatio(1);
+        try {
+            mWarmer.warm(4);
+            fail("Expected the warm up to fail");
+        } catch (IOException e) {
+            assertThat(mServer.getCallCount()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void shouldRejectNetworkChangeOfWrapperWithoutWarmer() {
+        SpotifyApi api = new SpotifyApi(new Retrofit.Builder().baseUrl(SpotifyApi.SPOTIFY_WEB_API_ENDPOINT).build());
+        try {
+            api.onNetworkChanged();
+            fail("Expected network changes to be rejected");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void shouldUseConnectionPoolOfRetrofitClient() {
+        OkHttpClient client = new OkHttpClient();
+        SpotifyApi api = new SpotifyApi(new Retrofit.Builder()
+                .baseUrl(SpotifyApi.SPOTIFY_WEB_API_ENDPOINT)
+                .client(client)
+                .build());
+
+        assertThat(api.getConnectionPool()).isSameAs(client.connectionPool());
+    }
+}
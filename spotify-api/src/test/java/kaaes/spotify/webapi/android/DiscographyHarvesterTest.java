@@ -0,0 +1,151 @@
+package kaaes.spotify.webapi.android;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import kaaes.spotify.webapi.android.models.Album;
+import kaaes.spotify.webapi.android.models.Albums;
+import kaaes.spotify.webapi.android.models.AudioFeaturesTrack;
+import kaaes.spotify.webapi.android.models.AudioFeaturesTracks;
+import kaaes.spotify.webapi.android.models.Pager;
+import kaaes.spotify.webapi.android.models.Track;
+import kaaes.spotify.webapi.android.models.TrackSimple;
+import retrofit2.Call;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class DiscographyHarvesterTest {
+
+    private static final int ALBUMS_PER_ARTIST = 60;
+    private static final int TRACKS_PER_ALBUM = 55;
+
+    private SpotifyService mSpotifyService;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        mSpotifyService = mock(SpotifyService.class);
+
+        when(mSpotifyService.getArtistAlbums(anyString(), anyMap())).thenAnswer(new Answer<Call<Pager<Album>>>() {
+            @Override
+            public Call<Pager<Album>> answer(InvocationOnMock invocation) {
+                String artistId = (String) invocation.getArguments()[0];
+                QueryOptions options = (QueryOptions) invocation.getArguments()[1];
+                int offset = options.getOffset();
+                Pager<Album> page = pager(offset, ALBUMS_PER_ARTIST);
+                for (int i = offset; i < Math.min(offset + DiscographyHarvester.PAGE_SIZE, ALBUMS_PER_ARTIST); i++) {
+                    Album album = new Album();
+                    album.id = artistId + "-" + i;
+                    page.items.add(album);
+                }
+                return FakeCall.success(page);
+            }
+        });
+
+        when(mSpotifyService.getAlbums(anyString())).thenAnswer(new Answer<Call<Albums>>() {
+            @Override
+            public Call<Albums> answer(InvocationOnMock invocation) {
+                Albums albums = new Albums();
+                albums.albums = new ArrayList<>();
+                for (String id : ((String) invocation.getArguments()[0]).split(",")) {
+                    Album album = new Album();
+                    album.id = id;
+                    album.tracks = new Pager<>();
+                    album.tracks.items = new ArrayList<>();
+                    album.tracks.total = TRACKS_PER_ALBUM;
+                    for (int i = 0; i < DiscographyHarvester.PAGE_SIZE; i++) {
+                        album.tracks.items.add(track(id, i, new TrackSimple()));
+                    }
+                    albums.albums.add(album);
+                }
+                return FakeCall.success(albums);
+            }
+        });
+
+        when(mSpotifyService.getAlbumTracks(anyString(), anyMap())).thenAnswer(new Answer<Call<Pager<Track>>>() {
+            @Override
+            public Call<Pager<Track>> answer(InvocationOnMock invocation) {
+                String albumId = (String) invocation.getArguments()[0];
+                int offset = ((QueryOptions) invocation.getArguments()[1]).getOffset();
+                Pager<Track> page = pager(offset, TRACKS_PER_ALBUM);
+                for (int i = offset; i < TRACKS_PER_ALBUM; i++) {
+                    page.items.add(track(albumId, i, new Track()));
+                }
+                return FakeCall.success(page);
+            }
+        });
+
+        when(mSpotifyService.getTracksAudioFeatures(anyString())).thenAnswer(new Answer<Call<AudioFeaturesTracks>>() {
+            @Override
+            public Call<AudioFeaturesTracks> answer(InvocationOnMock invocation) {
+                AudioFeaturesTracks features = new AudioFeaturesTracks();
+                features.audio_features = new ArrayList<>();
+                for (String id : ((String) invocation.getArguments()[0]).split(",")) {
+                    AudioFeaturesTrack track = new AudioFeaturesTrack();
+                    track.id = id;
+                    features.audio_features.add(track);
+                }
+                return FakeCall.success(features);
+            }
+        });
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldHarvestCompleteDiscographies() throws IOException, InterruptedException {
+        DiscographyHarvester harvester = new DiscographyHarvester(mSpotifyService, 4, null);
+        Map<String, DiscographyHarvester.Discography> discographies = harvester.harvest(Arrays.asList("a", "b"));
+
+        DiscographyHarvester.Discography discography = discographies.get("b");
+        assertThat(discography.albums).hasSize(ALBUMS_PER_ARTIST);
+        assertThat(discography.albums.get(59).id).isEqualTo("b-59");
+        assertThat(discography.albums.get(59).tracks.items).hasSize(TRACKS_PER_ALBUM);
+        assertThat(discography.tracks).hasSize(ALBUMS_PER_ARTIST * TRACKS_PER_ALBUM);
+        assertThat(discography.tracks.get(TRACKS_PER_ALBUM - 1).track_number).isEqualTo(TRACKS_PER_ALBUM - 1);
+        assertThat(discography.audioFeatures).hasSize(ALBUMS_PER_ARTIST * TRACKS_PER_ALBUM);
+
+        verify(mSpotifyService, times(4)).getArtistAlbums(anyString(), anyMap());
+        verify(mSpotifyService, times(6)).getAlbums(anyString());
+        verify(mSpotifyService, times(2 * ALBUMS_PER_ARTIST)).getAlbumTracks(anyString(), anyMap());
+        verify(mSpotifyService, times(66)).getTracksAudioFeatures(anyString());
+        assertThat(harvester.getRequestCount()).isEqualTo(4 + 6 + 120 + 66);
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldFailWhenRequestFails() throws IOException, InterruptedException {
+        when(mSpotifyService.getAlbums(anyString())).thenReturn(FakeCall.<Albums>error(500));
+
+        new DiscographyHarvester(mSpotifyService, 2, null).harvest("a");
+    }
+
+    private static <T> Pager<T> pager(int offset, int total) {
+        Pager<T> page = new Pager<>();
+        page.items = new ArrayList<>();
+        page.offset = offset;
+        page.total = total;
+        return page;
+    }
+
+    private static <T extends TrackSimple> T track(String albumId, int number, T track) {
+        track.id = albumId + "-" + number;
+        track.track_number = number;
+        track.disc_number = 1;
+        return track;
+    }
+}
@@ -0,0 +1,82 @@
+package kaaes.spotify.webapi.android;
+
+import java.io.IOException;
+
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * Call completing immediately with a fixed response, for testing code built on {@link SpotifyService}
+ */
+class FakeCall<T> implements Call<T> {
+
+    private final Response<T> mResponse;
+    private final IOException mError;
+    private boolean mExecuted;
+    private boolean mCanceled;
+
+    private FakeCall(Response<T> response, IOException error) {
+        mResponse = response;
+        mError = error;
+    }
+
+    static <T> FakeCall<T> success(T body) {
+        return new FakeCall<>(Response.success(body), null);
+    }
+
+    static <T> FakeCall<T> error(int code) {
+        return new FakeCall<>(Response.<T>error(code, ResponseBody.create(MediaType.parse("application/json"), "{}")), null);
+    }
+
+    static <T> FakeCall<T> failure(IOException error) {
+        return new FakeCall<>(null, error);
+    }
+
+    @Override
+    public Response<T> execute() throws IOException {
+        mExecuted = true;
+        if (mError != null) {
+            throw mError;
+        }
+        return mResponse;
+    }
+
+    @Override
+    public void enqueue(Callback<T> callback) {
+        mExecuted = true;
+        if (mError != null) {
+            callback.onFailure(this, mError);
+        } else {
+            callback.onResponse(this, mResponse);
+        }
+    }
+
+    @Override
+    public boolean isExecuted() {
+        return mExecuted;
+    }
+
+    @Override
+    public void cancel() {
+        mCanceled = true;
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return mCanceled;
+    }
+
+    @Override
+    public Call<T> clone() {
+        return new FakeCall<>(mResponse, mError);
+    }
+
+    @Override
+    public Request request() {
+        return new Request.Builder().url("https://api.spotify.com/").build();
+    }
+}
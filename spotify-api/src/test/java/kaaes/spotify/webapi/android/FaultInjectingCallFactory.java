@@ -0,0 +1,188 @@
+package kaaes.spotify.webapi.android;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Local stand-in for the Web API answering every request with an empty JSON object after a
+ * random latency, and with injected 503 responses and I/O errors. Canceled calls fail right away
+ * like OkHttp's calls do when their socket is closed.
+ */
+public class FaultInjectingCallFactory implements Call.Factory {
+
+    private final Random mRandom;
+    private long mLatencyMs;
+    private float mSlowRatio;
+    private long mSlowLatencyMs;
+    private float mErrorRatio;
+    private float mFailureRatio;
+    private long mNextLatencyMs = -1;
+    private volatile Protocol mProtocol = Protocol.HTTP_1_1;
+
+    private int mCalls;
+    private int mCanceled;
+
+    public FaultInjectingCallFactory(long seed) {
+        mRandom = new Random(seed);
+    }
+
+    /**
+     * @param latencyMs     Latency of most requests
+     * @param slowRatio     Part of the requests that take {@code slowLatencyMs} instead
+     * @param slowLatencyMs Latency of the slow requests
+     * @return This factory
+     */
+    public synchronized FaultInjectingCallFactory setLatency(long latencyMs, float slowRatio, long slowLatencyMs) {
+        mLatencyMs = latencyMs;
+        mSlowRatio = slowRatio;
+        mSlowLatencyMs = slowLatencyMs;
+        return this;
+    }
+
+    /**
+     * @param errorRatio Part of the requests answered with 503
+     * @return This factory
+     */
+    public synchronized FaultInjectingCallFactory setErrorRatio(float errorRatio) {
+        mErrorRatio = errorRatio;
+        return this;
+    }
+
+    /**
+     * @param failureRatio Part of the requests failing with an {@link IOException}
+     * @return This factory
+     */
+    public synchronized FaultInjectingCallFactory setFailureRatio(float failureRatio) {
+        mFailureRatio = failureRatio;
+        return this;
+    }
+
+    /**
+     * @param latencyMs Latency of the next call created, overriding the random one
+     * @return This factory
+     */
+    public synchronized FaultInjectingCallFactory delayNext(long latencyMs) {
+        mNextLatencyMs = latencyMs;
+        return this;
+    }
+
+    /**
+     * @param protocol Protocol of the responses, HTTP/1.1 by default
+     * @return This factory
+     */
+    public FaultInjectingCallFactory setProtocol(Protocol protocol) {
+        mProtocol = protocol;
+        return this;
+    }
+
+    public synchronized int getCallCount() {
+        return mCalls;
+    }
+
+    public synchronized int getCanceledCount() {
+        return mCanceled;
+    }
+
+    @Override
+    public synchronized Call newCall(Request request) {
+        mCalls++;
+        long latency = mNextLatencyMs >= 0 ? mNextLatencyMs
+                : mRandom.nextFloat() < mSlowRatio ? mSlowLatencyMs : mLatencyMs;
+        mNextLatencyMs = -1;
+        float outcome = mRandom.nextFloat();
+        int code = outcome < mErrorRatio ? 503 : 200;
+        boolean fail = outcome >= mErrorRatio && outcome < mErrorRatio + mFailureRatio;
+        return new InjectedCall(request, latency, code, fail);
+    }
+
+    private synchronized void onCanceled() {
+        mCanceled++;
+    }
+
+    private class InjectedCall implements Call {
+        private final Request mRequest;
+        private final long mLatencyMs;
+        private final int mCode;
+        private final boolean mFail;
+        private final CountDownLatch mCancel = new CountDownLatch(1);
+        private boolean mExecuted;
+
+        InjectedCall(Request request, long latencyMs, int code, boolean fail) {
+            mRequest = request;
+            mLatencyMs = latencyMs;
+            mCode = code;
+            mFail = fail;
+        }
+
+        @Override
+        public Request request() {
+            return mRequest;
+        }
+
+        @Override
+        public Response execute() throws IOException {
+            synchronized (this) {
+                mExecuted = true;
+            }
+            try {
+                if (mCancel.await(mLatencyMs, TimeUnit.MILLISECONDS)) {
+                    throw new IOException("Canceled");
+                }
+            } catch (InterruptedException e) {
+                throw new IOException("Interrupted", e);
+            }
+            if (mFail) {
+                throw new IOException("Injected failure");
+            }
+            return new Response.Builder()
+                    .request(mRequest)
+                    .protocol(mProtocol)
+                    .code(mCode)
+                    .message(mCode == 200 ? "OK" : "Service Unavailable")
+                    .body(ResponseBody.create(MediaType.parse("application/json"), "{}"))
+                    .build();
+        }
+
+        @Override
+        public void enqueue(final Callback callback) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        callback.onResponse(InjectedCall.this, execute());
+                    } catch (IOException e) {
+                        callback.onFailure(InjectedCall.this, e);
+                    }
+                }
+            }).start();
+        }
+
+        @Override
+        public void cancel() {
+            if (mCancel.getCount() > 0) {
+                mCancel.countDown();
+                onCanceled();
+            }
+        }
+
+        @Override
+        public synchronized boolean isExecuted() {
+            return mExecuted;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return mCancel.getCount() == 0;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package kaaes.spotify.webapi.android;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import kaaes.spotify.webapi.android.models.Image;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class ImagesTest {
+
+    private final Image mLarge = image(640, 640);
+    private final Image mMedium = image(300, 300);
+    private final Image mSmall = image(64, 64);
+
+    @Test
+    public void shouldPickSmallestCoveringImage() {
+        List<Image> images = Arrays.asList(mLarge, mMedium, mSmall);
+
+        assertThat(Images.getSmallestCovering(images, 180, 180)).isSameAs(mMedium);
+        assertThat(Images.getSmallestCovering(images, 64, 64)).isSameAs(mSmall);
+        assertThat(Images.getSmallestCovering(images, 301, 100)).isSameAs(mLarge);
+    }
+
+    @Test
+    public void shouldNotDependOnOrder() {
+        List<Image> images = Arrays.asList(mSmall, mLarge, mMedium);
+
+        assertThat(Images.getSmallestCovering(images, 180, 180)).isSameAs(mMedium);
+        assertThat(Images.getLargest(images)).isSameAs(mLarge);
+    }
+
+    @Test
+    public void shouldFallBackToLargestWhenNothingCovers() {
+        List<Image> images = Arrays.asList(mMedium, mSmall);
+
+        assertThat(Images.getSmallestCovering(images, 1000, 1000)).isSameAs(mMedium);
+    }
+
+    @Test
+    public void shouldHandleImagesWithoutSize() {
+        Image unknown = image(null, null);
+
+        assertThat(Images.getSmallestCovering(Arrays.asList(unknown, mSmall), 180, 180)).isSameAs(mSmall);
+        assertThat(Images.getSmallestCovering(Arrays.asList(unknown), 180, 180)).isSameAs(unknown);
+        assertThat(Images.getSmallestCovering(new ArrayList<Image>(), 180, 180)).isNull();
+        assertThat(Images.getSmallestCovering(null, 180, 180)).isNull();
+        assertThat(Images.getDecodedByteCount(unknown)).isZero();
+    }
+
+    @Test
+    public void shouldCalculateDecodedSize() {
+        assertThat(Images.getDecodedByteCount(mLarge)).isEqualTo(640 * 640 * 4);
+    }
+
+    private static Image image(Integer width, Integer height) {
+        Image image = new Image();
+        image.width = width;
+        image.height = height;
+        image.url = "https://i.scdn.co/image/" + width + "x" + height;
+        return image;
+    }
+}
@@ -0,0 +1,72 @@
+package kaaes.spotify.webapi.android;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class LazyPagedListTest {
+
+    /**
+     * Serves numbered items, the server has {@code available} of them
+     */
+    private static class CountingLoader implements LazyPagedList.PageLoader<Integer> {
+        final List<Integer> offsets = new ArrayList<>();
+        final int available;
+
+        CountingLoader(int available) {
+            this.available = available;
+        }
+
+        @Override
+        public List<Integer> load(int offset, int limit) throws IOException {
+            offsets.add(offset);
+            List<Integer> page = new ArrayList<>();
+            for (int i = offset; i < Math.min(offset + limit, available); i++) {
+                page.add(i);
+            }
+            return page;
+        }
+    }
+
+    @Test
+    public void shouldLoadPagesOnFirstAccess() {
+        CountingLoader loader = new CountingLoader(10);
+        LazyPagedList<Integer> list = new LazyPagedList<>(Arrays.asList(0, 1), 10, 3, loader);
+
+        assertThat(list.get(1)).isEqualTo(1);
+        assertThat(loader.offsets).isEmpty();
+        assertThat(list.get(6)).isEqualTo(6);
+        assertThat(list.get(5)).isEqualTo(5);
+        assertThat(loader.offsets).containsExactly(5);
+        assertThat(list.getLoadedCount()).isEqualTo(5);
+        assertThat(list).isEqualTo(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9));
+    }
+
+    @Test
+    public void shouldNotReloadShortPage() {
+        // Two items were removed after the first page was loaded
+        CountingLoader loader = new CountingLoader(8);
+        LazyPagedList<Integer> list = new LazyPagedList<>(Arrays.asList(0, 1), 10, 3, loader);
+
+        assertThat(list.get(7)).isEqualTo(7);
+        for (int index : new int[]{9, 8, 9}) {
+            try {
+                list.get(index);
+                fail("Expected missing item to throw");
+            } catch (LazyPagedList.PageLoadException e) {
+                // expected
+            }
+        }
+        assertThat(loader.offsets).containsExactly(5, 8);
+        assertThat(list.getLoadedCount()).isEqualTo(5);
+    }
+}
@@ -0,0 +1,97 @@
+package kaaes.spotify.webapi.android;
+
+import com.google.gson.Gson;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import kaaes.spotify.webapi.android.models.MarketSet;
+import kaaes.spotify.webapi.android.models.Track;
+import kaaes.spotify.webapi.android.models.TracksPager;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class MarketSetTest {
+
+    @Test
+    public void shouldListMarketsInOrder() {
+        MarketSet markets = MarketSet.of("SE", "AD", "ZW", "US");
+
+        assertThat(markets).hasSize(4);
+        assertThat(markets).isEqualTo(Arrays.asList("AD", "SE", "US", "ZW"));
+        assertThat(Arrays.asList("AD", "SE", "US", "ZW")).isEqualTo(markets);
+        assertThat(markets.hashCode()).isEqualTo(Arrays.asList("AD", "SE", "US", "ZW").hashCode());
+        assertThat(markets.get(2)).isEqualTo("US");
+        assertThat(markets.indexOf("US")).isEqualTo(2);
+        assertThat(markets.indexOf("GB")).isEqualTo(-1);
+    }
+
+    @Test
+    public void shouldCheckAvailability() {
+        MarketSet markets = MarketSet.of("SE", "US");
+
+        assertThat(markets.isAvailableIn("SE")).isTrue();
+        assertThat(markets.isAvailableIn("GB")).isFalse();
+        assertThat(markets.isAvailableIn("se")).isFalse();
+        assertThat(markets.isAvailableIn("from_token")).isFalse();
+        assertThat(markets.isAvailableIn(null)).isFalse();
+    }
+
+    @Test
+    public void shouldIntersect() {
+        MarketSet nordic = MarketSet.of("DK", "FI", "IS", "NO", "SE");
+        MarketSet track = MarketSet.of("SE", "US", "NO");
+
+        assertThat(nordic.intersect(track)).isEqualTo(MarketSet.of("NO", "SE"));
+        assertThat(nordic.intersects(track)).isTrue();
+        assertThat(nordic.intersects(MarketSet.of("US"))).isFalse();
+        assertThat(nordic.containsAll(MarketSet.of("NO", "SE"))).isTrue();
+        assertThat(nordic.containsAll(track)).isFalse();
+        assertThat(nordic.intersect(MarketSet.EMPTY)).isEmpty();
+    }
+
+    @Test
+    public void shouldParseJsonBytes() {
+        String json = "{\"available_markets\" : [ \"AD\", \"AR\",\"ZA\"\n], \"id\": \"x\"}";
+        byte[] bytes = json.getBytes(Charset.forName("UTF-8"));
+
+        MarketSet markets = MarketSet.parse(bytes, json.indexOf(':') + 1);
+
+        assertThat(markets).isEqualTo(Arrays.asList("AD", "AR", "ZA"));
+        assertThat(MarketSet.parse("[]".getBytes(Charset.forName("UTF-8")), 0)).isSameAs(MarketSet.EMPTY);
+        try {
+            MarketSet.parse("[\"ADA\"]".getBytes(Charset.forName("UTF-8")), 0);
+            fail("Expected three letter code to be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void shouldMatchMarketsOfFixture() {
+        TracksPager pager = new Gson().fromJson(TestUtils.readTestData("search-track.json"), TracksPager.class);
+
+        for (Track track : pager.tracks.items) {
+            MarketSet markets = MarketSet.fromSortedList(track.available_markets);
+            assertThat(markets).isEqualTo(track.available_markets);
+            assertThat(markets.isAvailableIn("SE")).isEqualTo(track.available_markets.contains("SE"));
+        }
+    }
+
+    @Test
+    public void shouldNotConvertUnsortedList() {
+        List<String> markets = new ArrayList<>(Arrays.asList("US", "SE"));
+
+        assertThat(MarketSet.fromSortedList(markets)).isNull();
+        assertThat(MarketSet.fromSortedList(Arrays.asList("SE", "SE"))).isNull();
+        assertThat(MarketSet.fromSortedList(Arrays.asList("SE", "us"))).isNull();
+    }
+}
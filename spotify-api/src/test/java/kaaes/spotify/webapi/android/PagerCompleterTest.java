@@ -0,0 +1,223 @@
+package kaaes.spotify.webapi.android;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import kaaes.spotify.webapi.android.models.Album;
+import kaaes.spotify.webapi.android.models.Pager;
+import kaaes.spotify.webapi.android.models.Playlist;
+import kaaes.spotify.webapi.android.models.PlaylistTrack;
+import kaaes.spotify.webapi.android.models.Track;
+import kaaes.spotify.webapi.android.models.TrackSimple;
+import kaaes.spotify.webapi.android.models.UserPublic;
+import okhttp3.Request;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class PagerCompleterTest {
+
+    private SpotifyService mSpotifyService;
+    private PagerCompleter mCompleter;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        mSpotifyService = mock(SpotifyService.class);
+        mCompleter = new PagerCompleter(mSpotifyService, 4);
+
+        when(mSpotifyService.getAlbumTracks(anyString(), anyMap())).thenAnswer(new Answer<Call<Pager<Track>>>() {
+            @Override
+            public Call<Pager<Track>> answer(InvocationOnMock invocation) {
+                Map<?, ?> options = (Map<?, ?>) invocation.getArguments()[1];
+                Pager<Track> page = new Pager<>();
+                page.items = new ArrayList<>();
+                int offset = intOption(options, SpotifyService.OFFSET);
+                for (int i = offset; i < Math.min(offset + intOption(options, SpotifyService.LIMIT), 120); i++) {
+                    Track track = new Track();
+                    track.track_number = i;
+                    page.items.add(track);
+                }
+                return FakeCall.success(page);
+            }
+        });
+
+        when(mSpotifyService.getPlaylistTracks(anyString(), anyString(), anyMap())).thenAnswer(new Answer<Call<Pager<PlaylistTrack>>>() {
+            @Override
+            public Call<Pager<PlaylistTrack>> answer(InvocationOnMock invocation) {
+                Map<?, ?> options = (Map<?, ?>) invocation.getArguments()[2];
+                Pager<PlaylistTrack> page = new Pager<>();
+                page.items = new ArrayList<>();
+                int offset = intOption(options, SpotifyService.OFFSET);
+                for (int i = offset; i < Math.min(offset + intOption(options, SpotifyService.LIMIT), 250); i++) {
+                    page.items.add(playlistTrack(i));
+                }
+                return FakeCall.success(page);
+            }
+        });
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldCompleteAlbumTracksInOrder() throws IOException {
+        when(mSpotifyService.getAlbum(eq("album"), anyMap())).thenReturn(FakeCall.success(album()));
+
+        Album album = mCompleter.getAlbum("album", null);
+
+        assertThat(album.tracks.items).hasSize(120);
+        for (int i = 0; i < 120; i++) {
+            assertThat(album.tracks.items.get(i).track_number).isEqualTo(i);
+        }
+        assertThat(album.tracks.next).isNull();
+        assertThat(album.tracks.offset).isEqualTo(0);
+        assertThat(album.tracks.limit).isEqualTo(120);
+        verify(mSpotifyService, times(2)).getAlbumTracks(eq("album"), anyMap());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldLoadPlaylistPagesOnAccess() {
+        Playlist playlist = new Playlist();
+        playlist.id = "playlist";
+        playlist.owner = new UserPublic();
+        playlist.owner.id = "owner";
+        playlist.tracks = new Pager<>();
+        playlist.tracks.items = new ArrayList<>();
+        playlist.tracks.total = 250;
+        for (int i = 0; i < 100; i++) {
+            playlist.tracks.items.add(playlistTrack(i));
+        }
+
+        mCompleter.completeLazily(playlist, null);
+        LazyPagedList<PlaylistTrack> items = (LazyPagedList<PlaylistTrack>) playlist.tracks.items;
+
+        assertThat(items).hasSize(250);
+        assertThat(playlist.tracks.next).isNull();
+        assertThat(playlist.tracks.limit).isEqualTo(250);
+        assertThat(items.get(99).added_at).isEqualTo("99");
+        assertThat(items.getLoadedCount()).isEqualTo(100);
+
+        assertThat(items.get(230).added_at).isEqualTo("230");
+        assertThat(items.getLoadedCount()).isEqualTo(150);
+        verify(mSpotifyService, times(1)).getPlaylistTracks(eq("owner"), eq("playlist"), anyMap());
+    }
+
+    @Test(expected = IOException.class)
+    @SuppressWarnings("unchecked")
+    public void shouldFailWhenPageFails() throws IOException {
+        doReturn(FakeCall.<Pager<Track>>error(502)).when(mSpotifyService).getAlbumTracks(anyString(), anyMap());
+
+        mCompleter.complete(album(), null);
+    }
+
+    @Test(timeout = 5000)
+    @SuppressWarnings("unchecked")
+    public void shouldCancelOtherPagesWhenPageFails() {
+        BlockingCall blocking = new BlockingCall();
+        doReturn(blocking).doReturn(FakeCall.<Pager<Track>>error(502))
+                .when(mSpotifyService).getAlbumTracks(anyString(), anyMap());
+        Album album = album();
+
+        try {
+            mCompleter.complete(album, null);
+            fail("Expected the failing page to fail the album");
+        } catch (IOException e) {
+            // expected
+        }
+        assertThat(blocking.isCanceled()).isTrue();
+        assertThat(album.tracks.items).hasSize(20);
+    }
+
+    /**
+     * Page that doesn't arrive until it's canceled
+     */
+    private static class BlockingCall implements Call<Pager<Track>> {
+        private final CountDownLatch mCanceled = new CountDownLatch(1);
+
+        @Override
+        public Response<Pager<Track>> execute() throws IOException {
+            try {
+                mCanceled.await();
+            } catch (InterruptedException e) {
+                // canceled through the future
+            }
+            throw new IOException("Canceled");
+        }
+
+        @Override
+        public void enqueue(Callback<Pager<Track>> callback) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isExecuted() {
+            return false;
+        }
+
+        @Override
+        public void cancel() {
+            mCanceled.countDown();
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return mCanceled.getCount() == 0;
+        }
+
+        @Override
+        public Call<Pager<Track>> clone() {
+            return new BlockingCall();
+        }
+
+        @Override
+        public Request request() {
+            return new Request.Builder().url("https://api.spotify.com/").build();
+        }
+    }
+
+    private static Album album() {
+        Album album = new Album();
+        album.id = "album";
+        album.tracks = new Pager<>();
+        album.tracks.items = new ArrayList<>();
+        album.tracks.total = 120;
+        for (int i = 0; i < 20; i++) {
+            TrackSimple track = new TrackSimple();
+            track.track_number = i;
+            album.tracks.items.add(track);
+        }
+        return album;
+    }
+
+    private static int intOption(Map<?, ?> options, String name) {
+        Object value = options.get(name);
+        return value != null ? Integer.parseInt(value.toString()) : 0;
+    }
+
+    private static PlaylistTrack playlistTrack(int position) {
+        PlaylistTrack track = new PlaylistTrack();
+        track.added_at = String.valueOf(position);
+        return track;
+    }
+}
@@ -42,6 +42,7 @@ import kaaes.spotify.webapi.android.models.PlaylistsPager;
 import kaaes.spotify.webapi.android.models.Recommendations;
 import kaaes.spotify.webapi.android.models.Result;
 import kaaes.spotify.webapi.android.models.SavedTrack;
+import kaaes.spotify.webapi.android.models.SearchResult;
 import kaaes.spotify.webapi.android.models.Seed;
 import kaaes.spotify.webapi.android.models.SeedsGenres;
 import kaaes.spotify.webapi.android.models.SnapshotId;
@@ -112,6 +113,7 @@ public class ParcelableModelsTest {
                 Seed.class,
                 SeedsGenres.class,
                 SavedTrack.class,
+                SearchResult.class,
                 SnapshotId.class,
                 Track.class,
                 Tracks.class,
@@ -0,0 +1,276 @@
+package kaaes.spotify.webapi.android;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class PriorityCallFactoryTest {
+
+    /**
+     * Creates calls named by creation order that block until they are released
+     */
+    private static class BlockingCallFactory implements Call.Factory {
+        final List<String> started = Collections.synchronizedList(new ArrayList<String>());
+        final Semaphore release = new Semaphore(0);
+        final Semaphore startedPermits = new Semaphore(0);
+        int created;
+
+        @Override
+        public Call newCall(final Request request) {
+            final String name = String.valueOf(created++);
+            return new Call() {
+                private boolean mCanceled;
+
+                @Override
+                public Request request() {
+                    return request;
+                }
+
+                @Override
+                public Response execute() throws IOException {
+                    started.add(name);
+                    startedPermits.release();
+                    release.acquireUninterruptibly();
+                    if (mCanceled) {
+                        throw new IOException("Canceled");
+                    }
+                    return new Response.Builder()
+                            .request(request)
+                            .protocol(Protocol.HTTP_1_1)
+                            .code(200)
+                            .body(ResponseBody.create(MediaType.parse("application/json"), "{}"))
+                            .build();
+                }
+
+                @Override
+                public void enqueue(Callback responseCallback) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public void cancel() {
+                    mCanceled = true;
+                }
+
+                @Override
+                public boolean isExecuted() {
+                    return true;
+                }
+
+                @Override
+                public boolean isCanceled() {
+                    return mCanceled;
+                }
+            };
+        }
+
+        void awaitStarted(int count) throws InterruptedException {
+            assertThat(startedPermits.tryAcquire(count, 5, TimeUnit.SECONDS)).isTrue();
+        }
+    }
+
+    private static class CountingCallback implements Callback {
+        final CountDownLatch done;
+        final List<IOException> failures = Collections.synchronizedList(new ArrayList<IOException>());
+
+        CountingCallback(int calls) {
+            done = new CountDownLatch(calls);
+        }
+
+        @Override
+        public void onFailure(Call call, IOException e) {
+            failures.add(e);
+            done.countDown();
+        }
+
+        @Override
+        public void onResponse(Call call, Response response) throws IOException {
+            done.countDown();
+        }
+    }
+
+    private BlockingCallFactory mDelegate;
+    private PriorityCallFactory mFactory;
+    private Request mRequest;
+
+    @Before
+    public void setUp() {
+        mDelegate = new BlockingCallFactory();
+        mFactory = new PriorityCallFactory(mDelegate, 2, 1);
+        mRequest = new Request.Builder().url("https://api.spotify.com/v1/me").build();
+    }
+
+    @Test
+    public void shouldKeepReservedSlotForInteractiveCalls() throws InterruptedException {
+        PriorityCallFactory bulk = mFactory.withPriority(PriorityCallFactory.PRIORITY_BULK);
+        PriorityCallFactory interactive = mFactory.withPriority(PriorityCallFactory.PRIORITY_INTERACTIVE);
+        CountingCallback callback = new CountingCallback(4);
+
+        bulk.newCall(mRequest).enqueue(callback);
+        bulk.newCall(mRequest).enqueue(callback);
+        bulk.newCall(mRequest).enqueue(callback);
+        mDelegate.awaitStarted(1);
+        assertThat(mFactory.getRunningCallCount()).isEqualTo(1);
+        assertThat(mFactory.getQueuedCallCount()).isEqualTo(2);
+
+        interactive.newCall(mRequest).enqueue(callback);
+        mDelegate.awaitStarted(1);
+        assertThat(mFactory.getRunningCallCount()).isEqualTo(2);
+
+        mDelegate.release.release(4);
+        assertThat(callback.done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(mDelegate.started).containsExactly("0", "3", "1", "2");
+    }
+
+    @Test
+    public void shouldStartHigherPriorityCallsFirst() throws InterruptedException {
+        CountingCallback callback = new CountingCallback(5);
+
+        mFactory.withPriority(PriorityCallFactory.PRIORITY_INTERACTIVE).newCall(mRequest).enqueue(callback);
+        mFactory.withPriority(PriorityCallFactory.PRIORITY_INTERACTIVE).newCall(mRequest).enqueue(callback);
+        mDelegate.awaitStarted(2);
+
+        mFactory.withPriority(PriorityCallFactory.PRIORITY_BULK).newCall(mRequest).enqueue(callback);
+        mFactory.newCall(mRequest).enqueue(callback);
+        mFactory.withPriority(PriorityCallFactory.PRIORITY_INTERACTIVE).newCall(mRequest).enqueue(callback);
+        assertThat(mFactory.getQueuedCallCount()).isEqualTo(3);
+
+        // Nothing starts before the head of the queue so the order doesn't depend on timing
+        mDelegate.release.release(5);
+        assertThat(callback.done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(mDelegate.started).containsExactly("0", "1", "4", "3", "2");
+        assertThat(mFactory.getMaxQueueWaitMs(PriorityCallFactory.PRIORITY_BULK))
+                .isGreaterThanOrEqualTo(mFactory.getMaxQueueWaitMs(PriorityCallFactory.PRIORITY_INTERACTIVE));
+    }
+
+    @Test
+    public void shouldFailCanceledQueuedCalls() throws InterruptedException {
+        CountingCallback callback = new CountingCallback(3);
+
+        mFactory.newCall(mRequest).enqueue(callback);
+        mDelegate.awaitStarted(1);
+        Call queued = mFactory.newCall(mRequest);
+        queued.enqueue(callback);
+        queued.cancel();
+
+        assertThat(mFactory.getQueuedCallCount()).isEqualTo(0);
+        assertThat(callback.failures).hasSize(1);
+
+        mDelegate.release.release();
+        mFactory.newCall(mRequest).enqueue(callback);
+        mDelegate.release.release();
+        assertThat(callback.done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(mDelegate.started).containsExactly("0", "2");
+    }
+
+    @Test
+    public void shouldLimitSynchronousCalls() throws Exception {
+        CountingCallback callback = new CountingCallback(1);
+        mFactory.newCall(mRequest).enqueue(callback);
+        mDelegate.awaitStarted(1);
+
+        final Call call = mFactory.newCall(mRequest);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    call.execute();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        thread.start();
+        thread.join(100);
+        assertThat(mFactory.getQueuedCallCount()).isEqualTo(1);
+
+        mDelegate.release.release(2);
+        thread.join(5000);
+        assertThat(callback.done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(mDelegate.started).containsExactly("0", "1");
+    }
+
+    @Test
+    public void shouldNotSignalFailureOfCallbackAsCallFailure() throws InterruptedException {
+        final CountDownLatch responded = new CountDownLatch(1);
+        final List<IOException> failures = Collections.synchronizedList(new ArrayList<IOException>());
+        mFactory.newCall(mRequest).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                failures.add(e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                responded.countDown();
+                throw new IOException("Failed to read the body");
+            }
+        });
+        mDelegate.release.release();
+        assertThat(responded.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // The slot is free again and the failure of the callback wasn't reported to it
+        CountingCallback callback = new CountingCallback(1);
+        mFactory.newCall(mRequest).enqueue(callback);
+        mDelegate.release.release();
+        assertThat(callback.done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(failures).isEmpty();
+    }
+
+    @Test
+    public void shouldHoldSlotOfExecutedCallUntilBodyIsClosed() throws IOException {
+        mDelegate.release.release();
+        Response response = mFactory.newCall(mRequest).execute();
+
+        assertThat(mFactory.getRunningCallCount()).isEqualTo(1);
+        assertThat(response.body().string()).isEqualTo("{}");
+        assertThat(mFactory.getRunningCallCount()).isEqualTo(0);
+
+        // Closing again doesn't give back a slot twice
+        response.body().close();
+        assertThat(mFactory.getRunningCallCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldHoldSlotOfEnqueuedCallWhileCallbackRuns() throws InterruptedException {
+        final AtomicInteger runningInCallback = new AtomicInteger(-1);
+        final CountDownLatch responded = new CountDownLatch(1);
+        mFactory.newCall(mRequest).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                runningInCallback.set(mFactory.getRunningCallCount());
+                response.body().close();
+                responded.countDown();
+            }
+        });
+        mDelegate.release.release();
+
+        assertThat(responded.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(runningInCallback.get()).isEqualTo(1);
+    }
+}
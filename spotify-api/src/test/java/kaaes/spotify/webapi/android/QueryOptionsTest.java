@@ -0,0 +1,105 @@
+package kaaes.spotify.webapi.android;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class QueryOptionsTest {
+
+    @Test
+    public void shouldHoldValuesAsStrings() {
+        QueryOptions options = QueryOptions.page(100, 50)
+                .withMarket("SE")
+                .withLocale("sv_SE")
+                .withFields("items(track(id))")
+                .withTimeRange(QueryOptions.TIME_RANGE_SHORT_TERM);
+
+        Map<String, Object> expected = new HashMap<>();
+        expected.put(SpotifyService.OFFSET, "100");
+        expected.put(SpotifyService.LIMIT, "50");
+        expected.put(SpotifyService.MARKET, "SE");
+        expected.put(SpotifyService.LOCALE, "sv_SE");
+        expected.put(SpotifyService.FIELDS, "items(track(id))");
+        expected.put(SpotifyService.TIME_RANGE, "short_term");
+
+        assertThat(options).isEqualTo(expected);
+        assertThat(options.hashCode()).isEqualTo(expected.hashCode());
+        assertThat(options.getOffset()).isEqualTo(100);
+        assertThat(options.getLimit()).isEqualTo(50);
+    }
+
+    @Test
+    public void shouldDerivePagesWithoutChangingOriginal() {
+        QueryOptions first = QueryOptions.page(0, 20).withMarket("US");
+
+        QueryOptions second = first.nextPage();
+        QueryOptions third = second.nextPage();
+
+        assertThat(first.get(SpotifyService.OFFSET)).isEqualTo("0");
+        assertThat(second.get(SpotifyService.OFFSET)).isEqualTo("20");
+        assertThat(third.getOffset()).isEqualTo(40);
+        assertThat(third.get(SpotifyService.LIMIT)).isEqualTo("20");
+        assertThat(third.get(SpotifyService.MARKET)).isEqualTo("US");
+        assertThat(third).hasSize(3);
+    }
+
+    @Test
+    public void shouldRemoveParameterSetToNull() {
+        QueryOptions options = QueryOptions.page(0, 20).withMarket("US").withMarket(null);
+
+        assertThat(options.containsKey(SpotifyService.MARKET)).isFalse();
+        assertThat(options).hasSize(2);
+        assertThat(QueryOptions.NONE.withMarket(null)).isSameAs(QueryOptions.NONE);
+    }
+
+    @Test
+    public void shouldCopyMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put(SpotifyService.ALBUM_TYPE, "album,single");
+        map.put(SpotifyService.OFFSET, 40);
+        map.put(SpotifyService.LIMIT, "10");
+
+        QueryOptions options = QueryOptions.of(map);
+
+        assertThat(options.get(SpotifyService.ALBUM_TYPE)).isEqualTo("album,single");
+        assertThat(options.getOffset()).isEqualTo(40);
+        assertThat(options.getLimit()).isEqualTo(10);
+        assertThat(QueryOptions.of(options)).isSameAs(options);
+        assertThat(QueryOptions.of(null)).isSameAs(QueryOptions.NONE);
+    }
+
+    @Test
+    public void shouldBeImmutable() {
+        QueryOptions options = QueryOptions.page(0, 20);
+        try {
+            options.put(SpotifyService.OFFSET, 20);
+            fail("Expected options to be immutable");
+        } catch (UnsupportedOperationException e) {
+            assertThat(options.getOffset()).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void shouldRejectInvalidPaging() {
+        try {
+            QueryOptions.page(-1, 20);
+            fail("Expected negative offset to be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            QueryOptions.NONE.nextPage();
+            fail("Expected next page without a limit to be rejected");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package kaaes.spotify.webapi.android;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import kaaes.spotify.webapi.android.models.CategoriesPager;
+import kaaes.spotify.webapi.android.models.Category;
+import kaaes.spotify.webapi.android.models.FeaturedPlaylists;
+import kaaes.spotify.webapi.android.models.SeedsGenres;
+import retrofit2.Call;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class ReferenceDataCacheTest {
+
+    private long mNow;
+    private SpotifyService mSpotifyService;
+    private ReferenceDataCache mCache;
+
+    @Before
+    public void setUp() {
+        mNow = 1000;
+        mSpotifyService = mock(SpotifyService.class);
+        mCache = new ReferenceDataCache(mSpotifyService) {
+            @Override
+            long now() {
+                return mNow;
+            }
+        };
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldShareEntriesWithinTimestampBucket() throws IOException {
+        FeaturedPlaylists featured = new FeaturedPlaylists();
+        when(mSpotifyService.getFeaturedPlaylists(anyMap())).thenReturn(FakeCall.success(featured));
+
+        Map<String, Object> options = new HashMap<>();
+        options.put(SpotifyService.COUNTRY, "SE");
+        options.put(SpotifyService.LOCALE, "sv_SE");
+        options.put(SpotifyService.TIMESTAMP, "2016-05-01T09:12:00");
+        assertThat(mCache.getFeaturedPlaylists(options)).isSameAs(featured);
+
+        options.put(SpotifyService.TIMESTAMP, "2016-05-01T09:48:30");
+        assertThat(mCache.getFeaturedPlaylists(options)).isSameAs(featured);
+
+        options.put(SpotifyService.LOCALE, "en_US");
+        mCache.getFeaturedPlaylists(options);
+
+        verify(mSpotifyService, times(2)).getFeaturedPlaylists(anyMap());
+        assertThat(mCache.getHitRatio()).isEqualTo(1 / 3f);
+        assertThat(mCache.key(ReferenceDataCache.FEATURED_PLAYLISTS, null, options).toString())
+                .isEqualTo("featured-playlists/?country=SE&locale=en_US&timestamp=2016-05-01T09:00:00");
+    }
+
+    @Test
+    public void shouldServeExpiredEntryWhenRefreshFails() throws IOException {
+        SeedsGenres genres = new SeedsGenres();
+        when(mSpotifyService.getSeedsGenres()).thenReturn(FakeCall.success(genres));
+        mCache.setTtl(ReferenceDataCache.GENRES, 1, TimeUnit.MINUTES);
+        mCache.getSeedsGenres();
+
+        mNow += TimeUnit.MINUTES.toMillis(2);
+        when(mSpotifyService.getSeedsGenres()).thenReturn(FakeCall.<SeedsGenres>error(503));
+
+        assertThat(mCache.getSeedsGenres()).isSameAs(genres);
+        assertThat(mCache.getStaleServeCount()).isEqualTo(1);
+        assertThat(mCache.getMaxStalenessMs()).isEqualTo(TimeUnit.MINUTES.toMillis(2));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldReturnMostUsedKeys() throws IOException {
+        when(mSpotifyService.getSeedsGenres()).thenReturn(FakeCall.success(new SeedsGenres()));
+        when(mSpotifyService.getCategory(eq("party"), anyMap())).thenReturn(FakeCall.success(new Category()));
+
+        mCache.getCategory("party", null);
+        mCache.getSeedsGenres();
+        mCache.getSeedsGenres();
+
+        assertThat(mCache.getMostUsedKeys(5)).containsExactly("genres/?", "category/party?");
+    }
+
+    @Test
+    public void shouldRoundTripKeysWithSeparatorsInValues() {
+        Map<String, Object> options = new HashMap<>();
+        options.put(SpotifyService.LOCALE, "a&b=c?d/100%");
+        ReferenceDataCache.Key key = mCache.key(ReferenceDataCache.CATEGORY, "rock/pop?", options);
+
+        assertThat(key.toString()).isEqualTo("category/rock%2Fpop%3F?locale=a%26b%3Dc%3Fd%2F100%25");
+        assertThat(ReferenceDataCache.Key.parse(key.toString())).isEqualTo(key);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldPassOptionsUnchanged() throws IOException {
+        when(mSpotifyService.getCategories(anyMap())).thenReturn(FakeCall.success(new CategoriesPager()));
+
+        Map<String, Object> options = new HashMap<>();
+        options.put(SpotifyService.LIMIT, 5);
+        mCache.getCategories(options);
+
+        ArgumentCaptor<Map> captor = ArgumentCaptor.forClass(Map.class);
+        verify(mSpotifyService).getCategories(captor.capture());
+        assertThat(captor.getValue().get(SpotifyService.LIMIT)).isEqualTo(5);
+    }
+
+    @Test
+    public void shouldShareConcurrentLoadsOfSameKey() throws Exception {
+        final SeedsGenres genres = new SeedsGenres();
+        final CountDownLatch requested = new CountDownLatch(1);
+        final CountDownLatch respond = new CountDownLatch(1);
+        when(mSpotifyService.getSeedsGenres()).thenAnswer(new Answer<Call<SeedsGenres>>() {
+            @Override
+            public Call<SeedsGenres> answer(InvocationOnMock invocation) throws Throwable {
+                requested.countDown();
+                respond.await(5, TimeUnit.SECONDS);
+                return FakeCall.success(genres);
+            }
+        });
+
+        final SeedsGenres[] results = new SeedsGenres[2];
+        Thread first = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    results[0] = mCache.getSeedsGenres();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        first.start();
+        assertThat(requested.await(5, TimeUnit.SECONDS)).isTrue();
+
+        Thread second = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    results[1] = mCache.getSeedsGenres();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        second.start();
+        while (second.getState() != Thread.State.WAITING && second.isAlive()) {
+            Thread.sleep(1);
+        }
+        respond.countDown();
+        first.join(5000);
+        second.join(5000);
+
+        assertThat(results[0]).isSameAs(genres);
+        assertThat(results[1]).isSameAs(genres);
+        verify(mSpotifyService, times(1)).getSeedsGenres();
+    }
+}
@@ -0,0 +1,91 @@
+package kaaes.spotify.webapi.android;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import kaaes.spotify.webapi.android.models.Artist;
+import kaaes.spotify.webapi.android.models.Artists;
+import retrofit2.Call;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class RelatedArtistsCrawlerTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private SpotifyService mSpotifyService;
+
+    @Before
+    public void setUp() {
+        mSpotifyService = mock(SpotifyService.class);
+        // Every artist n is related to artists 3n + 1 to 3n + 3 modulo 100
+        when(mSpotifyService.getRelatedArtists(anyString())).thenAnswer(new Answer<Call<Artists>>() {
+            @Override
+            public Call<Artists> answer(InvocationOnMock invocation) {
+                int n = Integer.parseInt((String) invocation.getArguments()[0]);
+                Artists artists = new Artists();
+                artists.artists = new ArrayList<>();
+                for (int i = 1; i <= 3; i++) {
+                    Artist artist = new Artist();
+                    artist.id = id((3 * n + i) % 100);
+                    artists.artists.add(artist);
+                }
+                return FakeCall.success(artists);
+            }
+        });
+    }
+
+    @Test
+    public void shouldCrawlToMaxDepth() throws InterruptedException {
+        RelatedArtistsCrawler crawler = new RelatedArtistsCrawler(mSpotifyService, 3);
+        crawler.crawl(Arrays.asList(id(0)), 3);
+
+        assertThat(crawler.getNodeCount()).isEqualTo(40);
+        assertThat(crawler.getEdgeCount()).isEqualTo(39);
+        assertThat(crawler.getNeighbours(crawler.indexOf(id(1)))).containsOnly(
+                crawler.indexOf(id(4)), crawler.indexOf(id(5)), crawler.indexOf(id(6)));
+        assertThat(crawler.getDepth(crawler.indexOf(id(13)))).isEqualTo(3);
+        assertThat(crawler.getNeighbours(crawler.indexOf(id(13)))).isEmpty();
+        verify(mSpotifyService, times(13)).getRelatedArtists(anyString());
+    }
+
+    @Test
+    public void shouldResumeFromCheckpoint() throws IOException, InterruptedException {
+        File checkpoint = mFolder.newFile("graph");
+        RelatedArtistsCrawler crawler = new RelatedArtistsCrawler(mSpotifyService, 2);
+        crawler.setCheckpoint(checkpoint, 5);
+        crawler.crawl(Arrays.asList(id(0)), 3);
+
+        SpotifyService resumed = mock(SpotifyService.class);
+        RelatedArtistsCrawler resumedCrawler = new RelatedArtistsCrawler(resumed, 2);
+        resumedCrawler.resume(checkpoint);
+
+        assertThat(resumedCrawler.getNodeCount()).isEqualTo(40);
+        assertThat(resumedCrawler.getEdgeCount()).isEqualTo(39);
+        assertThat(resumedCrawler.getId(resumedCrawler.getNeighbours(0)[0])).isEqualTo(id(1));
+        verify(resumed, never()).getRelatedArtists(anyString());
+    }
+
+    private static String id(int n) {
+        return String.format("%022d", n);
+    }
+}
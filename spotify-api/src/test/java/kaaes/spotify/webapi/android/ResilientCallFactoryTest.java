@@ -0,0 +1,176 @@
+package kaaes.spotify.webapi.android;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class ResilientCallFactoryTest {
+
+    private static final String PLAYLIST_TRACKS = "https://api.spotify.com/v1/users/test/playlists/4Gk8QvFvEaE7rMNlNthOHf/tracks";
+
+    private FaultInjectingCallFactory mServer;
+    private ResilientCallFactory mFactory;
+
+    @Before
+    public void setUp() {
+        mServer = new FaultInjectingCallFactory(42).setLatency(1, 0, 0);
+        mFactory = new ResilientCallFactory(mServer).setHedging(0.95f, 20, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void shouldNameRequestsByEndpoint() {
+        assertThat(EndpointTemplate.nameOf(get(PLAYLIST_TRACKS)))
+                .isEqualTo("GET /v1/users/{user_id}/playlists/{playlist_id}/tracks");
+        assertThat(EndpointTemplate.nameOf(get("https://api.spotify.com/v1/search?q=abba&type=track")))
+                .isEqualTo("GET /v1/search");
+        assertThat(EndpointTemplate.nameOf(get("https://api.spotify.com/v1/me/albums/contains?ids=1")))
+                .isEqualTo("GET /v1/me/albums/contains");
+        assertThat(EndpointTemplate.nameOf(get("https://example.com/unknown")))
+                .isEqualTo("GET other");
+    }
+
+    @Test
+    public void shouldResolveRepeatedPathsToSameEndpoint() {
+        EndpointTemplate first = EndpointTemplate.ofService("/v1/albums/0sNOF9WDwhWunNAHPD3Baj");
+        assertThat(first.toString()).isEqualTo("/v1/albums/{id}");
+        assertThat(EndpointTemplate.ofService("/v1/albums/0sNOF9WDwhWunNAHPD3Baj")).isSameAs(first);
+        assertThat(EndpointTemplate.ofService("/v1/albums/6akEvsycLGftJxYudPjmqK")).isSameAs(first);
+        assertThat(EndpointTemplate.ofService("/unknown")).isNull();
+        assertThat(EndpointTemplate.ofService("/unknown")).isNull();
+    }
+
+    @Test
+    public void shouldHedgeSlowGetRequests() throws IOException {
+        warmUp(get(PLAYLIST_TRACKS), 30);
+
+        mServer.delayNext(5000);
+        long start = System.nanoTime();
+        Response response = mFactory.newCall(get(PLAYLIST_TRACKS)).execute();
+
+        assertThat(response.code()).isEqualTo(200);
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(1000);
+        assertThat(mFactory.getHedgeCount()).isEqualTo(1);
+        assertThat(mFactory.getHedgeWinCount()).isEqualTo(1);
+        assertThat(mServer.getCanceledCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldNotHedgeBeforeEnoughSamples() throws IOException {
+        warmUp(get(PLAYLIST_TRACKS), 5);
+
+        mServer.delayNext(100);
+        mFactory.newCall(get(PLAYLIST_TRACKS)).execute();
+
+        assertThat(mFactory.getHedgeCount()).isEqualTo(0);
+        assertThat(mServer.getCallCount()).isEqualTo(6);
+    }
+
+    @Test
+    public void shouldNotHedgeNonIdempotentRequests() throws IOException {
+        Request post = new Request.Builder().url(PLAYLIST_TRACKS)
+                .post(RequestBody.create(MediaType.parse("application/json"), "{}")).build();
+        warmUp(post, 30);
+
+        mServer.delayNext(100);
+        mFactory.newCall(post).execute();
+
+        assertThat(mFactory.getHedgeCount()).isEqualTo(0);
+        assertThat(mServer.getCallCount()).isEqualTo(31);
+    }
+
+    @Test
+    public void shouldFailFastWhenEndpointIsDegraded() throws IOException {
+        mFactory.setCircuitBreaker(0.5f, 10, 1, TimeUnit.MINUTES);
+        mServer.setErrorRatio(1);
+        Request search = get("https://api.spotify.com/v1/search?q=abba&type=track");
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(mFactory.newCall(search).execute().code()).isEqualTo(503);
+        }
+        try {
+            mFactory.newCall(search).execute();
+            fail("Expected the circuit to be open");
+        } catch (ResilientCallFactory.CircuitOpenException e) {
+            // expected
+        }
+
+        assertThat(mServer.getCallCount()).isEqualTo(5);
+        assertThat(mFactory.getCircuitBreaker("GET /v1/search").getState()).isEqualTo(CircuitBreaker.OPEN);
+        // Other endpoints are unaffected
+        mServer.setErrorRatio(0);
+        assertThat(mFactory.newCall(get(PLAYLIST_TRACKS)).execute().code()).isEqualTo(200);
+    }
+
+    @Test
+    public void shouldCloseCircuitAfterSuccessfulTrial() {
+        final long[] now = {0};
+        CircuitBreaker breaker = new CircuitBreaker(0.5f, 4, 10, TimeUnit.SECONDS) {
+            @Override
+            long now() {
+                return now[0];
+            }
+        };
+
+        for (int i = 0; i < 2; i++) {
+            assertThat(breaker.allowRequest()).isTrue();
+            breaker.onFailure();
+        }
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.OPEN);
+        assertThat(breaker.allowRequest()).isFalse();
+
+        now[0] = TimeUnit.SECONDS.toMillis(10);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.HALF_OPEN);
+        assertThat(breaker.allowRequest()).isTrue();
+        assertThat(breaker.allowRequest()).isFalse();
+        breaker.onSuccess();
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.CLOSED);
+        assertThat(breaker.allowRequest()).isTrue();
+        assertThat(breaker.getRejectedCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldReopenCircuitAfterFailedTrial() {
+        final long[] now = {0};
+        CircuitBreaker breaker = new CircuitBreaker(1, 2, 10, TimeUnit.SECONDS) {
+            @Override
+            long now() {
+                return now[0];
+            }
+        };
+        breaker.allowRequest();
+        breaker.onFailure();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.OPEN);
+
+        now[0] = TimeUnit.SECONDS.toMillis(10);
+        assertThat(breaker.allowRequest()).isTrue();
+        breaker.onFailure();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.OPEN);
+
+        now[0] = TimeUnit.SECONDS.toMillis(15);
+        assertThat(breaker.allowRequest()).isFalse();
+    }
+
+    private void warmUp(Request request, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            mFactory.newCall(request).execute().body().close();
+        }
+    }
+
+    private static Request get(String url) {
+        return new Request.Builder().url(url).build();
+    }
+}
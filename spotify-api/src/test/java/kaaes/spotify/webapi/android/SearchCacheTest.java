@@ -0,0 +1,96 @@
+package kaaes.spotify.webapi.android;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class SearchCacheTest {
+
+    private long mNow;
+    private SearchCache<String> mCache;
+
+    @Before
+    public void setUp() {
+        mNow = 1000;
+        mCache = new SearchCache<String>(2, 100) {
+            @Override
+            long now() {
+                return mNow;
+            }
+        };
+    }
+
+    @Test
+    public void shouldNormalizeQueries() {
+        mCache.put(SearchCache.key(SearchCache.TYPE_TRACK, "  The   Beatles ", null), "results");
+
+        assertThat(mCache.get(SearchCache.key(SearchCache.TYPE_TRACK, "the beatles", null))).isEqualTo("results");
+        assertThat(mCache.get(SearchCache.key(SearchCache.TYPE_ARTIST, "the beatles", null))).isNull();
+        assertThat(mCache.getHitRatio()).isEqualTo(0.5f);
+    }
+
+    @Test
+    public void shouldKeyByMarketAndOffsetWindow() {
+        Map<String, Object> options = new HashMap<>();
+        options.put(SpotifyService.MARKET, "SE");
+        options.put(SpotifyService.OFFSET, 20);
+        options.put(SpotifyService.LIMIT, 20);
+        mCache.put(SearchCache.key(SearchCache.TYPE_TRACK, "abba", options), "page 2");
+
+        options.put(SpotifyService.OFFSET, 0);
+        assertThat(mCache.get(SearchCache.key(SearchCache.TYPE_TRACK, "abba", options))).isNull();
+
+        options.put(SpotifyService.OFFSET, "20");
+        assertThat(mCache.get(SearchCache.key(SearchCache.TYPE_TRACK, "abba", options))).isEqualTo("page 2");
+
+        options.put(SpotifyService.MARKET, "US");
+        assertThat(mCache.get(SearchCache.key(SearchCache.TYPE_TRACK, "abba", options))).isNull();
+    }
+
+    @Test
+    public void shouldExpireEntries() {
+        SearchCache.Key key = SearchCache.key(SearchCache.TYPE_TRACK, "abba", null);
+        mCache.put(key, "results");
+
+        mNow += 100;
+        assertThat(mCache.get(key)).isEqualTo("results");
+
+        mNow += 1;
+        assertThat(mCache.get(key)).isNull();
+        assertThat(mCache.size()).isZero();
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsed() {
+        SearchCache.Key first = SearchCache.key(SearchCache.TYPE_TRACK, "first", null);
+        SearchCache.Key second = SearchCache.key(SearchCache.TYPE_TRACK, "second", null);
+        SearchCache.Key third = SearchCache.key(SearchCache.TYPE_TRACK, "third", null);
+
+        mCache.put(first, "1");
+        mCache.put(second, "2");
+        mCache.get(first);
+        mCache.put(third, "3");
+
+        assertThat(mCache.get(first)).isEqualTo("1");
+        assertThat(mCache.get(second)).isNull();
+        assertThat(mCache.get(third)).isEqualTo("3");
+    }
+
+    @Test
+    public void shouldFindLongestPrefix() {
+        mCache.put(SearchCache.key(SearchCache.TYPE_TRACK, "be", null), "be");
+        mCache.put(SearchCache.key(SearchCache.TYPE_TRACK, "beat", null), "beat");
+
+        SearchCache.Key key = SearchCache.key(SearchCache.TYPE_TRACK, "Beatles", null);
+        assertThat(mCache.getPrefix(key)).isEqualTo("beat");
+        assertThat(mCache.getPrefix(SearchCache.key(SearchCache.TYPE_TRACK, "abba", null))).isNull();
+        assertThat(mCache.getPrefixHitCount()).isEqualTo(1);
+    }
+}
@@ -43,6 +43,7 @@ import kaaes.spotify.webapi.android.models.PlaylistSimple;
 import kaaes.spotify.webapi.android.models.PlaylistTrack;
 import kaaes.spotify.webapi.android.models.PlaylistsPager;
 import kaaes.spotify.webapi.android.models.Result;
+import kaaes.spotify.webapi.android.models.SearchResult;
 import kaaes.spotify.webapi.android.models.SnapshotId;
 import kaaes.spotify.webapi.android.models.Track;
 import kaaes.spotify.webapi.android.models.TrackToRemove;
@@ -63,6 +64,7 @@ import retrofit.mime.TypedOutput;
 import static junit.framework.Assert.assertTrue;
 import static junit.framework.TestCase.fail;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.isA;
 import static org.mockito.Mockito.mock;
@@ -458,6 +460,88 @@ public class SpotifyServiceTest {
         compareJSONWithoutNulls(body, result);
     }
 
+    @Test
+    public void shouldSearchSeveralTypes() throws IOException {
+        final String type = "album,artist";
+
+        String body = TestUtils.readTestData("search-multiple.json");
+        SearchResult fixture = mGson.fromJson(body, SearchResult.class);
+
+        Response response = TestUtils.getResponseFromModel(fixture, SearchResult.class);
+        when(mMockClient.execute(argThat(new ArgumentMatcher<Request>() {
+            @Override
+            public boolean matches(Object argument) {
+                try {
+                    return ((Request) argument).getUrl().startsWith(SpotifyApi.SPOTIFY_WEB_API_ENDPOINT + "v1/search?") &&
+                            ((Request) argument).getUrl().contains("q=tania") &&
+                            ((Request) argument).getUrl().contains("type=" + URLEncoder.encode(type, "UTF-8"));
+                } catch (UnsupportedEncodingException e) {
+                    return false;
+                }
+            }
+        }))).thenReturn(response);
+
+        SearchResult result = mSpotifyService.search("tania", type);
+        compareJSONWithoutNulls(body, result);
+        assertEquals(fixture.albums.next, result.albums.next);
+        assertEquals(fixture.artists.items.get(0).id, result.artists.items.get(0).id);
+        assertNull(result.tracks);
+        assertNull(result.playlists);
+    }
+
+    @Test
+    public void shouldSearchSeveralTypesWithOptions() throws IOException {
+        final String type = "album,artist";
+        final String market = "SE";
+        final int limit = 1;
+
+        String body = TestUtils.readTestData("search-multiple.json");
+        SearchResult fixture = mGson.fromJson(body, SearchResult.class);
+
+        Response response = TestUtils.getResponseFromModel(fixture, SearchResult.class);
+        when(mMockClient.execute(argThat(new ArgumentMatcher<Request>() {
+            @Override
+            public boolean matches(Object argument) {
+                try {
+                    return ((Request) argument).getUrl().contains("type=" + URLEncoder.encode(type, "UTF-8")) &&
+                            ((Request) argument).getUrl().contains("limit=" + limit) &&
+                            ((Request) argument).getUrl().contains("market=" + market);
+                } catch (UnsupportedEncodingException e) {
+                    return false;
+                }
+            }
+        }))).thenReturn(response);
+
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put(SpotifyService.MARKET, market);
+        options.put(SpotifyService.LIMIT, limit);
+        SearchResult result = mSpotifyService.search("tania", type, options);
+
+        compareJSONWithoutNulls(body, result);
+    }
+
+    @Test
+    public void shouldGetSearchPage() throws IOException {
+        final String body = TestUtils.readTestData("search-multiple.json");
+        final String nextUrl = mGson.fromJson(body, SearchResult.class).albums.next;
+
+        String pageBody = TestUtils.readTestData("search-album.json");
+        SearchResult fixture = mGson.fromJson(pageBody, SearchResult.class);
+
+        Response response = TestUtils.getResponseFromModel(fixture, SearchResult.class);
+        when(mMockClient.execute(argThat(new ArgumentMatcher<Request>() {
+            @Override
+            public boolean matches(Object argument) {
+                return ((Request) argument).getUrl().equals(nextUrl);
+            }
+        }))).thenReturn(response);
+
+        SearchResult result = mSpotifyService.getSearchPage(nextUrl);
+
+        compareJSONWithoutNulls(pageBody, result);
+        assertNull(result.artists);
+    }
+
     @Test
     public void shouldGetPlaylistFollowersContains() throws IOException {
         final Type modelType = new TypeToken<List<Boolean>>() {
@@ -0,0 +1,212 @@
+package kaaes.spotify.webapi.android;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Connection;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class StaleResponseInterceptorTest {
+
+    private static final String ALBUM_URL = "https://api.spotify.com/v1/albums/4Mw9Gcu1LT7JaipXdwrq1Q";
+
+    private long mNow;
+    private StaleResponseInterceptor mInterceptor;
+
+    private static class FakeChain implements Interceptor.Chain {
+        final Request request;
+        final int code;
+        final String body;
+        final boolean fail;
+        int requests;
+
+        FakeChain(Request request, int code, String body, boolean fail) {
+            this.request = request;
+            this.code = code;
+            this.body = body;
+            this.fail = fail;
+        }
+
+        @Override
+        public Request request() {
+            return request;
+        }
+
+        @Override
+        public Response proceed(Request request) throws IOException {
+            requests++;
+            if (fail) {
+                throw new IOException("timeout");
+            }
+            return new Response.Builder()
+                    .request(request)
+                    .protocol(Protocol.HTTP_1_1)
+                    .code(code)
+                    .message("")
+                    .body(ResponseBody.create(MediaType.parse("application/json"), body))
+                    .build();
+        }
+
+        @Override
+        public Connection connection() {
+            return null;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        mNow = 1000;
+        mInterceptor = new StaleResponseInterceptor() {
+            @Override
+            long now() {
+                return mNow;
+            }
+        };
+    }
+
+    @Test
+    public void shouldServeStaleResponseOnError() throws IOException {
+        mInterceptor.setPolicy("/v1/albums/{id}", ResponsePolicy.staleIfError(1, TimeUnit.MINUTES));
+
+        Response response = mInterceptor.intercept(chain(200, "{\"name\":\"first\"}", false));
+        assertThat(response.body().string()).isEqualTo("{\"name\":\"first\"}");
+        assertThat(StaleResponseInterceptor.isStale(response)).isFalse();
+
+        mNow += 10000;
+        response = mInterceptor.intercept(chain(0, null, true));
+        assertThat(response.body().string()).isEqualTo("{\"name\":\"first\"}");
+        assertThat(StaleResponseInterceptor.isStale(response)).isTrue();
+        assertThat(response.header(StaleResponseInterceptor.HEADER_WARNING))
+                .isEqualTo(StaleResponseInterceptor.WARNING_REVALIDATION_FAILED);
+
+        response = mInterceptor.intercept(chain(503, "", false));
+        assertThat(StaleResponseInterceptor.isStale(response)).isTrue();
+        assertThat(mInterceptor.getErrorFallbackCount()).isEqualTo(2);
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldNotServeResponsesOlderThanAllowed() throws IOException {
+        mInterceptor.setPolicy("/v1/albums/{id}", ResponsePolicy.staleIfError(1, TimeUnit.MINUTES));
+        mInterceptor.intercept(chain(200, "{}", false));
+
+        mNow += TimeUnit.MINUTES.toMillis(2);
+        mInterceptor.intercept(chain(0, null, true));
+    }
+
+    @Test
+    public void shouldServeFreshResponsesWithoutRequest() throws IOException {
+        mInterceptor.setDefaultPolicy(ResponsePolicy.staleIfError(1, TimeUnit.MINUTES)
+                .withMaxAge(5, TimeUnit.SECONDS));
+        mInterceptor.intercept(chain(200, "{}", false));
+
+        mNow += 1000;
+        FakeChain chain = chain(200, "{}", false);
+        Response response = mInterceptor.intercept(chain);
+
+        assertThat(chain.requests).isZero();
+        assertThat(StaleResponseInterceptor.isStale(response)).isFalse();
+        assertThat(mInterceptor.getFreshHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldIgnoreEndpointsWithoutPolicy() throws IOException {
+        mInterceptor.setPolicy("/v1/artists/{id}", ResponsePolicy.staleIfError(1, TimeUnit.MINUTES));
+        mInterceptor.intercept(chain(200, "{}", false));
+
+        try {
+            mInterceptor.intercept(chain(0, null, true));
+        } catch (IOException e) {
+            return;
+        }
+        throw new AssertionError("Expected the error to be passed on");
+    }
+
+    @Test
+    public void shouldUseMostSpecificPolicy() throws IOException {
+        mInterceptor.setPolicy("/v1/{type}/{id}", ResponsePolicy.staleIfError(1, TimeUnit.MINUTES));
+        mInterceptor.setPolicy("/v1/albums/{id}", ResponsePolicy.NETWORK_ONLY);
+        mInterceptor.intercept(chain(200, "{}", false));
+
+        try {
+            mInterceptor.intercept(chain(0, null, true));
+            throw new AssertionError("Expected the album policy to be used");
+        } catch (IOException e) {
+            // expected
+        }
+
+        mInterceptor.setPolicy("/v1/albums/{id}", ResponsePolicy.staleIfError(1, TimeUnit.MINUTES));
+        mInterceptor.setPolicy("/v1/{type}/{id}", ResponsePolicy.NETWORK_ONLY);
+        mInterceptor.intercept(chain(200, "{}", false));
+
+        mNow += 10000;
+        Response response = mInterceptor.intercept(chain(0, null, true));
+        assertThat(StaleResponseInterceptor.isStale(response)).isTrue();
+    }
+
+    @Test
+    public void shouldKeepResponsesPerAccessToken() throws IOException {
+        mInterceptor.setPolicy("/v1/albums/{id}", ResponsePolicy.staleIfError(1, TimeUnit.MINUTES));
+        mInterceptor.intercept(chain("Bearer first", 200, "{\"name\":\"first\"}", false));
+
+        try {
+            mInterceptor.intercept(chain("Bearer second", 0, null, true));
+            throw new AssertionError("Expected responses of other tokens not to be served");
+        } catch (IOException e) {
+            // expected
+        }
+
+        Response response = mInterceptor.intercept(chain("Bearer first", 0, null, true));
+        assertThat(response.body().string()).isEqualTo("{\"name\":\"first\"}");
+    }
+
+    @Test
+    public void shouldKeepResponsesPerAccessTokenOfWrapper() throws IOException {
+        SpotifyApi api = new SpotifyApi().setAccessToken("first");
+        mInterceptor.setSpotifyApi(api);
+        mInterceptor.setPolicy("/v1/albums/{id}", ResponsePolicy.staleIfError(1, TimeUnit.MINUTES));
+        mInterceptor.intercept(chain(200, "{}", false));
+
+        mNow += 10000;
+        api.setAccessToken("second");
+        try {
+            mInterceptor.intercept(chain(0, null, true));
+            throw new AssertionError("Expected responses of the previous token not to be served");
+        } catch (IOException e) {
+            // expected
+        }
+
+        api.setAccessToken("first");
+        assertThat(StaleResponseInterceptor.isStale(mInterceptor.intercept(chain(0, null, true)))).isTrue();
+    }
+
+    @Test
+    public void shouldMatchEndpointTemplates() {
+        EndpointTemplate template = new EndpointTemplate("/v1/users/{user_id}/playlists/{playlist_id}");
+
+        assertThat(template.matches("/v1/users/wizzler/playlists/2ZNb8GmTsPHafGUkh4vf6t")).isTrue();
+        assertThat(template.matches("/v1/users/wizzler/playlists")).isFalse();
+        assertThat(template.matches("/v1/users/wizzler/albums/2ZNb8GmTsPHafGUkh4vf6t")).isFalse();
+    }
+
+    private static FakeChain chain(int code, String body, boolean fail) {
+        return new FakeChain(new Request.Builder().url(ALBUM_URL).build(), code, body, fail);
+    }
+
+    private static FakeChain chain(String authorization, int code, String body, boolean fail) {
+        Request request = new Request.Builder().url(ALBUM_URL).header("Authorization", authorization).build();
+        return new FakeChain(request, code, body, fail);
+    }
+}
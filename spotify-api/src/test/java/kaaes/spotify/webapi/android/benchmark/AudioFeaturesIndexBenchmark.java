@@ -0,0 +1,69 @@
+package kaaes.spotify.webapi.android.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import kaaes.spotify.webapi.android.AudioFeaturesIndex;
+import kaaes.spotify.webapi.android.models.AudioFeaturesTrack;
+
+/**
+ * Query latency of {@link AudioFeaturesIndex} over random tracks.
+ * Memory per track is printed during setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class AudioFeaturesIndexBenchmark {
+
+    @Param({"10000", "1000000"})
+    public int tracks;
+
+    private AudioFeaturesIndex mIndex;
+    private String[] mIds;
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        mIndex = new AudioFeaturesIndex(tracks);
+        mIds = new String[1024];
+        for (int i = 0; i < tracks; i++) {
+            AudioFeaturesTrack features = SyntheticData.audioFeatures(random, i);
+            mIndex.add(features);
+            if (i < mIds.length) {
+                mIds[i] = features.id;
+            }
+        }
+        System.out.println("Bytes per track: " + mIndex.getMemoryUsage() / tracks);
+    }
+
+    @Benchmark
+    public List<AudioFeaturesIndex.Neighbour> query() {
+        return mIndex.query(nextId(), new AudioFeaturesIndex.Query(10));
+    }
+
+    @Benchmark
+    public List<AudioFeaturesIndex.Neighbour> queryFiltered() {
+        return mIndex.query(nextId(), new AudioFeaturesIndex.Query(10).mode(1).tempo(100, 130));
+    }
+
+    private String nextId() {
+        return mIds[mNext++ & (mIds.length - 1)];
+    }
+}
@@ -0,0 +1,120 @@
+package kaaes.spotify.webapi.android.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import kaaes.spotify.webapi.android.AudioFeaturesIndex;
+import kaaes.spotify.webapi.android.AudioFeaturesStore;
+import kaaes.spotify.webapi.android.models.AudioFeaturesTrack;
+
+/**
+ * Scans over {@link AudioFeaturesStore} compared to the same scans over a
+ * {@code List<AudioFeaturesTrack>}. Bytes per track are printed during setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class AudioFeaturesStoreBenchmark {
+
+    @Param({"1000000"})
+    public int tracks;
+
+    private List<AudioFeaturesTrack> mList;
+    private AudioFeaturesStore mStore;
+    private File mDirectory;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        mList = new ArrayList<>(tracks);
+        for (int i = 0; i < tracks; i++) {
+            mList.add(SyntheticData.audioFeatures(random, i));
+        }
+
+        mDirectory = File.createTempFile("features", "");
+        mDirectory.delete();
+        mStore = AudioFeaturesStore.open(mDirectory);
+        mStore.appendAll(mList);
+        System.out.println("Mapped bytes per track: " + mStore.getMappedSize() / tracks
+                + ", heap bytes per track: " + mStore.getHeapSize() / tracks);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mStore.close();
+        for (File file : mDirectory.listFiles()) {
+            file.delete();
+        }
+        mDirectory.delete();
+    }
+
+    @Benchmark
+    public int filterTempoList() {
+        int count = 0;
+        for (AudioFeaturesTrack track : mList) {
+            if (track.tempo >= 120 && track.tempo <= 130) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int filterTempoStore() {
+        return mStore.filter(AudioFeaturesIndex.TEMPO, 120, 130).cardinality();
+    }
+
+    @Benchmark
+    public double averageEnergyOfFastTracksList() {
+        double sum = 0;
+        int count = 0;
+        for (AudioFeaturesTrack track : mList) {
+            if (track.tempo >= 160) {
+                sum += track.energy;
+                count++;
+            }
+        }
+        return sum / count;
+    }
+
+    @Benchmark
+    public double averageEnergyOfFastTracksStore() {
+        BitSet fast = mStore.filter(AudioFeaturesIndex.TEMPO, 160, Float.MAX_VALUE);
+        return mStore.aggregate(AudioFeaturesIndex.ENERGY, fast).mean;
+    }
+
+    @Benchmark
+    public double averageLoudnessList() {
+        double sum = 0;
+        for (AudioFeaturesTrack track : mList) {
+            sum += track.loudness;
+        }
+        return sum / mList.size();
+    }
+
+    @Benchmark
+    public double averageLoudnessStore() {
+        return mStore.aggregate(AudioFeaturesIndex.LOUDNESS, null).mean;
+    }
+}
@@ -0,0 +1,112 @@
+package kaaes.spotify.webapi.android.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import kaaes.spotify.webapi.android.ConnectionConfig;
+import kaaes.spotify.webapi.android.ConnectionWarmer;
+import kaaes.spotify.webapi.android.emulator.Latency;
+import kaaes.spotify.webapi.android.emulator.SpotifyEmulator;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Time to fetch a batch of tracks with concurrent requests against {@link SpotifyEmulator}
+ * for different {@link ConnectionConfig#maxRequestsPerHost} limits. The pool keeps as many
+ * idle connections as the limit so connections are reused between batches, the number of
+ * connections the server accepted is printed after each run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BulkThroughputBenchmark {
+
+    @Param({"5", "16", "32"})
+    public int maxRequestsPerHost;
+
+    @Param({"64"})
+    public int batchSize;
+
+    @Param({"50"})
+    public long connectDelayMs;
+
+    @Param({"30"})
+    public long latencyMs;
+
+    private SpotifyEmulator mServer;
+    private OkHttpClient mClient;
+    private Request mRequest;
+
+    @Setup
+    public void setUp() throws IOException {
+        mServer = new SpotifyEmulator(42)
+                .setConnectDelay(connectDelayMs)
+                .setLatency(Latency.fixed(latencyMs))
+                .start();
+        ConnectionConfig config = ConnectionConfig.DEFAULT
+                .withMaxRequestsPerHost(maxRequestsPerHost)
+                .withMaxIdleConnections(maxRequestsPerHost);
+        mClient = config.configure(new OkHttpClient.Builder())
+                .connectionPool(config.createConnectionPool())
+                .build();
+        mRequest = new Request.Builder().url(mServer.url("/v1/tracks/1zHlj4dQ8ZAtrayhuDDmkY")).build();
+        new ConnectionWarmer(mClient, mServer.url("/")).warm(maxRequestsPerHost);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        System.out.println("Requests: " + mServer.getRequestCount() + ", connections: " + mServer.getConnectionCount());
+        mServer.close();
+        // The dispatcher threads would otherwise keep the forked VM alive for a minute
+        mClient.dispatcher().executorService().shutdown();
+        mClient.connectionPool().evictAll();
+    }
+
+    @Benchmark
+    public int batch() throws IOException {
+        final CountDownLatch done = new CountDownLatch(batchSize);
+        final AtomicInteger bytes = new AtomicInteger();
+        for (int i = 0; i < batchSize; i++) {
+            mClient.newCall(mRequest).enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    done.countDown();
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) throws IOException {
+                    bytes.addAndGet(response.body().bytes().length);
+                    done.countDown();
+                }
+            });
+        }
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+        return bytes.get();
+    }
+}
@@ -0,0 +1,92 @@
+package kaaes.spotify.webapi.android.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import kaaes.spotify.webapi.android.CallTimings;
+import kaaes.spotify.webapi.android.ConnectionConfig;
+import kaaes.spotify.webapi.android.SpotifyService;
+import kaaes.spotify.webapi.android.emulator.SpotifyEmulator;
+import kaaes.spotify.webapi.android.models.Pager;
+import kaaes.spotify.webapi.android.models.PlaylistTrack;
+import kaaes.spotify.webapi.android.models.Track;
+import okhttp3.OkHttpClient;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+/**
+ * Full {@link retrofit2.Call} execution through Retrofit, OkHttp and Gson against a {@link SpotifyEmulator}
+ * without added latency, so the numbers are the client's own cost per call over a kept-alive
+ * loopback connection. {@code instrumented} adds the {@link CallTimings} interceptors and converter
+ * that {@link kaaes.spotify.webapi.android.SpotifyApi} installs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CallExecutionBenchmark {
+
+    @Param({"plain", "instrumented"})
+    public String client;
+
+    private SpotifyEmulator mServer;
+    private SpotifyService mService;
+
+    @Setup
+    public void setUp() throws IOException {
+        mServer = new SpotifyEmulator(42).start();
+        mService = service(mServer);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mServer.close();
+    }
+
+    @Benchmark
+    public Track getTrack() throws IOException {
+        return mService.getTrack("1zHlj4dQ8ZAtrayhuDDmkY").execute().body();
+    }
+
+    @Benchmark
+    public Pager<PlaylistTrack> getPlaylistTracks() throws IOException {
+        return mService.getPlaylistTracks("test", "4Gk8QvFvEaE7rMNlNthOHf").execute().body();
+    }
+
+    private SpotifyService service(SpotifyEmulator server) {
+        ConnectionConfig config = ConnectionConfig.DEFAULT;
+        OkHttpClient.Builder builder = config.configure(new OkHttpClient.Builder())
+                .connectionPool(config.createConnectionPool());
+        Converter.Factory converterFactory = GsonConverterFactory.create();
+
+        if ("instrumented".equals(client)) {
+            CallTimings timings = new CallTimings();
+            builder.addInterceptor(timings.applicationInterceptor())
+                    .addNetworkInterceptor(timings.networkInterceptor());
+            converterFactory = timings.converterFactory(converterFactory);
+        }
+
+        return new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .client(builder.build())
+                .addConverterFactory(converterFactory)
+                .build()
+                .create(SpotifyService.class);
+    }
+}
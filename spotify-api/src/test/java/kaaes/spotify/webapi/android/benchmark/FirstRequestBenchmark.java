@@ -0,0 +1,130 @@
+package kaaes.spotify.webapi.android.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import kaaes.spotify.webapi.android.ConnectionConfig;
+import kaaes.spotify.webapi.android.ConnectionWarmer;
+import kaaes.spotify.webapi.android.emulator.Latency;
+import kaaes.spotify.webapi.android.emulator.SpotifyEmulator;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Time of the first request made by a new client against {@link SpotifyEmulator}, with and without
+ * pre-warmed connections. Every invocation starts from an empty connection pool, the warm up
+ * is done in the setup as the app would do it in the background before the first call.
+ * <p/>
+ * Each state runs its own emulator, JMH 1.12 rejects invocation level setups of thread states
+ * that depend on a benchmark state.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 30)
+@Fork(1)
+public class FirstRequestBenchmark {
+
+    @State(Scope.Thread)
+    public abstract static class Client {
+        /**
+         * Stands in for the TCP and TLS handshakes of a new connection
+         */
+        @Param({"100"})
+        public long connectDelayMs;
+
+        @Param({"20"})
+        public long latencyMs;
+
+        SpotifyEmulator mServer;
+        Request mRequest;
+        OkHttpClient mClient;
+
+        void startServer() throws IOException {
+            mServer = new SpotifyEmulator(42)
+                    .setConnectDelay(connectDelayMs)
+                    .setLatency(Latency.fixed(latencyMs))
+                    .start();
+            mRequest = new Request.Builder().url(mServer.url("/v1/albums/0sNOF9WDwhWunNAHPD3Baj")).build();
+        }
+
+        void stopServer() throws IOException {
+            mServer.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cold extends Client {
+        @Setup(Level.Trial)
+        public void setUpServer() throws IOException {
+            startServer();
+        }
+
+        @Setup(Level.Invocation)
+        public void setUp() {
+            mClient = client();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            stopServer();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Prewarmed extends Client {
+        @Setup(Level.Trial)
+        public void setUpServer() throws IOException {
+            startServer();
+        }
+
+        @Setup(Level.Invocation)
+        public void setUp() throws IOException {
+            mClient = client();
+            new ConnectionWarmer(mClient, mServer.url("/")).warm(1);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            stopServer();
+        }
+    }
+
+    @Benchmark
+    public int cold(Cold cold) throws IOException {
+        return execute(cold.mClient, cold.mRequest);
+    }
+
+    @Benchmark
+    public int prewarmed(Prewarmed prewarmed) throws IOException {
+        return execute(prewarmed.mClient, prewarmed.mRequest);
+    }
+
+    private static OkHttpClient client() {
+        ConnectionConfig config = ConnectionConfig.DEFAULT;
+        return config.configure(new OkHttpClient.Builder())
+                .connectionPool(config.createConnectionPool())
+                .build();
+    }
+
+    private static int execute(OkHttpClient client, Request request) throws IOException {
+        Response response = client.newCall(request).execute();
+        int length = response.body().bytes().length;
+        return response.code() + length;
+    }
+}
@@ -0,0 +1,106 @@
+package kaaes.spotify.webapi.android.benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gson parse time of every fixture into the type the service returns for it. The bytes are
+ * read the same way {@code GsonResponseBodyConverter} reads a response body, so the numbers
+ * include UTF-8 decoding. Run with the GC profiler to see the bytes allocated per parse.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FixtureParsingBenchmark {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Every file in src/test/resources/fixtures, {@code FixtureParsingBenchmarkTest} keeps the list complete
+     */
+    @Param({
+            "album.json",
+            "albums-none-found.json",
+            "albums.json",
+            "application-authentication-token.json",
+            "artist-album.json",
+            "artist-related-artists.json",
+            "artist.json",
+            "artists.json",
+            "auth-invalid-client.json",
+            "auth-refreshtoken.json",
+            "auth-tokens.json",
+            "category-playlist.json",
+            "category.json",
+            "created-playlist.json",
+            "current-user.json",
+            "error-cannot-add-tracks.json",
+            "error-unauthorized.json",
+            "error_bad-field.json",
+            "error_id-not-found.json",
+            "featured-playlists.json",
+            "follow_is_following_artists.json",
+            "follow_is_following_users.json",
+            "followed-artists.json",
+            "get-categories.json",
+            "new-releases.json",
+            "playlist-followers-contains.json",
+            "playlist-response.json",
+            "playlist-tracks.json",
+            "search-album.json",
+            "search-artist.json",
+            "search-multiple.json",
+            "search-playlist.json",
+            "search-track.json",
+            "snapshot-response.json",
+            "track.json",
+            "tracks-for-artist.json",
+            "tracks.json",
+            "user-playlists.json",
+            "user.json"})
+    public String fixture;
+
+    private byte[] mBytes;
+    private TypeAdapter<?> mAdapter;
+    private Gson mGson;
+
+    @Setup
+    public void setUp() {
+        mBytes = Fixtures.bytes(fixture);
+        mGson = new Gson();
+        mAdapter = mGson.getAdapter(TypeToken.get(FixtureTypes.of(fixture)));
+    }
+
+    @Benchmark
+    public Object parse() throws IOException {
+        JsonReader reader = mGson.newJsonReader(new InputStreamReader(new ByteArrayInputStream(mBytes), UTF_8));
+        try {
+            return mAdapter.read(reader);
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package kaaes.spotify.webapi.android.benchmark;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openjdk.jmh.annotations.Param;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class FixtureParsingBenchmarkTest {
+
+    @Test
+    public void shouldCoverEveryFixture() throws Exception {
+        String[] fixtures = new File(FixtureParsingBenchmarkTest.class.getResource("/fixtures").toURI()).list();
+        String[] params = FixtureParsingBenchmark.class.getField("fixture").getAnnotation(Param.class).value();
+
+        assertThat(params).containsOnly(fixtures);
+        assertThat(FixtureTypes.ALL.keySet()).containsOnly(fixtures);
+    }
+
+    @Test
+    public void shouldParseEveryFixture() throws IOException {
+        FixtureParsingBenchmark benchmark = new FixtureParsingBenchmark();
+        for (String fixture : FixtureTypes.ALL.keySet()) {
+            benchmark.fixture = fixture;
+            benchmark.setUp();
+            assertThat(benchmark.parse()).isNotNull();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package kaaes.spotify.webapi.android.benchmark;
+
+import com.google.gson.JsonObject;
+import com.google.gson.reflect.TypeToken;
+
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import kaaes.spotify.webapi.android.models.Album;
+import kaaes.spotify.webapi.android.models.Albums;
+import kaaes.spotify.webapi.android.models.AlbumsPager;
+import kaaes.spotify.webapi.android.models.Artist;
+import kaaes.spotify.webapi.android.models.Artists;
+import kaaes.spotify.webapi.android.models.ArtistsCursorPager;
+import kaaes.spotify.webapi.android.models.ArtistsPager;
+import kaaes.spotify.webapi.android.models.CategoriesPager;
+import kaaes.spotify.webapi.android.models.Category;
+import kaaes.spotify.webapi.android.models.ErrorResponse;
+import kaaes.spotify.webapi.android.models.FeaturedPlaylists;
+import kaaes.spotify.webapi.android.models.NewReleases;
+import kaaes.spotify.webapi.android.models.Pager;
+import kaaes.spotify.webapi.android.models.Playlist;
+import kaaes.spotify.webapi.android.models.PlaylistSimple;
+import kaaes.spotify.webapi.android.models.PlaylistTrack;
+import kaaes.spotify.webapi.android.models.PlaylistsPager;
+import kaaes.spotify.webapi.android.models.SearchResult;
+import kaaes.spotify.webapi.android.models.SnapshotId;
+import kaaes.spotify.webapi.android.models.Track;
+import kaaes.spotify.webapi.android.models.Tracks;
+import kaaes.spotify.webapi.android.models.TracksPager;
+import kaaes.spotify.webapi.android.models.UserPrivate;
+import kaaes.spotify.webapi.android.models.UserPublic;
+
+/**
+ * The type each fixture is parsed into by the service, the same ones {@code SpotifyServiceTest} uses.
+ * Authentication responses have no model in this library and are parsed into a {@link JsonObject}.
+ */
+final class FixtureTypes {
+
+    static final Map<String, Type> ALL;
+
+    static {
+        Type booleans = new TypeToken<List<Boolean>>() {
+        }.getType();
+
+        Map<String, Type> types = new LinkedHashMap<>();
+        types.put("album.json", Album.class);
+        types.put("albums.json", Albums.class);
+        types.put("albums-none-found.json", Albums.class);
+        types.put("application-authentication-token.json", JsonObject.class);
+        types.put("artist.json", Artist.class);
+        types.put("artist-album.json", new TypeToken<Pager<Album>>() {
+        }.getType());
+        types.put("artist-related-artists.json", Artists.class);
+        types.put("artists.json", Artists.class);
+        types.put("auth-invalid-client.json", JsonObject.class);
+        types.put("auth-refreshtoken.json", JsonObject.class);
+        types.put("auth-tokens.json", JsonObject.class);
+        types.put("category.json", Category.class);
+        types.put("category-playlist.json", PlaylistsPager.class);
+        types.put("created-playlist.json", Playlist.class);
+        types.put("current-user.json", UserPrivate.class);
+        types.put("error-cannot-add-tracks.json", ErrorResponse.class);
+        types.put("error-unauthorized.json", ErrorResponse.class);
+        types.put("error_bad-field.json", ErrorResponse.class);
+        types.put("error_id-not-found.json", ErrorResponse.class);
+        types.put("featured-playlists.json", FeaturedPlaylists.class);
+        types.put("follow_is_following_artists.json", booleans);
+        types.put("follow_is_following_users.json", booleans);
+        types.put("followed-artists.json", ArtistsCursorPager.class);
+        types.put("get-categories.json", CategoriesPager.class);
+        types.put("new-releases.json", NewReleases.class);
+        types.put("playlist-followers-contains.json", booleans);
+        types.put("playlist-response.json", Playlist.class);
+        types.put("playlist-tracks.json", new TypeToken<Pager<PlaylistTrack>>() {
+        }.getType());
+        types.put("search-album.json", AlbumsPager.class);
+        types.put("search-artist.json", ArtistsPager.class);
+        types.put("search-multiple.json", SearchResult.class);
+        types.put("search-playlist.json", PlaylistsPager.class);
+        types.put("search-track.json", TracksPager.class);
+        types.put("snapshot-response.json", SnapshotId.class);
+        types.put("track.json", Track.class);
+        types.put("tracks.json", Tracks.class);
+        types.put("tracks-for-artist.json", Tracks.class);
+        types.put("user.json", UserPublic.class);
+        types.put("user-playlists.json", new TypeToken<Pager<PlaylistSimple>>() {
+        }.getType());
+        ALL = Collections.unmodifiableMap(types);
+    }
+
+    private FixtureTypes() {
+    }
+
+    static Type of(String fileName) {
+        Type type = ALL.get(fileName);
+        if (type == null) {
+            throw new IllegalArgumentException("No type for fixture " + fileName);
+        }
+        return type;
+    }
+}
@@ -0,0 +1,43 @@
+package kaaes.spotify.webapi.android.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the JSON fixtures of the tests from the classpath
+ */
+final class Fixtures {
+
+    private static final String TEST_DATA_DIR = "/fixtures/";
+
+    private Fixtures() {
+    }
+
+    static byte[] bytes(String fileName) {
+        InputStream in = Fixtures.class.getResourceAsStream(TEST_DATA_DIR + fileName);
+        if (in == null) {
+            throw new IllegalArgumentException("No fixture named " + fileName);
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            in.close();
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static String read(String fileName) {
+        try {
+            return new String(bytes(fileName), "UTF-8");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package kaaes.spotify.webapi.android.benchmark;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Estimates the retained size of an object graph by walking its fields. Objects reachable through
+ * several paths are counted once, so shared strings and lists cost nothing after the first.
+ * <p/>
+ * Sizes follow a 64-bit VM with compressed references: 12 byte object headers, 16 byte array
+ * headers, 4 byte references and 8 byte alignment. Strings are counted as a UTF-16 char array
+ * like on Android and Java 8 whatever the running VM uses. Collections whose internals can't be
+ * read on newer VMs are estimated from their elements.
+ */
+final class HeapSize {
+
+    private static final int HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+
+    private static final Map<Class<?>, List<Field>> FIELDS = new HashMap<>();
+
+    private final Map<Object, Boolean> mVisited = new IdentityHashMap<>();
+    private final Deque<Object> mPending = new ArrayDeque<>();
+
+    private HeapSize() {
+    }
+
+    /**
+     * @return Estimated bytes retained by the object and everything reachable from it
+     */
+    static long of(Object root) {
+        return new HeapSize().measure(root);
+    }
+
+    private long measure(Object root) {
+        long bytes = 0;
+        push(root);
+        while (!mPending.isEmpty()) {
+            bytes += visit(mPending.pop());
+        }
+        return bytes;
+    }
+
+    private void push(Object object) {
+        if (object != null && !(object instanceof Class) && !mVisited.containsKey(object)) {
+            mVisited.put(object, Boolean.TRUE);
+            mPending.push(object);
+        }
+    }
+
+    private long visit(Object object) {
+        Class<?> type = object.getClass();
+        if (object instanceof String) {
+            return align(HEADER + REFERENCE + 4) + align(ARRAY_HEADER + 2 * ((String) object).length());
+        }
+        if (type.isArray()) {
+            int length = Array.getLength(object);
+            Class<?> component = type.getComponentType();
+            if (component.isPrimitive()) {
+                return align(ARRAY_HEADER + (long) length * primitiveSize(component));
+            }
+            for (int i = 0; i < length; i++) {
+                push(Array.get(object, i));
+            }
+            return align(ARRAY_HEADER + (long) length * REFERENCE);
+        }
+
+        long bytes = HEADER;
+        boolean readable = true;
+        for (Field field : fields(type)) {
+            bytes += field.getType().isPrimitive() ? primitiveSize(field.getType()) : REFERENCE;
+            if (field.getType().isPrimitive() || !readable) {
+                continue;
+            }
+            try {
+                field.setAccessible(true);
+                push(field.get(object));
+            } catch (RuntimeException | IllegalAccessException e) {
+                readable = false;
+            }
+        }
+        if (!readable) {
+            bytes += estimateContents(object);
+        }
+        return align(bytes);
+    }
+
+    /**
+     * Backing array and entries of a JDK collection whose fields can't be read
+     */
+    private long estimateContents(Object object) {
+        if (object instanceof Collection) {
+            Collection<?> collection = (Collection<?>) object;
+            for (Object element : collection) {
+                push(element);
+            }
+            return align(ARRAY_HEADER + (long) collection.size() * REFERENCE);
+        }
+        if (object instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) object;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                push(entry.getKey());
+                push(entry.getValue());
+            }
+            int entry = align(HEADER + 3 * REFERENCE + 4);
+            return align(ARRAY_HEADER + (long) Integer.highestOneBit(Math.max(1, map.size() * 4 / 3) * 2 - 1) * REFERENCE)
+                    + (long) map.size() * entry;
+        }
+        return 0;
+    }
+
+    private static synchronized List<Field> fields(Class<?> type) {
+        List<Field> fields = FIELDS.get(type);
+        if (fields == null) {
+            fields = new ArrayList<>();
+            for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers())) {
+                        fields.add(field);
+                    }
+                }
+            }
+            FIELDS.put(type, fields);
+        }
+        return fields;
+    }
+
+    private static int primitiveSize(Class<?> type) {
+        if (type == long.class || type == double.class) return 8;
+        if (type == int.class || type == float.class) return 4;
+        if (type == short.class || type == char.class) return 2;
+        return 1;
+    }
+
+    private static int align(long bytes) {
+        return (int) ((bytes + 7) & ~7L);
+    }
+}
@@ -0,0 +1,81 @@
+package kaaes.spotify.webapi.android.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import kaaes.spotify.webapi.android.FaultInjectingCallFactory;
+import kaaes.spotify.webapi.android.ResilientCallFactory;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Latency distribution of playlist track requests against {@link FaultInjectingCallFactory}
+ * with and without {@link ResilientCallFactory}. Sample time mode reports the p99 next to the mean,
+ * the hedge count is printed after each run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class HedgedRequestBenchmark {
+
+    private static final String PLAYLIST_TRACKS = "https://api.spotify.com/v1/users/test/playlists/4Gk8QvFvEaE7rMNlNthOHf/tracks";
+
+    /**
+     * Part of the requests taking {@link #slowLatencyMs} instead of 5ms
+     */
+    @Param({"0.02"})
+    public float slowRatio;
+
+    @Param({"200"})
+    public long slowLatencyMs;
+
+    private FaultInjectingCallFactory mServer;
+    private ResilientCallFactory mResilient;
+    private Request mRequest;
+
+    @Setup
+    public void setUp() {
+        mServer = new FaultInjectingCallFactory(42).setLatency(5, slowRatio, slowLatencyMs);
+        mResilient = new ResilientCallFactory(mServer);
+        mRequest = new Request.Builder().url(PLAYLIST_TRACKS).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.println("Requests: " + mServer.getCallCount() + ", hedges: " + mResilient.getHedgeCount()
+                + ", hedge wins: " + mResilient.getHedgeWinCount());
+    }
+
+    @Benchmark
+    public int plain() throws IOException {
+        return consume(mServer.newCall(mRequest).execute());
+    }
+
+    @Benchmark
+    public int hedged() throws IOException {
+        return consume(mResilient.newCall(mRequest).execute());
+    }
+
+    private static int consume(Response response) {
+        response.body().close();
+        return response.code();
+    }
+}
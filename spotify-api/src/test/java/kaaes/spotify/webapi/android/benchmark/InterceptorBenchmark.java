@@ -0,0 +1,80 @@
+package kaaes.spotify.webapi.android.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import kaaes.spotify.webapi.android.CallTimings;
+import kaaes.spotify.webapi.android.ResponsePolicy;
+import kaaes.spotify.webapi.android.StaleResponseInterceptor;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Overhead the library's interceptors add to a call, measured on an {@link InterceptorChain}
+ * that answers with the track fixture without any I/O. {@code none} is the cost of the chain
+ * and reading the body alone.
+ * <ul>
+ * <li>{@code timings}: {@link CallTimings} application and network interceptors</li>
+ * <li>{@code stale-passthrough}: {@link StaleResponseInterceptor} for an endpoint that isn't stored</li>
+ * <li>{@code stale-store}: {@link StaleResponseInterceptor} copying every response into its store</li>
+ * <li>{@code stale-fresh}: {@link StaleResponseInterceptor} answering from its store</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterceptorBenchmark {
+
+    @Param({"none", "timings", "stale-passthrough", "stale-store", "stale-fresh"})
+    public String interceptors;
+
+    private final List<Interceptor> mApplicationInterceptors = new ArrayList<>();
+    private final List<Interceptor> mNetworkInterceptors = new ArrayList<>();
+    private byte[] mBody;
+    private Request mRequest;
+
+    @Setup
+    public void setUp() {
+        mBody = Fixtures.bytes("track.json");
+        mRequest = new Request.Builder().url("https://api.spotify.com/v1/tracks/1zHlj4dQ8ZAtrayhuDDmkY").build();
+
+        if ("timings".equals(interceptors)) {
+            CallTimings timings = new CallTimings();
+            mApplicationInterceptors.add(timings.applicationInterceptor());
+            mNetworkInterceptors.add(timings.networkInterceptor());
+        } else if (interceptors.startsWith("stale-")) {
+            StaleResponseInterceptor stale = new StaleResponseInterceptor();
+            if ("stale-store".equals(interceptors)) {
+                stale.setDefaultPolicy(ResponsePolicy.staleIfError(1, TimeUnit.HOURS));
+            } else if ("stale-fresh".equals(interceptors)) {
+                stale.setDefaultPolicy(ResponsePolicy.NETWORK_ONLY.withMaxAge(1, TimeUnit.HOURS));
+            }
+            mApplicationInterceptors.add(stale);
+        }
+    }
+
+    @Benchmark
+    public int execute() throws IOException {
+        Response response = new InterceptorChain(mApplicationInterceptors,
+                mNetworkInterceptors, mBody, mRequest).proceed(mRequest);
+        return response.body().bytes().length;
+    }
+}
@@ -0,0 +1,98 @@
+package kaaes.spotify.webapi.android.benchmark;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.List;
+
+import okhttp3.Connection;
+import okhttp3.Handshake;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okhttp3.Route;
+
+/**
+ * Runs a request through application and network interceptors the way OkHttp does and answers
+ * it with a fixed body without touching the network, so only the interceptors are measured
+ */
+final class InterceptorChain implements Interceptor.Chain {
+
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+
+    private static final Connection CONNECTION = new Connection() {
+        @Override
+        public Route route() {
+            return null;
+        }
+
+        @Override
+        public Socket socket() {
+            return null;
+        }
+
+        @Override
+        public Handshake handshake() {
+            return null;
+        }
+
+        @Override
+        public Protocol protocol() {
+            return Protocol.HTTP_2;
+        }
+    };
+
+    private final List<Interceptor> mApplicationInterceptors;
+    private final List<Interceptor> mNetworkInterceptors;
+    private final byte[] mBody;
+    private final Request mRequest;
+    private final int mIndex;
+
+    InterceptorChain(List<Interceptor> applicationInterceptors, List<Interceptor> networkInterceptors,
+                     byte[] body, Request request) {
+        this(applicationInterceptors, networkInterceptors, body, request, 0);
+    }
+
+    private InterceptorChain(List<Interceptor> applicationInterceptors, List<Interceptor> networkInterceptors,
+                             byte[] body, Request request, int index) {
+        mApplicationInterceptors = applicationInterceptors;
+        mNetworkInterceptors = networkInterceptors;
+        mBody = body;
+        mRequest = request;
+        mIndex = index;
+    }
+
+    @Override
+    public Request request() {
+        return mRequest;
+    }
+
+    @Override
+    public Connection connection() {
+        return mIndex > mApplicationInterceptors.size() ? CONNECTION : null;
+    }
+
+    @Override
+    public Response proceed(Request request) throws IOException {
+        int applicationCount = mApplicationInterceptors.size();
+        int total = applicationCount + mNetworkInterceptors.size();
+        // Index applicationCount is where OkHttp connects, network interceptors start after it
+        int index = mIndex == applicationCount ? mIndex + 1 : mIndex;
+        if (index > total) {
+            return new Response.Builder()
+                    .request(request)
+                    .protocol(Protocol.HTTP_2)
+                    .code(200)
+                    .message("OK")
+                    .body(ResponseBody.create(JSON, mBody))
+                    .build();
+        }
+        Interceptor interceptor = index < applicationCount
+                ? mApplicationInterceptors.get(index)
+                : mNetworkInterceptors.get(index - applicationCount - 1);
+        return interceptor.intercept(new InterceptorChain(mApplicationInterceptors, mNetworkInterceptors,
+                mBody, request, index + 1));
+    }
+}
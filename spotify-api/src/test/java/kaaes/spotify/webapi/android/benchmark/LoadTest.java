@@ -0,0 +1,253 @@
+package kaaes.spotify.webapi.android.benchmark;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import kaaes.spotify.webapi.android.ConnectionConfig;
+import kaaes.spotify.webapi.android.QueryOptions;
+import kaaes.spotify.webapi.android.SpotifyService;
+import kaaes.spotify.webapi.android.emulator.Latency;
+import kaaes.spotify.webapi.android.emulator.SpotifyEmulator;
+import okhttp3.OkHttpClient;
+import retrofit2.Call;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+/**
+ * Runs an operation from a number of threads for a fixed time and reports the client's throughput
+ * and latency percentiles. Unlike the JMH benchmarks it measures the library under sustained
+ * concurrent load, including queueing in the client and the server's latency distribution.
+ * <p/>
+ * {@link #main(String[])} runs the standard scenarios against a {@link SpotifyEmulator}:
+ * ./gradlew :spotify-api:loadTest
+ */
+public class LoadTest {
+
+    public interface Operation {
+        /**
+         * @throws Exception If the operation failed, it's counted as an error
+         */
+        void run() throws Exception;
+    }
+
+    /**
+     * Outcome of a run, latencies in milliseconds
+     */
+    public static class Report {
+        public final String name;
+        public final int concurrency;
+        public final int operations;
+        public final int errors;
+        public final long durationMs;
+        private final long[] mLatenciesNanos;
+
+        Report(String name, int concurrency, int errors, long durationMs, long[] latenciesNanos) {
+            this.name = name;
+            this.concurrency = concurrency;
+            this.operations = latenciesNanos.length;
+            this.errors = errors;
+            this.durationMs = durationMs;
+            mLatenciesNanos = latenciesNanos;
+            Arrays.sort(mLatenciesNanos);
+        }
+
+        public double getThroughput() {
+            return durationMs > 0 ? operations * 1000.0 / durationMs : 0;
+        }
+
+        /**
+         * @param percentile Between 0 and 100
+         * @return Latency under which the percentile of operations completed
+         */
+        public double getLatencyMs(double percentile) {
+            if (mLatenciesNanos.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(percentile / 100 * mLatenciesNanos.length) - 1;
+            return mLatenciesNanos[Math.max(0, Math.min(rank, mLatenciesNanos.length - 1))] / 1e6;
+        }
+
+        public String toJson() {
+            return String.format(Locale.US, "{\"name\":\"%s\",\"concurrency\":%d,\"operations\":%d,\"errors\":%d,"
+                            + "\"durationMs\":%d,\"throughput\":%.1f,\"p50\":%.3f,\"p90\":%.3f,\"p99\":%.3f,\"p999\":%.3f,\"max\":%.3f}",
+                    name, concurrency, operations, errors, durationMs, getThroughput(),
+                    getLatencyMs(50), getLatencyMs(90), getLatencyMs(99), getLatencyMs(99.9), getLatencyMs(100));
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%-16s %3d threads %8d ops %6d errors %9.1f ops/s   p50 %7.2fms  p90 %7.2fms  p99 %7.2fms  p99.9 %7.2fms  max %7.2fms",
+                    name, concurrency, operations, errors, getThroughput(),
+                    getLatencyMs(50), getLatencyMs(90), getLatencyMs(99), getLatencyMs(99.9), getLatencyMs(100));
+        }
+    }
+
+    private final int mConcurrency;
+    private final long mDurationMs;
+    private final long mWarmupMs;
+
+    public LoadTest(int concurrency, long duration, long warmup, TimeUnit unit) {
+        mConcurrency = concurrency;
+        mDurationMs = unit.toMillis(duration);
+        mWarmupMs = unit.toMillis(warmup);
+    }
+
+    /**
+     * Runs the operation from all threads, first for the warm up and then for the measured duration
+     */
+    public Report run(String name, final Operation operation) throws InterruptedException {
+        final long warmupEnd = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(mWarmupMs);
+        final long end = warmupEnd + TimeUnit.MILLISECONDS.toNanos(mDurationMs);
+        final CountDownLatch done = new CountDownLatch(mConcurrency);
+        final AtomicInteger errors = new AtomicInteger();
+        final long[][] latencies = new long[mConcurrency][];
+        final int[] counts = new int[mConcurrency];
+
+        for (int t = 0; t < mConcurrency; t++) {
+            final int worker = t;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    long[] samples = new long[1024];
+                    int count = 0;
+                    try {
+                        long start;
+                        while ((start = System.nanoTime()) < end) {
+                            boolean failed = false;
+                            try {
+                                operation.run();
+                            } catch (Exception e) {
+                                failed = true;
+                            }
+                            if (start < warmupEnd) {
+                                continue;
+                            }
+                            if (failed) {
+                                errors.incrementAndGet();
+                            }
+                            if (count == samples.length) {
+                                samples = Arrays.copyOf(samples, count * 2);
+                            }
+                            samples[count++] = System.nanoTime() - start;
+                        }
+                    } finally {
+                        latencies[worker] = samples;
+                        counts[worker] = count;
+                        done.countDown();
+                    }
+                }
+            }, "LoadTest-" + name + "-" + t).start();
+        }
+        done.await();
+
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        long[] all = new long[total];
+        int position = 0;
+        for (int t = 0; t < mConcurrency; t++) {
+            System.arraycopy(latencies[t], 0, all, position, counts[t]);
+            position += counts[t];
+        }
+        return new Report(name, mConcurrency, errors.get(), mDurationMs, all);
+    }
+
+    /**
+     * Runs the standard scenarios against an emulator with a realistic latency distribution
+     *
+     * @param args Optional path of a JSON file for the reports and the measured duration in seconds
+     */
+    public static void main(String[] args) throws Exception {
+        long seconds = args.length > 1 ? Long.parseLong(args[1]) : 10;
+        int concurrency = 16;
+        LoadTest loadTest = new LoadTest(concurrency, seconds, Math.max(1, seconds / 5), TimeUnit.SECONDS);
+        List<Report> reports = new ArrayList<>();
+
+        SpotifyEmulator emulator = new SpotifyEmulator(42)
+                .setLatency(Latency.withTail(Latency.logNormal(20, 0.5), 0.005f, 500))
+                .setConnectDelay(50)
+                .addPlaylist("test", "big", 10000)
+                .start();
+        try {
+            final SpotifyService service = service(emulator, concurrency);
+            final Random random = new Random(42);
+            final QueryOptions firstPage = QueryOptions.page(0, 100);
+
+            reports.add(loadTest.run("get-track", new Operation() {
+                @Override
+                public void run() throws Exception {
+                    execute(service.getTrack("1zHlj4dQ8ZAtrayhuDDmkY"));
+                }
+            }));
+
+            reports.add(loadTest.run("playlist-page", new Operation() {
+                @Override
+                public void run() throws Exception {
+                    int page;
+                    synchronized (random) {
+                        page = random.nextInt(100);
+                    }
+                    execute(service.getPlaylistTracks("test", "big", firstPage.withOffset(page * 100)));
+                }
+            }));
+
+            emulator.setRateLimitRatio(0.02f, 1).setServerErrorRatio(0.01f);
+            reports.add(loadTest.run("faulty-get-track", new Operation() {
+                @Override
+                public void run() throws Exception {
+                    execute(service.getTrack("1zHlj4dQ8ZAtrayhuDDmkY"));
+                }
+            }));
+        } finally {
+            emulator.close();
+        }
+
+        StringBuilder json = new StringBuilder("[");
+        for (Report report : reports) {
+            System.out.println(report);
+            json.append(json.length() > 1 ? ",\n" : "\n").append(report.toJson());
+        }
+        json.append("\n]\n");
+        if (args.length > 0) {
+            OutputStream out = new FileOutputStream(args[0]);
+            out.write(json.toString().getBytes("UTF-8"));
+            out.close();
+        }
+        System.exit(0);
+    }
+
+    private static SpotifyService service(SpotifyEmulator emulator, int concurrency) {
+        ConnectionConfig config = ConnectionConfig.DEFAULT
+                .withMaxRequestsPerHost(concurrency)
+                .withMaxIdleConnections(concurrency);
+        OkHttpClient client = config.configure(new OkHttpClient.Builder())
+                .connectionPool(config.createConnectionPool())
+                .build();
+        return new Retrofit.Builder()
+                .baseUrl(emulator.url("/"))
+                .client(client)
+                .addConverterFactory(GsonConverterFactory.create())
+                .build()
+                .create(SpotifyService.class);
+    }
+
+    private static <T> T execute(Call<T> call) throws IOException {
+        Response<T> response = call.execute();
+        if (!response.isSuccessful()) {
+            response.errorBody().close();
+            throw new IOException("HTTP " + response.code());
+        }
+        return response.body();
+    }
+}
@@ -0,0 +1,153 @@
+package kaaes.spotify.webapi.android.benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import kaaes.spotify.webapi.android.CompactModels;
+import kaaes.spotify.webapi.android.models.MarketSet;
+import kaaes.spotify.webapi.android.models.Track;
+import kaaes.spotify.webapi.android.models.TracksPager;
+
+/**
+ * {@code available_markets} of the search-track.json fixture, 24 arrays of 60 codes for the tracks
+ * and their albums, as lists of strings read by Gson and as {@link MarketSet}s read from the bytes.
+ * The whole response is also parsed with and without {@link CompactModels}, and availability in one
+ * market is checked for every track. The retained sizes are printed by {@link ModelFootprint}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MarketSetBenchmark {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte[] KEY = "\"available_markets\":".getBytes(UTF_8);
+
+    private final Gson mGson = new Gson();
+    private final Gson mCompactGson = CompactModels.createGson();
+    private final TypeAdapter<List<String>> mListAdapter = mGson.getAdapter(new TypeToken<List<String>>() {
+    });
+
+    private byte[] mBody;
+    private int[] mArrays;
+    private List<List<String>> mLists;
+    private List<MarketSet> mSets;
+
+    @Setup
+    public void setUp() {
+        mBody = Fixtures.bytes("search-track.json");
+        mArrays = arrayOffsets(mBody);
+
+        TracksPager pager = mGson.fromJson(new String(mBody, UTF_8), TracksPager.class);
+        mLists = new ArrayList<>();
+        mSets = new ArrayList<>();
+        for (Track track : pager.tracks.items) {
+            mLists.add(track.available_markets);
+            mSets.add(MarketSet.of(track.available_markets));
+        }
+    }
+
+    @Benchmark
+    public int parseLists() throws IOException {
+        int size = 0;
+        for (int offset : mArrays) {
+            JsonReader reader = new JsonReader(new InputStreamReader(
+                    new ByteArrayInputStream(mBody, offset, arrayLength(mBody, offset)), UTF_8));
+            size += mListAdapter.read(reader).size();
+        }
+        return size;
+    }
+
+    @Benchmark
+    public int parseMarketSets() {
+        int size = 0;
+        for (int offset : mArrays) {
+            size += MarketSet.parse(mBody, offset).size();
+        }
+        return size;
+    }
+
+    @Benchmark
+    public TracksPager parseResponse() {
+        return mGson.fromJson(new InputStreamReader(new ByteArrayInputStream(mBody), UTF_8), TracksPager.class);
+    }
+
+    @Benchmark
+    public TracksPager parseCompactResponse() {
+        return mCompactGson.fromJson(new InputStreamReader(new ByteArrayInputStream(mBody), UTF_8), TracksPager.class);
+    }
+
+    @Benchmark
+    public int availableInList() {
+        int available = 0;
+        for (List<String> markets : mLists) {
+            if (markets.contains("SE")) {
+                available++;
+            }
+        }
+        return available;
+    }
+
+    @Benchmark
+    public int availableInMarketSet() {
+        int available = 0;
+        for (MarketSet markets : mSets) {
+            if (markets.isAvailableIn("SE")) {
+                available++;
+            }
+        }
+        return available;
+    }
+
+    private static int arrayLength(byte[] body, int offset) {
+        int end = offset;
+        while (body[end] != ']') {
+            end++;
+        }
+        return end + 1 - offset;
+    }
+
+    /**
+     * @return Offset of each markets array in the body
+     */
+    private static int[] arrayOffsets(byte[] body) {
+        List<Integer> offsets = new ArrayList<>();
+        for (int i = 0; i <= body.length - KEY.length; i++) {
+            int j = 0;
+            while (j < KEY.length && body[i + j] == KEY[j]) {
+                j++;
+            }
+            if (j == KEY.length) {
+                offsets.add(i + KEY.length);
+            }
+        }
+        int[] result = new int[offsets.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = offsets.get(i);
+        }
+        return result;
+    }
+}
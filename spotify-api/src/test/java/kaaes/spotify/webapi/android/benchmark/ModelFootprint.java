@@ -0,0 +1,123 @@
+package kaaes.spotify.webapi.android.benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import kaaes.spotify.webapi.android.CompactModels;
+import kaaes.spotify.webapi.android.emulator.SpotifyEmulator;
+import kaaes.spotify.webapi.android.models.MarketSet;
+import kaaes.spotify.webapi.android.models.Pager;
+import kaaes.spotify.webapi.android.models.PlaylistTrack;
+import kaaes.spotify.webapi.android.models.Track;
+import kaaes.spotify.webapi.android.models.TracksPager;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Heap retained by the models parsed with the default Gson and with {@link CompactModels},
+ * estimated with {@link HeapSize}: one track from the track fixture, the search-track.json response
+ * and its {@code available_markets} alone, as lists and as {@link MarketSet}s, and a 10000 track
+ * playlist served by a {@link SpotifyEmulator} in pages of 100 and kept in one list.
+ * <p/>
+ * ./gradlew :spotify-api:modelFootprint
+ */
+public class ModelFootprint {
+
+    private static final int PLAYLIST_TRACKS = 10000;
+    private static final int PAGE_SIZE = 100;
+
+    /**
+     * @param args Optional path of a JSON file for the results
+     */
+    public static void main(String[] args) throws IOException {
+        String track = Fixtures.read("track.json");
+        String search = Fixtures.read("search-track.json");
+        List<String> pages = playlistPages();
+
+        long trackBytes = HeapSize.of(new Gson().fromJson(track, Track.class));
+        long compactTrackBytes = HeapSize.of(CompactModels.createGson().fromJson(track, Track.class));
+        TracksPager searchResult = new Gson().fromJson(search, TracksPager.class);
+        long searchBytes = HeapSize.of(searchResult);
+        long compactSearchBytes = HeapSize.of(CompactModels.createGson().fromJson(search, TracksPager.class));
+        long marketsBytes = HeapSize.of(markets(searchResult, false));
+        long marketSetsBytes = HeapSize.of(markets(searchResult, true));
+        long playlistBytes = HeapSize.of(parse(new Gson(), pages));
+        long compactPlaylistBytes = HeapSize.of(parse(CompactModels.createGson(), pages));
+
+        String report = String.format(Locale.US, "%-22s %12s %12s %8s%n", "", "default", "compact", "saved")
+                + row("track.json", trackBytes, compactTrackBytes)
+                + row("search-track.json", searchBytes, compactSearchBytes)
+                + row("  available_markets", marketsBytes, marketSetsBytes)
+                + row(PLAYLIST_TRACKS + " track playlist", playlistBytes, compactPlaylistBytes)
+                + row("per playlist track", playlistBytes / PLAYLIST_TRACKS, compactPlaylistBytes / PLAYLIST_TRACKS);
+        System.out.print(report);
+
+        if (args.length > 0) {
+            String json = String.format(Locale.US, "{\"track\":{\"default\":%d,\"compact\":%d},"
+                            + "\"search\":{\"default\":%d,\"compact\":%d,\"marketLists\":%d,\"marketSets\":%d},"
+                            + "\"playlist\":{\"tracks\":%d,\"default\":%d,\"compact\":%d}}%n",
+                    trackBytes, compactTrackBytes, searchBytes, compactSearchBytes, marketsBytes, marketSetsBytes,
+                    PLAYLIST_TRACKS, playlistBytes, compactPlaylistBytes);
+            OutputStream out = new FileOutputStream(args[0]);
+            out.write(json.getBytes("UTF-8"));
+            out.close();
+        }
+    }
+
+    private static String row(String name, long bytes, long compactBytes) {
+        return String.format(Locale.US, "%-22s %12d %12d %7.1f%%%n", name, bytes, compactBytes,
+                100.0 * (bytes - compactBytes) / bytes);
+    }
+
+    /**
+     * @return Markets of the tracks and of their albums, not shared with each other
+     */
+    private static List<List<String>> markets(TracksPager result, boolean sets) {
+        List<List<String>> markets = new ArrayList<>();
+        for (Track track : result.tracks.items) {
+            for (List<String> codes : Arrays.asList(track.available_markets, track.album.available_markets)) {
+                markets.add(sets ? MarketSet.of(codes) : codes);
+            }
+        }
+        return markets;
+    }
+
+    private static List<String> playlistPages() throws IOException {
+        SpotifyEmulator emulator = new SpotifyEmulator(42).addPlaylist("test", "big", PLAYLIST_TRACKS).start();
+        try {
+            OkHttpClient client = new OkHttpClient();
+            List<String> pages = new ArrayList<>();
+            for (int offset = 0; offset < PLAYLIST_TRACKS; offset += PAGE_SIZE) {
+                Request request = new Request.Builder()
+                        .url(emulator.url("/v1/users/test/playlists/big/tracks?offset=" + offset + "&limit=" + PAGE_SIZE))
+                        .build();
+                Response response = client.newCall(request).execute();
+                pages.add(response.body().string());
+            }
+            return pages;
+        } finally {
+            emulator.close();
+        }
+    }
+
+    private static List<PlaylistTrack> parse(Gson gson, List<String> pages) {
+        Type type = new TypeToken<Pager<PlaylistTrack>>() {
+        }.getType();
+        List<PlaylistTrack> tracks = new ArrayList<>(PLAYLIST_TRACKS);
+        for (String page : pages) {
+            Pager<PlaylistTrack> pager = gson.fromJson(page, type);
+            tracks.addAll(pager.items);
+        }
+        return tracks;
+    }
+}
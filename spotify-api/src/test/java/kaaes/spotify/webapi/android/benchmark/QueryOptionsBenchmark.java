@@ -0,0 +1,107 @@
+package kaaes.spotify.webapi.android.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import kaaes.spotify.webapi.android.QueryOptions;
+import kaaes.spotify.webapi.android.SpotifyApi;
+import kaaes.spotify.webapi.android.SpotifyService;
+import okhttp3.OkHttpClient;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+/**
+ * Per-request cost of the optional parameters while paging through a 10000 track playlist,
+ * 100 pages of 100 tracks. {@code hashmap} builds a new map with boxed offset and limit for each
+ * page like callers did before {@link QueryOptions}, {@code query-options} derives each page from
+ * the previous one. {@link #options()} only creates the options, {@link #requests()} also builds the
+ * OkHttp request from them through Retrofit, which is where the map is iterated and encoded.
+ * Nothing is sent. Run with the gc profiler to compare allocations per loop.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryOptionsBenchmark {
+
+    private static final int PAGES = 100;
+    private static final int PAGE_SIZE = 100;
+
+    @Param({"hashmap", "query-options"})
+    public String options;
+
+    private SpotifyService mService;
+    private QueryOptions mFirstPage;
+
+    @Setup
+    public void setUp() {
+        mService = new Retrofit.Builder()
+                .baseUrl(SpotifyApi.SPOTIFY_WEB_API_ENDPOINT)
+                .client(new OkHttpClient())
+                .addConverterFactory(GsonConverterFactory.create())
+                .build()
+                .create(SpotifyService.class);
+        mFirstPage = QueryOptions.page(0, PAGE_SIZE).withMarket("SE");
+    }
+
+    @Benchmark
+    public int options() {
+        int size = 0;
+        if ("hashmap".equals(options)) {
+            for (int page = 0; page < PAGES; page++) {
+                size += hashMapPage(page).size();
+            }
+        } else {
+            QueryOptions page = mFirstPage;
+            for (int i = 0; i < PAGES; i++) {
+                size += page.size();
+                page = page.nextPage();
+            }
+        }
+        return size;
+    }
+
+    @Benchmark
+    public int requests() {
+        int length = 0;
+        if ("hashmap".equals(options)) {
+            for (int page = 0; page < PAGES; page++) {
+                length += request(hashMapPage(page));
+            }
+        } else {
+            QueryOptions page = mFirstPage;
+            for (int i = 0; i < PAGES; i++) {
+                length += request(page);
+                page = page.nextPage();
+            }
+        }
+        return length;
+    }
+
+    private int request(Map<String, Object> options) {
+        return mService.getPlaylistTracks("test", "big", options).request().url().encodedQuery().length();
+    }
+
+    private static Map<String, Object> hashMapPage(int page) {
+        Map<String, Object> options = new HashMap<>();
+        options.put(SpotifyService.OFFSET, page * PAGE_SIZE);
+        options.put(SpotifyService.LIMIT, PAGE_SIZE);
+        options.put(SpotifyService.MARKET, "SE");
+        return options;
+    }
+}
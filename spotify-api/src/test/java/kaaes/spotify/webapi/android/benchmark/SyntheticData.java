@@ -0,0 +1,50 @@
+package kaaes.spotify.webapi.android.benchmark;
+
+import java.util.Random;
+
+import kaaes.spotify.webapi.android.models.AudioFeaturesTrack;
+
+/**
+ * Generates model objects for benchmarks that need more data than the fixtures provide
+ */
+final class SyntheticData {
+
+    private SyntheticData() {
+    }
+
+    /**
+     * Features with a 22 character base62 ID, like the ones returned by the Web API
+     */
+    static AudioFeaturesTrack audioFeatures(Random random, int index) {
+        AudioFeaturesTrack features = new AudioFeaturesTrack();
+        features.id = id(index);
+        features.type = "audio_features";
+        features.uri = "spotify:track:" + features.id;
+        features.track_href = "https://api.spotify.com/v1/tracks/" + features.id;
+        features.analysis_url = "https://api.spotify.com/v1/audio-analysis/" + features.id;
+        features.danceability = random.nextFloat();
+        features.energy = random.nextFloat();
+        features.speechiness = random.nextFloat() * 0.3f;
+        features.acousticness = random.nextFloat();
+        features.instrumentalness = random.nextFloat();
+        features.liveness = random.nextFloat() * 0.5f;
+        features.valence = random.nextFloat();
+        features.loudness = -random.nextFloat() * 30;
+        features.tempo = 60 + random.nextFloat() * 140;
+        features.key = random.nextInt(12);
+        features.mode = random.nextInt(2);
+        features.duration_ms = 120000 + random.nextInt(240000);
+        features.time_signature = 4;
+        return features;
+    }
+
+    static String id(int index) {
+        String alphabet = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+        char[] id = new char[22];
+        for (int i = id.length - 1; i >= 0; i--) {
+            id[i] = alphabet.charAt(index % alphabet.length());
+            index /= alphabet.length();
+        }
+        return new String(id);
+    }
+}
@@ -0,0 +1,90 @@
+package kaaes.spotify.webapi.android.emulator;
+
+import java.util.Random;
+
+/**
+ * Distribution of the time {@link SpotifyEmulator} waits before answering a request.
+ * <p/>
+ * Basic usage:
+ * emulator.setLatency(Latency.withTail(Latency.logNormal(40, 0.4), 0.01f, 800));
+ */
+public abstract class Latency {
+
+    /**
+     * @param random Source of randomness of the emulator, seeded for repeatable runs
+     * @return Milliseconds to wait
+     */
+    public abstract long nextMillis(Random random);
+
+    public static Latency none() {
+        return fixed(0);
+    }
+
+    public static Latency fixed(final long ms) {
+        return new Latency() {
+            @Override
+            public long nextMillis(Random random) {
+                return ms;
+            }
+
+            @Override
+            public String toString() {
+                return ms + "ms";
+            }
+        };
+    }
+
+    public static Latency uniform(final long minMs, final long maxMs) {
+        return new Latency() {
+            @Override
+            public long nextMillis(Random random) {
+                return minMs + (long) (random.nextDouble() * (maxMs - minMs));
+            }
+
+            @Override
+            public String toString() {
+                return minMs + "-" + maxMs + "ms";
+            }
+        };
+    }
+
+    /**
+     * The shape of most server response times: most requests close to the median, a long right tail.
+     *
+     * @param medianMs Median latency
+     * @param sigma    Standard deviation of the underlying normal distribution, 0.5 roughly
+     *                 doubles the median at the 92nd percentile
+     */
+    public static Latency logNormal(final double medianMs, final double sigma) {
+        return new Latency() {
+            @Override
+            public long nextMillis(Random random) {
+                return Math.round(medianMs * Math.exp(sigma * random.nextGaussian()));
+            }
+
+            @Override
+            public String toString() {
+                return "lognormal(" + medianMs + "ms, " + sigma + ")";
+            }
+        };
+    }
+
+    /**
+     * @param base   Latency of most requests
+     * @param ratio  Part of the requests that are stuck behind something slow instead
+     * @param tailMs Latency of those requests
+     */
+    public static Latency withTail(final Latency base, final float ratio, final long tailMs) {
+        return new Latency() {
+            @Override
+            public long nextMillis(Random random) {
+                return random.nextFloat() < ratio ? tailMs : base.nextMillis(random);
+            }
+
+            @Override
+            public String toString() {
+                return base + " with " + ratio + " at " + tailMs + "ms";
+            }
+        };
+    }
+}
@@ -0,0 +1,816 @@
+package kaaes.spotify.webapi.android.emulator;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * In-process emulation of the Web API over real sockets for load and fault testing. It answers
+ * on the loopback interface with keep-alive HTTP/1.1 and serves:
+ * <ul>
+ * <li>the fixtures in src/test/resources/fixtures for the endpoints they were recorded from</li>
+ * <li>synthetic playlists of any size added with {@link #addPlaylist(String, String, int)},
+ * paged with {@code offset} and {@code limit} and linked with {@code next} and {@code previous}</li>
+ * <li>a synthetic library of saved tracks and followed artists, the latter paged with cursors</li>
+ * </ul>
+ * Responses are delayed by a {@link Latency} distribution and can be replaced with 429 and 5xx
+ * errors. Successful GET responses carry an ETag and are answered with 304 when the client sends
+ * it back in {@code If-None-Match}.
+ * <p/>
+ * Basic usage:
+ * SpotifyEmulator emulator = new SpotifyEmulator(42).setLatency(Latency.logNormal(40, 0.5));
+ * emulator.addPlaylist("test", "big", 10000);
+ * emulator.start();
+ * Retrofit retrofit = new Retrofit.Builder().baseUrl(emulator.url("/")) ... .build();
+ */
+public class SpotifyEmulator implements Closeable {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final String ADDED_AT = "2016-04-01T12:00:00Z";
+    private static final byte[] EMPTY = new byte[0];
+    private static final int[] SERVER_ERRORS = {500, 502, 503};
+
+    /**
+     * A parsed request as the handlers see it
+     */
+    static final class Exchange {
+        final String method;
+        final String path;
+        final Map<String, String> query;
+        final Map<String, String> headers;
+        Matcher match;
+
+        Exchange(String method, String path, Map<String, String> query, Map<String, String> headers) {
+            this.method = method;
+            this.path = path;
+            this.query = query;
+            this.headers = headers;
+        }
+
+        String query(String name, String defaultValue) {
+            String value = query.get(name);
+            return value != null ? value : defaultValue;
+        }
+    }
+
+    static final class Reply {
+        final int code;
+        final byte[] body;
+        final Map<String, String> headers = new LinkedHashMap<>();
+
+        Reply(int code, byte[] body) {
+            this.code = code;
+            this.body = body;
+        }
+
+        static Reply json(int code, String json) {
+            return new Reply(code, json.getBytes(UTF_8));
+        }
+
+        static Reply error(int code, String message) {
+            return json(code, "{\"error\":{\"status\":" + code + ",\"message\":\"" + message + "\"}}");
+        }
+    }
+
+    interface Handler {
+        Reply handle(Exchange exchange);
+    }
+
+    private static final class Route {
+        final String method;
+        final Pattern pattern;
+        final Handler handler;
+
+        Route(String method, String pattern, Handler handler) {
+            this.method = method;
+            this.pattern = Pattern.compile(pattern);
+            this.handler = handler;
+        }
+    }
+
+    private final Random mRandom;
+    private final List<Route> mRoutes = new ArrayList<>();
+    private final List<Route> mCustomRoutes = Collections.synchronizedList(new ArrayList<Route>());
+    private final Map<String, byte[]> mFixtures = new ConcurrentHashMap<>();
+    private final Map<String, Integer> mPlaylists = new ConcurrentHashMap<>();
+    private final Deque<Integer> mQueuedErrors = new ArrayDeque<>();
+    private final ConcurrentHashMap<Integer, AtomicInteger> mResponseCounts = new ConcurrentHashMap<>();
+    private final AtomicInteger mConnectionCount = new AtomicInteger();
+    private final AtomicInteger mRequestCount = new AtomicInteger();
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+    /**
+     * Open connections, closed with the emulator since blocking reads ignore interrupts
+     */
+    private final Set<Socket> mSockets = Collections.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+
+    private volatile Latency mLatency = Latency.none();
+    private volatile long mConnectDelayMs;
+    private volatile float mRateLimitRatio;
+    private volatile int mMaxRequestsPerSecond;
+    private volatile int mRetryAfterSeconds = 1;
+    private volatile float mServerErrorRatio;
+    private volatile boolean mEtags = true;
+    private volatile int mSavedTrackCount = 50;
+    private volatile int mFollowedArtistCount = 50;
+
+    private long mRateWindowStart;
+    private int mRateWindowCount;
+    private volatile ServerSocket mServerSocket;
+
+    /**
+     * @param seed Seed of the latencies and injected errors, the synthetic data is the same for every seed
+     */
+    public SpotifyEmulator(long seed) {
+        mRandom = new Random(seed);
+        addDefaultRoutes();
+    }
+
+    /**
+     * Starts listening on a free port of the loopback interface
+     *
+     * @return This emulator
+     */
+    public synchronized SpotifyEmulator start() throws IOException {
+        if (mServerSocket != null) {
+            throw new IllegalStateException("Already started");
+        }
+        mServerSocket = new ServerSocket(0, 128, InetAddress.getByName("127.0.0.1"));
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                accept(mServerSocket);
+            }
+        });
+        return this;
+    }
+
+    /**
+     * @param path Path starting with a slash
+     * @return URL of the path on this emulator
+     */
+    public String url(String path) {
+        if (mServerSocket == null) {
+            throw new IllegalStateException("Not started");
+        }
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort() + path;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mServerSocket != null) {
+            mServerSocket.close();
+        }
+        for (Socket socket : mSockets) {
+            socket.close();
+        }
+        mExecutor.shutdownNow();
+    }
+
+    public SpotifyEmulator setLatency(Latency latency) {
+        mLatency = latency;
+        return this;
+    }
+
+    /**
+     * @param connectDelayMs Time new connections wait before their first request is read,
+     *                       stands in for the TCP and TLS handshakes
+     * @return This emulator
+     */
+    public SpotifyEmulator setConnectDelay(long connectDelayMs) {
+        mConnectDelayMs = connectDelayMs;
+        return this;
+    }
+
+    /**
+     * @param ratio             Part of the requests answered with 429
+     * @param retryAfterSeconds Value of the Retry-After header of those responses
+     * @return This emulator
+     */
+    public SpotifyEmulator setRateLimitRatio(float ratio, int retryAfterSeconds) {
+        mRateLimitRatio = ratio;
+        mRetryAfterSeconds = retryAfterSeconds;
+        return this;
+    }
+
+    /**
+     * @param maxRequestsPerSecond Requests above this number in the same second are answered with 429,
+     *                             0 for no limit
+     * @return This emulator
+     */
+    public SpotifyEmulator setMaxRequestsPerSecond(int maxRequestsPerSecond) {
+        mMaxRequestsPerSecond = maxRequestsPerSecond;
+        return this;
+    }
+
+    /**
+     * @param ratio Part of the requests answered with 500, 502 or 503
+     * @return This emulator
+     */
+    public SpotifyEmulator setServerErrorRatio(float ratio) {
+        mServerErrorRatio = ratio;
+        return this;
+    }
+
+    /**
+     * @param code Status the next request is answered with, whatever it asks for
+     * @return This emulator
+     */
+    public SpotifyEmulator failNext(int code) {
+        synchronized (mQueuedErrors) {
+            mQueuedErrors.add(code);
+        }
+        return this;
+    }
+
+    public SpotifyEmulator setEtagsEnabled(boolean etags) {
+        mEtags = etags;
+        return this;
+    }
+
+    /**
+     * Serves {@code /v1/users/{userId}/playlists/{playlistId}/tracks} with synthetic tracks
+     *
+     * @return This emulator
+     */
+    public SpotifyEmulator addPlaylist(String userId, String playlistId, int trackCount) {
+        mPlaylists.put(userId + "/" + playlistId, trackCount);
+        return this;
+    }
+
+    /**
+     * @param count Number of tracks in {@code /v1/me/tracks}
+     * @return This emulator
+     */
+    public SpotifyEmulator setSavedTrackCount(int count) {
+        mSavedTrackCount = count;
+        return this;
+    }
+
+    /**
+     * @param count Number of artists in {@code /v1/me/following?type=artist}
+     * @return This emulator
+     */
+    public SpotifyEmulator setFollowedArtistCount(int count) {
+        mFollowedArtistCount = count;
+        return this;
+    }
+
+    /**
+     * Serves a fixture for an endpoint, before the built-in routes
+     *
+     * @param method       HTTP method
+     * @param pathTemplate Path with placeholders, for example {@code /v1/albums/{id}/tracks}
+     * @param fixture      File name in src/test/resources/fixtures
+     * @return This emulator
+     */
+    public SpotifyEmulator serveFixture(String method, String pathTemplate, String fixture) {
+        mCustomRoutes.add(0, new Route(method, toPattern(pathTemplate), fixture(200, fixture)));
+        return this;
+    }
+
+    public int getConnectionCount() {
+        return mConnectionCount.get();
+    }
+
+    public int getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    /**
+     * @return Number of responses sent with the status code
+     */
+    public int getResponseCount(int code) {
+        AtomicInteger count = mResponseCounts.get(code);
+        return count != null ? count.get() : 0;
+    }
+
+    private void addDefaultRoutes() {
+        get("/v1/me", fixture(200, "current-user.json"));
+        get("/v1/me/tracks", new Handler() {
+            @Override
+            public Reply handle(Exchange exchange) {
+                return savedTracks(exchange);
+            }
+        });
+        get("/v1/me/following", new Handler() {
+            @Override
+            public Reply handle(Exchange exchange) {
+                return followedArtists(exchange);
+            }
+        });
+        get("/v1/me/following/contains", new Handler() {
+            @Override
+            public Reply handle(Exchange exchange) {
+                return "artist".equals(exchange.query.get("type"))
+                        ? fixture("follow_is_following_artists.json")
+                        : fixture("follow_is_following_users.json");
+            }
+        });
+        get("/v1/users/{user_id}/playlists/{playlist_id}/followers/contains", fixture(200, "playlist-followers-contains.json"));
+        get("/v1/users/{user_id}/playlists/{playlist_id}/tracks", new Handler() {
+            @Override
+            public Reply handle(Exchange exchange) {
+                return playlistTracks(exchange);
+            }
+        });
+        get("/v1/users/{user_id}/playlists/{playlist_id}", fixture(200, "playlist-response.json"));
+        get("/v1/users/{user_id}/playlists", fixture(200, "user-playlists.json"));
+        get("/v1/users/{user_id}", fixture(200, "user.json"));
+        get("/v1/tracks", fixture(200, "tracks.json"));
+        get("/v1/tracks/{id}", new Handler() {
+            @Override
+            public Reply handle(Exchange exchange) {
+                int index = SyntheticCatalog.trackIndex(exchange.match.group(1));
+                if (index < 0) {
+                    return fixture("track.json");
+                }
+                StringBuilder json = new StringBuilder(2048);
+                SyntheticCatalog.appendTrack(json, index);
+                return Reply.json(200, json.toString());
+            }
+        });
+        get("/v1/albums", fixture(200, "albums.json"));
+        get("/v1/albums/{id}", fixture(200, "album.json"));
+        get("/v1/artists", fixture(200, "artists.json"));
+        get("/v1/artists/{id}/albums", fixture(200, "artist-album.json"));
+        get("/v1/artists/{id}/top-tracks", fixture(200, "tracks-for-artist.json"));
+        get("/v1/artists/{id}/related-artists", fixture(200, "artist-related-artists.json"));
+        get("/v1/artists/{id}", new Handler() {
+            @Override
+            public Reply handle(Exchange exchange) {
+                int index = SyntheticCatalog.artistIndex(exchange.match.group(1));
+                if (index < 0) {
+                    return fixture("artist.json");
+                }
+                StringBuilder json = new StringBuilder(1024);
+                SyntheticCatalog.appendArtist(json, index);
+                return Reply.json(200, json.toString());
+            }
+        });
+        get("/v1/search", new Handler() {
+            @Override
+            public Reply handle(Exchange exchange) {
+                String type = exchange.query("type", "");
+                if (type.equals("track") || type.equals("album") || type.equals("artist") || type.equals("playlist")) {
+                    return fixture("search-" + type + ".json");
+                }
+                return Reply.error(400, "Bad search type field");
+            }
+        });
+        get("/v1/browse/new-releases", fixture(200, "new-releases.json"));
+        get("/v1/browse/featured-playlists", fixture(200, "featured-playlists.json"));
+        get("/v1/browse/categories", fixture(200, "get-categories.json"));
+        get("/v1/browse/categories/{category_id}/playlists", fixture(200, "category-playlist.json"));
+        get("/v1/browse/categories/{category_id}", fixture(200, "category.json"));
+
+        mRoutes.add(new Route("POST", toPattern("/v1/users/{user_id}/playlists"), fixture(201, "created-playlist.json")));
+        mRoutes.add(new Route("POST", toPattern("/v1/users/{user_id}/playlists/{playlist_id}/tracks"), fixture(201, "snapshot-response.json")));
+        mRoutes.add(new Route("PUT|DELETE", toPattern("/v1/users/{user_id}/playlists/{playlist_id}/tracks"), fixture(200, "snapshot-response.json")));
+        mRoutes.add(new Route("PUT|DELETE", "^/v1/.*$", new Handler() {
+            @Override
+            public Reply handle(Exchange exchange) {
+                return new Reply(200, EMPTY);
+            }
+        }));
+    }
+
+    private void get(String pathTemplate, Handler handler) {
+        mRoutes.add(new Route("GET", toPattern(pathTemplate), handler));
+    }
+
+    private static String toPattern(String pathTemplate) {
+        return "^" + pathTemplate.replaceAll("\\{[^/]+\\}", "([^/]+)") + "$";
+    }
+
+    private Handler fixture(final int code, final String name) {
+        return new Handler() {
+            @Override
+            public Reply handle(Exchange exchange) {
+                return new Reply(code, fixtureBytes(name));
+            }
+        };
+    }
+
+    private Reply fixture(String name) {
+        return new Reply(200, fixtureBytes(name));
+    }
+
+    private byte[] fixtureBytes(String name) {
+        byte[] bytes = mFixtures.get(name);
+        if (bytes == null) {
+            InputStream in = SpotifyEmulator.class.getResourceAsStream("/fixtures/" + name);
+            if (in == null) {
+                throw new IllegalArgumentException("No fixture named " + name);
+            }
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+                in.close();
+                bytes = out.toByteArray();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            mFixtures.put(name, bytes);
+        }
+        return bytes;
+    }
+
+    private Reply playlistTracks(Exchange exchange) {
+        Integer total = mPlaylists.get(exchange.match.group(1) + "/" + exchange.match.group(2));
+        if (total == null) {
+            return fixture("playlist-tracks.json");
+        }
+        final String userId = exchange.match.group(1);
+        return page(exchange, total, 100, 100, new ItemWriter() {
+            @Override
+            public void write(StringBuilder json, int index) {
+                json.append("{\"added_at\":\"").append(ADDED_AT).append("\",\"added_by\":{\"external_urls\":{\"spotify\":\"https://open.spotify.com/user/")
+                        .append(userId).append("\"},\"href\":\"https://api.spotify.com/v1/users/").append(userId)
+                        .append("\",\"id\":\"").append(userId).append("\",\"type\":\"user\",\"uri\":\"spotify:user:")
+                        .append(userId).append("\"},\"is_local\":false,\"track\":");
+                SyntheticCatalog.appendTrack(json, index);
+                json.append('}');
+            }
+        });
+    }
+
+    private Reply savedTracks(Exchange exchange) {
+        return page(exchange, mSavedTrackCount, 20, 50, new ItemWriter() {
+            @Override
+            public void write(StringBuilder json, int index) {
+                json.append("{\"added_at\":\"").append(ADDED_AT).append("\",\"track\":");
+                SyntheticCatalog.appendTrack(json, index);
+                json.append('}');
+            }
+        });
+    }
+
+    private interface ItemWriter {
+        void write(StringBuilder json, int index);
+    }
+
+    private Reply page(Exchange exchange, int total, int defaultLimit, int maxLimit, ItemWriter writer) {
+        int offset;
+        int limit;
+        try {
+            offset = Integer.parseInt(exchange.query("offset", "0"));
+            limit = Integer.parseInt(exchange.query("limit", String.valueOf(defaultLimit)));
+        } catch (NumberFormatException e) {
+            return Reply.error(400, "Invalid limit or offset");
+        }
+        if (offset < 0 || limit < 1 || limit > maxLimit) {
+            return Reply.error(400, "Invalid limit");
+        }
+
+        int end = Math.min(total, offset + limit);
+        StringBuilder json = new StringBuilder(256 + Math.max(0, end - offset) * 2400);
+        json.append("{\"href\":\"").append(pageUrl(exchange.path, offset, limit)).append("\",\"items\":[");
+        for (int i = offset; i < end; i++) {
+            if (i > offset) {
+                json.append(',');
+            }
+            writer.write(json, i);
+        }
+        json.append("],\"limit\":").append(limit)
+                .append(",\"next\":").append(end < total ? quote(pageUrl(exchange.path, end, limit)) : "null")
+                .append(",\"offset\":").append(offset)
+                .append(",\"previous\":").append(offset > 0 ? quote(pageUrl(exchange.path, Math.max(0, offset - limit), limit)) : "null")
+                .append(",\"total\":").append(total).append('}');
+        return Reply.json(200, json.toString());
+    }
+
+    private Reply followedArtists(Exchange exchange) {
+        if (!"artist".equals(exchange.query.get("type"))) {
+            return Reply.error(400, "Only artist type is supported");
+        }
+        int limit;
+        try {
+            limit = Integer.parseInt(exchange.query("limit", "20"));
+        } catch (NumberFormatException e) {
+            return Reply.error(400, "Invalid limit");
+        }
+        if (limit < 1 || limit > 50) {
+            return Reply.error(400, "Invalid limit");
+        }
+        String after = exchange.query.get("after");
+        int start = 0;
+        if (after != null) {
+            int index = SyntheticCatalog.artistIndex(after);
+            if (index < 0) {
+                return Reply.error(400, "Invalid after cursor");
+            }
+            start = index + 1;
+        }
+
+        int total = mFollowedArtistCount;
+        int end = Math.min(total, start + limit);
+        String href = url(exchange.path) + "?type=artist&limit=" + limit + (after != null ? "&after=" + after : "");
+        StringBuilder json = new StringBuilder(256 + Math.max(0, end - start) * 700);
+        json.append("{\"artists\":{\"href\":\"").append(href).append("\",\"items\":[");
+        for (int i = start; i < end; i++) {
+            if (i > start) {
+                json.append(',');
+            }
+            SyntheticCatalog.appendArtist(json, i);
+        }
+        String last = end > start ? SyntheticCatalog.artistId(end - 1) : null;
+        json.append("],\"limit\":").append(limit)
+                .append(",\"next\":").append(end < total ? quote(url(exchange.path) + "?type=artist&limit=" + limit + "&after=" + last) : "null")
+                .append(",\"cursors\":{\"after\":").append(end < total ? quote(last) : "null")
+                .append("},\"total\":").append(total).append("}}");
+        return Reply.json(200, json.toString());
+    }
+
+    private String pageUrl(String path, int offset, int limit) {
+        return url(path) + "?offset=" + offset + "&limit=" + limit;
+    }
+
+    private static String quote(String value) {
+        return "\"" + value + "\"";
+    }
+
+    private void accept(ServerSocket serverSocket) {
+        while (!serverSocket.isClosed()) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                return;
+            }
+            mConnectionCount.incrementAndGet();
+            mSockets.add(socket);
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        serve(socket);
+                    } catch (IOException | InterruptedException e) {
+                        // Client went away or the emulator is closing
+                    } finally {
+                        mSockets.remove(socket);
+                        try {
+                            socket.close();
+                        } catch (IOException ignored) {
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    private void serve(Socket socket) throws IOException, InterruptedException {
+        socket.setTcpNoDelay(true);
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        OutputStream out = socket.getOutputStream();
+        Thread.sleep(mConnectDelayMs);
+
+        while (true) {
+            String requestLine = readLine(in);
+            if (requestLine == null || requestLine.isEmpty()) {
+                return;
+            }
+            Map<String, String> headers = new HashMap<>();
+            String header;
+            while ((header = readLine(in)) != null && !header.isEmpty()) {
+                int colon = header.indexOf(':');
+                if (colon > 0) {
+                    headers.put(header.substring(0, colon).trim().toLowerCase(), header.substring(colon + 1).trim());
+                }
+            }
+            String contentLength = headers.get("content-length");
+            long remaining = contentLength != null ? Long.parseLong(contentLength) : 0;
+            while (remaining > 0) {
+                long skipped = in.skip(remaining);
+                if (skipped <= 0) {
+                    return;
+                }
+                remaining -= skipped;
+            }
+
+            String[] parts = requestLine.split(" ");
+            if (parts.length < 2) {
+                return;
+            }
+            mRequestCount.incrementAndGet();
+            Reply reply = respond(parseExchange(parts[0], parts[1], headers));
+            Thread.sleep(nextLatency());
+            write(out, parts[0], reply);
+            if ("close".equalsIgnoreCase(headers.get("connection"))) {
+                return;
+            }
+        }
+    }
+
+    private static Exchange parseExchange(String method, String target, Map<String, String> headers) {
+        int question = target.indexOf('?');
+        String path = question >= 0 ? target.substring(0, question) : target;
+        Map<String, String> query = new LinkedHashMap<>();
+        if (question >= 0) {
+            for (String pair : target.substring(question + 1).split("&")) {
+                if (pair.isEmpty()) {
+                    continue;
+                }
+                int equals = pair.indexOf('=');
+                query.put(decode(equals >= 0 ? pair.substring(0, equals) : pair),
+                        equals >= 0 ? decode(pair.substring(equals + 1)) : "");
+            }
+        }
+        return new Exchange(method, path, query, headers);
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    Reply respond(Exchange exchange) {
+        Reply reply = injectedError();
+        if (reply == null) {
+            reply = route(exchange);
+        }
+        if (mEtags && reply.code == 200 && "GET".equals(exchange.method) && reply.body.length > 0) {
+            String etag = etag(reply.body);
+            if (etag.equals(exchange.headers.get("if-none-match"))) {
+                reply = new Reply(304, EMPTY);
+            }
+            reply.headers.put("ETag", etag);
+            reply.headers.put("Cache-Control", "private, max-age=0");
+        }
+        count(reply.code);
+        return reply;
+    }
+
+    private Reply route(Exchange exchange) {
+        Route route;
+        synchronized (mCustomRoutes) {
+            route = find(mCustomRoutes, exchange);
+        }
+        if (route == null) {
+            route = find(mRoutes, exchange);
+        }
+        return route != null ? route.handler.handle(exchange) : Reply.error(404, "Service not found");
+    }
+
+    private static Route find(List<Route> routes, Exchange exchange) {
+        for (Route route : routes) {
+            if (!exchange.method.matches(route.method)) {
+                continue;
+            }
+            Matcher matcher = route.pattern.matcher(exchange.path);
+            if (matcher.matches()) {
+                exchange.match = matcher;
+                return route;
+            }
+        }
+        return null;
+    }
+
+    private Reply injectedError() {
+        Integer queued;
+        synchronized (mQueuedErrors) {
+            queued = mQueuedErrors.poll();
+        }
+        if (queued != null) {
+            return errorReply(queued);
+        }
+        synchronized (mRandom) {
+            if (mMaxRequestsPerSecond > 0) {
+                long second = System.currentTimeMillis() / 1000;
+                if (second != mRateWindowStart) {
+                    mRateWindowStart = second;
+                    mRateWindowCount = 0;
+                }
+                if (++mRateWindowCount > mMaxRequestsPerSecond) {
+                    return errorReply(429);
+                }
+            }
+            if (mRateLimitRatio > 0 && mRandom.nextFloat() < mRateLimitRatio) {
+                return errorReply(429);
+            }
+            if (mServerErrorRatio > 0 && mRandom.nextFloat() < mServerErrorRatio) {
+                return errorReply(SERVER_ERRORS[mRandom.nextInt(SERVER_ERRORS.length)]);
+            }
+        }
+        return null;
+    }
+
+    private Reply errorReply(int code) {
+        if (code == 429) {
+            Reply reply = Reply.error(429, "API rate limit exceeded");
+            reply.headers.put("Retry-After", String.valueOf(mRetryAfterSeconds));
+            return reply;
+        }
+        return Reply.error(code, code >= 500 ? "Service unavailable" : "Injected error");
+    }
+
+    private long nextLatency() {
+        synchronized (mRandom) {
+            return Math.max(0, mLatency.nextMillis(mRandom));
+        }
+    }
+
+    private void count(int code) {
+        AtomicInteger count = mResponseCounts.get(code);
+        if (count == null) {
+            mResponseCounts.putIfAbsent(code, new AtomicInteger());
+            count = mResponseCounts.get(code);
+        }
+        count.incrementAndGet();
+    }
+
+    private static String etag(byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return "\"" + Long.toHexString(crc.getValue()) + "-" + body.length + "\"";
+    }
+
+    private static void write(OutputStream out, String method, Reply reply) throws IOException {
+        StringBuilder head = new StringBuilder(256)
+                .append("HTTP/1.1 ").append(reply.code).append(' ').append(reason(reply.code)).append("\r\n");
+        if (reply.code != 304) {
+            head.append("Content-Type: application/json; charset=utf-8\r\n")
+                    .append("Content-Length: ").append(reply.body.length).append("\r\n");
+        }
+        for (Map.Entry<String, String> header : reply.headers.entrySet()) {
+            head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        head.append("\r\n");
+        out.write(head.toString().getBytes(ASCII));
+        if (!"HEAD".equals(method) && reply.code != 304) {
+            out.write(reply.body);
+        }
+        out.flush();
+    }
+
+    private static String reason(int code) {
+        switch (code) {
+            case 200:
+                return "OK";
+            case 201:
+                return "Created";
+            case 304:
+                return "Not Modified";
+            case 400:
+                return "Bad Request";
+            case 404:
+                return "Not Found";
+            case 429:
+                return "Too Many Requests";
+            case 500:
+                return "Internal Server Error";
+            case 502:
+                return "Bad Gateway";
+            case 503:
+                return "Service Unavailable";
+            default:
+                return "Unknown";
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') {
+                int length = line.length();
+                return length > 0 && line.charAt(length - 1) == '\r' ? line.substring(0, length - 1) : line.toString();
+            }
+            line.append((char) c);
+        }
+        return line.length() > 0 ? line.toString() : null;
+    }
+}
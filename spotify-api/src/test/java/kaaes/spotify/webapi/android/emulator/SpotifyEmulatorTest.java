@@ -0,0 +1,144 @@
+package kaaes.spotify.webapi.android.emulator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import kaaes.spotify.webapi.android.SpotifyApi;
+import kaaes.spotify.webapi.android.SpotifyService;
+import kaaes.spotify.webapi.android.models.ArtistsCursorPager;
+import kaaes.spotify.webapi.android.models.Pager;
+import kaaes.spotify.webapi.android.models.PlaylistTrack;
+import kaaes.spotify.webapi.android.models.Track;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class SpotifyEmulatorTest {
+
+    private SpotifyEmulator mEmulator;
+    private SpotifyApi mApi;
+    private OkHttpClient mClient;
+    private SpotifyService mService;
+
+    @Before
+    public void setUp() throws IOException {
+        mEmulator = new SpotifyEmulator(42).addPlaylist("test", "big", 10000).start();
+        mApi = new SpotifyApi();
+        mClient = mApi.createBaseOkHttpClientBuilder().build();
+        mService = mApi.createBaseRetrofitBuilder()
+                .baseUrl(mEmulator.url("/"))
+                .client(mClient)
+                .build()
+                .create(SpotifyService.class);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mEmulator.close();
+    }
+
+    @Test
+    public void shouldPageThroughLargePlaylist() throws IOException {
+        Set<String> ids = new HashSet<>();
+        Map<String, Object> options = new HashMap<>();
+        options.put("limit", 100);
+        Pager<PlaylistTrack> page;
+        int offset = 0;
+        do {
+            options.put("offset", offset);
+            page = mService.getPlaylistTracks("test", "big", options).execute().body();
+            for (PlaylistTrack item : page.items) {
+                ids.add(item.track.id);
+            }
+            offset += page.limit;
+        } while (page.next != null);
+
+        assertThat(page.total).isEqualTo(10000);
+        assertThat(ids).hasSize(10000);
+        assertThat(page.previous).endsWith("offset=9800&limit=100");
+        assertThat(mEmulator.getConnectionCount()).isEqualTo(1);
+        assertThat(mApi.getCallTimings().getTimings("GET /v1/users/{user_id}/playlists/{playlist_id}/tracks")
+                .getReusedConnectionCount()).isEqualTo(99);
+    }
+
+    @Test
+    public void shouldServeSyntheticTracksById() throws IOException {
+        Pager<PlaylistTrack> page = mService.getPlaylistTracks("test", "big").execute().body();
+        Track listed = page.items.get(42).track;
+
+        Track track = mService.getTrack(listed.id).execute().body();
+
+        assertThat(track.name).isEqualTo(listed.name);
+        assertThat(track.available_markets).isEqualTo(listed.available_markets);
+        assertThat(mService.getTrack("1zHlj4dQ8ZAtrayhuDDmkY").execute().body().name).isEqualTo("Mr. Brightside");
+    }
+
+    @Test
+    public void shouldPageFollowedArtistsWithCursors() throws IOException {
+        mEmulator.setFollowedArtistCount(45);
+        Map<String, Object> options = new HashMap<>();
+        options.put("limit", 20);
+        int count = 0;
+        int pages = 0;
+        ArtistsCursorPager page;
+        do {
+            page = mService.getFollowedArtists(options).execute().body();
+            count += page.artists.items.size();
+            pages++;
+            options.put("after", page.artists.cursors.after);
+        } while (page.artists.next != null);
+
+        assertThat(count).isEqualTo(45);
+        assertThat(pages).isEqualTo(3);
+        assertThat(page.artists.cursors.after).isNull();
+    }
+
+    @Test
+    public void shouldRejectInvalidLimit() throws IOException {
+        Map<String, Object> options = new HashMap<>();
+        options.put("limit", 101);
+
+        assertThat(mService.getPlaylistTracks("test", "big", options).execute().code()).isEqualTo(400);
+    }
+
+    @Test
+    public void shouldAnswerNotModifiedForMatchingEtag() throws IOException {
+        Request request = new Request.Builder().url(mEmulator.url("/v1/albums/0sNOF9WDwhWunNAHPD3Baj")).build();
+        Response first = mClient.newCall(request).execute();
+        first.body().close();
+        String etag = first.header("ETag");
+
+        Response second = mClient.newCall(request.newBuilder().header("If-None-Match", etag).build()).execute();
+        second.body().close();
+
+        assertThat(etag).isNotNull();
+        assertThat(second.code()).isEqualTo(304);
+        assertThat(mEmulator.getResponseCount(304)).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldInjectErrors() throws IOException {
+        mEmulator.setRateLimitRatio(0, 7).failNext(429).failNext(503);
+
+        retrofit2.Response<Track> limited = mService.getTrack("1zHlj4dQ8ZAtrayhuDDmkY").execute();
+        retrofit2.Response<Track> unavailable = mService.getTrack("1zHlj4dQ8ZAtrayhuDDmkY").execute();
+        retrofit2.Response<Track> ok = mService.getTrack("1zHlj4dQ8ZAtrayhuDDmkY").execute();
+
+        assertThat(limited.code()).isEqualTo(429);
+        assertThat(limited.headers().get("Retry-After")).isEqualTo("7");
+        assertThat(unavailable.code()).isEqualTo(503);
+        assertThat(ok.code()).isEqualTo(200);
+    }
+}
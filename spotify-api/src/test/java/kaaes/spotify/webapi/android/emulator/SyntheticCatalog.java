@@ -0,0 +1,179 @@
+package kaaes.spotify.webapi.android.emulator;
+
+import java.util.Random;
+
+/**
+ * Writes JSON for tracks, albums and artists that exist only as an index, so collections of any
+ * size can be served without keeping them in memory. The same index always produces the same
+ * object and its 22 character base62 ID can be turned back into the index.
+ * <p/>
+ * Every album has {@link #TRACKS_PER_ALBUM} tracks and albums are spread over {@link #ARTIST_COUNT} artists.
+ */
+final class SyntheticCatalog {
+
+    static final int TRACKS_PER_ALBUM = 12;
+    static final int ARTIST_COUNT = 5000;
+
+    private static final String ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+    private static final long ALBUM_IDS = 1000000000L;
+    private static final long ARTIST_IDS = 2000000000L;
+    private static final String ZEROS = "0000000000000000";
+
+    private static final String[] MARKETS = {
+            "AD", "AR", "AT", "AU", "BE", "BG", "BO", "BR", "CA", "CH", "CL", "CO", "CR", "CY", "CZ", "DE",
+            "DK", "DO", "EC", "EE", "ES", "FI", "FR", "GB", "GR", "GT", "HK", "HN", "HU", "ID", "IE", "IS",
+            "IT", "JP", "LI", "LT", "LU", "LV", "MC", "MT", "MX", "MY", "NI", "NL", "NO", "NZ", "PA", "PE",
+            "PH", "PL", "PT", "PY", "SE", "SG", "SK", "SV", "TR", "TW", "US", "UY"
+    };
+
+    private static final String[] GENRES = {"pop", "rock", "indie", "electronic", "hip hop", "jazz", "folk", "metal"};
+
+    private SyntheticCatalog() {
+    }
+
+    static String trackId(int index) {
+        return id(index);
+    }
+
+    static String artistId(int index) {
+        return id(ARTIST_IDS + index);
+    }
+
+    /**
+     * @return Index of the track with the ID, -1 if it isn't a synthetic track ID
+     */
+    static int trackIndex(String id) {
+        long value = decode(id);
+        return value < ALBUM_IDS ? (int) value : -1;
+    }
+
+    /**
+     * @return Index of the artist with the ID, -1 if it isn't a synthetic artist ID
+     */
+    static int artistIndex(String id) {
+        long value = decode(id);
+        return value >= ARTIST_IDS ? (int) (value - ARTIST_IDS) : -1;
+    }
+
+    static void appendTrack(StringBuilder json, int index) {
+        Random random = new Random(index);
+        String id = id(index);
+        int albumIndex = index / TRACKS_PER_ALBUM;
+        json.append("{\"album\":");
+        appendAlbum(json, albumIndex);
+        json.append(",\"artists\":[");
+        appendArtistSimple(json, albumIndex % ARTIST_COUNT);
+        json.append("],\"available_markets\":");
+        appendMarkets(json, albumIndex);
+        json.append(",\"disc_number\":1,\"duration_ms\":").append(120000 + random.nextInt(240000))
+                .append(",\"explicit\":").append(random.nextInt(10) == 0)
+                .append(",\"external_ids\":{\"isrc\":\"USRC1").append(String.format("%07d", index % 10000000)).append("\"}");
+        appendLinks(json, "track", "tracks", id);
+        json.append(",\"name\":\"Track ").append(index)
+                .append("\",\"popularity\":").append(random.nextInt(101))
+                .append(",\"preview_url\":\"https://p.scdn.co/mp3-preview/").append(Long.toHexString(random.nextLong()))
+                .append("\",\"track_number\":").append(index % TRACKS_PER_ALBUM + 1)
+                .append('}');
+    }
+
+    static void appendArtist(StringBuilder json, int index) {
+        Random random = new Random(ARTIST_IDS + index);
+        String id = artistId(index);
+        json.append("{\"external_urls\":{\"spotify\":\"https://open.spotify.com/artist/").append(id)
+                .append("\"},\"followers\":{\"href\":null,\"total\":").append(random.nextInt(1000000))
+                .append("},\"genres\":[\"").append(GENRES[index % GENRES.length]).append("\"],\"href\":\"https://api.spotify.com/v1/artists/")
+                .append(id).append("\",\"id\":\"").append(id).append("\",\"images\":");
+        appendImages(json, random);
+        json.append(",\"name\":\"Artist ").append(index)
+                .append("\",\"popularity\":").append(random.nextInt(101))
+                .append(",\"type\":\"artist\",\"uri\":\"spotify:artist:").append(id).append("\"}");
+    }
+
+    private static void appendAlbum(StringBuilder json, int index) {
+        String id = id(ALBUM_IDS + index);
+        json.append("{\"album_type\":\"album\",\"available_markets\":");
+        appendMarkets(json, index);
+        json.append(",\"external_urls\":{\"spotify\":\"https://open.spotify.com/album/").append(id)
+                .append("\"},\"href\":\"https://api.spotify.com/v1/albums/").append(id)
+                .append("\",\"id\":\"").append(id).append("\",\"images\":");
+        appendImages(json, new Random(ALBUM_IDS + index));
+        json.append(",\"name\":\"Album ").append(index)
+                .append("\",\"type\":\"album\",\"uri\":\"spotify:album:").append(id).append("\"}");
+    }
+
+    private static void appendArtistSimple(StringBuilder json, int index) {
+        String id = artistId(index);
+        json.append("{\"external_urls\":{\"spotify\":\"https://open.spotify.com/artist/").append(id)
+                .append("\"},\"href\":\"https://api.spotify.com/v1/artists/").append(id)
+                .append("\",\"id\":\"").append(id).append("\",\"name\":\"Artist ").append(index)
+                .append("\",\"type\":\"artist\",\"uri\":\"spotify:artist:").append(id).append("\"}");
+    }
+
+    /**
+     * Most albums are available almost everywhere, some only in a handful of markets
+     */
+    private static void appendMarkets(StringBuilder json, int albumIndex) {
+        Random random = new Random(ALBUM_IDS + albumIndex);
+        boolean regional = random.nextInt(5) == 0;
+        json.append('[');
+        boolean first = true;
+        for (String market : MARKETS) {
+            if (regional ? random.nextInt(10) == 0 : random.nextInt(20) != 0) {
+                if (!first) {
+                    json.append(',');
+                }
+                json.append('"').append(market).append('"');
+                first = false;
+            }
+        }
+        json.append(']');
+    }
+
+    private static void appendImages(StringBuilder json, Random random) {
+        String hash = Long.toHexString(random.nextLong());
+        json.append('[');
+        int[] sizes = {640, 300, 64};
+        for (int i = 0; i < sizes.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"height\":").append(sizes[i]).append(",\"url\":\"https://i.scdn.co/image/")
+                    .append(hash).append(i).append("\",\"width\":").append(sizes[i]).append('}');
+        }
+        json.append(']');
+    }
+
+    private static void appendLinks(StringBuilder json, String type, String collection, String id) {
+        json.append(",\"external_urls\":{\"spotify\":\"https://open.spotify.com/").append(type).append('/').append(id)
+                .append("\"},\"href\":\"https://api.spotify.com/v1/").append(collection).append('/').append(id)
+                .append("\",\"id\":\"").append(id)
+                .append("\",\"type\":\"").append(type).append("\",\"uri\":\"spotify:").append(type).append(':').append(id).append('"');
+    }
+
+    /**
+     * Synthetic IDs are small numbers so they start with zeros, real ones don't fit in a long
+     */
+    private static long decode(String id) {
+        if (id == null || id.length() != 22 || !id.startsWith(ZEROS)) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = ZEROS.length(); i < id.length(); i++) {
+            int digit = ALPHABET.indexOf(id.charAt(i));
+            if (digit < 0) {
+                return -1;
+            }
+            value = value * ALPHABET.length() + digit;
+        }
+        return value;
+    }
+
+    private static String id(long index) {
+        char[] id = new char[22];
+        for (int i = id.length - 1; i >= 0; i--) {
+            id[i] = ALPHABET.charAt((int) (index % ALPHABET.length()));
+            index /= ALPHABET.length();
+        }
+        return new String(id);
+    }
+}